@@ -0,0 +1,104 @@
+package benchmark;
+
+import controller.TotalsAggregator;
+import core.ExchangeRates;
+import core.Totals;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@code Calculator.calculateValues} costs: the full pass over a sheet after loading, and the incremental
+ * update after a single row is added or deleted. One row in three is in a foreign currency.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CalculationBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    private ObservableList<Transaction> transactions;
+    private TotalsAggregator aggregator;
+    private Transaction row;
+    private ExchangeRates rates;
+    private int displayCurrency;
+
+    @Setup
+    public void setup() {
+        final List<Transaction> generated = Ledgers.generate(rows, 42);
+        for (int i = 0; i < generated.size(); i += 3) {
+            generated.get(i).setCurrency(i % 2 == 0 ? "EUR" : "USD");
+        }
+        transactions = FXCollections.observableArrayList(generated);
+        aggregator = new TotalsAggregator();
+        aggregator.rebuild(transactions);
+        transactions.addListener(aggregator);
+        row = Ledgers.transaction(new Random(7));
+        rates = ExchangeRates.parse(Arrays.asList("CHF 1", "EUR 1.0712", "USD 0.8921"));
+    }
+
+    @Benchmark
+    public Totals rebuildTotals() {
+        aggregator.rebuild(transactions);
+        return aggregator.getTotals();
+    }
+
+    /**
+     * The calculation as it was before the money core: parsing the value strings into a boxed Double and comparing
+     * the period strings one after another. Kept as baseline for {@link #rebuildTotals()}.
+     */
+    @Benchmark
+    public Double stringComparisonChain() {
+        Double sum = 0d;
+        for (Transaction e : transactions) {
+            if ("Year".equals(e.getPeriod())) {
+                sum += Double.parseDouble(e.getValue());
+            } else if ("6 Months".equals(e.getPeriod())) {
+                sum += Double.parseDouble(e.getValue()) * 2;
+            } else if ("Quarter".equals(e.getPeriod())) {
+                sum += Double.parseDouble(e.getValue()) * 4;
+            } else if ("Month".equals(e.getPeriod())) {
+                sum += Double.parseDouble(e.getValue()) * 12;
+            } else if ("Week".equals(e.getPeriod())) {
+                sum += Double.parseDouble(e.getValue()) * 52;
+            } else if ("Day".equals(e.getPeriod())) {
+                sum += Double.parseDouble(e.getValue()) * 365;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Switching the display currency: only the sums per currency are converted, independent of the number of rows.
+     */
+    @Benchmark
+    public Totals switchDisplayCurrency() {
+        displayCurrency = (displayCurrency + 1) % rates.getCurrencies().size();
+        return rates.convert(aggregator.getTotals(), Transaction.currencyId(rates.getCurrencies().get(displayCurrency)));
+    }
+
+    /**
+     * Adds a row and deletes it again, the list is the same afterwards.
+     */
+    @Benchmark
+    public Totals addAndDeleteRow() {
+        transactions.add(row);
+        transactions.remove(transactions.size() - 1);
+        return aggregator.getTotals();
+    }
+}
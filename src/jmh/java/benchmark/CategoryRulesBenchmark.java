@@ -0,0 +1,61 @@
+package benchmark;
+
+import core.CategoryRules;
+import model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Categorizing a sheet with a few thousand rules, like "Rules" does after the rules changed, and matching a single
+ * title, like an import does for every line. Most rules are keywords, one in ten is an expression.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CategoryRulesBenchmark {
+
+    private static final int RULES = 2000;
+
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    private List<Transaction> transactions;
+    private CategoryRules rules;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        transactions = Ledgers.generate(rows, 42);
+        final List<CategoryRules.Rule> ruleList = new ArrayList<>(RULES);
+        for (int i = 0; i < RULES; ++i) {
+            //The titles of the ledgers are "<category> <number>", the rules don't know the categories.
+            ruleList.add(i % 10 == 0
+                    ? CategoryRules.Rule.regex("shop\\s*" + i + "\\b", "Shop " + i)
+                    : CategoryRules.Rule.keyword("merchant " + i, "Merchant " + i));
+        }
+        ruleList.add(CategoryRules.Rule.keyword(" 1", "Ones"));
+        rules = CategoryRules.compile(ruleList);
+    }
+
+    @Benchmark
+    public Transaction[] recategorize() {
+        return rules.recategorize(transactions, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public String categoryOf() {
+        next = next + 1 < transactions.size() ? next + 1 : 0;
+        return rules.categoryOf(transactions.get(next).getTitle());
+    }
+}
@@ -0,0 +1,69 @@
+package benchmark;
+
+import core.CategoryRules;
+import core.StatementImport;
+import model.Money;
+import model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Importing a bank statement, which is what {@code FileService.importStatementAsync} does without handing the
+ * batches to the table. The statement is a CSV export like German online banking writes it, with the rows of a
+ * synthetic sheet. The score is in statements per second, times the rows gives the lines per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ImportBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    private Path directory;
+    private Path csv;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("nubage-benchmark");
+        csv = directory.resolve("statement" + StatementImport.CSV_EXTENSION);
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write("Buchungstag;Valuta;Auftraggeber / Begünstigter;Verwendungszweck;Kategorie;Betrag;Währung\n");
+            for (Transaction transaction : Ledgers.generate(rows, 42)) {
+                writer.write("01.02.2020;01.02.2020;\"");
+                writer.write(transaction.getTitle());
+                writer.write("\";\"Card payment\";");
+                writer.write(transaction.getCategory() != null ? transaction.getCategory() : "");
+                writer.write(';');
+                writer.write(Money.formatCents(transaction.getAmountCents()).replace('.', ','));
+                writer.write(";EUR\n");
+            }
+        }
+    }
+
+    @TearDown
+    public void deleteFiles() throws IOException {
+        Files.delete(csv);
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public StatementImport.Report importCsv(Blackhole blackhole) throws IOException {
+        return StatementImport.read(csv, CategoryRules.EMPTY, blackhole::consume, (workDone, totalWork) -> true);
+    }
+}
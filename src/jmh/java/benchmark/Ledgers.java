@@ -0,0 +1,81 @@
+package benchmark;
+
+import model.Period;
+import model.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic sheets for the benchmarks. The same seed always gives the same sheet.
+ *
+ * The distributions follow what a household sheet usually looks like: most transactions are monthly, about one in
+ * five is an income, a few categories are used by most rows and the titles repeat a lot.
+ */
+public final class Ledgers {
+
+    /**
+     * Cumulative share of each known period (in the order of {@link Period}), in percent.
+     */
+    private static final int[] PERIOD_PERCENTAGES = {15, 20, 28, 83, 93, 100};
+    private static final String[] CATEGORIES = {
+            "Housing", "Food", "Transport", "Insurance", "Health", "Leisure", "Clothing", "Savings", "Salary",
+            "Taxes", "Phone", "Internet", "Gifts", "Education", "Pets", "Travel", "Children", "Donations",
+            "Electricity", "Water", "Heating", "Subscriptions", "Furniture", "Garden", "Car", "Bank", "Hobby",
+            "Sports", "Restaurants", "Coffee", "Books", "Music", "Games", "Tools", "Repairs", "Cleaning",
+            "Beauty", "Events", "Office", "Other"};
+    private static final int TITLE_COUNT = 500;
+    private static final int INCOME_PERCENTAGE = 20;
+    private static final int UNKNOWN_PERIOD_PER_MILLE = 1;
+
+    private Ledgers() {}
+
+    public static List<Transaction> generate(int rows, long seed) {
+        final Random random = new Random(seed);
+        final List<Transaction> transactions = new ArrayList<>(rows);
+        for (int i = 0; i < rows; ++i) {
+            transactions.add(transaction(random));
+        }
+        return transactions;
+    }
+
+    public static Transaction transaction(Random random) {
+        final Transaction transaction = new Transaction();
+        final String category = category(random);
+        transaction.setTitle(category + " " + random.nextInt(TITLE_COUNT / CATEGORIES.length + 1));
+        transaction.setCategory(category);
+        transaction.setPeriod(period(random));
+        transaction.setAmountCents(amountCents(random));
+        return transaction;
+    }
+
+    /**
+     * The first categories are much more likely than the last ones (roughly Zipf distributed).
+     */
+    private static String category(Random random) {
+        final double rank = Math.pow(CATEGORIES.length + 1, random.nextDouble()) - 1;
+        return CATEGORIES[Math.min((int) rank, CATEGORIES.length - 1)];
+    }
+
+    private static String period(Random random) {
+        if (random.nextInt(1000) < UNKNOWN_PERIOD_PER_MILLE) {
+            return "Fortnight";
+        }
+        final int percentage = random.nextInt(100);
+        int code = 0;
+        while (PERIOD_PERCENTAGES[code] <= percentage) {
+            code++;
+        }
+        return Period.ofCode(code).getName();
+    }
+
+    /**
+     * Amounts are log-normally distributed around about 50.00, incomes are larger.
+     */
+    private static long amountCents(Random random) {
+        final boolean income = random.nextInt(100) < INCOME_PERCENTAGE;
+        final long cents = Math.round(Math.exp(8.5 + random.nextGaussian() * 1.2)) + 1;
+        return income ? cents * 10 : -cents;
+    }
+}
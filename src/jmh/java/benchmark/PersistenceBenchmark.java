@@ -0,0 +1,93 @@
+package benchmark;
+
+import core.SheetFiles;
+import core.SnapshotFile;
+import core.Totals;
+import model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Loading and saving sheets, which is what {@code FileService.loadFile} and {@code FileService.writeListToJson} do
+ * without the messages. The files are written to a temporary directory, which is deleted afterwards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PersistenceBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    private Path directory;
+    private List<Transaction> transactions;
+    private Path json;
+    private Path snapshot;
+    private Path jsonTarget;
+    private Path snapshotTarget;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("nubage-benchmark");
+        transactions = Ledgers.generate(rows, 42);
+        json = directory.resolve("sheet" + SheetFiles.JSON_EXTENSION);
+        snapshot = directory.resolve("sheet" + SnapshotFile.EXTENSION);
+        jsonTarget = directory.resolve("target" + SheetFiles.JSON_EXTENSION);
+        snapshotTarget = directory.resolve("target" + SnapshotFile.EXTENSION);
+        SheetFiles.writeJson(json, transactions, false, SheetFiles.NO_PROGRESS);
+        SnapshotFile.write(snapshot, transactions);
+    }
+
+    @TearDown
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void loadJson(Blackhole blackhole) throws IOException {
+        SheetFiles.read(json, blackhole::consume, SheetFiles.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public void loadSnapshot(Blackhole blackhole) throws IOException {
+        SheetFiles.read(snapshot, blackhole::consume, SheetFiles.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public Totals totalsOfJson() throws IOException {
+        return SheetFiles.readTotals(json);
+    }
+
+    /**
+     * Includes the sync to disk and the atomic rename, like every save in the application.
+     */
+    @Benchmark
+    public void saveJson() throws IOException {
+        SheetFiles.writeAtomically(jsonTarget.toFile(), file -> SheetFiles.writeJson(file, transactions, false, SheetFiles.NO_PROGRESS));
+    }
+
+    @Benchmark
+    public void saveSnapshot() throws IOException {
+        SheetFiles.writeAtomically(snapshotTarget.toFile(), file -> SnapshotFile.write(file, transactions));
+    }
+}
@@ -0,0 +1,74 @@
+package benchmark;
+
+import core.CashFlowTimeline;
+import model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projecting a sheet over ten years: the rebuild after a load, editing a single row and the queries of the projection
+ * window. Half of the rows have a start date within the last years, one in four ends within the timeline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProjectionBenchmark {
+
+    private static final LocalDate FIRST_DATE = LocalDate.of(2017, 1, 1);
+    private static final int YEARS = 10;
+
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    private List<Transaction> transactions;
+    private CashFlowTimeline timeline;
+    private final Random random = new Random(42);
+
+    @Setup
+    public void setup() {
+        transactions = Ledgers.generate(rows, 42);
+        final int firstDay = (int) FIRST_DATE.toEpochDay();
+        for (Transaction transaction : transactions) {
+            if (random.nextBoolean()) {
+                transaction.setStartDay(firstDay - random.nextInt(5 * 365));
+            }
+            if (random.nextInt(4) == 0) {
+                transaction.setEndDay(firstDay + random.nextInt(YEARS * 365));
+            }
+        }
+        timeline = new CashFlowTimeline(FIRST_DATE, YEARS);
+        timeline.rebuild(transactions);
+    }
+
+    @Benchmark
+    public CashFlowTimeline rebuild() {
+        final CashFlowTimeline rebuilt = new CashFlowTimeline(FIRST_DATE, YEARS);
+        rebuilt.rebuild(transactions);
+        return rebuilt;
+    }
+
+    @Benchmark
+    public CashFlowTimeline editRow() {
+        final Transaction transaction = transactions.get(random.nextInt(transactions.size()));
+        timeline.remove(transaction);
+        timeline.add(transaction);
+        return timeline;
+    }
+
+    @Benchmark
+    public long minBalance() {
+        final LocalDate from = FIRST_DATE.plusDays(random.nextInt(timeline.getDays()));
+        return timeline.minBalance(from, timeline.getLastDate());
+    }
+}
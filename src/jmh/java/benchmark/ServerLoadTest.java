@@ -0,0 +1,151 @@
+package benchmark;
+
+import core.SheetServer;
+import core.SnapshotFile;
+import core.Telemetry;
+import model.Transaction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of {@link SheetServer}: many clients at once, each sending its requests one after another as fast as
+ * it can. Most requests ask for the totals or a page of a large snapshot, a few list the sheets and one in a hundred
+ * appends a row to a small JSON sheet. Reports the throughput and the latency percentiles over all requests.
+ *
+ * Usage: {@code ServerLoadTest [clients] [requests per client] [rows]}, defaults to 1000 clients with 20 requests
+ * each on 100000 rows.
+ */
+public final class ServerLoadTest {
+
+    private static final int PAGE_SIZE = 100;
+    private static final int PAGES = 100;
+
+    private ServerLoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        final int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        final int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        final int rows = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+
+        final Path directory = Files.createTempDirectory("nubage-load");
+        final Path ledger = directory.resolve("ledger" + SnapshotFile.EXTENSION);
+        final Path small = directory.resolve("small.json");
+        SnapshotFile.write(ledger, Ledgers.generate(rows, 42));
+        Files.write(small, Collections.singletonList("[]"), StandardCharsets.UTF_8);
+
+        try (SheetServer server = SheetServer.start(directory, 0)) {
+            final String base = "http://localhost:" + server.getPort() + "/sheets";
+            //A running server has its sheets loaded already, the first load isn't part of the measurement.
+            final Random warmUp = new Random(-1);
+            for (int request = 0; request < 100; ++request) {
+                send(base, warmUp);
+            }
+            Telemetry.reset();
+            final long[][] latencies = new long[clients][requests];
+            final AtomicLong errors = new AtomicLong();
+            final CountDownLatch start = new CountDownLatch(1);
+            final Thread[] threads = new Thread[clients];
+            for (int client = 0; client < clients; ++client) {
+                final long[] clientLatencies = latencies[client];
+                final Random random = new Random(client);
+                threads[client] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int request = 0; request < requests; ++request) {
+                        final long begin = System.nanoTime();
+                        if (!send(base, random)) {
+                            errors.incrementAndGet();
+                        }
+                        clientLatencies[request] = System.nanoTime() - begin;
+                    }
+                }, "client-" + client);
+                threads[client].start();
+            }
+            final long begin = System.nanoTime();
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            final long duration = System.nanoTime() - begin;
+
+            final long[] all = new long[clients * requests];
+            for (int client = 0; client < clients; ++client) {
+                System.arraycopy(latencies[client], 0, all, client * requests, requests);
+            }
+            Arrays.sort(all);
+            System.out.printf("%d clients, %d requests on %d rows in %d ms: %.0f requests/s, %d failed%n", clients,
+                    all.length, rows, duration / 1_000_000, all.length * 1e9 / duration, errors.get());
+            System.out.printf("latency ms: p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f%n", percentile(all, 0.5),
+                    percentile(all, 0.9), percentile(all, 0.99), percentile(all, 0.999), all[all.length - 1] / 1e6);
+            System.out.println();
+            System.out.print(Telemetry.report());
+        } finally {
+            Files.deleteIfExists(ledger);
+            Files.deleteIfExists(small);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Sends one request, returns false if it failed.
+     */
+    private static boolean send(String base, Random random) {
+        final int kind = random.nextInt(100);
+        try {
+            if (kind == 0) {
+                final Transaction row = Ledgers.transaction(random);
+                return request(base + "/small.json/transactions", "[{\"title\":\"" + row.getTitle() + "\",\"period\":\""
+                        + row.getPeriod() + "\",\"value\":\"" + row.getValue() + "\"}]");
+            } else if (kind < 10) {
+                return request(base, null);
+            } else if (kind < 40) {
+                return request(base + "/ledger" + SnapshotFile.EXTENSION + "/transactions?offset="
+                        + random.nextInt(PAGES) * PAGE_SIZE + "&limit=" + PAGE_SIZE, null);
+            }
+            return request(base + "/ledger" + SnapshotFile.EXTENSION + "/totals", null);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean request(String url, String body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(60_000);
+        connection.setReadTimeout(60_000);
+        if (body != null) {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        final int status = connection.getResponseCode();
+        //Reading the whole response gives the connection back for the next request.
+        try (InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            final byte[] buffer = new byte[8192];
+            while (input != null && input.read(buffer) >= 0) {
+                //Only the time counts.
+            }
+        }
+        return status < 400;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1e6;
+    }
+}
@@ -0,0 +1,104 @@
+package benchmark;
+
+import controller.CashFlowProjection;
+import controller.CategoryIndex;
+import controller.FilteredTransactionList;
+import controller.TotalsAggregator;
+import controller.TransactionList;
+import controller.UndoHistory;
+import core.SheetFiles;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import model.StringPool;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures what every additional tab costs: loads one sheet after another from its JSON file, each with the lists
+ * and aggregates a tab keeps (like {@code controller.Sheet}), and reports how much more heap is used after every
+ * sheet. The titles and categories of all sheets come from the same household, so most of their strings are shared
+ * through {@link StringPool} and only the rows themselves cost memory.
+ *
+ * Usage: {@code SheetMemory [sheets] [rows per sheet]}, defaults to 10 sheets with 10000 rows each.
+ */
+public final class SheetMemory {
+
+    private SheetMemory() {}
+
+    /**
+     * The state of one tab.
+     */
+    private static final class Tab {
+
+        final TransactionList transactionList = new TransactionList();
+        final FilteredTransactionList filteredList = new FilteredTransactionList(transactionList);
+        final TotalsAggregator totals = new TotalsAggregator();
+        final TotalsAggregator filteredTotals = new TotalsAggregator();
+        final UndoHistory history = new UndoHistory(transactionList);
+        final CashFlowProjection projection = new CashFlowProjection(transactionList);
+        final ObservableList<String> categoryItems = FXCollections.observableArrayList();
+        final CategoryIndex categories = new CategoryIndex(categoryItems, Collections.emptyList());
+
+        Tab() {
+            filteredList.addListener(filteredTotals);
+            transactionList.addListener(totals);
+            transactionList.addListener(categories);
+            transactionList.addListener(history);
+            transactionList.addListener(projection);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int sheets = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        final int rows = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        final Path directory = Files.createTempDirectory("nubage-memory");
+        final List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < sheets; ++i) {
+                final Path file = directory.resolve("sheet" + i + SheetFiles.JSON_EXTENSION);
+                SheetFiles.writeJson(file, Ledgers.generate(rows, i), true, SheetFiles.NO_PROGRESS);
+                files.add(file);
+            }
+
+            final List<Tab> tabs = new ArrayList<>();
+            long used = usedHeap();
+            final long empty = used;
+            System.out.printf("%d sheets with %d rows each%n", sheets, rows);
+            for (Path file : files) {
+                final Tab tab = new Tab();
+                SheetFiles.read(file, tab.transactionList::addAll, SheetFiles.NO_PROGRESS);
+                tabs.add(tab);
+                final long now = usedHeap();
+                System.out.printf("sheet %2d: %8d KB, %5.1f bytes per row, %d pooled strings%n", tabs.size(),
+                        (now - used) / 1024, (double) (now - used) / rows, StringPool.size());
+                used = now;
+            }
+            System.out.printf("average:  %8d KB per sheet, %5.1f bytes per row%n", (used - empty) / sheets / 1024,
+                    (double) (used - empty) / sheets / rows);
+            //Keeps the tabs reachable until they are measured.
+            System.out.println(tabs.size() + " tabs open");
+        } finally {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        //A few rounds, until the weak references of the pool and the finalizers are cleared as well.
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
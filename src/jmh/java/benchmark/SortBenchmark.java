@@ -0,0 +1,84 @@
+package benchmark;
+
+import controller.TableSorter;
+import controller.TableSorter.Column;
+import controller.TableSorter.SortKey;
+import controller.TransactionList;
+import model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sort policy of the table, which runs after every load and whenever a column header is clicked, and the
+ * insertion of a new row at its sorted position.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SortBenchmark {
+
+    private static final List<SortKey> CATEGORY_THEN_YEARLY = Arrays.asList(
+            new SortKey(Column.CATEGORY, true), new SortKey(Column.YEARLY, false));
+
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    private List<Transaction> unsorted;
+    private TransactionList transactions;
+    private Transaction row;
+
+    @Setup
+    public void generate() {
+        unsorted = Ledgers.generate(rows, 42);
+        row = Ledgers.transaction(new Random(7));
+    }
+
+    /**
+     * Every sort starts from the unsorted sheet again.
+     */
+    @Setup(Level.Invocation)
+    public void reset() {
+        transactions = new TransactionList();
+        transactions.addAll(unsorted);
+    }
+
+    @Benchmark
+    public TransactionList sortIncomeFirst() {
+        TableSorter.sort(transactions, Collections.emptyList());
+        return transactions;
+    }
+
+    @Benchmark
+    public TransactionList sortByTitle() {
+        TableSorter.sort(transactions, Collections.singletonList(new SortKey(Column.TITLE, true)));
+        return transactions;
+    }
+
+    @Benchmark
+    public TransactionList sortByCategoryThenYearly() {
+        TableSorter.sort(transactions, CATEGORY_THEN_YEARLY);
+        return transactions;
+    }
+
+    /**
+     * Finds the position of a new row in a sorted sheet. The list isn't sorted here, but the binary search costs the
+     * same.
+     */
+    @Benchmark
+    public int insertionIndex() {
+        return TableSorter.insertionIndex(transactions, row, CATEGORY_THEN_YEARLY);
+    }
+}
@@ -1,9 +1,23 @@
 package controller;
 
+import core.CategoryRules;
+import core.ContentKey;
+import core.ExchangeRateFile;
+import core.ExchangeRates;
+import core.SheetDiff;
+import core.SheetFiles;
+import core.SheetMerger;
+import core.SnapshotFile;
+import core.StatementImport;
+import core.Telemetry;
+import core.Totals;
 import javafx.application.Application;
-import javafx.collections.FXCollections;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -18,11 +32,16 @@ import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Stage;
 import javafx.util.Callback;
+import javafx.util.StringConverter;
+import model.Money;
+import model.Period;
 import model.Transaction;
 
 import java.io.*;
 import java.text.DecimalFormat;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * TODO:
@@ -85,23 +104,79 @@ import java.util.*;
  */
 public class Calculator extends Application {
 
+	/**
+	 * Snapshots with more rows are shown through a {@link PagedTransactionList} instead of being loaded.
+	 */
+	private static final int PAGED_ROWS_THRESHOLD = Integer.getInteger("nubage.pagedRows", 1_000_000);
+
+	/**
+	 * Memory the pages of a large sheet may take, in bytes.
+	 */
+	private static final long PAGE_CACHE_BUDGET = Long.getLong("nubage.pageCacheMegabytes", 64) * 1024 * 1024;
+
+	/**
+	 * Rows which another program added to the sheet are put where they belong one by one, if there are at most this
+	 * many. Otherwise they're appended and the table is sorted again.
+	 */
+	private static final int MAX_INSERTED_ROWS = 64;
+
+	/**
+	 * The rules which assign categories by title, see {@link CategoryRules}.
+	 */
+	private static final String RULES_FILE_NAME = "category-rules.txt";
+
+	/**
+	 * The exchange rates the totals are converted with, see {@link ExchangeRates}.
+	 */
+	private static final String RATES_FILE_NAME = "exchange-rates.txt";
+
+	private static final Telemetry.Operation CALCULATE = Telemetry.operation("calculate");
+	private static final Telemetry.Operation ROW_UPDATE = Telemetry.operation("table.rowUpdate");
+
 	private FileService fileService;
-	private File path = getInitialDocumentPath();
 	private GridPane mainView;
-	private ObservableList<Transaction> transactionList;
+	private final RecomputeScheduler recompute = new RecomputeScheduler();
+	private final Map<TableColumn<Transaction, ?>, TableSorter.Column> sortColumns = new HashMap<>();
 	private ResourceBundle currentResourceBundle;
 
-	private boolean hasPendingChanges = false;
+	/**
+	 * The open sheets, one per tab. The shown one is {@link #sheet}, there's always at least one.
+	 */
+	private final Map<Tab, Sheet> sheets = new LinkedHashMap<>();
+	private Sheet sheet;
+	private List<String> fixedCategoryItems;
+	private boolean switchingSheet = false;
+	private DiagnosticsWindow diagnostics;
+	private CategoryRules categoryRules = CategoryRules.EMPTY;
+	private RulesWindow rulesWindow;
+	private ProjectionWindow projectionWindow;
+	private ExchangeRateFile rateFile;
+	private ExchangeRates shownRates;
 
 	private double xOffset = 0;
 	private double yOffset = 0;
 
+	@FXML private TabPane sheetTabs;
+	@FXML private TextField searchField;
 	@FXML private TableView<Transaction> expensesTableView;
+	@FXML private TableColumn<Transaction, String> titleColumn;
+	@FXML private TableColumn<Transaction, String> categoryColumn;
+	@FXML private TableColumn<Transaction, String> periodColumn;
+	@FXML private TableColumn<Transaction, String> valueColumn;
+	@FXML private TableColumn<Transaction, String> currencyColumn;
+	@FXML private TableColumn<Transaction, String> yearlyColumn;
+	@FXML private TableColumn<Transaction, String> sourceColumn;
+	@FXML private TableColumn<Transaction, String> startColumn;
+	@FXML private TableColumn<Transaction, String> endColumn;
+	@FXML private CheckBox removeDuplicates;
 	@FXML private ImageView logoImageView;
 	@FXML private TextField expenseTitle;
-	@FXML private ComboBox<String> expensePeriod;
+	@FXML private ComboBox<Period> expensePeriod;
 	@FXML private ComboBox<String> expenseCategory;
 	@FXML private TextField expenseValue;
+	@FXML private TextField expenseCurrency;
+	@FXML private DatePicker expenseStart;
+	@FXML private DatePicker expenseEnd;
 	@FXML private TextField addCategoryTextField;
 	@FXML private Label expensesPerYearText;
 	@FXML private Label expensesPerMonthText;
@@ -110,6 +185,7 @@ public class Calculator extends Application {
 	@FXML private Label expensesPerHourText;
 	@FXML private MessageToast errorMessage;
 	@FXML private CheckBox isIncome;
+	@FXML private ComboBox<String> displayCurrency;
 
 	/**
 	 * Build the main part of the GUI.
@@ -128,13 +204,22 @@ public class Calculator extends Application {
 		}
 
 		fileService = new FileService(errorMessage);
-
-		transactionList = FXCollections.observableArrayList();
+		loadCategoryRules();
+		rateFile = new ExchangeRateFile(getExchangeRatesFile().toPath());
 		expensePeriod.getSelectionModel().selectFirst();
 
-		setupTableView(transactionList);
+		fixedCategoryItems = Arrays.asList(currentResourceBundle.getString("combobox.none"), currentResourceBundle.getString("combobox.add_a_category"));
+		setupTableView();
+		recompute.setAction(RecomputeScheduler.Derived.SORT_ORDER, expensesTableView::sort);
+		recompute.setAction(RecomputeScheduler.Derived.TOTALS, this::calculateValues);
+		recompute.setAction(RecomputeScheduler.Derived.PROJECTION, () -> {
+			if (projectionWindow != null) {
+				projectionWindow.refresh();
+			}
+		});
 		setupCategoryComboBox();
 		setupPeriodComboBox();
+		setupSheetTabs();
 		buildListeners(stage);
 
 		//Adding the logo...
@@ -151,23 +236,73 @@ public class Calculator extends Application {
 		stage.getIcons().add(new Image(getClass().getResourceAsStream("/nubage_favicon.png")));
 		stage.setScene(scene);
 		stage.setOnCloseRequest(event -> {
-			if (hasPendingChanges) {
-				ExitDialog exitDialog = new ExitDialog(this);
-				exitDialog.showAndWait();
+			//Every sheet with unsaved changes is shown and asked for.
+			for (Map.Entry<Tab, Sheet> open : new ArrayList<>(sheets.entrySet())) {
+				if (open.getValue().hasPendingChanges) {
+					sheetTabs.getSelectionModel().select(open.getKey());
+					ExitDialog exitDialog = new ExitDialog(this);
+					exitDialog.showAndWait();
+				}
+			}
+			//Don't close in the middle of a save, the window closes as soon as all are done.
+			final List<Task<Boolean>> runningSaves = new ArrayList<>();
+			for (Sheet open : sheets.values()) {
+				if (isRunning(open.runningSave)) {
+					runningSaves.add(open.runningSave);
+				}
+			}
+			if (!runningSaves.isEmpty()) {
+				event.consume();
+				for (Task<Boolean> runningSave : runningSaves) {
+					whenDone(runningSave, () -> {
+						if (runningSaves.stream().allMatch(Task::isDone)) {
+							stage.close();
+						}
+					});
+				}
 			}
 		});
+		//The exchange rates may have been changed in another program.
+		stage.focusedProperty().addListener((observable, wasFocused, focused) -> {
+			if (focused) {
+				recompute.invalidate(RecomputeScheduler.Derived.TOTALS);
+			}
+		});
+		displayCurrency.setOnAction(event -> recompute.invalidate(RecomputeScheduler.Derived.TOTALS));
 		stage.show();
 	}
 
-	private void setupTableView(ObservableList<Transaction> transactionList) {
-		expensesTableView.sortPolicyProperty().set(cb -> {
-			Comparator<Transaction> c = (a, b) -> {
-				if (a.getValue().contains("-") ^ b.getValue().contains("-")) {
-					return a.getValue().contains("-") ? 1 : -1;
-				}
-				return 0;
-			};
-			FXCollections.sort(expensesTableView.getItems(), c);
+	private void setupTableView() {
+		sortColumns.put(titleColumn, TableSorter.Column.TITLE);
+		sortColumns.put(categoryColumn, TableSorter.Column.CATEGORY);
+		sortColumns.put(periodColumn, TableSorter.Column.PERIOD);
+		sortColumns.put(valueColumn, TableSorter.Column.VALUE);
+		sortColumns.put(currencyColumn, TableSorter.Column.CURRENCY);
+		sortColumns.put(yearlyColumn, TableSorter.Column.YEARLY);
+		sortColumns.put(sourceColumn, TableSorter.Column.SOURCE);
+		sortColumns.put(startColumn, TableSorter.Column.START);
+		sortColumns.put(endColumn, TableSorter.Column.END);
+		//The rows have no JavaFX properties, so the core runs without JavaFX. Rows aren't changed in place, a changed
+		//row replaces the old one in the list, which updates its cells.
+		titleColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getTitle()));
+		categoryColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getCategory()));
+		valueColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getValue()));
+		startColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getStart()));
+		endColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getEnd()));
+		sourceColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getSource()));
+		currencyColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getCurrency()));
+		periodColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(periodLabel(cell.getValue().getPeriod())));
+		yearlyColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().hasKnownPeriod()
+				? Money.formatCents(cell.getValue().getYearlyCents()) : ""));
+
+		expensesTableView.sortPolicyProperty().set(table -> {
+			if (sheet.pagedRows != null) {
+				return false;
+			}
+			//The rows of a sheet are still in the order they had when it was shown before.
+			if (!switchingSheet) {
+				TableSorter.sort(sheet.transactionList, getSortKeys());
+			}
 			return true;
 		});
 
@@ -177,102 +312,276 @@ public class Calculator extends Application {
 				return new TableRow<Transaction>() {
 					@Override
 					protected void updateItem(Transaction person, boolean empty){
+						final long start = System.nanoTime();
 						super.updateItem(person, empty);
-						if (person == null || person.getValue().contains("-")) {
+						if (person == null || person.isExpense()) {
 							getStyleClass().remove("income-row");
-						} else if ( !person.getValue().contains("-")) {
+						} else if (!getStyleClass().contains("income-row")) {
 							getStyleClass().add("income-row");
-						} else {
-							getStyleClass().remove("income-row");
 						}
+						ROW_UPDATE.record(System.nanoTime() - start, empty ? 0 : 1, 0, 0);
 					}
 				};
 			}
 		});
 
-		expensesTableView.setItems(transactionList);
+		searchField.textProperty().addListener((observable, oldText, newText) -> {
+			if (!switchingSheet) {
+				search(newText);
+			}
+		});
+	}
+
+	/**
+	 * Shows only the rows whose title or category contains the text, the totals are then the ones of these rows.
+	 */
+	private void search(String text) {
+		if (sheet.pagedRows != null) {
+			if (!text.isEmpty()) {
+				errorMessage.showErrorMessage("Large sheets can't be searched!");
+			}
+			return;
+		}
+		sheet.query = text;
+		sheet.filteredList.setQuery(text);
+		recompute.invalidate(RecomputeScheduler.Derived.TOTALS);
+	}
+
+	/**
+	 * The columns the user sorted the table by, in the order they were clicked.
+	 */
+	private List<TableSorter.SortKey> getSortKeys() {
+		final List<TableSorter.SortKey> sortKeys = new ArrayList<>();
+		for (TableColumn<Transaction, ?> column : expensesTableView.getSortOrder()) {
+			sortKeys.add(new TableSorter.SortKey(sortColumns.get(column), column.getSortType() == TableColumn.SortType.ASCENDING));
+		}
+		return sortKeys;
+	}
+
+	/**
+	 * The sort order of the sheet, for a sheet in the background the one it had when it was shown last.
+	 */
+	private List<TableSorter.SortKey> getSortKeys(Sheet sorted) {
+		if (sorted == sheet) {
+			return getSortKeys();
+		}
+		final List<TableSorter.SortKey> sortKeys = new ArrayList<>();
+		for (int i = 0; i < sorted.sortOrder.size(); ++i) {
+			sortKeys.add(new TableSorter.SortKey(sortColumns.get(sorted.sortOrder.get(i)), sorted.sortTypes.get(i) == TableColumn.SortType.ASCENDING));
+		}
+		return sortKeys;
 	}
 
 	@FXML
 	public void onSaveButton() {
-		if (transactionList.isEmpty()) {
+		save();
+	}
+
+	/**
+	 * Saves the sheet in the background.
+	 *
+	 * @return the running save or null, if nothing is saved.
+	 */
+	public Task<Boolean> save() {
+		if (isReadOnly()) {
+			return null;
+		}
+		final Sheet saved = sheet;
+		if (saved.transactionList.isEmpty()) {
 			errorMessage.showErrorMessage("Nothing to save!");
-			return;
+			return null;
 		}
-		if (path != null && !path.isFile() && !path.toString().endsWith(".json")) {
+		if (saved.path != null && !saved.path.isFile() && !isSheetFile(saved.path)) {
 			FileChooser fileChooser = new FileChooser();
 			fileChooser.setTitle("Save JSON-File");
-			if (path.isDirectory()) fileChooser.setInitialDirectory(path);
-			fileChooser.getExtensionFilters().add(new ExtensionFilter("JSOM-Document", "*.json"));
+			if (saved.path.isDirectory()) fileChooser.setInitialDirectory(saved.path);
+			final ExtensionFilter jsonFilter = new ExtensionFilter("JSOM-Document", "*.json");
+			final ExtensionFilter snapshotFilter = new ExtensionFilter("Nubage-Snapshot", "*" + SnapshotFile.EXTENSION);
+			fileChooser.getExtensionFilters().addAll(jsonFilter, snapshotFilter);
 
-			path = fileChooser.showSaveDialog(new Stage());
-			if (path == null) return;
+			File chosen = fileChooser.showSaveDialog(new Stage());
+			if (chosen == null) return null;
+			if (!isSheetFile(chosen) && fileChooser.getSelectedExtensionFilter() == snapshotFilter) {
+				chosen = new File(chosen.toString() + SnapshotFile.EXTENSION);
+			}
+			saved.path = chosen;
+			saved.merged = false;
 		}
-		if (path.toString().endsWith(".json") == false) {
-			path = new File(path.toString() + ".json");
+		if (isSheetFile(saved.path) == false) {
+			saved.path = new File(saved.path.toString() + ".json");
 		}
+		updateTabName(saved);
 
-		if (path != null) fileService.writeListToJson(path, transactionList);
+		//With a journal, the changes are safe on disk as soon as it's synced. Writing them into the sheet itself
+		//(which costs as much as the whole sheet) then happens in the background.
+		final File target = saved.path;
+		final boolean journaled = saved.journal != null && saved.journal.getSheet().equals(target);
+		if (journaled) {
+			try {
+				saved.journal.flush();
+				saved.hasPendingChanges = false;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		final long journalPosition = journaled ? saved.journal.position() : 0;
+		final long savedModificationCount = saved.modificationCount;
+		final Object savePoint = saved.history.savePoint();
+		final Task<Boolean> runningSave = fileService.saveFileAsync(target, saved.transactionList,
+				journaled ? saved.journal : null, journalPosition);
+		saved.runningSave = runningSave;
+		runningSave.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, event -> {
+			saved.history.markSaved(savePoint);
+			if (target.equals(saved.path)) {
+				watchSheet(saved, target);
+			}
+			if (saved.modificationCount == savedModificationCount) {
+				saved.hasPendingChanges = false;
+			}
+			if (journaled && saved.journal != null) {
+				saved.journal.compact(journalPosition);
+			} else if (target.equals(saved.path)) {
+				discardJournal(saved);
+				openJournal(saved, target);
+			}
+		});
+		runningSave.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, event -> saved.hasPendingChanges = true);
+		errorMessage.showProgressMessage(runningSave);
+		return runningSave;
 	}
 
 	@FXML
 	public void onLoadButton() {
-		if (path != null && !path.isDirectory()) {
-			path = path.getParentFile();
-		}
+		final File directory = getSheetDirectory();
 		try {
 			final FileChooser fileChooser = new FileChooser();
 			fileChooser.setTitle("Load JSON-File");
-			fileChooser.getExtensionFilters().add(new ExtensionFilter("JSON-Document", "*.json"));
-			if (path != null && path.isDirectory()) fileChooser.setInitialDirectory(path);
-			path = fileChooser.showOpenDialog(new Stage());
-			if (path == null) return;
+			fileChooser.getExtensionFilters().addAll(
+					new ExtensionFilter("JSON-Document", "*.json"),
+					new ExtensionFilter("Nubage-Snapshot", "*" + SnapshotFile.EXTENSION));
+			if (directory != null && directory.isDirectory()) fileChooser.setInitialDirectory(directory);
+			final List<File> files = fileChooser.showOpenMultipleDialog(new Stage());
+			if (files == null || files.isEmpty()) return;
+
+			if (files.size() == 1) {
+				loadFile(files.get(0).toString());
+			} else {
+				loadFiles(files);
+			}
+
+		} catch (Exception e) {
+			if (directory != null)
+				errorMessage.showErrorMessage("Error!");
+		}
+	}
+
+	/**
+	 * The directory of the shown sheet, to start the file choosers there. Null for a new sheet.
+	 */
+	private File getSheetDirectory() {
+		if (sheet.path == null || sheet.path.isDirectory()) {
+			return sheet.path;
+		}
+		return sheet.path.getParentFile();
+	}
+
+	@FXML
+	public void onImportButton() {
+		final File directory = getSheetDirectory();
+		try {
+			final FileChooser fileChooser = new FileChooser();
+			fileChooser.setTitle("Import Bank Statement");
+			final List<String> mt940Extensions = new ArrayList<>();
+			for (String extension : StatementImport.MT940_EXTENSIONS) {
+				mt940Extensions.add("*" + extension);
+			}
+			mt940Extensions.add("*.txt");
+			fileChooser.getExtensionFilters().addAll(
+					new ExtensionFilter("CSV-Export", "*" + StatementImport.CSV_EXTENSION),
+					new ExtensionFilter("CAMT-Statement", "*" + StatementImport.CAMT_EXTENSION),
+					new ExtensionFilter("MT940-Statement", mt940Extensions));
+			if (directory != null && directory.isDirectory()) fileChooser.setInitialDirectory(directory);
+			final File file = fileChooser.showOpenDialog(new Stage());
+			if (file == null) return;
 
-			loadFile(path.toString());
+			importStatement(file);
 
 		} catch (Exception e) {
-			if (path != null)
+			if (directory != null)
 				errorMessage.showErrorMessage("Error!");
 		}
 	}
 
+	@FXML
+	public void onRulesButton() {
+		if (rulesWindow == null) {
+			rulesWindow = new RulesWindow(this::applyCategoryRules);
+		}
+		if (!rulesWindow.isShowing()) {
+			rulesWindow.setRules(categoryRules.getRules());
+		}
+		rulesWindow.show();
+		rulesWindow.toFront();
+	}
+
+	/**
+	 * Opens the projection of the balance, or brings it to the front if it's already open.
+	 */
+	@FXML
+	public void onProjectionButton() {
+		if (sheet.pagedRows != null) {
+			errorMessage.showErrorMessage("Large sheets can't be projected!");
+			return;
+		}
+		if (projectionWindow == null) {
+			projectionWindow = new ProjectionWindow(sheet.projection);
+		}
+		projectionWindow.show();
+		projectionWindow.toFront();
+	}
+
 	@FXML
 	public void onEditButton() {
+		if (isReadOnly()) {
+			return;
+		}
 		TableView.TableViewSelectionModel<Transaction> selectionModel = expensesTableView.getSelectionModel();
 		ObservableList selectedCells = selectionModel.getSelectedCells();
 		TablePosition tablePosition = (TablePosition) selectedCells.get(0);
 
-		int row = tablePosition.getRow();
-		expenseTitle.setText(transactionList.get(row).getTitle());
-		for (int i = 0; i< expensePeriod.getItems().size(); ++i) {
-			if (expensePeriod.getItems().get(i).equals(transactionList.get(row).getPeriod())) {
-				expensePeriod.setValue(transactionList.get(row).getPeriod());
-				break;
-			}
+		int row = sheet.filteredList.getSourceIndex(tablePosition.getRow());
+		final Transaction edited = sheet.transactionList.get(row);
+		expenseTitle.setText(edited.getTitle());
+		final Period period = Period.ofCode(edited.getPeriodCode());
+		if (period != null) {
+			expensePeriod.setValue(period);
 		}
 
-		for (int i = 0; i< expenseCategory.getItems().size(); ++i) {
-			if (expenseCategory.getItems().get(i).equals(transactionList.get(row).getCategory())) {
-				expenseCategory.setValue(transactionList.get(row).getCategory());
-				break;
-			}
+		if (sheet.categories.contains(edited.getCategory())) {
+			expenseCategory.setValue(edited.getCategory());
 		}
 
-		expenseValue.setText(transactionList.get(row).getValue());
-		transactionList.remove(row);
+		expenseValue.setText(edited.getValue());
+		expenseCurrency.setText(edited.getCurrency());
+		expenseStart.setValue(dateOf(edited.getStartDay()));
+		expenseEnd.setValue(dateOf(edited.getEndDay()));
+		final Transaction removed = sheet.history.remove(row);
+		if (sheet.journal != null) sheet.journal.recordDelete(removed);
+		sheet.hasPendingChanges = true;
 	}
 
 	@FXML
 	public void onDeleteButton() {
 		deleteSelectedRow();
-		hasPendingChanges = true;
+		sheet.hasPendingChanges = true;
 	}
 
+	/**
+	 * Opens a new sheet in its own tab, the open sheets stay as they are.
+	 */
 	@FXML
 	public void onNewSheetButton() {
-		transactionList.clear();
-		path = getInitialDocumentPath();
-		hasPendingChanges = false;
+		openSheet();
 	}
 
 	@FXML
@@ -288,33 +597,176 @@ public class Calculator extends Application {
 	}
 
 	/**
-	 * Builds the "Category"-cobobox
+	 * Builds the "Category"-cobobox. The categories of the rows are added and removed by the {@link CategoryIndex} of
+	 * each sheet, the combobox shows the items of the shown sheet.
 	 */
 	public void setupCategoryComboBox() {
-		expenseCategory.getItems().addAll(currentResourceBundle.getString("combobox.none"), currentResourceBundle.getString("combobox.add_a_category"));
-        for (int i = 0; i< transactionList.size(); ++i) {
-        	if (expenseCategory.getItems().contains(transactionList.get(i).getCategory()) == false) {
-        		expenseCategory.getItems().add(transactionList.get(i).getCategory());
-        	}
-        }
-        expenseCategory.getSelectionModel().selectFirst();
-        expenseCategory.setOnAction(new CategoryListener());
+		expenseCategory.getItems().setAll(fixedCategoryItems);
+		expenseCategory.getSelectionModel().selectFirst();
+		expenseCategory.setOnAction(new CategoryListener());
+	}
+
+	/**
+	 * The tabs of the open sheets, starting with a new sheet. Closing a tab asks for its unsaved changes like closing
+	 * the window, and closing the last one opens a new sheet.
+	 */
+	private void setupSheetTabs() {
+		sheetTabs.getSelectionModel().selectedItemProperty().addListener((observable, oldTab, newTab) -> {
+			if (newTab != null && sheets.containsKey(newTab)) {
+				showSheet(sheets.get(newTab));
+			}
+		});
+		openSheet();
+	}
+
+	/**
+	 * Opens a new, empty sheet in its own tab and shows it.
+	 */
+	private Sheet openSheet() {
+		final Sheet opened = new Sheet(getInitialDocumentPath(), fixedCategoryItems);
+		opened.transactionList.addListener(new ListListener(opened));
+		final Tab tab = new Tab(opened.getName());
+		tab.setOnCloseRequest(event -> {
+			if (opened.hasPendingChanges) {
+				sheetTabs.getSelectionModel().select(tab);
+				ExitDialog exitDialog = new ExitDialog(this);
+				exitDialog.showAndWait();
+			}
+			//Like the window, the tab closes as soon as its save is done.
+			if (isRunning(opened.runningSave)) {
+				event.consume();
+				whenDone(opened.runningSave, () -> {
+					if (sheets.containsKey(tab)) {
+						sheetTabs.getTabs().remove(tab);
+						closeSheet(tab);
+					}
+				});
+			}
+		});
+		tab.setOnClosed(event -> closeSheet(tab));
+		sheets.put(tab, opened);
+		sheetTabs.getTabs().add(tab);
+		sheetTabs.getSelectionModel().select(tab);
+		return opened;
+	}
+
+	private void closeSheet(Tab tab) {
+		final Sheet closed = sheets.remove(tab);
+		try {
+			closed.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (sheets.isEmpty()) {
+			openSheet();
+		}
+	}
+
+	/**
+	 * Shows the sheet in the table. Its rows are still sorted and its totals and categories are up to date, so only
+	 * the sort order and search of the table are put back, and what changed while it was in the background is
+	 * recalculated.
+	 */
+	private void showSheet(Sheet shown) {
+		if (shown == sheet) {
+			return;
+		}
+		switchingSheet = true;
+		try {
+			if (sheet != null) {
+				sheet.sortOrder.clear();
+				sheet.sortTypes.clear();
+				for (TableColumn<Transaction, ?> column : expensesTableView.getSortOrder()) {
+					sheet.sortOrder.add(column);
+					sheet.sortTypes.add(column.getSortType());
+				}
+			}
+			sheet = shown;
+			expensesTableView.setItems(shown.pagedRows != null ? shown.pagedRows : shown.filteredList);
+			for (int i = 0; i < shown.sortOrder.size(); ++i) {
+				shown.sortOrder.get(i).setSortType(shown.sortTypes.get(i));
+			}
+			expensesTableView.getSortOrder().setAll(shown.sortOrder);
+			searchField.setText(shown.query);
+			expenseCategory.setItems(shown.categoryItems);
+			expenseCategory.getSelectionModel().selectFirst();
+			sourceColumn.setVisible(shown.merged);
+		} finally {
+			switchingSheet = false;
+		}
+		for (RecomputeScheduler.Derived derived : shown.outdated) {
+			recompute.invalidate(derived);
+		}
+		shown.outdated.clear();
+		recompute.invalidate(RecomputeScheduler.Derived.TOTALS);
+		if (projectionWindow != null) {
+			projectionWindow.setProjection(shown.projection);
+		}
+		errorMessage.clear();
+	}
+
+	private void updateTabName(Sheet named) {
+		for (Map.Entry<Tab, Sheet> open : sheets.entrySet()) {
+			if (open.getValue() == named) {
+				open.getKey().setText(named.getName());
+			}
+		}
+	}
+
+	/**
+	 * Marks the derived state of the sheet as outdated. A sheet in the background recalculates it when it's shown.
+	 */
+	private void invalidate(Sheet changed, RecomputeScheduler.Derived derived) {
+		if (changed == sheet) {
+			recompute.invalidate(derived);
+		} else {
+			changed.outdated.add(derived);
+		}
 	}
 
 	/**
-	 * Builds the "Period"-cobobox
+	 * The sheet a file is loaded into: the shown one if it's still blank, otherwise a new one.
+	 */
+	private Sheet sheetForLoad() {
+		return sheet.isBlank() ? sheet : openSheet();
+	}
+
+	/**
+	 * Builds the "Period"-cobobox. It holds the periods themselves and only shows them in the current language.
 	 */
 	public void setupPeriodComboBox() {
-		expensePeriod.getItems().addAll(
-			currentResourceBundle.getString("combobox.year"),
-			currentResourceBundle.getString("combobox.six_months"),
-			currentResourceBundle.getString("combobox.quarter"),
-			currentResourceBundle.getString("combobox.month"),
-			currentResourceBundle.getString("combobox.week"),
-			currentResourceBundle.getString("combobox.day"));
+		expensePeriod.setConverter(new StringConverter<Period>() {
+			@Override
+			public String toString(Period period) {
+				return period != null ? periodLabel(period.getName()) : "";
+			}
+
+			@Override
+			public Period fromString(String label) {
+				for (Period period : Period.values()) {
+					if (periodLabel(period.getName()).equals(label)) {
+						return period;
+					}
+				}
+				return null;
+			}
+		});
+		expensePeriod.getItems().addAll(Period.values());
 		expensePeriod.getSelectionModel().selectFirst();
 	}
 
+	private static LocalDate dateOf(int day) {
+		return day != Transaction.NO_DAY ? LocalDate.ofEpochDay(day) : null;
+	}
+
+	/**
+	 * The label of a period in the current language. An unknown period is shown as it is.
+	 */
+	private String periodLabel(String name) {
+		final Period period = Period.of(name);
+		return period != null ? currentResourceBundle.getString(period.getLabelKey()) : name;
+	}
+
 	/**
 	 * Builds the Eventlisteners.
 	 */
@@ -328,51 +780,57 @@ public class Calculator extends Application {
 			stage.setX(event.getScreenX() - xOffset - 9);
 			stage.setY(event.getScreenY() - yOffset - 37);
 		});
-
-		transactionList.addListener(new ListListener());
 	}
 
 	/**
 	 * Adds an "Transaction" to the list.
 	 */
 	public void addExpense() {
-		//Checks if the "Category"-combobox already has the String from the "Category-Textfield". If not, it will be added to the combobox.
-		if (addCategoryTextField.getText() != null && !addCategoryTextField.getText().isEmpty()) {
-			if (!expenseCategory.getItems().contains(addCategoryTextField.getText())) {
-				expenseCategory.getItems().add(addCategoryTextField.getText());
-			}
+		if (isReadOnly()) {
+			return;
 		}
-		
-		//Everything is ok, if the value of the "Value"-Field could be parsed to a double. The "Category"-Combobox is will be set to the newest entry.
+		//Everything is ok, if the value of the "Value"-Field could be parsed to cents. The "Category"-Combobox is will be set to the newest entry.
 		//The filled fields will be resetted.
-		double expValue = 0d;
+		long expValue = 0;
 		try {
-			expValue = Double.parseDouble(expenseValue.getText());
+			expValue = Money.parseCents(expenseValue.getText());
 			if (!isIncome.isSelected()) {
-				expValue -= expValue * 2;
+				expValue = Math.negateExact(expValue);
 			}
 		} catch (Exception e) {
 			errorMessage.showErrorMessage("No valid value!");
 			return;
 		}
+		final LocalDate start = expenseStart.getValue();
+		final LocalDate end = expenseEnd.getValue();
+		if (start != null && end != null && end.isBefore(start)) {
+			errorMessage.showErrorMessage("The end is before the start!");
+			return;
+		}
 		
 		//Check the fields and create a new "Transaction".
 		Transaction exp = null;
 
 		if (!expenseTitle.getText().isEmpty() && !expenseValue.getText().isEmpty()) {
+			//A new category from the "Category-Textfield" gets into the combobox together with its first row.
 			if (addCategoryTextField.getText() != null && !addCategoryTextField.getText().isEmpty()) {
-				exp = new Transaction(expenseTitle.getText(), String.valueOf(expValue), expensePeriod.getValue(), addCategoryTextField.getText());
+				exp = new Transaction(expenseTitle.getText(), expValue, expensePeriod.getValue(), addCategoryTextField.getText());
 
 			} else if (expenseCategory.getValue().equals(currentResourceBundle.getString("combobox.add_a_category"))) {
 				expenseCategory.getSelectionModel().selectFirst();
-				exp = new Transaction(expenseTitle.getText(), String.valueOf(expValue), expensePeriod.getValue(), expenseCategory.getValue());
+				exp = new Transaction(expenseTitle.getText(), expValue, expensePeriod.getValue(), expenseCategory.getValue());
 
 			} else {
-				exp = new Transaction(expenseTitle.getText(), String.valueOf(expValue), expensePeriod.getValue(), expenseCategory.getValue());
+				exp = new Transaction(expenseTitle.getText(), expValue, expensePeriod.getValue(), expenseCategory.getValue());
 
 			}
-			transactionList.add(exp);
-			hasPendingChanges = true;
+			exp.setCurrency(expenseCurrency.getText());
+			exp.setStartDay(start != null ? (int) start.toEpochDay() : Transaction.NO_DAY);
+			exp.setEndDay(end != null ? (int) end.toEpochDay() : Transaction.NO_DAY);
+			//The list is sorted already, so the new row is only put where it belongs.
+			sheet.history.add(TableSorter.insertionIndex(sheet.transactionList, exp, getSortKeys()), exp);
+			if (sheet.journal != null) sheet.journal.recordAdd(exp);
+			sheet.hasPendingChanges = true;
 		} else {
 			errorMessage.showErrorMessage("Some fields aren't filled correctly!");
 		}
@@ -384,49 +842,50 @@ public class Calculator extends Application {
 		expenseCategory.getSelectionModel().selectLast();
 		expensePeriod.getSelectionModel().selectFirst();
 		expenseValue.setText("");
+		expenseCurrency.setText("");
+		expenseStart.setValue(null);
+		expenseEnd.setValue(null);
 		expenseTitle.requestFocus();
 
-		expensesTableView.sort();
-
-		hasPendingChanges = true;
+		sheet.hasPendingChanges = true;
 	}
 
 	/**
 	 * Deletes the selected row in the list.
 	 */
 	boolean deleteSelectedRow() {
+		if (isReadOnly()) {
+			return false;
+		}
 		try {
 		    TableView.TableViewSelectionModel<Transaction> selectionModel = expensesTableView.getSelectionModel();
 		    ObservableList selectedCells = selectionModel.getSelectedCells();
 		    TablePosition tablePosition = (TablePosition) selectedCells.get(0);
-		    int row = tablePosition.getRow();
-		    transactionList.remove(row);
+		    int row = sheet.filteredList.getSourceIndex(tablePosition.getRow());
+		    final Transaction removed = sheet.history.remove(row);
+			if (sheet.journal != null) sheet.journal.recordDelete(removed);
 			return true;
 		} catch(Exception e) {}
 	    return false;
 	}
 
 	/**
-	 * Everything will be calculated to a year and from there back to the other values.
+	 * Everything is calculated to a year (see {@link TotalsAggregator}) and from there back to the other values. A large
+	 * sheet brings its totals along (see {@link PagedTransactionList}). While searching, only the rows found are summed up.
 	 */
 	public void calculateValues() {
-		Double sum = new Double(0);
-		for (Transaction e : transactionList) {
-			if (e.getPeriod().equals("Year")) {
-				sum += Double.parseDouble(e.getValue());
-			} else if (e.getPeriod().equals("6 Months")) {
-				sum += Double.parseDouble(e.getValue()) * 2;
-			} else if (e.getPeriod().equals("Quarter")) {
-				sum += Double.parseDouble(e.getValue()) * 4;
-			} else if (e.getPeriod().equals("Month")) {
-				sum += Double.parseDouble(e.getValue()) * 12;
-			} else if (e.getPeriod().equals("Week")) {
-				sum += Double.parseDouble(e.getValue()) * 52;
-			} else if (e.getPeriod().equals("Day")) {
-				sum += Double.parseDouble(e.getValue()) * 365;
-			} else {
-				errorMessage.showErrorMessage("Calculating error!");
-			}
+		try (Telemetry.Span span = CALCULATE.start()) {
+			final Totals sheetTotals = sheet.pagedRows != null ? sheet.pagedRows.getTotals()
+					: sheet.filteredList.isFiltering() ? sheet.filteredTotals.getTotals() : sheet.totals.getTotals();
+			span.rows(sheetTotals.getRows());
+			final ExchangeRates rates = currentExchangeRates();
+			showTotals(rates.convert(sheetTotals, Transaction.currencyId(displayCurrency.getValue())));
+		}
+	}
+
+	private void showTotals(Totals sheetTotals) {
+		if (sheetTotals.getInvalidRows() > 0) {
+			errorMessage.showErrorMessage("Calculating error!");
 		}
 
 		DecimalFormat  hourFormat = new DecimalFormat("#.####");
@@ -435,38 +894,519 @@ public class Calculator extends Application {
 		DecimalFormat  monthFormat = new DecimalFormat("#");
 		DecimalFormat  yearFormat = new DecimalFormat("#");
 
-		setStyleClassForNegativeOrPositiveValue(Arrays.asList(expensesPerHourText, expensesPerDayText, expensesPerWeekText, expensesPerMonthText, expensesPerYearText), sum);
+		setStyleClassForNegativeOrPositiveValue(Arrays.asList(expensesPerHourText, expensesPerDayText, expensesPerWeekText, expensesPerMonthText, expensesPerYearText), sheetTotals.perYear());
 
-		expensesPerHourText.setText(hourFormat.format(sum / 8760).toString());
-		expensesPerDayText.setText(dayFormat.format(sum / 365).toString());
-		expensesPerWeekText.setText(weekFormat.format(sum / 52).toString());
-		expensesPerMonthText.setText(monthFormat.format(sum / 12).toString());
-		expensesPerYearText.setText(yearFormat.format(sum).toString());
+		expensesPerHourText.setText(hourFormat.format(sheetTotals.perHour()).toString());
+		expensesPerDayText.setText(dayFormat.format(sheetTotals.perDay()).toString());
+		expensesPerWeekText.setText(weekFormat.format(sheetTotals.perWeek()).toString());
+		expensesPerMonthText.setText(monthFormat.format(sheetTotals.perMonth()).toString());
+		expensesPerYearText.setText(yearFormat.format(sheetTotals.perYear()).toString());
 	}
 
+	/**
+	 * The rates of the rates file, read again if it changed. The currencies of the file can be chosen to show the
+	 * totals in, the base currency is the first.
+	 */
+	private ExchangeRates currentExchangeRates() {
+		ExchangeRates rates;
+		try {
+			rates = rateFile.get();
+		} catch (IOException | IllegalArgumentException e) {
+			e.printStackTrace();
+			errorMessage.showErrorMessage("Exchange rates corrupted!");
+			rates = rateFile.cached();
+		}
+		if (rates != shownRates) {
+			shownRates = rates;
+			final String chosen = displayCurrency.getValue();
+			displayCurrency.getItems().setAll(rates.getCurrencies());
+			displayCurrency.setValue(rates.getCurrencies().contains(chosen) ? chosen : rates.getBase());
+			displayCurrency.setVisible(!rates.getCurrencies().isEmpty());
+		}
+		return rates;
+	}
+
+	/**
+	 * Only labels whose sign changed get new style classes, so the others don't need their CSS applied again.
+	 */
 	private void setStyleClassForNegativeOrPositiveValue(List<Label> labels, Double sum) {
+		final String styleClass = sum < 0 ? "negative-value" : "positive-value";
+		final String otherStyleClass = sum < 0 ? "positive-value" : "negative-value";
 		for (Label label : labels) {
-			label.getStyleClass().remove("positive-value");
-			label.getStyleClass().remove("negative-value");
-			if (sum < 0) {
-				label.getStyleClass().add("negative-value");
-			} else {
-				label.getStyleClass().add("positive-value");
+			if (label.getStyleClass().contains(styleClass) && !label.getStyleClass().contains(otherStyleClass)) {
+				continue;
 			}
+			label.getStyleClass().removeAll(styleClass, otherStyleClass);
+			label.getStyleClass().add(styleClass);
 		}
 	}
 
 	/**
 	 * Loads a file by from the path parameter. If the file isn't conform, an errormessage will be displayed.
+	 * The file is read in the background and the rows are added in batches while it's read. The rows read before an
+	 * error or a cancel stay, but the sheet is detached from the file and unsaved, so saving asks for a new file and
+	 * never overwrites the file with a part of it. The file gets its own tab, unless the shown sheet is still blank; a
+	 * file which is open already is only shown.
 	 */
 	public void loadFile(String path) {
-		final List<Transaction> loadedEntities = fileService.loadFile(path.toString());
-		transactionList.clear();
-		transactionList.addAll(loadedEntities);
-		calculateValues();
-		setupCategoryComboBox();
-		expensesTableView.sort();
-		hasPendingChanges = false;
+		final File file = new File(path).getAbsoluteFile();
+		for (Map.Entry<Tab, Sheet> open : sheets.entrySet()) {
+			if (file.equals(open.getValue().path.getAbsoluteFile())) {
+				sheetTabs.getSelectionModel().select(open.getKey());
+				return;
+			}
+		}
+		final Sheet loaded = sheetForLoad();
+		if (FileService.snapshotRows(path) > PAGED_ROWS_THRESHOLD) {
+			openPaged(loaded, path);
+			return;
+		}
+		loaded.path = file;
+		updateTabName(loaded);
+		final Task<Boolean> load = fileService.loadFileAsync(path, loaded.transactionList::addAll);
+		loaded.runningLoad = load;
+		errorMessage.showProgressMessage(load);
+		whenDone(load, () -> {
+			if (load != loaded.runningLoad) {
+				return;
+			}
+			final boolean complete = load.getState() == Worker.State.SUCCEEDED;
+			if (!complete) {
+				loaded.path = file.getParentFile();
+				updateTabName(loaded);
+			}
+			loaded.hasPendingChanges = !complete && !loaded.transactionList.isEmpty();
+			//The restored changes and the sorting are calculated once, before the history takes the sorted rows.
+			recompute.batch(() -> {
+				if (complete) {
+					replayJournal(loaded, file);
+					openJournal(loaded, file);
+				}
+				if (loaded == sheet) {
+					expenseCategory.getSelectionModel().selectFirst();
+				}
+				invalidate(loaded, RecomputeScheduler.Derived.SORT_ORDER);
+			});
+			loaded.history.reset();
+			if (complete) {
+				watchSheet(loaded, file);
+			}
+		});
+	}
+
+	/**
+	 * Loads several sheets in parallel and shows them together in one tab, with the file each row comes from. If
+	 * "Remove duplicates" is checked, rows with the same content are shown only once. The merged sheet isn't saved
+	 * into any of the files, saving asks for a new one.
+	 */
+	public void loadFiles(List<File> files) {
+		final Sheet merged = sheetForLoad();
+		merged.path = files.get(0).getAbsoluteFile().getParentFile();
+		merged.merged = true;
+		updateTabName(merged);
+		if (merged == sheet) {
+			sourceColumn.setVisible(true);
+		}
+		final Task<SheetMerger.Result> merge = fileService.mergeFilesAsync(files, removeDuplicates.isSelected());
+		merged.runningMerge = merge;
+		errorMessage.showProgressMessage(merge);
+		whenDone(merge, () -> {
+			if (merge != merged.runningMerge || merge.getState() != Worker.State.SUCCEEDED) {
+				return;
+			}
+			final SheetMerger.Result result = merge.getValue();
+			recompute.batch(() -> {
+				//The merge summed up the sheets in parallel already.
+				merged.totals.expectReplacement(result.getTotals());
+				merged.transactionList.addAll(result.getTransactions());
+				merged.totals.expectReplacement(null);
+				merged.hasPendingChanges = false;
+				if (merged == sheet) {
+					expenseCategory.getSelectionModel().selectFirst();
+				}
+				invalidate(merged, RecomputeScheduler.Derived.SORT_ORDER);
+			});
+			merged.history.reset();
+		});
+	}
+
+	/**
+	 * Appends the lines of a bank statement to the sheet, see {@link StatementImport}. The rows arrive in batches
+	 * while the statement is read, and are sorted once at the end. The whole import is one step of the history, and
+	 * the lines which were rejected are listed afterwards.
+	 */
+	public void importStatement(File statement) {
+		if (isReadOnly()) {
+			return;
+		}
+		final Sheet target = sheet;
+		if (isRunning(target.runningImport) || isRunning(target.runningLoad) || isRunning(target.runningMerge) || isRunning(target.runningRecategorize)) {
+			errorMessage.showErrorMessage("Wait until the sheet is loaded!");
+			return;
+		}
+		final Object append = target.history.startAppend();
+		final Task<StatementImport.Report> statementImport = fileService.importStatementAsync(statement.toString(), categoryRules, batch -> {
+			target.transactionList.addAll(batch);
+			if (target.journal != null) batch.forEach(target.journal::recordAdd);
+			target.hasPendingChanges = true;
+		});
+		target.runningImport = statementImport;
+		errorMessage.showProgressMessage(statementImport);
+		whenDone(statementImport, () -> {
+			if (statementImport == target.runningImport) {
+				target.runningImport = null;
+			}
+			target.history.finishAppend(append);
+			invalidate(target, RecomputeScheduler.Derived.SORT_ORDER);
+			if (statementImport.getState() == Worker.State.SUCCEEDED) {
+				showImportReport(statement, statementImport.getValue());
+			}
+		});
+	}
+
+	/**
+	 * Shows how many lines were imported. Rejected lines are listed in a dialog, so they can be entered by hand.
+	 */
+	private void showImportReport(File statement, StatementImport.Report report) {
+		if (report.getRejected() == 0) {
+			errorMessage.showSuccessMessage("Imported " + report.getImported() + " rows!");
+			return;
+		}
+		errorMessage.showErrorMessage("Imported " + report.getImported() + " rows, " + report.getRejected() + " rejected!");
+		final StringBuilder rejections = new StringBuilder();
+		for (StatementImport.Rejection rejection : report.getRejections()) {
+			rejections.append(rejection).append('\n');
+		}
+		if (report.getRejected() > report.getRejections().size()) {
+			rejections.append("... and ").append(report.getRejected() - report.getRejections().size()).append(" more.\n");
+		}
+		final TextArea rejectedLines = new TextArea(rejections.toString());
+		rejectedLines.setEditable(false);
+		rejectedLines.setWrapText(false);
+		final Alert alert = new Alert(Alert.AlertType.WARNING);
+		alert.setTitle("Nubage - Import");
+		alert.setHeaderText(statement.getName() + ": " + report.getRejected() + " of " + report.getLines() + " lines rejected");
+		alert.setContentText("The other " + report.getImported() + " lines were imported.");
+		alert.getDialogPane().setExpandableContent(rejectedLines);
+		alert.getDialogPane().setExpanded(true);
+		alert.show();
+	}
+
+	/**
+	 * The rules file is next to the application, unless "-Dnubage.rules=<file>" names another one.
+	 */
+	private File getCategoryRulesFile() {
+		final String rulesFile = System.getProperty("nubage.rules");
+		return rulesFile != null ? new File(rulesFile) : new File(getInitialDocumentPath(), RULES_FILE_NAME);
+	}
+
+	/**
+	 * The rates file is next to the application, unless "-Dnubage.rates=<file>" names another one.
+	 */
+	private File getExchangeRatesFile() {
+		final String ratesFile = System.getProperty("nubage.rates");
+		return ratesFile != null ? new File(ratesFile) : new File(getInitialDocumentPath(), RATES_FILE_NAME);
+	}
+
+	private void loadCategoryRules() {
+		final File rulesFile = getCategoryRulesFile();
+		if (!rulesFile.isFile()) {
+			return;
+		}
+		try {
+			categoryRules = CategoryRules.compile(CategoryRules.read(rulesFile.toPath()));
+		} catch (IOException | IllegalArgumentException e) {
+			e.printStackTrace();
+			errorMessage.showErrorMessage("Category rules corrupted!");
+		}
+	}
+
+	/**
+	 * Saves the rules and categorizes the rows of the sheet again with them.
+	 */
+	private void applyCategoryRules(List<CategoryRules.Rule> rules) {
+		categoryRules = categoryRules.update(rules);
+		try {
+			CategoryRules.write(getCategoryRulesFile().toPath(), rules);
+		} catch (IOException e) {
+			e.printStackTrace();
+			errorMessage.showErrorMessage("Rules not saved!");
+		}
+		recategorize();
+	}
+
+	/**
+	 * Gives every row the category of its first matching rule. The rows are matched in parallel, and the rows which
+	 * get another category are replaced by copies at once, so the table, the totals and the category combobox are
+	 * updated once. It's one step of the history.
+	 */
+	private void recategorize() {
+		final Sheet target = sheet;
+		if (target.pagedRows != null || categoryRules.isEmpty() || target.transactionList.isEmpty()) {
+			return;
+		}
+		if (isRunning(target.runningImport) || isRunning(target.runningLoad) || isRunning(target.runningMerge)) {
+			errorMessage.showErrorMessage("Wait until the sheet is loaded!");
+			return;
+		}
+		if (target.runningRecategorize != null) {
+			target.runningRecategorize.cancel();
+		}
+		final CategoryRules rules = categoryRules;
+		final List<Transaction> rows = new ArrayList<>(target.transactionList);
+		final long expectedModificationCount = target.modificationCount;
+		final Task<Transaction[]> recategorization = new Task<Transaction[]>() {
+			@Override
+			protected Transaction[] call() {
+				updateMessage("Categorizing...");
+				return rules.recategorize(rows, ForkJoinPool.commonPool());
+			}
+		};
+		target.runningRecategorize = recategorization;
+		errorMessage.showProgressMessage(recategorization);
+		whenDone(recategorization, () -> {
+			if (recategorization != target.runningRecategorize || recategorization.getState() != Worker.State.SUCCEEDED) {
+				return;
+			}
+			target.runningRecategorize = null;
+			if (target.modificationCount != expectedModificationCount) {
+				errorMessage.showErrorMessage("Sheet changed meanwhile, not categorized!");
+				return;
+			}
+			applyCategories(target, rows, recategorization.getValue());
+		});
+		ForkJoinPool.commonPool().execute(recategorization);
+	}
+
+	private void applyCategories(Sheet target, List<Transaction> rows, Transaction[] changed) {
+		final List<Transaction> categorized = new ArrayList<>(rows.size());
+		int changedRows = 0;
+		for (int i = 0; i < rows.size(); ++i) {
+			if (changed[i] != null) {
+				if (target.journal != null) {
+					target.journal.recordDelete(rows.get(i));
+					target.journal.recordAdd(changed[i]);
+				}
+				categorized.add(changed[i]);
+				changedRows++;
+			} else {
+				categorized.add(rows.get(i));
+			}
+		}
+		if (changedRows == 0) {
+			errorMessage.showSuccessMessage("All rows are categorized already!");
+			return;
+		}
+		final String selectedCategory = expenseCategory.getValue();
+		recompute.batch(() -> {
+			target.history.replaceAll(categorized);
+			invalidate(target, RecomputeScheduler.Derived.SORT_ORDER);
+		});
+		if (expenseCategory.getItems().contains(selectedCategory)) {
+			expenseCategory.setValue(selectedCategory);
+		} else {
+			expenseCategory.getSelectionModel().selectFirst();
+		}
+		target.hasPendingChanges = true;
+		errorMessage.showSuccessMessage(changedRows + " rows categorized!");
+	}
+
+	/**
+	 * Reloads the sheet when another program changes it, see {@link SheetWatcher}. Null stops watching.
+	 */
+	private void watchSheet(Sheet watched, File file) {
+		watched.watch(file, changed -> reloadChangedSheet(watched, changed));
+	}
+
+	/**
+	 * Applies the changes another program made to the open sheet. Only the rows which differ are removed and added
+	 * (see {@link SheetDiff}), so the selection, the scroll position, the search and the sort order stay. Unsaved
+	 * changes are never overwritten, saving then overwrites the other program's changes instead.
+	 */
+	private void reloadChangedSheet(Sheet changed, File file) {
+		if (changed.pagedRows != null || isRunning(changed.runningLoad) || isRunning(changed.runningSave)) {
+			return;
+		}
+		if (changed.hasPendingChanges) {
+			errorMessage.showErrorMessage(changed.getName() + " changed by another program, not reloaded!");
+			return;
+		}
+		final long expectedModificationCount = changed.modificationCount;
+		final Task<SheetDiff> reload = fileService.diffFileAsync(file.toString(), changed.transactionList);
+		changed.runningReload = reload;
+		whenDone(reload, () -> {
+			if (reload != changed.runningReload || reload.getState() != Worker.State.SUCCEEDED) {
+				return;
+			}
+			changed.runningReload = null;
+			if (changed.modificationCount != expectedModificationCount || changed.hasPendingChanges) {
+				errorMessage.showErrorMessage(changed.getName() + " changed by another program, not reloaded!");
+				return;
+			}
+			applySheetDiff(changed, reload.getValue());
+		});
+	}
+
+	/**
+	 * The rows another program added are put where they belong, in the sort order of the sheet's table.
+	 */
+	private void applySheetDiff(Sheet changed, SheetDiff diff) {
+		if (diff.isEmpty()) {
+			return;
+		}
+		recompute.batch(() -> {
+			if (!diff.getRemoved().isEmpty()) {
+				final Set<Transaction> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+				removed.addAll(diff.getRemoved());
+				changed.transactionList.removeAll(removed);
+			}
+			if (diff.getAdded().size() <= MAX_INSERTED_ROWS) {
+				final List<TableSorter.SortKey> sortKeys = getSortKeys(changed);
+				for (Transaction transaction : diff.getAdded()) {
+					changed.transactionList.add(TableSorter.insertionIndex(changed.transactionList, transaction, sortKeys), transaction);
+				}
+			} else {
+				changed.transactionList.addAll(diff.getAdded());
+				invalidate(changed, RecomputeScheduler.Derived.SORT_ORDER);
+			}
+		});
+		//The sheet on disk is the saved state now.
+		changed.history.reset();
+		changed.hasPendingChanges = false;
+		errorMessage.showSuccessMessage("Reloaded " + changed.getName() + ": " + diff.getAdded().size() + " rows added, " + diff.getRemoved().size() + " removed.");
+	}
+
+	private static boolean isRunning(Task<?> task) {
+		return task != null && !task.isDone();
+	}
+
+	/**
+	 * Shows a large snapshot without loading it: the table gets a {@link PagedTransactionList}, which reads the rows
+	 * it shows from the file. Such a sheet is read-only.
+	 */
+	private void openPaged(Sheet paged, String path) {
+		paged.path = new File(path).getAbsoluteFile();
+		updateTabName(paged);
+		final Task<PagedTransactionList> open = fileService.openPagedAsync(path, PAGE_CACHE_BUDGET);
+		paged.runningPagedOpen = open;
+		errorMessage.showProgressMessage(open);
+		whenDone(open, () -> {
+			if (open.getState() != Worker.State.SUCCEEDED) {
+				return;
+			}
+			if (open != paged.runningPagedOpen) {
+				try {
+					open.getValue().close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				return;
+			}
+			paged.pagedRows = open.getValue();
+			paged.sortOrder.clear();
+			paged.sortTypes.clear();
+			if (paged == sheet) {
+				expensesTableView.getSortOrder().clear();
+				expensesTableView.setItems(paged.pagedRows);
+			}
+			invalidate(paged, RecomputeScheduler.Derived.TOTALS);
+			errorMessage.showSuccessMessage("Large sheet opened read-only!");
+		});
+	}
+
+	private boolean isReadOnly() {
+		if (sheet.pagedRows != null) {
+			errorMessage.showErrorMessage("Large sheets are read-only!");
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Applies the changes of the sheet's journal, which were never saved because the application crashed.
+	 */
+	private void replayJournal(Sheet replayed, File file) {
+		final List<ChangeJournal.Entry> entries;
+		try {
+			entries = ChangeJournal.read(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		if (entries.isEmpty()) {
+			return;
+		}
+
+		//A deleted transaction is any row with the same content, so the rows are looked up by their content.
+		final Map<ContentKey, Deque<Transaction>> rowsByContent = new HashMap<>();
+		for (Transaction transaction : replayed.transactionList) {
+			rowsByContent.computeIfAbsent(new ContentKey(transaction), key -> new ArrayDeque<>()).add(transaction);
+		}
+		final List<Transaction> added = new ArrayList<>();
+		final Set<Transaction> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (ChangeJournal.Entry entry : entries) {
+			final Transaction transaction = entry.getTransaction();
+			final Deque<Transaction> rows = rowsByContent.computeIfAbsent(new ContentKey(transaction), key -> new ArrayDeque<>());
+			if (entry.isAdded()) {
+				added.add(transaction);
+				rows.add(transaction);
+			} else if (!rows.isEmpty()) {
+				final Transaction row = rows.removeLast();
+				if (!added.remove(row)) {
+					removed.add(row);
+				}
+			}
+		}
+		replayed.transactionList.removeAll(removed);
+		replayed.transactionList.addAll(added);
+		replayed.hasPendingChanges = true;
+		errorMessage.showSuccessMessage("Restored " + entries.size() + " unsaved changes!");
+	}
+
+	private void openJournal(Sheet journaled, File file) {
+		try {
+			journaled.journal = ChangeJournal.open(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			journaled.journal = null;
+		}
+	}
+
+	/**
+	 * Throws the unsaved changes of the shown sheet's journal away, they will not be restored.
+	 */
+	public void discardJournal() {
+		discardJournal(sheet);
+	}
+
+	private void discardJournal(Sheet discarded) {
+		if (discarded.journal != null) {
+			discarded.journal.discard();
+			discarded.journal = null;
+		}
+	}
+
+	@Override
+	public void stop() throws IOException {
+		Telemetry.dumpIfRequested();
+		for (Sheet open : sheets.values()) {
+			open.close();
+		}
+	}
+
+	/**
+	 * Runs the action on the JavaFX thread, as soon as the worker succeeded, failed or got cancelled.
+	 */
+	private static void whenDone(Worker<?> worker, Runnable action) {
+		worker.stateProperty().addListener((observable, oldState, newState) -> {
+			if (newState == Worker.State.SUCCEEDED || newState == Worker.State.FAILED || newState == Worker.State.CANCELLED) {
+				action.run();
+			}
+		});
+	}
+
+	private static boolean isSheetFile(File file) {
+		return SheetFiles.isSheet(file.toPath());
 	}
 
 	private File getInitialDocumentPath() {
@@ -490,29 +1430,117 @@ public class Calculator extends Application {
 	}
 
 	/**
-	 * Press ENTER to add a value instead of pressing the Add-Button.
+	 * Reverts the last added, deleted or edited row. The journal gets the reverted change like any other.
+	 */
+	private void undo() {
+		if (!isReadOnly()) {
+			applyHistoryEdit(sheet.history.undo());
+		}
+	}
+
+	/**
+	 * Applies the last undone change again.
+	 */
+	private void redo() {
+		if (!isReadOnly()) {
+			applyHistoryEdit(sheet.history.redo());
+		}
+	}
+
+	private void applyHistoryEdit(UndoHistory.Edit edit) {
+		if (edit == null) {
+			return;
+		}
+		if (sheet.journal != null) {
+			edit.getRemoved().forEach(sheet.journal::recordDelete);
+			edit.getAdded().forEach(sheet.journal::recordAdd);
+		}
+		if (edit.isReplaced()) {
+			recompute.invalidate(RecomputeScheduler.Derived.SORT_ORDER);
+		}
+		sheet.hasPendingChanges = !sheet.history.isSaved();
+	}
+
+	/**
+	 * Opens the diagnostics window, or brings it to the front if it's already open.
+	 */
+	private void showDiagnostics() {
+		if (diagnostics == null) {
+			diagnostics = new DiagnosticsWindow(sheet.path);
+		}
+		diagnostics.show();
+		diagnostics.toFront();
+	}
+
+	/**
+	 * Press ENTER to add a value instead of pressing the Add-Button. ESCAPE cancels a running load or save, F12 shows
+	 * the diagnostics. CTRL+Z and CTRL+Y (or CTRL+SHIFT+Z) undo and redo changes of the table, unless a text field
+	 * has the focus, which has its own undo. In the search field, ESCAPE clears the search.
 	 */
 	public class KeyHandler implements EventHandler<KeyEvent> {
 
+		private final KeyCombination undo = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN);
+		private final KeyCombination redo = new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN);
+		private final KeyCombination redoShifted = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN);
+
 		@Override
 		public void handle(KeyEvent event) {
+			if (event.getTarget() == searchField) {
+				if (event.getCode() == KeyCode.ESCAPE) {
+					searchField.clear();
+				}
+				return;
+			}
+			if (!(event.getTarget() instanceof TextInputControl)) {
+				if (undo.match(event)) {
+					undo();
+					return;
+				} else if (redo.match(event) || redoShifted.match(event)) {
+					redo();
+					return;
+				}
+			}
 			if (event.getCode() == KeyCode.ENTER) {
 				addExpense();
 			} else if (event.getCode() == KeyCode.DELETE) {
 				deleteSelectedRow();
+			} else if (event.getCode() == KeyCode.ESCAPE) {
+				fileService.cancel();
+			} else if (event.getCode() == KeyCode.F12) {
+				showDiagnostics();
 			}
 		}
 	}
 
 	/**
-	 * If the list changes its values (loading, adding, deleting, editing,... Expenses), the table refreshes.
+	 * If the list changes its values (loading, adding, deleting, editing,... Expenses), the totals and the projection
+	 * are calculated again with the next pulse (see {@link RecomputeScheduler}), or when the sheet is shown again.
+	 * Sorting doesn't change them.
 	 */
 	public class ListListener implements ListChangeListener<Transaction> {
 
+		private final Sheet owner;
+
+		public ListListener(Sheet owner) {
+			this.owner = owner;
+		}
+
 		@Override
 		public void onChanged(Change<? extends Transaction> arg0) {
-			calculateValues();
-			errorMessage.clear();
+			boolean changed = false;
+			while (arg0.next()) {
+				if (!arg0.wasPermutated()) {
+					owner.modificationCount++;
+					changed = true;
+				}
+			}
+			if (changed) {
+				invalidate(owner, RecomputeScheduler.Derived.TOTALS);
+				invalidate(owner, RecomputeScheduler.Derived.PROJECTION);
+			}
+			if (owner == sheet) {
+				errorMessage.clear();
+			}
 		}
 	}
 	
@@ -533,7 +1561,7 @@ public class Calculator extends Application {
     }
 	
 	/**
-	 * Load files which were dragged into the window.
+	 * Load files which were dragged into the window. A single bank statement is imported into the open sheet.
 	 */
 	public class FileDragHandler implements EventHandler<DragEvent> {
 
@@ -543,13 +1571,15 @@ public class Calculator extends Application {
             boolean success = false;
             if (db.hasFiles()) {
             	success = true;
-                String filePath = null;
-                for (File file:db.getFiles()) {
-                    filePath = file.getAbsolutePath();
+                if (db.getFiles().size() == 1 && StatementImport.isStatement(db.getFiles().get(0).toPath())) {
+                    importStatement(db.getFiles().get(0));
+                } else {
+                    if (db.getFiles().size() == 1) {
+                        loadFile(db.getFiles().get(0).getAbsolutePath());
+                    } else {
+                        loadFiles(db.getFiles());
+                    }
                 }
-                loadFile(filePath);
-
-				hasPendingChanges = false;
 			}
 			event.setDropCompleted(success);
             event.consume();
@@ -0,0 +1,77 @@
+package controller;
+
+import core.CashFlowTimeline;
+import javafx.collections.ListChangeListener;
+import model.Transaction;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Keeps the {@link CashFlowTimeline} of a transaction list up to date while the projection is shown. Like the
+ * {@link TotalsAggregator}, a change of a few rows only adds and removes these rows. A change of many rows (loading
+ * a file, an import) only marks the timeline as outdated, it's rebuilt once when it's asked for. Without a timeline,
+ * changes cost nothing.
+ */
+public class CashFlowProjection implements ListChangeListener<Transaction> {
+
+    /**
+     * Changes of more rows rebuild the timeline.
+     */
+    private static final int MAX_INCREMENTAL_ROWS = 64;
+
+    private final List<Transaction> transactions;
+    private CashFlowTimeline timeline;
+    private boolean outdated = false;
+
+    public CashFlowProjection(List<Transaction> transactions) {
+        this.transactions = transactions;
+    }
+
+    @Override
+    public void onChanged(Change<? extends Transaction> change) {
+        if (timeline == null || outdated) {
+            return;
+        }
+        while (change.next()) {
+            if (change.wasPermutated() || change.wasUpdated()) {
+                continue;
+            }
+            if (change.getRemovedSize() + change.getAddedSize() > MAX_INCREMENTAL_ROWS) {
+                outdated = true;
+                return;
+            }
+            for (Transaction removed : change.getRemoved()) {
+                timeline.remove(removed);
+            }
+            for (Transaction added : change.getAddedSubList()) {
+                timeline.add(added);
+            }
+        }
+    }
+
+    /**
+     * The timeline from today on for the years. It's calculated again, if the first day or the years changed.
+     */
+    public CashFlowTimeline timeline(int years, long openingCents) {
+        final LocalDate today = LocalDate.now();
+        if (timeline == null || !timeline.getFirstDate().equals(today) || !timeline.getFirstDate().plusYears(years).minusDays(1).equals(timeline.getLastDate())) {
+            timeline = new CashFlowTimeline(today, years);
+            outdated = true;
+        }
+        if (outdated) {
+            timeline.rebuild(transactions);
+            outdated = false;
+        }
+        timeline.setOpeningCents(openingCents);
+        return timeline;
+    }
+
+    /**
+     * Drops the timeline when the projection is closed, so changes of the rows cost nothing anymore.
+     */
+    public void release() {
+        timeline = null;
+        outdated = false;
+    }
+}
@@ -0,0 +1,177 @@
+package controller;
+
+import core.Totals;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the categories of a transaction list up to date. Every category is counted by its dictionary id (see
+ * {@link Transaction#getCategoryId()}), so adding or deleting a row costs O(1) instead of a scan over the list or the
+ * combobox. A category is added to the combobox items when its first row arrives and removed with its last row.
+ * The number of rows and the yearly sum are kept per category as well.
+ */
+public class CategoryIndex implements ListChangeListener<Transaction> {
+
+    private final List<String> items;
+    private final Set<String> fixedItems;
+
+    //Indexed by category id, grown on demand.
+    private int[] rows = new int[16];
+    private int[] invalidRows = new int[16];
+    private long[] yearlyCents = new long[16];
+    private int totalRows = 0;
+
+    /**
+     * @param items the list of the combobox, which gets a category as long as any row uses it.
+     * @param fixedItems entries of the combobox which aren't categories, they are never added or removed.
+     */
+    public CategoryIndex(List<String> items, Collection<String> fixedItems) {
+        this.items = items;
+        this.fixedItems = new HashSet<>(fixedItems);
+    }
+
+    @Override
+    public void onChanged(Change<? extends Transaction> change) {
+        while (change.next()) {
+            if (change.wasPermutated() || change.wasUpdated()) {
+                continue;
+            }
+            if (change.getRemovedSize() == totalRows && change.getAddedSize() == change.getList().size()) {
+                rebuild(change.getList());
+                continue;
+            }
+            for (Transaction removed : change.getRemoved()) {
+                remove(removed);
+            }
+            for (Transaction added : change.getAddedSubList()) {
+                add(added);
+            }
+        }
+    }
+
+    /**
+     * Recounts all rows of the list. The combobox items are replaced at once, so the combobox is updated only once,
+     * e.g. after all rows got new categories.
+     */
+    public void rebuild(List<? extends Transaction> transactions) {
+        Arrays.fill(rows, 0);
+        Arrays.fill(invalidRows, 0);
+        Arrays.fill(yearlyCents, 0);
+        totalRows = 0;
+        final List<String> nextItems = new ArrayList<>();
+        for (String item : items) {
+            if (fixedItems.contains(item)) {
+                nextItems.add(item);
+            }
+        }
+        for (Transaction transaction : transactions) {
+            if (count(transaction)) {
+                final String category = Transaction.categoryForId(transaction.getCategoryId());
+                if (!fixedItems.contains(category)) {
+                    nextItems.add(category);
+                }
+            }
+        }
+        if (items instanceof ObservableList) {
+            ((ObservableList<String>) items).setAll(nextItems);
+        } else {
+            items.clear();
+            items.addAll(nextItems);
+        }
+    }
+
+    /**
+     * Returns true, if any row uses the category.
+     */
+    public boolean contains(String category) {
+        return rowsOf(Transaction.categoryIdOf(category)) > 0;
+    }
+
+    public int getRows(String category) {
+        return rowsOf(Transaction.categoryIdOf(category));
+    }
+
+    /**
+     * The sum of all rows of the category.
+     */
+    public Totals getTotals(String category) {
+        final int id = Transaction.categoryIdOf(category);
+        return id >= 0 && id < rows.length ? new Totals(yearlyCents[id], rows[id], invalidRows[id]) : Totals.EMPTY;
+    }
+
+    private int rowsOf(int id) {
+        return id >= 0 && id < rows.length ? rows[id] : 0;
+    }
+
+    private void add(Transaction transaction) {
+        if (count(transaction)) {
+            addItem(transaction.getCategoryId());
+        }
+    }
+
+    /**
+     * Counts the row, returns true if it's the first one of its category.
+     */
+    private boolean count(Transaction transaction) {
+        totalRows++;
+        final int id = transaction.getCategoryId();
+        if (id < 0) {
+            return false;
+        }
+        ensureCapacity(id);
+        final boolean first = rows[id]++ == 0;
+        if (transaction.hasKnownPeriod()) {
+            yearlyCents[id] += transaction.getYearlyCents();
+        } else {
+            invalidRows[id]++;
+        }
+        return first;
+    }
+
+    private void remove(Transaction transaction) {
+        totalRows--;
+        final int id = transaction.getCategoryId();
+        if (id < 0 || id >= rows.length || rows[id] == 0) {
+            return;
+        }
+        if (--rows[id] == 0) {
+            removeItem(id);
+        }
+        if (transaction.hasKnownPeriod()) {
+            yearlyCents[id] -= transaction.getYearlyCents();
+        } else {
+            invalidRows[id]--;
+        }
+    }
+
+    private void addItem(int id) {
+        final String category = Transaction.categoryForId(id);
+        if (!fixedItems.contains(category)) {
+            items.add(category);
+        }
+    }
+
+    private void removeItem(int id) {
+        final String category = Transaction.categoryForId(id);
+        if (!fixedItems.contains(category)) {
+            items.remove(category);
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if (id >= rows.length) {
+            final int length = Math.max(rows.length * 2, id + 1);
+            rows = Arrays.copyOf(rows, length);
+            invalidRows = Arrays.copyOf(invalidRows, length);
+            yearlyCents = Arrays.copyOf(yearlyCents, length);
+        }
+    }
+}
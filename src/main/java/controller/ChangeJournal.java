@@ -0,0 +1,683 @@
+package controller;
+
+import model.Transaction;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal next to a sheet ("budget.json.journal"), which records every added and deleted transaction
+ * until the changes are saved into the sheet itself. Records are written on a background thread and synced to disk
+ * in batches. If the application crashes, the journal is replayed the next time the sheet is opened.
+ *
+ * Each record is its length, the payload (operation and the fields of the transaction) and a CRC32 of the payload.
+ * A record which was only partly written when the application crashed is ignored. Strings are their UTF-8 length and
+ * bytes, so they aren't limited to the 64 KB of {@link DataOutputStream#writeUTF(String)}. Journals of older versions
+ * are rewritten in the current version when they are opened.
+ *
+ * Positions count the record bytes ever written to the journal, the header holds how many of them were dropped by
+ * {@link #compact(long)}. A save writes a checkpoint record before the new sheet replaces the old one: the position
+ * up to which the changes are in the new sheet, and its size and CRC32. If the application crashes after the sheet
+ * was replaced but before the journal was compacted, the changes in the sheet already are recognized by the
+ * checkpoint and not replayed twice. Compacting rewrites the journal into a new file which then replaces it, so a
+ * crash never leaves half of a compacted journal.
+ */
+public final class ChangeJournal implements Closeable {
+
+    public static final String EXTENSION = ".journal";
+
+    private static final int MAGIC = 0x4E55424A;
+    private static final short VERSION = 3;
+    private static final int HEADER_SIZE = 14;
+
+    /**
+     * The header of version 1 had no dropped bytes, its journals are still read.
+     */
+    private static final int VERSION_1_HEADER_SIZE = 6;
+
+    /**
+     * Versions before 3 wrote the strings with {@link DataOutputStream#writeUTF(String)} and only the cents of the
+     * value.
+     */
+    private static final short VERSION_3 = 3;
+    private static final byte ADD = 1;
+    private static final byte DELETE = 2;
+    private static final byte CHECKPOINT = 3;
+
+    /**
+     * Records which arrive within this time are written and synced together.
+     */
+    private static final long SYNC_DELAY_MILLIS = 50;
+
+    private final File sheet;
+    private final Path file;
+
+    //Only replaced on the writer thread, when the journal is compacted.
+    private FileChannel channel;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "nubage-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //Guarded by this: records which aren't written yet.
+    private final List<byte[]> pendingRecords = new ArrayList<>();
+    private boolean writeScheduled = false;
+
+    /**
+     * Number of record bytes ever recorded. It's only growing, compacting doesn't reset it.
+     */
+    private long recordedBytes = 0;
+
+    //Only accessed on the writer thread, after opening.
+    private long droppedBytes = 0;
+
+    /**
+     * A change read from the journal.
+     */
+    public static final class Entry {
+
+        private final boolean added;
+        private final Transaction transaction;
+
+        private Entry(boolean added, Transaction transaction) {
+            this.added = added;
+            this.transaction = transaction;
+        }
+
+        /**
+         * True, if the transaction was added. False, if it was deleted.
+         */
+        public boolean isAdded() {
+            return added;
+        }
+
+        public Transaction getTransaction() {
+            return transaction;
+        }
+    }
+
+    private ChangeJournal(File sheet, Path file, FileChannel channel) {
+        this.sheet = sheet;
+        this.file = file;
+        this.channel = channel;
+    }
+
+    public static File journalFileOf(File sheet) {
+        return new File(sheet.getPath() + EXTENSION);
+    }
+
+    /**
+     * Opens the journal of the sheet for appending. Records which are in the journal already are kept, a partly
+     * written record at its end is cut off. A journal of an older version is rewritten in the current one first.
+     */
+    public static ChangeJournal open(File sheet) throws IOException {
+        final Path file = journalFileOf(sheet).toPath();
+        Scan scan = Files.exists(file) ? scan(file) : null;
+        if (scan != null && scan.version != VERSION) {
+            scan = upgrade(file, scan);
+        }
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final ChangeJournal journal = new ChangeJournal(sheet, file, channel);
+        try {
+            if (scan == null) {
+                channel.truncate(0);
+                channel.write(header(0), 0);
+                channel.force(true);
+                channel.position(HEADER_SIZE);
+            } else {
+                channel.truncate(scan.validLength);
+                channel.position(scan.validLength);
+                journal.droppedBytes = scan.droppedBytes;
+                journal.recordedBytes = scan.droppedBytes + scan.validLength - HEADER_SIZE;
+            }
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * Reads the changes in the journal of the sheet which aren't in the sheet yet. Returns an empty list, if there is
+     * no journal. If the journal has a checkpoint of the sheet as it is now, the changes before the checkpoint are in
+     * the sheet already and left out.
+     */
+    public static List<Entry> read(File sheet) throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        final Path file = journalFileOf(sheet).toPath();
+        if (!Files.exists(file)) {
+            return entries;
+        }
+        //The position of each entry, to find the ones before a checkpoint.
+        final List<Long> positions = new ArrayList<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            final Scan header = readHeader(input);
+            if (header == null) {
+                return entries;
+            }
+            long position = header.droppedBytes;
+            long remaining = Files.size(file) - header.headerSize;
+            Checkpoint current = null;
+            byte[] payload;
+            while ((payload = readRecord(input, remaining)) != null) {
+                final long start = position;
+                position += payload.length + 8;
+                remaining -= payload.length + 8;
+                if (payload[0] == CHECKPOINT) {
+                    final Checkpoint checkpoint = Checkpoint.decode(payload);
+                    if (current == null) {
+                        current = Checkpoint.of(sheet.toPath(), 0);
+                    }
+                    if (checkpoint.sheetSize == current.sheetSize && checkpoint.sheetCrc == current.sheetCrc) {
+                        int saved = 0;
+                        while (saved < positions.size() && positions.get(saved) < checkpoint.savedPosition) {
+                            saved++;
+                        }
+                        entries.subList(0, saved).clear();
+                        positions.subList(0, saved).clear();
+                    }
+                    continue;
+                }
+                entries.add(decode(payload, header.version));
+                positions.add(start);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Deletes the journal of the sheet.
+     */
+    public static void delete(File sheet) throws IOException {
+        Files.deleteIfExists(journalFileOf(sheet).toPath());
+    }
+
+    /**
+     * The sheet this journal belongs to.
+     */
+    public File getSheet() {
+        return sheet;
+    }
+
+    public void recordAdd(Transaction transaction) {
+        record(ADD, transaction);
+    }
+
+    public void recordDelete(Transaction transaction) {
+        record(DELETE, transaction);
+    }
+
+    /**
+     * Position behind the last recorded change. Changes up to this position can be dropped by
+     * {@link #compact(long)}, once they are saved in the sheet.
+     */
+    public synchronized long position() {
+        return recordedBytes;
+    }
+
+    /**
+     * Records that the changes up to the given {@link #position()} are in the file, which is about to replace the
+     * sheet, and blocks until the checkpoint is on disk. Called after the file is written and before it replaces the
+     * sheet, so a crash in between doesn't replay the changes which are in the sheet already.
+     */
+    public void checkpoint(long savedPosition, Path savedFile) throws IOException {
+        final Checkpoint checkpoint = Checkpoint.of(savedFile, savedPosition);
+        final byte[] record = frame(checkpoint.encode());
+        synchronized (this) {
+            pendingRecords.add(record);
+            recordedBytes += record.length;
+        }
+        flush();
+    }
+
+    /**
+     * Blocks until all recorded changes are written and synced to disk. This only costs as much as the changes
+     * since the last sync, not the size of the sheet.
+     *
+     * @throws IOException also if the journal is closed already.
+     */
+    public void flush() throws IOException {
+        try {
+            writer.submit(() -> {
+                writePending();
+                return null;
+            }).get();
+        } catch (RejectedExecutionException e) {
+            throw new IOException("The journal is closed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while syncing the journal", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Couldn't sync the journal", e.getCause());
+        }
+    }
+
+    /**
+     * Drops the changes up to the given {@link #position()} in the background, because they are saved in the sheet.
+     * Changes recorded after the position stay in the journal. The rest is written to a new file, which replaces the
+     * journal with an atomic rename.
+     */
+    public void compact(long upToPosition) {
+        writer.execute(() -> {
+            try {
+                writePending();
+                final long cut = upToPosition - droppedBytes;
+                if (cut <= 0 || !channel.isOpen()) {
+                    return;
+                }
+                final long tailStart = HEADER_SIZE + cut;
+                final ByteBuffer tail = ByteBuffer.allocate((int) (channel.size() - tailStart));
+                while (tail.hasRemaining() && channel.read(tail, tailStart + tail.position()) >= 0) {
+                    //Read the changes which aren't saved yet.
+                }
+                tail.flip();
+                //A checkpoint right at the start only marks changes which are dropped now, it goes as well.
+                long dropped = upToPosition;
+                while (tail.remaining() > 4 && tail.get(tail.position() + 4) == CHECKPOINT) {
+                    final int length = tail.getInt(tail.position()) + 8;
+                    tail.position(tail.position() + length);
+                    dropped += length;
+                }
+                final Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+                try (FileChannel output = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    final ByteBuffer header = header(dropped);
+                    while (header.hasRemaining()) {
+                        output.write(header);
+                    }
+                    while (tail.hasRemaining()) {
+                        output.write(tail);
+                    }
+                    output.force(true);
+                }
+                //The journal can't be replaced while it's open on every platform.
+                channel.close();
+                try {
+                    try {
+                        Files.move(compacted, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    droppedBytes = dropped;
+                } finally {
+                    channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    channel.position(channel.size());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Closes the journal and deletes it, so its changes are never replayed.
+     */
+    public void discard() {
+        try {
+            close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the remaining changes and closes the journal. An empty journal is deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+            writePending();
+            final boolean empty = channel.size() <= HEADER_SIZE;
+            channel.close();
+            if (empty) {
+                Files.deleteIfExists(file);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            channel.close();
+        }
+    }
+
+    private void record(byte operation, Transaction transaction) {
+        final byte[] record = encode(operation, transaction);
+        synchronized (this) {
+            pendingRecords.add(record);
+            recordedBytes += record.length;
+            if (!writeScheduled && !writer.isShutdown()) {
+                writeScheduled = true;
+                writer.schedule(() -> {
+                    try {
+                        writePending();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }, SYNC_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void writePending() throws IOException {
+        final List<byte[]> records;
+        synchronized (this) {
+            records = new ArrayList<>(pendingRecords);
+            pendingRecords.clear();
+            writeScheduled = false;
+        }
+        if (records.isEmpty() || !channel.isOpen()) {
+            return;
+        }
+        int length = 0;
+        for (byte[] record : records) {
+            length += record.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] record : records) {
+            buffer.put(record);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    private static byte[] encode(byte operation, Transaction transaction) {
+        final byte[] content;
+        try {
+            final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(64);
+            final DataOutputStream payload = new DataOutputStream(payloadBytes);
+            payload.writeByte(operation);
+            writeNullableString(payload, transaction.getTitle());
+            writeNullableString(payload, transaction.getCategory());
+            writeNullableString(payload, transaction.getPeriod());
+            payload.writeLong(transaction.getAmountCents());
+            payload.writeInt(transaction.getStartDay());
+            payload.writeInt(transaction.getEndDay());
+            writeNullableString(payload, transaction.getCurrency());
+            writeNullableString(payload, transaction.getInexactValue());
+            content = payloadBytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory failed", e);
+        }
+        return frame(content);
+    }
+
+    /**
+     * The record of a payload: its length, the payload and its CRC32.
+     */
+    private static byte[] frame(byte[] content) {
+        try {
+            final CRC32 crc = new CRC32();
+            crc.update(content);
+            final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(content.length + 8);
+            final DataOutputStream record = new DataOutputStream(recordBytes);
+            record.writeInt(content.length);
+            record.write(content);
+            record.writeInt((int) crc.getValue());
+            return recordBytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory failed", e);
+        }
+    }
+
+    private static Entry decode(byte[] content, short version) throws IOException {
+        final DataInputStream payload = new DataInputStream(new ByteArrayInputStream(content));
+        final byte operation = payload.readByte();
+        final Transaction transaction = new Transaction();
+        transaction.setTitle(readNullableString(payload, version));
+        transaction.setCategory(readNullableString(payload, version));
+        transaction.setPeriod(readNullableString(payload, version));
+        transaction.setAmountCents(payload.readLong());
+        //Records of older versions end after the amount or the days.
+        if (payload.available() >= 8) {
+            transaction.setStartDay(payload.readInt());
+            transaction.setEndDay(payload.readInt());
+        }
+        if (payload.available() > 0) {
+            transaction.setCurrency(readNullableString(payload, version));
+        }
+        if (payload.available() > 0) {
+            final String inexactValue = readNullableString(payload, version);
+            if (inexactValue != null) {
+                transaction.setValue(inexactValue);
+            }
+        }
+        if (operation != ADD && operation != DELETE) {
+            throw new IOException("Unknown journal operation " + operation);
+        }
+        return new Entry(operation == ADD, transaction);
+    }
+
+    private static ByteBuffer header(long droppedBytes) {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putLong(droppedBytes).flip();
+        return header;
+    }
+
+    /**
+     * Reads the header, returns null if it isn't the header of a journal. The valid length isn't known yet.
+     */
+    private static Scan readHeader(DataInputStream input) throws IOException {
+        try {
+            if (input.readInt() != MAGIC) {
+                return null;
+            }
+            final short version = input.readShort();
+            if (version == 1) {
+                return new Scan(version, VERSION_1_HEADER_SIZE, 0, VERSION_1_HEADER_SIZE);
+            }
+            return version > 1 && version <= VERSION ? new Scan(version, HEADER_SIZE, input.readLong(), HEADER_SIZE) : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the payload of the next record, of which the given number of bytes are left in the file. Returns null at
+     * the end of the journal or at a partly written record.
+     */
+    private static byte[] readRecord(DataInputStream input, long remaining) throws IOException {
+        try {
+            final int length = input.readInt();
+            if (length <= 0 || length > remaining - 8) {
+                return null;
+            }
+            final byte[] content = new byte[length];
+            input.readFully(content);
+            final int expectedCrc = input.readInt();
+            final CRC32 crc = new CRC32();
+            crc.update(content);
+            return (int) crc.getValue() == expectedCrc ? content : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the header and finds the end of the last complete record. Returns null, if the file isn't a journal.
+     */
+    private static Scan scan(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream input = new DataInputStream(new BufferedInputStream(stream))) {
+            final Scan header = readHeader(input);
+            if (header == null) {
+                return null;
+            }
+            final long size = Files.size(file);
+            long length = header.headerSize;
+            byte[] payload;
+            while ((payload = readRecord(input, size - length)) != null) {
+                length += payload.length + 8;
+            }
+            return new Scan(header.version, header.headerSize, header.droppedBytes, length);
+        }
+    }
+
+    /**
+     * Rewrites the valid part of a journal of an older version in the current one, which replaces it with an atomic
+     * rename. The changes are re-encoded, so they get other positions, and the positions of the checkpoints move with
+     * them.
+     */
+    private static Scan upgrade(Path file, Scan scan) throws IOException {
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        //The new position of each record boundary, to move the checkpoints.
+        final Map<Long, Long> positions = new HashMap<>();
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream input = new DataInputStream(new BufferedInputStream(stream))) {
+            readHeader(input);
+            long position = scan.droppedBytes;
+            long remaining = scan.validLength - scan.headerSize;
+            positions.put(position, position);
+            byte[] payload;
+            while ((payload = readRecord(input, remaining)) != null) {
+                position += payload.length + 8;
+                remaining -= payload.length + 8;
+                final byte[] record;
+                if (payload[0] == CHECKPOINT) {
+                    final Checkpoint checkpoint = Checkpoint.decode(payload);
+                    final long saved = positions.getOrDefault(checkpoint.savedPosition, checkpoint.savedPosition);
+                    record = frame(new Checkpoint(saved, checkpoint.sheetSize, checkpoint.sheetCrc).encode());
+                } else {
+                    final Entry entry = decode(payload, scan.version);
+                    record = encode(entry.isAdded() ? ADD : DELETE, entry.getTransaction());
+                }
+                records.write(record);
+                positions.put(position, scan.droppedBytes + records.size());
+            }
+        }
+        final Path upgraded = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel output = FileChannel.open(upgraded, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer content = ByteBuffer.allocate(HEADER_SIZE + records.size());
+            content.put(header(scan.droppedBytes)).put(records.toByteArray()).flip();
+            while (content.hasRemaining()) {
+                output.write(content);
+            }
+            output.force(true);
+        }
+        try {
+            Files.move(upgraded, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(upgraded, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return new Scan(VERSION, HEADER_SIZE, scan.droppedBytes, HEADER_SIZE + records.size());
+    }
+
+    /**
+     * What the header of a journal says and how long its valid part is.
+     */
+    private static final class Scan {
+
+        final short version;
+        final int headerSize;
+        final long droppedBytes;
+        final long validLength;
+
+        Scan(short version, int headerSize, long droppedBytes, long validLength) {
+            this.version = version;
+            this.headerSize = headerSize;
+            this.droppedBytes = droppedBytes;
+            this.validLength = validLength;
+        }
+    }
+
+    /**
+     * The changes up to a position are in the sheet with the given size and CRC32.
+     */
+    private static final class Checkpoint {
+
+        final long savedPosition;
+        final long sheetSize;
+        final int sheetCrc;
+
+        Checkpoint(long savedPosition, long sheetSize, int sheetCrc) {
+            this.savedPosition = savedPosition;
+            this.sheetSize = sheetSize;
+            this.sheetCrc = sheetCrc;
+        }
+
+        /**
+         * The checkpoint of a sheet as it is on disk. A sheet which doesn't exist has size -1.
+         */
+        static Checkpoint of(Path sheet, long savedPosition) throws IOException {
+            if (!Files.exists(sheet)) {
+                return new Checkpoint(savedPosition, -1, 0);
+            }
+            final CRC32 crc = new CRC32();
+            long size = 0;
+            try (InputStream input = Files.newInputStream(sheet)) {
+                final byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = input.read(buffer)) >= 0) {
+                    crc.update(buffer, 0, read);
+                    size += read;
+                }
+            }
+            return new Checkpoint(savedPosition, size, (int) crc.getValue());
+        }
+
+        static Checkpoint decode(byte[] content) throws IOException {
+            final DataInputStream payload = new DataInputStream(new ByteArrayInputStream(content));
+            payload.readByte();
+            return new Checkpoint(payload.readLong(), payload.readLong(), payload.readInt());
+        }
+
+        byte[] encode() {
+            return ByteBuffer.allocate(21).put(CHECKPOINT).putLong(savedPosition).putLong(sheetSize).putInt(sheetCrc).array();
+        }
+    }
+
+    /**
+     * A string as its length in UTF-8 bytes and the bytes, null as length -1.
+     */
+    private static void writeNullableString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readNullableString(DataInputStream input, short version) throws IOException {
+        if (version < VERSION_3) {
+            return input.readBoolean() ? input.readUTF() : null;
+        }
+        final int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,102 @@
+package controller;
+
+import core.Telemetry;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextArea;
+import javafx.scene.image.Image;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import javafx.stage.FileChooser.ExtensionFilter;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Shows the numbers of {@link Telemetry} while the application runs (opened with F12). They are refreshed every
+ * second and can be written to a JSON file.
+ */
+public class DiagnosticsWindow extends Stage {
+
+	private static final Duration REFRESH_INTERVAL = Duration.seconds(1);
+
+	private final File initialDirectory;
+	private final Timeline refresh = new Timeline(new KeyFrame(REFRESH_INTERVAL, event -> refresh()));
+
+	@FXML
+	private Label memoryLabel;
+	@FXML
+	private TextArea reportArea;
+
+	/**
+	 * @param initialDirectory where the dump file chooser starts, may be a file or null.
+	 */
+	public DiagnosticsWindow(File initialDirectory) {
+		this.initialDirectory = initialDirectory != null && !initialDirectory.isDirectory()
+				? initialDirectory.getParentFile() : initialDirectory;
+		final FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("/view/DiagnosticsView.fxml"));
+		fxmlLoader.setController(this);
+		VBox vBox = null;
+		try {
+			vBox = fxmlLoader.load();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		final Scene diagnosticsScene = new Scene(vBox, 1000, 400);
+		diagnosticsScene.getStylesheets().add(Calculator.class.getResource("/stylesheet.css").toExternalForm());
+		this.setTitle("Nubage - Diagnostics");
+		this.getIcons().add(new Image(getClass().getResourceAsStream("/nubage_favicon.png")));
+		this.setScene(diagnosticsScene);
+
+		refresh.setCycleCount(Animation.INDEFINITE);
+		this.setOnShown(event -> {
+			refresh();
+			refresh.play();
+		});
+		this.setOnHidden(event -> refresh.stop());
+	}
+
+	private void refresh() {
+		final Runtime runtime = Runtime.getRuntime();
+		final long usedMegabytes = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+		memoryLabel.setText("Heap: " + usedMegabytes + " MB used of " + runtime.maxMemory() / (1024 * 1024) + " MB");
+		final double scrollTop = reportArea.getScrollTop();
+		reportArea.setText(Telemetry.report());
+		reportArea.setScrollTop(scrollTop);
+	}
+
+	@FXML
+	private void onReset() {
+		Telemetry.reset();
+		refresh();
+	}
+
+	@FXML
+	private void onDump() {
+		final FileChooser fileChooser = new FileChooser();
+		fileChooser.setTitle("Dump diagnostics");
+		if (initialDirectory != null && initialDirectory.isDirectory()) {
+			fileChooser.setInitialDirectory(initialDirectory);
+		}
+		fileChooser.setInitialFileName("nubage-diagnostics.json");
+		fileChooser.getExtensionFilters().add(new ExtensionFilter("JSON (*.json)", "*.json"));
+		final File target = fileChooser.showSaveDialog(this);
+		if (target == null) {
+			return;
+		}
+		try {
+			Telemetry.dump(target.toPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			memoryLabel.setText("Couldn't write " + target);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package controller;
 
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
@@ -51,14 +53,31 @@ public class ExitDialog extends Stage {
 		this.setScene(exitDialogScene);
 	}
 
+	/**
+	 * Closes the dialog as soon as the sheet is saved. If saving fails, the dialog stays open.
+	 */
 	@FXML
 	private void onSaveAndClose() {
-		this.expCalc.onSaveButton();
-		this.close();
+		final Task<Boolean> save = this.expCalc.save();
+		if (save == null) {
+			this.close();
+			return;
+		}
+		saveAndCloseButton.setDisable(true);
+		discardAndCloseButton.setDisable(true);
+		save.stateProperty().addListener((observable, oldState, newState) -> {
+			if (newState == Worker.State.SUCCEEDED) {
+				this.close();
+			} else if (newState == Worker.State.FAILED || newState == Worker.State.CANCELLED) {
+				saveAndCloseButton.setDisable(false);
+				discardAndCloseButton.setDisable(false);
+			}
+		});
 	}
 
 	@FXML
 	private void onDiscardAndClose() {
+		this.expCalc.discardJournal();
 		this.close();
 	}
 }
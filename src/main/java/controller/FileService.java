@@ -1,32 +1,94 @@
 package controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import javafx.collections.ObservableList;
+import core.CategoryRules;
+import core.SheetFiles;
+import core.SheetFiles.ProgressListener;
+import core.SheetDiff;
+import core.SheetMerger;
+import core.SnapshotFile;
+import core.StatementImport;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import model.Transaction;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+/**
+ * Loads and saves sheets for the user interface: the work is done by {@link SheetFiles}, this class runs it in the
+ * background and reports the outcome in the {@link MessageToast}.
+ */
 public class FileService {
 
+    /**
+     * Number of transactions which are handed over to the list at once while loading.
+     */
+    static final int LOAD_BATCH_SIZE = SheetFiles.LOAD_BATCH_SIZE;
+
+    /**
+     * Number of loaded batches which may wait for the JavaFX thread, before the loading thread pauses.
+     */
+    private static final int MAX_BATCHES_IN_FLIGHT = 4;
+
     private final MessageToast errorMessage;
 
+    /**
+     * All file operations run one after another on this thread, so a load never sees a half written save.
+     */
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "nubage-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Task<?>> runningTasks = new ArrayList<>();
+
     public FileService(MessageToast errorMessage) {
         this.errorMessage = errorMessage;
     }
 
-    public boolean writeListToJson(File path, ObservableList<Transaction> transactionList) {
-        try (OutputStreamWriter outputFile = new OutputStreamWriter(new FileOutputStream(path), Charset.forName("UTF8"))){
-            final ObjectMapper mapper = new ObjectMapper();
-            final String jsonToSave = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(transactionList);
-            outputFile.write(jsonToSave);
+    public boolean writeListToJson(File path, List<Transaction> transactionList) {
+        return writeListToJson(path, transactionList, false);
+    }
+
+    /**
+     * Writes the list as JSON array. The transactions are streamed one by one to the file, so there's no
+     * intermediate String of the whole document.
+     *
+     * @param compact if true, the JSON is written without line breaks and indentation.
+     */
+    public boolean writeListToJson(File path, List<Transaction> transactionList, boolean compact) {
+        try {
+            SheetFiles.writeAtomically(path, target -> SheetFiles.writeJson(target, transactionList, compact, SheetFiles.NO_PROGRESS));
+
+            errorMessage.showSuccessMessage("Saved! :)");
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (path != null) {
+                errorMessage.showErrorMessage("Random Error!");
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Writes the list as binary snapshot, see {@link SnapshotFile}.
+     */
+    public boolean writeListToSnapshot(File path, List<Transaction> transactionList) {
+        try {
+            SheetFiles.writeAtomically(path, target -> SnapshotFile.write(target, transactionList));
 
             errorMessage.showSuccessMessage("Saved! :)");
             return true;
@@ -39,6 +101,45 @@ public class FileService {
         }
     }
 
+    /**
+     * Saves the list on the I/O thread. The format is chosen by the file extension. The list is copied first, so
+     * it can be changed while the save is running. The file is replaced only once the whole sheet is written.
+     *
+     * @param journal         the journal of the sheet, or null. It gets a checkpoint of the written file before the
+     *                        file replaces the sheet, see {@link ChangeJournal#checkpoint(long, java.nio.file.Path)}.
+     * @param journalPosition the position of the journal up to which the changes are in the list.
+     */
+    public Task<Boolean> saveFileAsync(File path, List<Transaction> transactionList, ChangeJournal journal, long journalPosition) {
+        final List<Transaction> transactions = new ArrayList<>(transactionList);
+        final Task<Boolean> task = new FileTask<Boolean>() {
+            @Override
+            protected Boolean call() throws Exception {
+                updateMessage("Saving...");
+                SheetFiles.writeAtomically(path, target -> {
+                    if (path.toString().endsWith(SnapshotFile.EXTENSION)) {
+                        SnapshotFile.write(target, transactions);
+                    } else {
+                        SheetFiles.writeJson(target, transactions, false, progressListener("Saving"));
+                    }
+                    if (isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    if (journal != null) {
+                        journal.checkpoint(journalPosition, target);
+                    }
+                });
+                return true;
+            }
+        };
+        task.setOnSucceeded(event -> errorMessage.showSuccessMessage("Saved! :)"));
+        task.setOnCancelled(event -> errorMessage.showErrorMessage("Saving cancelled!"));
+        task.setOnFailed(event -> {
+            task.getException().printStackTrace();
+            errorMessage.showErrorMessage("Random Error!");
+        });
+        return submit(task);
+    }
+
 //    public boolean readListFromJson(File path) {
 //        try {
 //            FileChooser fileChooser = new FileChooser();
@@ -57,30 +158,247 @@ public class FileService {
 //    }
 
     /**
-     * Loads a file by from the path parameter. If the file isn't conform, an errormessage will be displayed.
+     * Converts a sheet between the JSON and the snapshot format. The format is chosen by the file extensions.
      */
-    public List<Transaction> loadFile(String path) {
+    public boolean convertFile(File source, File target) {
+        final List<Transaction> transactions = new ArrayList<>();
+        if (!loadFile(source.toString(), transactions::addAll)) {
+            return false;
+        }
+        return target.toString().endsWith(SnapshotFile.EXTENSION)
+                ? writeListToSnapshot(target, transactions)
+                : writeListToJson(target, transactions);
+    }
+
+    /**
+     * Loads a JSON or snapshot file by from the path parameter. If the file isn't conform, an errormessage will be
+     * displayed. The file is parsed as a stream and the transactions are passed to the consumer in batches of
+     * {@link #LOAD_BATCH_SIZE}, so the whole file never has to be in memory at once.
+     *
+     * @return true, if the whole file could be loaded.
+     */
+    public boolean loadFile(String path, Consumer<List<Transaction>> batchConsumer) {
         try {
-            if (path.endsWith(".json")) {
-                List<String> loadedJsonAsList = Files.readAllLines(Paths.get(path));
+            SheetFiles.read(Paths.get(path), batchConsumer, SheetFiles.NO_PROGRESS);
+            errorMessage.clear();
+            return true;
+        } catch (Exception e) {
+            showLoadError(path);
+        }
+        return false;
+    }
 
-                final String loadedJsonFile = loadedJsonAsList.stream().collect(Collectors.joining());
+    /**
+     * Loads a file on the I/O thread. The batches are passed to the consumer on the JavaFX thread while the file is
+     * read, so the first rows are shown before the whole file is loaded. After cancelling, no more batches arrive.
+     */
+    public Task<Boolean> loadFileAsync(String path, Consumer<List<Transaction>> batchConsumer) {
+        final Semaphore batchesInFlight = new Semaphore(MAX_BATCHES_IN_FLIGHT);
+        final Task<Boolean> task = new FileTask<Boolean>() {
+            @Override
+            protected Boolean call() throws Exception {
+                updateMessage("Loading...");
+                SheetFiles.read(Paths.get(path), batch -> {
+                    awaitBatchSlot(batchesInFlight);
+                    Platform.runLater(() -> {
+                        try {
+                            if (!isCancelled()) {
+                                batchConsumer.accept(batch);
+                            }
+                        } finally {
+                            batchesInFlight.release();
+                        }
+                    });
+                }, progressListener("Loading"));
+                return true;
+            }
+        };
+        task.setOnSucceeded(event -> errorMessage.clear());
+        task.setOnCancelled(event -> errorMessage.showErrorMessage("Loading cancelled!"));
+        task.setOnFailed(event -> showLoadError(path));
+        return submit(task);
+    }
+
+    /**
+     * Imports a bank statement on the I/O thread, see {@link StatementImport}. Like {@link #loadFileAsync}, the
+     * batches are passed to the consumer on the JavaFX thread while the statement is read, and at most
+     * {@link #MAX_BATCHES_IN_FLIGHT} of them wait. The caller shows the report, an empty statement isn't an error.
+     */
+    public Task<StatementImport.Report> importStatementAsync(String path, CategoryRules rules, Consumer<List<Transaction>> batchConsumer) {
+        final Semaphore batchesInFlight = new Semaphore(MAX_BATCHES_IN_FLIGHT);
+        final Task<StatementImport.Report> task = new FileTask<StatementImport.Report>() {
+            @Override
+            protected StatementImport.Report call() throws Exception {
+                updateMessage("Importing...");
+                return StatementImport.read(Paths.get(path), rules, batch -> {
+                    awaitBatchSlot(batchesInFlight);
+                    Platform.runLater(() -> {
+                        try {
+                            if (!isCancelled()) {
+                                batchConsumer.accept(batch);
+                            }
+                        } finally {
+                            batchesInFlight.release();
+                        }
+                    });
+                }, progressListener("Importing"));
+            }
+        };
+        task.setOnCancelled(event -> errorMessage.showErrorMessage("Import cancelled!"));
+        task.setOnFailed(event -> {
+            task.getException().printStackTrace();
+            errorMessage.showErrorMessage("Invalid statement!");
+        });
+        return submit(task);
+    }
 
-                ObjectMapper mapper = new ObjectMapper();
+    /**
+     * Reads a sheet which was changed by another program on the I/O thread and compares it with the rows, see
+     * {@link SheetDiff}. The rows are copied first, so the list can be changed meanwhile. Nothing is shown while it
+     * runs, a file which can't be read (e.g. because it's still being written) is skipped silently.
+     */
+    public Task<SheetDiff> diffFileAsync(String path, List<Transaction> transactionList) {
+        final List<Transaction> current = new ArrayList<>(transactionList);
+        final Task<SheetDiff> task = new Task<SheetDiff>() {
+            @Override
+            protected SheetDiff call() throws Exception {
+                final List<Transaction> updated = new ArrayList<>();
+                SheetFiles.read(Paths.get(path), updated::addAll, SheetFiles.NO_PROGRESS);
+                return SheetDiff.between(current, updated);
+            }
+        };
+        return submit(task);
+    }
+
+    /**
+     * Number of rows of a snapshot file, without reading them. Returns -1 if it isn't a readable snapshot.
+     */
+    public static int snapshotRows(String path) {
+        if (!path.endsWith(SnapshotFile.EXTENSION)) {
+            return -1;
+        }
+        try (SnapshotFile snapshot = SnapshotFile.open(Paths.get(path))) {
+            return snapshot.size();
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Opens a snapshot file as {@link PagedTransactionList} on the I/O thread, where its totals are calculated.
+     */
+    public Task<PagedTransactionList> openPagedAsync(String path, long memoryBudgetBytes) {
+        final Task<PagedTransactionList> task = new Task<PagedTransactionList>() {
+            @Override
+            protected PagedTransactionList call() throws Exception {
+                updateMessage("Opening...");
+                final SnapshotFile snapshot = SnapshotFile.open(Paths.get(path));
+                try {
+                    final PagedTransactionList rows = new PagedTransactionList(snapshot, memoryBudgetBytes);
+                    if (isCancelled()) {
+                        rows.close();
+                    }
+                    return rows;
+                } catch (RuntimeException e) {
+                    snapshot.close();
+                    throw e;
+                }
+            }
+        };
+        task.setOnSucceeded(event -> errorMessage.clear());
+        task.setOnFailed(event -> showLoadError(path));
+        return submit(task);
+    }
 
-                List<Transaction> loadedEntities = Arrays.asList(mapper.readValue(loadedJsonFile, Transaction[].class));
-                errorMessage.clear();
-                return loadedEntities;
+    /**
+     * Loads several sheets in parallel on the common fork-join pool and merges them, see {@link SheetMerger}.
+     */
+    public Task<SheetMerger.Result> mergeFilesAsync(List<File> files, boolean removeDuplicates) {
+        final List<Path> paths = new ArrayList<>(files.size());
+        for (File file : files) {
+            paths.add(file.toPath());
+        }
+        final Task<SheetMerger.Result> task = new Task<SheetMerger.Result>() {
+            @Override
+            protected SheetMerger.Result call() throws Exception {
+                updateMessage("Merging " + paths.size() + " sheets...");
+                return new SheetMerger(ForkJoinPool.commonPool()).merge(paths, removeDuplicates);
+            }
+        };
+        task.setOnSucceeded(event -> {
+            final SheetMerger.Result result = task.getValue();
+            if (!result.getFailedSheets().isEmpty()) {
+                errorMessage.showErrorMessage(result.getFailedSheets().size() + " sheets corrupted!");
+            } else if (result.getDuplicates() > 0) {
+                errorMessage.showSuccessMessage("Merged! " + result.getDuplicates() + " duplicates removed.");
             } else {
-                errorMessage.showErrorMessage("Invalid File!");
+                errorMessage.showSuccessMessage("Merged!");
             }
-        } catch (Exception e) {
-            if (path.endsWith(".json"))
-                errorMessage.showErrorMessage("JSON file corrupted!");
-            else if (path != null)
-                errorMessage.showErrorMessage("Invalid File!");
+        });
+        task.setOnCancelled(event -> errorMessage.showErrorMessage("Loading cancelled!"));
+        task.setOnFailed(event -> {
+            task.getException().printStackTrace();
+            errorMessage.showErrorMessage("Random Error!");
+        });
+        return submit(task);
+    }
+
+    /**
+     * Cancels all running loads and saves.
+     */
+    public void cancel() {
+        for (Task<?> task : new ArrayList<>(runningTasks)) {
+            task.cancel();
         }
-        return null;
     }
 
+    private <T> Task<T> submit(Task<T> task) {
+        runningTasks.add(task);
+        task.stateProperty().addListener((observable, oldState, newState) -> {
+            if (task.isDone()) {
+                runningTasks.remove(task);
+            }
+        });
+        ioExecutor.execute(task);
+        return task;
+    }
+
+    private void showLoadError(String path) {
+        if (path.endsWith(SheetFiles.JSON_EXTENSION))
+            errorMessage.showErrorMessage("JSON file corrupted!");
+        else if (path.endsWith(SnapshotFile.EXTENSION))
+            errorMessage.showErrorMessage("Snapshot file corrupted!");
+        else if (path != null)
+            errorMessage.showErrorMessage("Invalid File!");
+    }
+
+    /**
+     * A load, save or import which reports its progress as message, so it can be shown in the {@link MessageToast}.
+     */
+    private abstract static class FileTask<V> extends Task<V> {
+
+        ProgressListener progressListener(String action) {
+            return (workDone, totalWork) -> {
+                if (isCancelled()) {
+                    return false;
+                }
+                updateProgress(workDone, totalWork);
+                updateMessage(action + "... " + (totalWork > 0 ? 100 * workDone / totalWork : 0) + "%");
+                return true;
+            };
+        }
+
+        void awaitBatchSlot(Semaphore batchesInFlight) {
+            try {
+                while (!batchesInFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    if (isCancelled()) {
+                        throw new CancellationException();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+        }
+    }
 }
@@ -0,0 +1,313 @@
+package controller;
+
+import core.Telemetry;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableListBase;
+import model.Transaction;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rows of the table which match the search (see {@link SearchIndex}), in the order of the transaction list.
+ * Without a search, it shows every row.
+ *
+ * The title and category id of every row are kept in two arrays in the order of the transaction list, so a search
+ * runs over these arrays without touching the rows themselves. Changes of the transaction list update the search
+ * index, the arrays and the shown rows together, so only the changed rows are checked. When a character is typed into
+ * the search, only the rows shown so far are checked again.
+ */
+public class FilteredTransactionList extends ObservableListBase<Transaction> implements ListChangeListener<Transaction> {
+
+    private static final Telemetry.Operation FILTER = Telemetry.operation("table.filter");
+
+    private final TransactionList source;
+    private final SearchIndex index = new SearchIndex();
+
+    //Title and category id of each row of the source, in its order.
+    private int[] titleIds = new int[16];
+    private int[] categoryIds = new int[16];
+    private int indexedRows = 0;
+
+    //Ascending indices in the source of the shown rows, only used while filtering.
+    private int[] positions = new int[0];
+    private int size = 0;
+    private boolean filtering = false;
+
+    public FilteredTransactionList(TransactionList source) {
+        this.source = source;
+        rebuildIndex();
+        source.addListener(this);
+    }
+
+    @Override
+    public Transaction get(int index) {
+        return source.get(getSourceIndex(index));
+    }
+
+    @Override
+    public int size() {
+        return filtering ? size : source.size();
+    }
+
+    /**
+     * The index in the transaction list of the row at the index of this list.
+     */
+    public int getSourceIndex(int index) {
+        if (!filtering) {
+            return index;
+        }
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Row " + index + " of " + size);
+        }
+        return positions[index];
+    }
+
+    public boolean isFiltering() {
+        return filtering;
+    }
+
+    /**
+     * Shows only the rows whose title or category contains the text. An empty text shows all rows again.
+     */
+    public void setQuery(String text) {
+        try (Telemetry.Span span = FILTER.start()) {
+            final boolean narrowing = index.setQuery(text);
+            if (!index.isActive() && !filtering) {
+                return;
+            }
+            //The source doesn't change while the replacement is reported, so the old rows don't need to be copied.
+            final List<Transaction> previous = filtering ? rowsAt(positions, size) : source;
+            if (!index.isActive()) {
+                filtering = false;
+                positions = new int[0];
+                size = 0;
+            } else if (filtering && narrowing) {
+                final int[] kept = new int[size];
+                int found = 0;
+                for (int i = 0; i < size; ++i) {
+                    final int position = positions[i];
+                    if (index.matches(titleIds[position], categoryIds[position])) {
+                        kept[found++] = position;
+                    }
+                }
+                positions = kept;
+                size = found;
+            } else {
+                int[] matching = new int[16];
+                int found = 0;
+                for (int i = 0; i < indexedRows; ++i) {
+                    if (index.matches(titleIds[i], categoryIds[i])) {
+                        if (found == matching.length) {
+                            matching = Arrays.copyOf(matching, found * 2);
+                        }
+                        matching[found++] = i;
+                    }
+                }
+                positions = matching;
+                size = found;
+                filtering = true;
+            }
+            span.rows(previous.size());
+            if (previous.isEmpty() && size() == 0) {
+                return;
+            }
+            beginChange();
+            nextReplace(0, size(), previous);
+            endChange();
+        }
+    }
+
+    @Override
+    public void onChanged(Change<? extends Transaction> change) {
+        beginChange();
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                permute(change);
+            } else if (!change.wasUpdated()) {
+                removeSourceRows(change.getFrom(), change.getRemoved());
+                addSourceRows(change.getFrom(), change.getAddedSubList());
+            }
+        }
+        endChange();
+        if (index.needsRebuild()) {
+            rebuildIndex();
+        }
+    }
+
+    private void permute(Change<? extends Transaction> change) {
+        final int from = change.getFrom();
+        final int to = change.getTo();
+        final int[] movedTitleIds = Arrays.copyOfRange(titleIds, from, to);
+        final int[] movedCategoryIds = Arrays.copyOfRange(categoryIds, from, to);
+        for (int i = from; i < to; ++i) {
+            titleIds[change.getPermutation(i)] = movedTitleIds[i - from];
+            categoryIds[change.getPermutation(i)] = movedCategoryIds[i - from];
+        }
+
+        if (!filtering) {
+            final int[] permutation = new int[to - from];
+            for (int i = from; i < to; ++i) {
+                permutation[i - from] = change.getPermutation(i);
+            }
+            nextPermutation(from, to, permutation);
+            return;
+        }
+        //The new source index of each shown row together with its old index here, sorted by the new source index.
+        final long[] moved = new long[size];
+        for (int i = 0; i < size; ++i) {
+            final int position = positions[i];
+            final int newPosition = position >= from && position < to ? change.getPermutation(position) : position;
+            moved[i] = (long) newPosition << 32 | i;
+        }
+        Arrays.sort(moved);
+        final int[] permutation = new int[size];
+        for (int i = 0; i < size; ++i) {
+            positions[i] = (int) (moved[i] >>> 32);
+            permutation[(int) moved[i]] = i;
+        }
+        nextPermutation(0, size, permutation);
+    }
+
+    private void removeSourceRows(int from, List<? extends Transaction> removed) {
+        if (removed.isEmpty()) {
+            return;
+        }
+        final int count = removed.size();
+        for (Transaction transaction : removed) {
+            index.remove(transaction);
+        }
+        System.arraycopy(titleIds, from + count, titleIds, from, indexedRows - from - count);
+        System.arraycopy(categoryIds, from + count, categoryIds, from, indexedRows - from - count);
+        indexedRows -= count;
+        if (!filtering) {
+            nextRemove(from, new ArrayList<>(removed));
+            return;
+        }
+
+        final int first = firstAtOrAfter(from);
+        final int end = firstAtOrAfter(from + count);
+        final List<Transaction> removedRows = new ArrayList<>(end - first);
+        for (int i = first; i < end; ++i) {
+            removedRows.add(removed.get(positions[i] - from));
+        }
+        System.arraycopy(positions, end, positions, first, size - end);
+        size -= end - first;
+        for (int i = first; i < size; ++i) {
+            positions[i] -= count;
+        }
+        if (!removedRows.isEmpty()) {
+            nextRemove(first, removedRows);
+        }
+    }
+
+    private void addSourceRows(int from, List<? extends Transaction> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        final int count = added.size();
+        if (indexedRows + count > titleIds.length) {
+            final int capacity = Math.max(indexedRows + count, titleIds.length * 2);
+            titleIds = Arrays.copyOf(titleIds, capacity);
+            categoryIds = Arrays.copyOf(categoryIds, capacity);
+        }
+        System.arraycopy(titleIds, from, titleIds, from + count, indexedRows - from);
+        System.arraycopy(categoryIds, from, categoryIds, from + count, indexedRows - from);
+        for (int i = 0; i < count; ++i) {
+            titleIds[from + i] = index.add(added.get(i));
+            categoryIds[from + i] = added.get(i).getCategoryId();
+        }
+        indexedRows += count;
+        if (!filtering) {
+            nextAdd(from, from + count);
+            return;
+        }
+
+        final int first = firstAtOrAfter(from);
+        for (int i = first; i < size; ++i) {
+            positions[i] += count;
+        }
+        int matching = 0;
+        for (int i = from; i < from + count; ++i) {
+            if (index.matches(titleIds[i], categoryIds[i])) {
+                matching++;
+            }
+        }
+        if (matching == 0) {
+            return;
+        }
+        if (size + matching > positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(size + matching, positions.length * 2));
+        }
+        System.arraycopy(positions, first, positions, first + matching, size - first);
+        int next = first;
+        for (int i = from; i < from + count; ++i) {
+            if (index.matches(titleIds[i], categoryIds[i])) {
+                positions[next++] = i;
+            }
+        }
+        size += matching;
+        nextAdd(first, first + matching);
+    }
+
+    /**
+     * Gives every title a new id, titles which no row uses anymore are dropped.
+     */
+    private void rebuildIndex() {
+        index.clear();
+        titleIds = new int[Math.max(16, source.size())];
+        categoryIds = new int[titleIds.length];
+        for (int i = 0; i < source.size(); ++i) {
+            titleIds[i] = index.add(source.get(i));
+            categoryIds[i] = source.get(i).getCategoryId();
+        }
+        indexedRows = source.size();
+        index.findMatchingTitles();
+    }
+
+    /**
+     * The first shown row whose source index is at least the given one.
+     */
+    private int firstAtOrAfter(int sourceIndex) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (positions[middle] < sourceIndex) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The rows at the source indices, without copying them. The listeners copy the rows of a change, which is
+     * faster with {@link List#toArray()}.
+     */
+    private List<Transaction> rowsAt(int[] sourceIndices, int count) {
+        return new AbstractList<Transaction>() {
+            @Override
+            public Transaction get(int index) {
+                return source.get(sourceIndices[index]);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+
+            @Override
+            public Object[] toArray() {
+                final Object[] rows = new Object[count];
+                for (int i = 0; i < count; ++i) {
+                    rows[i] = source.get(sourceIndices[i]);
+                }
+                return rows;
+            }
+        };
+    }
+}
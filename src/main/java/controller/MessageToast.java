@@ -5,6 +5,7 @@ import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
 import javafx.animation.Timeline;
 import javafx.application.Platform;
+import javafx.concurrent.Worker;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Label;
@@ -19,6 +20,7 @@ public class MessageToast extends VBox {
     @FXML private Label msgLabel;
 
     private Timeline timeline;
+    private Worker<?> progressWorker;
 
     public MessageToast() {
         FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("/view/MessageToastView.fxml"));
@@ -33,6 +35,11 @@ public class MessageToast extends VBox {
         msgLabel.opacityProperty().bind(this.opacityProperty());
 
         this.getStylesheets().add("/message_toast_stylesheet.css");
+        this.setOnMouseClicked(event -> {
+            if (progressWorker != null) {
+                progressWorker.cancel();
+            }
+        });
 
         initAnimation();
     }
@@ -50,6 +57,7 @@ public class MessageToast extends VBox {
     }
 
     public void showErrorMessage(String message) {
+        stopShowingProgress();
         this.setVisible(true);
         this.msgLabel.setText(message);
         this.getStyleClass().clear();
@@ -61,6 +69,7 @@ public class MessageToast extends VBox {
     }
 
     public void showSuccessMessage(String message) {
+        stopShowingProgress();
         messageToastBox.setVisible(true);
         this.msgLabel.setText(message);
         this.getStyleClass().clear();
@@ -71,10 +80,37 @@ public class MessageToast extends VBox {
         timeline.play();
     }
 
+    /**
+     * Shows the message of a running load or save until another message replaces it. Clicking the toast cancels
+     * the operation.
+     */
+    public void showProgressMessage(Worker<?> worker) {
+        stopShowingProgress();
+        clear();
+        this.msgLabel.textProperty().bind(worker.messageProperty());
+        this.getStyleClass().clear();
+        this.getStyleClass().add("progress");
+
+        progressWorker = worker;
+        this.setVisible(true);
+    }
+
+    /**
+     * Hides the message. The progress of a running load or save stays visible.
+     */
     public void clear() {
+        if (progressWorker != null && progressWorker.isRunning()) {
+            return;
+        }
+        stopShowingProgress();
         timeline.stop();
         this.setVisible(false);
         this.setOpacity(1);
     }
 
+    private void stopShowingProgress() {
+        progressWorker = null;
+        this.msgLabel.textProperty().unbind();
+    }
+
 }
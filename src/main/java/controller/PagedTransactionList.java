@@ -0,0 +1,109 @@
+package controller;
+
+import core.SnapshotFile;
+import core.Totals;
+import javafx.collections.ObservableListBase;
+import model.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only list over a snapshot file, for sheets which are too large to be loaded. The table only asks for the rows
+ * it shows, so rows are created in pages when they are first needed. The pages are kept in an LRU cache, whose size
+ * is limited by a memory budget. The totals are calculated once from the records of the file.
+ */
+public class PagedTransactionList extends ObservableListBase<Transaction> implements Closeable {
+
+    /**
+     * Rows which are created together.
+     */
+    static final int PAGE_SIZE = 512;
+
+    /**
+     * Rough heap size of a row with its strings, to turn the memory budget into a number of pages.
+     */
+    private static final long ESTIMATED_ROW_BYTES = 160;
+
+    private final SnapshotFile snapshot;
+    private final Totals totals;
+    private final Map<Integer, Transaction[]> pages;
+    private long pageHits = 0;
+    private long pageMisses = 0;
+
+    /**
+     * Opens the list and calculates the totals. This reads every record once, so it shouldn't run on the JavaFX
+     * thread.
+     *
+     * @param memoryBudgetBytes the most memory the cached pages should take.
+     */
+    public PagedTransactionList(SnapshotFile snapshot, long memoryBudgetBytes) {
+        this.snapshot = snapshot;
+        this.totals = snapshot.totals();
+        final int maxPages = (int) Math.max(2, Math.min(Integer.MAX_VALUE, memoryBudgetBytes / (PAGE_SIZE * ESTIMATED_ROW_BYTES)));
+        this.pages = new LinkedHashMap<Integer, Transaction[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Transaction[]> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    @Override
+    public Transaction get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Row " + index + " of " + size());
+        }
+        final int pageNumber = index / PAGE_SIZE;
+        Transaction[] page = pages.get(pageNumber);
+        if (page == null) {
+            pageMisses++;
+            page = loadPage(pageNumber);
+            pages.put(pageNumber, page);
+        } else {
+            pageHits++;
+        }
+        return page[index % PAGE_SIZE];
+    }
+
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * The totals of all rows, calculated when the list was opened.
+     */
+    public Totals getTotals() {
+        return totals;
+    }
+
+    public int getCachedPages() {
+        return pages.size();
+    }
+
+    public long getPageHits() {
+        return pageHits;
+    }
+
+    public long getPageMisses() {
+        return pageMisses;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pages.clear();
+        snapshot.close();
+    }
+
+    private Transaction[] loadPage(int pageNumber) {
+        final int first = pageNumber * PAGE_SIZE;
+        final Transaction[] page = new Transaction[Math.min(PAGE_SIZE, size() - first)];
+        for (int i = 0; i < page.length; ++i) {
+            page[i] = snapshot.transaction(first + i);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,171 @@
+package controller;
+
+import core.CashFlowTimeline;
+import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Scene;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.DatePicker;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.image.Image;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import model.Money;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+
+/**
+ * Projects the balance of the account from today on, see {@link CashFlowTimeline}. The chart shows the lowest
+ * balance of every month, the date pickers ask for the balance on a day and the lowest balance between two days.
+ * The projection follows the changes of the shown sheet while the window is open, switching to another tab shows
+ * the projection of that sheet.
+ */
+public class ProjectionWindow extends Stage {
+
+	private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+	private CashFlowProjection projection;
+	private CashFlowTimeline timeline;
+
+	@FXML
+	private TextField openingField;
+	@FXML
+	private ComboBox<Integer> yearsBox;
+	@FXML
+	private LineChart<String, Number> balanceChart;
+	@FXML
+	private DatePicker balanceDate;
+	@FXML
+	private Label balanceLabel;
+	@FXML
+	private DatePicker fromDate;
+	@FXML
+	private DatePicker toDate;
+	@FXML
+	private Label minimumLabel;
+	@FXML
+	private Label statusLabel;
+
+	public ProjectionWindow(CashFlowProjection projection) {
+		this.projection = projection;
+		final FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("/view/ProjectionView.fxml"));
+		fxmlLoader.setController(this);
+		VBox vBox = null;
+		try {
+			vBox = fxmlLoader.load();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		yearsBox.getItems().addAll(1, 2, 5, 10, 20, 30);
+		yearsBox.setValue(5);
+		balanceDate.setValue(LocalDate.now().plusMonths(1));
+		fromDate.setValue(LocalDate.now());
+		toDate.setValue(LocalDate.now().plusYears(1));
+
+		final Scene projectionScene = new Scene(vBox, 900, 600);
+		projectionScene.getStylesheets().add(Calculator.class.getResource("/stylesheet.css").toExternalForm());
+		this.setTitle("Nubage - Projection");
+		this.getIcons().add(new Image(getClass().getResourceAsStream("/nubage_favicon.png")));
+		this.setScene(projectionScene);
+
+		this.setOnShown(event -> refresh());
+		//Without a timeline, the changes of the sheet cost nothing.
+		this.setOnHidden(event -> {
+			timeline = null;
+			projection.release();
+		});
+	}
+
+	/**
+	 * Shows the projection of another sheet, the one of the sheet before doesn't follow its changes anymore.
+	 */
+	public void setProjection(CashFlowProjection projection) {
+		if (projection == this.projection) {
+			return;
+		}
+		timeline = null;
+		this.projection.release();
+		this.projection = projection;
+		refresh();
+	}
+
+	/**
+	 * Calculates the projection again, after the sheet changed.
+	 */
+	public void refresh() {
+		if (!isShowing()) {
+			return;
+		}
+		long openingCents = 0;
+		try {
+			if (!openingField.getText().trim().isEmpty()) {
+				openingCents = Money.parseCents(openingField.getText().trim());
+			}
+		} catch (NumberFormatException e) {
+			statusLabel.setText("No valid balance!");
+			return;
+		}
+		timeline = projection.timeline(yearsBox.getValue(), openingCents);
+		showChart();
+		onQuery();
+	}
+
+	/**
+	 * The lowest balance of every month.
+	 */
+	private void showChart() {
+		final long[] balances = timeline.balances();
+		final XYChart.Series<String, Number> series = new XYChart.Series<>();
+		LocalDate date = timeline.getFirstDate();
+		long lowest = Long.MAX_VALUE;
+		LocalDate lowestDate = date;
+		long monthMinimum = Long.MAX_VALUE;
+		for (int day = 0; day < balances.length; ++day, date = date.plusDays(1)) {
+			monthMinimum = Math.min(monthMinimum, balances[day]);
+			if (balances[day] < lowest) {
+				lowest = balances[day];
+				lowestDate = date;
+			}
+			if (day == balances.length - 1 || date.getMonthValue() != date.plusDays(1).getMonthValue()) {
+				series.getData().add(new XYChart.Data<>(date.format(MONTH_FORMAT), monthMinimum / 100.0));
+				monthMinimum = Long.MAX_VALUE;
+			}
+		}
+		balanceChart.getData().setAll(Collections.singletonList(series));
+		statusLabel.setText("Lowest balance until " + timeline.getLastDate() + ": " + Money.formatCents(lowest) + " on " + lowestDate
+				+ ". Rows without a start date recur from today on.");
+	}
+
+	@FXML
+	private void onRefresh() {
+		refresh();
+	}
+
+	@FXML
+	private void onQuery() {
+		if (timeline == null) {
+			return;
+		}
+		balanceLabel.setText(isInTimeline(balanceDate.getValue()) ? Money.formatCents(timeline.balanceOn(balanceDate.getValue())) : "");
+		final LocalDate from = fromDate.getValue();
+		final LocalDate to = toDate.getValue();
+		minimumLabel.setText(isInTimeline(from) && isInTimeline(to) && !from.isAfter(to)
+				? Money.formatCents(timeline.minBalance(from, to)) : "");
+	}
+
+	private boolean isInTimeline(LocalDate date) {
+		return date != null && !date.isBefore(timeline.getFirstDate()) && !date.isAfter(timeline.getLastDate());
+	}
+
+	@FXML
+	private void onClose() {
+		close();
+	}
+}
@@ -0,0 +1,110 @@
+package controller;
+
+import core.Telemetry;
+import javafx.animation.AnimationTimer;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * Recalculates the state which is derived from the rows (the sort order, the totals and their labels, the projection)
+ * once per user action instead of once per change of the list. A change only marks the state as outdated; it's
+ * recalculated at the start of the next JavaFX pulse, before the window is drawn, so a load which adds many batches or
+ * a clear followed by an add is recalculated once. Work which belongs together can be run as {@link #batch(Runnable)},
+ * which recalculates right at its end.
+ *
+ * Must only be used on the JavaFX thread.
+ */
+public class RecomputeScheduler {
+
+    private static final Telemetry.Operation RECOMPUTE = Telemetry.operation("recompute");
+
+    /**
+     * The derived state, in the order it's recalculated: sorting doesn't change the totals.
+     */
+    public enum Derived {
+        SORT_ORDER,
+        TOTALS,
+        /**
+         * The projection of the balance, if its window is open. See {@link CashFlowProjection}.
+         */
+        PROJECTION
+    }
+
+    private final Map<Derived, Runnable> actions = new EnumMap<>(Derived.class);
+    private final EnumSet<Derived> outdated = EnumSet.noneOf(Derived.class);
+    private int invalidations = 0;
+    private int batchDepth = 0;
+    private boolean recomputing = false;
+
+    private final AnimationTimer nextPulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            stop();
+            if (batchDepth == 0) {
+                recompute();
+            }
+        }
+    };
+
+    /**
+     * Sets what recalculates the state.
+     */
+    public void setAction(Derived derived, Runnable action) {
+        actions.put(derived, action);
+    }
+
+    /**
+     * Marks the state as outdated. It's recalculated with the next pulse, or at the end of the running batch.
+     */
+    public void invalidate(Derived derived) {
+        outdated.add(derived);
+        invalidations++;
+        if (batchDepth == 0 && !recomputing) {
+            nextPulse.start();
+        }
+    }
+
+    /**
+     * Runs the work and recalculates the state it made outdated once at its end, even if it failed. Batches can be
+     * nested, only the outermost one recalculates.
+     */
+    public void batch(Runnable work) {
+        batchDepth++;
+        try {
+            work.run();
+        } finally {
+            if (--batchDepth == 0) {
+                recompute();
+            }
+        }
+    }
+
+    /**
+     * Recalculates the outdated state now. State which gets outdated while recalculating (e.g. the totals by
+     * sorting) is recalculated in the same run.
+     */
+    public void recompute() {
+        if (recomputing || outdated.isEmpty()) {
+            return;
+        }
+        nextPulse.stop();
+        recomputing = true;
+        try (Telemetry.Span span = RECOMPUTE.start()) {
+            //The rows of the measurement are the changes which were recalculated together.
+            span.rows(invalidations);
+            invalidations = 0;
+            while (!outdated.isEmpty()) {
+                final Derived derived = outdated.iterator().next();
+                outdated.remove(derived);
+                final Runnable action = actions.get(derived);
+                if (action != null) {
+                    action.run();
+                }
+            }
+        } finally {
+            recomputing = false;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package controller;
+
+import core.CategoryRules;
+import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextArea;
+import javafx.scene.image.Image;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Edits the rules which assign categories by title, see {@link CategoryRules}. "Apply" hands the rules over, which
+ * saves them and categorizes the open sheet again.
+ */
+public class RulesWindow extends Stage {
+
+	private static final String HELP = "One rule per line: \"keyword" + CategoryRules.SEPARATOR + "Category\" or \"/expression/"
+			+ CategoryRules.SEPARATOR + "Category\". The first matching rule wins, the case is ignored.";
+
+	private final Consumer<List<CategoryRules.Rule>> onApply;
+
+	@FXML
+	private Label statusLabel;
+	@FXML
+	private TextArea rulesArea;
+
+	/**
+	 * @param onApply gets the rules, when they're valid and applied.
+	 */
+	public RulesWindow(Consumer<List<CategoryRules.Rule>> onApply) {
+		this.onApply = onApply;
+		final FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("/view/RulesView.fxml"));
+		fxmlLoader.setController(this);
+		VBox vBox = null;
+		try {
+			vBox = fxmlLoader.load();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		final Scene rulesScene = new Scene(vBox, 700, 500);
+		rulesScene.getStylesheets().add(Calculator.class.getResource("/stylesheet.css").toExternalForm());
+		this.setTitle("Nubage - Category rules");
+		this.getIcons().add(new Image(getClass().getResourceAsStream("/nubage_favicon.png")));
+		this.setScene(rulesScene);
+	}
+
+	/**
+	 * Shows the rules, replacing what was typed and not applied.
+	 */
+	public void setRules(List<CategoryRules.Rule> rules) {
+		final StringBuilder text = new StringBuilder();
+		for (CategoryRules.Rule rule : rules) {
+			text.append(rule).append('\n');
+		}
+		rulesArea.setText(text.toString());
+		statusLabel.setText(HELP);
+	}
+
+	@FXML
+	private void onApply() {
+		final List<CategoryRules.Rule> rules;
+		try {
+			rules = CategoryRules.parse(Arrays.asList(rulesArea.getText().split("\n")));
+		} catch (IllegalArgumentException e) {
+			statusLabel.setText(e.getMessage());
+			return;
+		}
+		statusLabel.setText(rules.size() + " rules applied.");
+		onApply.accept(rules);
+	}
+
+	@FXML
+	private void onClose() {
+		close();
+	}
+}
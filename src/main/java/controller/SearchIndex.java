@@ -0,0 +1,206 @@
+package controller;
+
+import model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Finds the rows whose title or category contains a text, ignoring the case. Titles repeat a lot, so the index is
+ * built over the distinct titles, which get an id each: each title is split into trigrams (all substrings of three
+ * characters), and a query only looks at the titles which contain the rarest trigram of the query. The few categories
+ * are simply compared one by one.
+ *
+ * Whether each title and category matches the current query is kept in an array, so checking a row costs two
+ * lookups by its title and category id. A title which is new while a query is set is checked when it's added.
+ */
+public class SearchIndex {
+
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<String, Title> titles = new HashMap<>();
+    private final List<Title> titlesById = new ArrayList<>();
+    private final Map<Long, IntList> grams = new HashMap<>();
+    private int usedTitles = 0;
+
+    private String query = null;
+
+    //Whether the title or category with the id (shifted by one, so rows without one are at 0) matches the query.
+    private boolean[] matchingTitles = new boolean[1];
+    private boolean[] matchingCategories = new boolean[1];
+
+    /**
+     * A distinct title and the number of rows which have it. Titles without rows keep their id until the index is
+     * cleared, so a row which gets the title again is found.
+     */
+    private static final class Title {
+
+        private final int id;
+        private final String lowerCase;
+        private int rows = 0;
+
+        private Title(int id, String value) {
+            this.id = id;
+            this.lowerCase = value.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Counts the row and returns the id of its title, or -1 if it has none.
+     */
+    public int add(Transaction transaction) {
+        final String value = transaction.getTitle();
+        if (value == null) {
+            return -1;
+        }
+        Title title = titles.get(value);
+        if (title == null) {
+            title = new Title(titlesById.size(), value);
+            titles.put(value, title);
+            titlesById.add(title);
+            for (int i = 0; i + GRAM_LENGTH <= title.lowerCase.length(); ++i) {
+                grams.computeIfAbsent(gram(title.lowerCase, i), key -> new IntList()).add(title.id);
+            }
+            if (title.id + 1 >= matchingTitles.length) {
+                matchingTitles = Arrays.copyOf(matchingTitles, matchingTitles.length * 2);
+            }
+            matchingTitles[title.id + 1] = query != null && title.lowerCase.contains(query);
+        }
+        if (title.rows++ == 0) {
+            usedTitles++;
+        }
+        return title.id;
+    }
+
+    public void remove(Transaction transaction) {
+        final Title title = transaction.getTitle() != null ? titles.get(transaction.getTitle()) : null;
+        if (title != null && --title.rows == 0) {
+            usedTitles--;
+        }
+    }
+
+    /**
+     * Forgets all titles, the ids start from 0 again. The query stays.
+     */
+    public void clear() {
+        titles.clear();
+        titlesById.clear();
+        grams.clear();
+        Arrays.fill(matchingTitles, false);
+        usedTitles = 0;
+    }
+
+    /**
+     * True, if most titles of the index aren't used by any row anymore (e.g. after other sheets were loaded), so it
+     * should be cleared and filled again.
+     */
+    public boolean needsRebuild() {
+        return titlesById.size() > 2 * usedTitles + 1024;
+    }
+
+    /**
+     * Sets the text to search for. An empty text or null matches every row.
+     *
+     * @return true, if the new query only matches rows which matched the old one (e.g. a character was typed).
+     */
+    public boolean setQuery(String text) {
+        final String previous = query;
+        query = text == null || text.isEmpty() ? null : text.toLowerCase(Locale.ROOT);
+        Arrays.fill(matchingTitles, false);
+        matchingCategories = new boolean[Transaction.categoryCount() + 1];
+        if (query != null) {
+            findMatchingTitles();
+            for (int categoryId = 0; categoryId < matchingCategories.length - 1; ++categoryId) {
+                matchingCategories[categoryId + 1] = categoryMatches(categoryId);
+            }
+        }
+        return previous != null && query != null && query.contains(previous);
+    }
+
+    public boolean isActive() {
+        return query != null;
+    }
+
+    /**
+     * True, if the title or the category contains the query.
+     *
+     * @param titleId the id returned by {@link #add(Transaction)}.
+     */
+    public boolean matches(int titleId, int categoryId) {
+        if (query == null) {
+            return true;
+        }
+        if (categoryId + 1 >= matchingCategories.length) {
+            return matchingTitles[titleId + 1] || categoryMatches(categoryId);
+        }
+        return matchingTitles[titleId + 1] | matchingCategories[categoryId + 1];
+    }
+
+    /**
+     * New titles which match are marked when they're added, after a rebuild all titles are checked again.
+     */
+    public void findMatchingTitles() {
+        if (query == null) {
+            return;
+        }
+        IntList candidates = null;
+        if (query.length() >= GRAM_LENGTH) {
+            for (int i = 0; i + GRAM_LENGTH <= query.length(); ++i) {
+                final IntList titleIds = grams.get(gram(query, i));
+                if (titleIds == null) {
+                    return;
+                }
+                if (candidates == null || titleIds.size < candidates.size) {
+                    candidates = titleIds;
+                }
+            }
+        }
+        if (candidates == null) {
+            for (Title title : titlesById) {
+                markIfMatching(title);
+            }
+        } else {
+            for (int i = 0; i < candidates.size; ++i) {
+                markIfMatching(titlesById.get(candidates.values[i]));
+            }
+        }
+    }
+
+    private void markIfMatching(Title title) {
+        if (title.lowerCase.contains(query)) {
+            matchingTitles[title.id + 1] = true;
+        }
+    }
+
+    /**
+     * Categories which got their id after the query was set are looked up each time, that's rare.
+     */
+    private boolean categoryMatches(int categoryId) {
+        final String category = categoryId >= 0 ? Transaction.categoryForId(categoryId) : null;
+        return category != null && category.toLowerCase(Locale.ROOT).contains(query);
+    }
+
+    /**
+     * The three characters at the index, packed into a number.
+     */
+    private static long gram(String text, int index) {
+        return (long) text.charAt(index) << 32 | (long) text.charAt(index + 1) << 16 | text.charAt(index + 2);
+    }
+
+    private static final class IntList {
+
+        private int[] values = new int[4];
+        private int size = 0;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package controller;
+
+import core.SheetDiff;
+import core.SheetMerger;
+import core.StatementImport;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.scene.control.TableColumn;
+import model.Transaction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * One open sheet, shown in a tab of the window. Everything derived from its rows (the totals, the categories, the
+ * search, the history and the projection) listens to its own list and stays up to date while the sheet is in the
+ * background, so switching to its tab only shows it. The strings of the rows are shared by all sheets, see
+ * {@link model.StringPool}.
+ *
+ * The fields are the state {@link Calculator} works with, only used on the JavaFX thread.
+ */
+public class Sheet {
+
+    final TransactionList transactionList = new TransactionList();
+    final FilteredTransactionList filteredList;
+    final TotalsAggregator totals = new TotalsAggregator();
+    final TotalsAggregator filteredTotals = new TotalsAggregator();
+    final UndoHistory history;
+    final CashFlowProjection projection;
+    final ObservableList<String> categoryItems;
+    final CategoryIndex categories;
+
+    /**
+     * The derived state which changed while the sheet was in the background, it's recalculated when it's shown.
+     */
+    final EnumSet<RecomputeScheduler.Derived> outdated = EnumSet.noneOf(RecomputeScheduler.Derived.class);
+
+    /**
+     * The sort order and search of the table while the sheet was shown.
+     */
+    final List<TableColumn<Transaction, ?>> sortOrder = new ArrayList<>();
+    final List<TableColumn.SortType> sortTypes = new ArrayList<>();
+    String query = "";
+
+    File path;
+    boolean hasPendingChanges = false;
+    long modificationCount = 0;
+    boolean merged = false;
+    Task<Boolean> runningSave;
+    Task<Boolean> runningLoad;
+    Task<PagedTransactionList> runningPagedOpen;
+    Task<SheetMerger.Result> runningMerge;
+    Task<SheetDiff> runningReload;
+    Task<StatementImport.Report> runningImport;
+    Task<Transaction[]> runningRecategorize;
+    PagedTransactionList pagedRows;
+    ChangeJournal journal;
+    private SheetWatcher watcher;
+
+    /**
+     * @param fixedCategories the entries of the category combobox which aren't categories.
+     */
+    Sheet(File path, Collection<String> fixedCategories) {
+        this.path = path;
+        //The filtered list listens first, so the other listeners already see the filtered rows.
+        filteredList = new FilteredTransactionList(transactionList);
+        filteredList.addListener(filteredTotals);
+        history = new UndoHistory(transactionList);
+        projection = new CashFlowProjection(transactionList);
+        categoryItems = FXCollections.observableArrayList(fixedCategories);
+        categories = new CategoryIndex(categoryItems, fixedCategories);
+        transactionList.addListener(totals);
+        transactionList.addListener(categories);
+        transactionList.addListener(history);
+        transactionList.addListener(projection);
+    }
+
+    /**
+     * The name of the tab: the file name, or "New sheet" while it has none.
+     */
+    String getName() {
+        if (merged) {
+            return "Merged sheets";
+        }
+        return path != null && !path.isDirectory() ? path.getName() : "New sheet";
+    }
+
+    /**
+     * True, if the sheet has neither rows nor a file, so a loaded file can take its place.
+     */
+    boolean isBlank() {
+        return transactionList.isEmpty() && pagedRows == null && !hasPendingChanges && !isBusy()
+                && (path == null || path.isDirectory());
+    }
+
+    boolean isBusy() {
+        for (Task<?> task : tasks()) {
+            if (task != null && !task.isDone()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    List<Task<?>> tasks() {
+        final List<Task<?>> tasks = new ArrayList<>();
+        tasks.add(runningLoad);
+        tasks.add(runningPagedOpen);
+        tasks.add(runningMerge);
+        tasks.add(runningReload);
+        tasks.add(runningImport);
+        tasks.add(runningRecategorize);
+        return tasks;
+    }
+
+    /**
+     * Reloads the sheet when another program changes it, see {@link SheetWatcher}. Null stops watching. Every sheet
+     * has its own watcher, so a sheet in the background is reloaded as well.
+     */
+    void watch(File file, Consumer<File> onChanged) {
+        if (watcher == null) {
+            if (file == null) {
+                return;
+            }
+            try {
+                watcher = new SheetWatcher(onChanged);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        watcher.watch(file);
+    }
+
+    /**
+     * Stops watching and closes the files of the sheet. Unsaved changes stay in the journal.
+     */
+    void close() throws IOException {
+        for (Task<?> task : tasks()) {
+            if (task != null) {
+                task.cancel();
+            }
+        }
+        projection.release();
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+        if (pagedRows != null) {
+            pagedRows.close();
+            pagedRows = null;
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+}
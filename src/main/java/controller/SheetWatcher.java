@@ -0,0 +1,152 @@
+package controller;
+
+import javafx.application.Platform;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the open sheet and reports when another program (or another machine on a shared drive) changed it. The
+ * directory of the sheet is watched with a {@link WatchService}, because a sheet which is replaced by a new file
+ * (like {@link core.SheetFiles#writeAtomically} does) would be lost by watching the file itself.
+ *
+ * Programs often write a file in several steps, so a change is only reported after the file was left alone for
+ * {@link #QUIET_MILLIS}. The size and modification time of the file the application loaded or saved itself are
+ * remembered (see {@link #markCurrent()}), so its own saves aren't reported.
+ */
+public class SheetWatcher implements Closeable {
+
+    /**
+     * How long the sheet has to stay unchanged, before the change is reported.
+     */
+    static final long QUIET_MILLIS = Long.getLong("nubage.reloadDelayMillis", 500);
+
+    private final Consumer<File> onChanged;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    //Guarded by this, set on the JavaFX thread and read by the watching thread.
+    private File sheet;
+    private WatchKey watchKey;
+
+    //Only used on the JavaFX thread.
+    private long knownSize = -1;
+    private long knownModified = -1;
+
+    /**
+     * @param onChanged gets the changed sheet on the JavaFX thread.
+     */
+    public SheetWatcher(Consumer<File> onChanged) throws IOException {
+        this.onChanged = onChanged;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "nubage-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Watches the sheet instead of the one watched so far, its current content counts as known. Null stops watching.
+     */
+    public synchronized void watch(File sheet) {
+        final File file = sheet != null ? sheet.getAbsoluteFile() : null;
+        if (file != null && file.equals(this.sheet)) {
+            markCurrent();
+            return;
+        }
+        if (watchKey != null) {
+            watchKey.cancel();
+            watchKey = null;
+        }
+        this.sheet = null;
+        if (file == null || file.getParentFile() == null) {
+            return;
+        }
+        try {
+            watchKey = file.getParentFile().toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            this.sheet = file;
+            markCurrent();
+        } catch (IOException | RuntimeException e) {
+            //The sheet can still be used, it's only not reloaded.
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Takes the current content of the sheet as known, e.g. after it was loaded or saved.
+     */
+    public void markCurrent() {
+        final File file = watchedSheet();
+        knownSize = file != null ? file.length() : -1;
+        knownModified = file != null ? file.lastModified() : -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+
+    private synchronized File watchedSheet() {
+        return sheet;
+    }
+
+    private synchronized boolean concernsSheet(WatchKey key, WatchEvent<?> event) {
+        if (key != watchKey || sheet == null) {
+            return false;
+        }
+        return event.kind() == StandardWatchEventKinds.OVERFLOW
+                || sheet.toPath().getFileName().equals(event.context());
+    }
+
+    private void run() {
+        long lastChange = 0;
+        boolean pending = false;
+        try {
+            while (true) {
+                final WatchKey key = pending
+                        ? watchService.poll(Math.max(1, lastChange + QUIET_MILLIS - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+                        : watchService.take();
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (concernsSheet(key, event)) {
+                            lastChange = System.currentTimeMillis();
+                            pending = true;
+                        }
+                    }
+                    key.reset();
+                }
+                if (pending && System.currentTimeMillis() - lastChange >= QUIET_MILLIS) {
+                    pending = false;
+                    final File changed = watchedSheet();
+                    if (changed != null) {
+                        Platform.runLater(() -> report(changed));
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //Closed.
+        }
+    }
+
+    private void report(File changed) {
+        if (!changed.equals(watchedSheet()) || !changed.isFile()) {
+            return;
+        }
+        if (changed.length() == knownSize && changed.lastModified() == knownModified) {
+            return;
+        }
+        markCurrent();
+        onChanged.accept(changed);
+    }
+}
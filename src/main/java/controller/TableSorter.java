@@ -0,0 +1,261 @@
+package controller;
+
+import core.Telemetry;
+import model.Period;
+import model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sorts the table by any number of columns. Before sorting, the key of every row is computed once per column as a
+ * long (strings become their rank among the distinct values of the column). Then only an int array of row indices
+ * is sorted by comparing these keys, so neither strings nor transactions are touched while sorting.
+ */
+public class TableSorter {
+
+    /**
+     * The columns the table can be sorted by.
+     */
+    public enum Column {
+        TITLE, CATEGORY, PERIOD, VALUE, CURRENCY, YEARLY, SOURCE, START, END,
+        /**
+         * Not a column of the table: incomes before expenses. It's the order of the table without any sort column.
+         */
+        INCOME_FIRST
+    }
+
+    /**
+     * A column of the sort order and its direction.
+     */
+    public static final class SortKey {
+
+        private final Column column;
+        private final boolean ascending;
+
+        public SortKey(Column column, boolean ascending) {
+            this.column = column;
+            this.ascending = ascending;
+        }
+
+        public Column getColumn() {
+            return column;
+        }
+
+        public boolean isAscending() {
+            return ascending;
+        }
+    }
+
+    private static final Telemetry.Operation SORT = Telemetry.operation("table.sort");
+
+    private static final Comparator<String> TEXT_ORDER = Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * Puts the list into the order of the sort keys. Without sort keys, incomes come before expenses and otherwise
+     * the order is kept. The sort is stable.
+     */
+    public static void sort(TransactionList transactions, List<SortKey> sortKeys) {
+        try (Telemetry.Span span = SORT.start()) {
+            span.rows(transactions.size());
+            transactions.reorder(sortedOrder(transactions, sortKeys));
+        }
+    }
+
+    /**
+     * The old index of each row, in sorted order.
+     */
+    public static int[] sortedOrder(List<Transaction> transactions, List<SortKey> sortKeys) {
+        final List<SortKey> effectiveKeys = effective(sortKeys);
+        final long[][] keys = new long[effectiveKeys.size()][];
+        for (int k = 0; k < keys.length; ++k) {
+            keys[k] = keys(transactions, effectiveKeys.get(k));
+        }
+        final int[] order = new int[transactions.size()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[order.length], 0, order.length, keys);
+        return order;
+    }
+
+    /**
+     * The index where a new row belongs in a list which is sorted by the sort keys. A row which equals existing rows is
+     * placed behind them.
+     */
+    public static int insertionIndex(List<Transaction> transactions, Transaction transaction, List<SortKey> sortKeys) {
+        final Comparator<Transaction> comparator = comparator(sortKeys);
+        int low = 0;
+        int high = transactions.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (comparator.compare(transactions.get(middle), transaction) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares two rows the same way as the sort, for the few comparisons of {@link #insertionIndex}.
+     */
+    static Comparator<Transaction> comparator(List<SortKey> sortKeys) {
+        Comparator<Transaction> comparator = (a, b) -> 0;
+        for (SortKey sortKey : effective(sortKeys)) {
+            final Comparator<Transaction> column = columnComparator(sortKey.getColumn());
+            comparator = comparator.thenComparing(sortKey.isAscending() ? column : column.reversed());
+        }
+        return comparator;
+    }
+
+    private static List<SortKey> effective(List<SortKey> sortKeys) {
+        return sortKeys.isEmpty() ? Collections.singletonList(new SortKey(Column.INCOME_FIRST, true)) : sortKeys;
+    }
+
+    private static Comparator<Transaction> columnComparator(Column column) {
+        switch (column) {
+            case TITLE:
+                return Comparator.comparing(Transaction::getTitle, TEXT_ORDER);
+            case CATEGORY:
+                return Comparator.comparing(Transaction::getCategory, TEXT_ORDER);
+            case PERIOD:
+                return Comparator.comparingLong(TableSorter::periodKey);
+            case VALUE:
+                return Comparator.comparingLong(Transaction::getAmountCents);
+            case CURRENCY:
+                return Comparator.comparing(Transaction::getCurrency, TEXT_ORDER);
+            case YEARLY:
+                return Comparator.comparingLong(TableSorter::yearlyKey);
+            case SOURCE:
+                return Comparator.comparing(Transaction::getSource, TEXT_ORDER);
+            case START:
+                return Comparator.comparingInt(Transaction::getStartDay);
+            case END:
+                return Comparator.comparingInt(Transaction::getEndDay);
+            default:
+                return Comparator.comparingInt(transaction -> transaction.isExpense() ? 1 : 0);
+        }
+    }
+
+    /**
+     * The key of every row for the sort key. A descending column gets inverted keys, so the sort itself is always
+     * ascending.
+     */
+    private static long[] keys(List<Transaction> transactions, SortKey sortKey) {
+        final long[] keys = new long[transactions.size()];
+        final Column column = sortKey.getColumn();
+        if (column == Column.TITLE || column == Column.CATEGORY || column == Column.CURRENCY || column == Column.SOURCE) {
+            final List<String> values = new ArrayList<>(transactions.size());
+            for (Transaction transaction : transactions) {
+                values.add(column == Column.TITLE ? transaction.getTitle()
+                        : column == Column.CATEGORY ? transaction.getCategory()
+                        : column == Column.CURRENCY ? transaction.getCurrency() : transaction.getSource());
+            }
+            final Map<String, Long> ranks = ranks(values);
+            for (int i = 0; i < keys.length; ++i) {
+                keys[i] = ranks.get(values.get(i));
+            }
+        } else {
+            for (int i = 0; i < keys.length; ++i) {
+                final Transaction transaction = transactions.get(i);
+                if (column == Column.PERIOD) {
+                    keys[i] = periodKey(transaction);
+                } else if (column == Column.VALUE) {
+                    keys[i] = transaction.getAmountCents();
+                } else if (column == Column.YEARLY) {
+                    keys[i] = yearlyKey(transaction);
+                } else if (column == Column.START) {
+                    //Rows without a date have the smallest day, so they come first.
+                    keys[i] = transaction.getStartDay();
+                } else if (column == Column.END) {
+                    keys[i] = transaction.getEndDay();
+                } else {
+                    keys[i] = transaction.isExpense() ? 1 : 0;
+                }
+            }
+        }
+        if (!sortKey.isAscending()) {
+            for (int i = 0; i < keys.length; ++i) {
+                //Unlike negating, inverting the bits reverses the order of every long without overflowing.
+                keys[i] = ~keys[i];
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Rank of every distinct value. Values which are equal in the text order get the same rank.
+     */
+    private static Map<String, Long> ranks(List<String> values) {
+        final Map<String, Long> ranks = new HashMap<>();
+        for (String value : values) {
+            ranks.put(value, 0L);
+        }
+        final List<String> distinct = new ArrayList<>(ranks.keySet());
+        distinct.sort(TEXT_ORDER);
+        long rank = 0;
+        for (int i = 0; i < distinct.size(); ++i) {
+            if (i > 0 && TEXT_ORDER.compare(distinct.get(i - 1), distinct.get(i)) != 0) {
+                rank++;
+            }
+            ranks.put(distinct.get(i), rank);
+        }
+        return ranks;
+    }
+
+    /**
+     * The known periods from the longest to the shortest, unknown periods last.
+     */
+    private static long periodKey(Transaction transaction) {
+        final int code = transaction.getPeriodCode();
+        return Period.isKnown(code) ? code : Period.count();
+    }
+
+    /**
+     * Rows with an unknown period have no yearly value, they are sorted like the largest value.
+     */
+    private static long yearlyKey(Transaction transaction) {
+        return transaction.hasKnownPeriod() ? transaction.getYearlyCents() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Stable merge sort of the row indices in [from, to) by the keys, column after column.
+     */
+    private static void mergeSort(int[] order, int[] buffer, int from, int to, long[][] keys) {
+        if (to - from < 2) {
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        mergeSort(order, buffer, from, middle, keys);
+        mergeSort(order, buffer, middle, to, keys);
+        if (compare(order[middle - 1], order[middle], keys) <= 0) {
+            return;
+        }
+        System.arraycopy(order, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; ++i) {
+            if (right >= to || (left < middle && compare(buffer[left], buffer[right], keys) <= 0)) {
+                order[i] = buffer[left++];
+            } else {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+
+    private static int compare(int a, int b, long[][] keys) {
+        for (long[] column : keys) {
+            final int result = Long.compare(column[a], column[b]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,127 @@
+package controller;
+
+import core.Totals;
+import javafx.collections.ListChangeListener;
+import model.Period;
+import model.Transaction;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the yearly sum of a transaction list up to date. Only the rows of a change are looked at, so adding,
+ * deleting or editing a row costs O(1) instead of a pass over the whole list. A change replacing the whole list
+ * (loading a file) rebuilds the sum from scratch.
+ *
+ * The rows with a currency are also summed up per currency, so the sum can be converted to another currency without
+ * a pass over the rows.
+ */
+public class TotalsAggregator implements ListChangeListener<Transaction> {
+
+    private Totals expectedReplacement;
+    private long yearlyCents = 0;
+    private int rowCount = 0;
+    private int invalidRows = 0;
+    private long[] yearlyCentsByCurrency = new long[0];
+    private long[] rowsByCurrency = new long[0];
+
+    @Override
+    public void onChanged(Change<? extends Transaction> change) {
+        while (change.next()) {
+            if (change.wasPermutated() || change.wasUpdated()) {
+                continue;
+            }
+            if (change.getRemovedSize() == rowCount && change.getAddedSize() == change.getList().size()) {
+                if (expectedReplacement != null && expectedReplacement.getRows() == change.getAddedSize()) {
+                    yearlyCents = expectedReplacement.getYearlyCents();
+                    rowCount = change.getAddedSize();
+                    invalidRows = (int) expectedReplacement.getInvalidRows();
+                    yearlyCentsByCurrency = new long[expectedReplacement.currencies()];
+                    rowsByCurrency = new long[expectedReplacement.currencies()];
+                    for (int id = 0; id < rowsByCurrency.length; ++id) {
+                        yearlyCentsByCurrency[id] = expectedReplacement.yearlyCentsOf(id);
+                        rowsByCurrency[id] = expectedReplacement.rowsOf(id);
+                    }
+                } else {
+                    rebuild(change.getList());
+                }
+                expectedReplacement = null;
+                continue;
+            }
+            for (Transaction removed : change.getRemoved()) {
+                remove(removed);
+            }
+            for (Transaction added : change.getAddedSubList()) {
+                add(added);
+            }
+        }
+    }
+
+    /**
+     * The totals of the rows which are about to replace the whole list, if they are calculated already (e.g. by
+     * {@link core.SheetMerger}). The replacing change then takes them instead of a pass over the list.
+     */
+    public void expectReplacement(Totals totals) {
+        expectedReplacement = totals;
+    }
+
+    /**
+     * Recalculates the sum over all rows of the list.
+     */
+    public void rebuild(List<? extends Transaction> transactions) {
+        yearlyCents = 0;
+        rowCount = 0;
+        invalidRows = 0;
+        Arrays.fill(yearlyCentsByCurrency, 0);
+        Arrays.fill(rowsByCurrency, 0);
+        for (Transaction transaction : transactions) {
+            add(transaction);
+        }
+    }
+
+    /**
+     * The current sum as {@link Totals}, so it's calculated to month, week, day and hour the same way as in batch mode.
+     */
+    public Totals getTotals() {
+        return new Totals(yearlyCents, rowCount, invalidRows, yearlyCentsByCurrency.clone(), rowsByCurrency.clone());
+    }
+
+    public long getYearlyCents() {
+        return yearlyCents;
+    }
+
+    /**
+     * Number of rows whose period is unknown and which therefore aren't part of the sum.
+     */
+    public int getInvalidRows() {
+        return invalidRows;
+    }
+
+    //The yearly cents of an unknown period are 0 (see Period.yearlyFactor()), so the sum needs no branch for them.
+    private void add(Transaction transaction) {
+        yearlyCents += transaction.getYearlyCents();
+        invalidRows += Period.unknown(transaction.getPeriodCode());
+        rowCount++;
+        final int currencyId = transaction.getCurrencyId();
+        if (currencyId >= 0) {
+            if (currencyId >= rowsByCurrency.length) {
+                yearlyCentsByCurrency = Arrays.copyOf(yearlyCentsByCurrency, Transaction.currencyCount());
+                rowsByCurrency = Arrays.copyOf(rowsByCurrency, Transaction.currencyCount());
+            }
+            yearlyCentsByCurrency[currencyId] += transaction.getYearlyCents();
+            rowsByCurrency[currencyId]++;
+        }
+    }
+
+    private void remove(Transaction transaction) {
+        yearlyCents -= transaction.getYearlyCents();
+        invalidRows -= Period.unknown(transaction.getPeriodCode());
+        rowCount--;
+        final int currencyId = transaction.getCurrencyId();
+        if (currencyId >= 0) {
+            //The row was added before, so its currency has a slot.
+            yearlyCentsByCurrency[currencyId] -= transaction.getYearlyCents();
+            rowsByCurrency[currencyId]--;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package controller;
+
+import javafx.collections.ModifiableObservableListBase;
+import model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The observable list of the table. Besides the usual changes, it can be put into an order which was calculated
+ * elsewhere (see {@link TableSorter}) with {@link #reorder(int[])}, which costs O(n) and is reported to the listeners
+ * as a single permutation. Clearing and removing many rows at once also cost O(n), not O(n) per removed row, and
+ * copying the list (as the listeners do with the rows of a change) is a single array copy.
+ */
+public class TransactionList extends ModifiableObservableListBase<Transaction> {
+
+    private final ArrayList<Transaction> rows = new ArrayList<>();
+
+    /**
+     * Puts the rows into a new order.
+     *
+     * @param order the old index of each row, in the new order.
+     */
+    public void reorder(int[] order) {
+        if (order.length != rows.size()) {
+            throw new IllegalArgumentException("Order has " + order.length + " rows, the list has " + rows.size());
+        }
+        final Transaction[] reordered = new Transaction[order.length];
+        final int[] permutation = new int[order.length];
+        for (int newIndex = 0; newIndex < order.length; ++newIndex) {
+            reordered[newIndex] = rows.get(order[newIndex]);
+            permutation[order[newIndex]] = newIndex;
+        }
+        for (int i = 0; i < reordered.length; ++i) {
+            rows.set(i, reordered[i]);
+        }
+        modCount++;
+        beginChange();
+        nextPermutation(0, permutation.length, permutation);
+        endChange();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Transaction> transactions) {
+        rows.ensureCapacity(rows.size() + transactions.size());
+        return super.addAll(transactions);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> transactions) {
+        if (transactions.isEmpty() || rows.isEmpty()) {
+            return false;
+        }
+        final ArrayList<Transaction> kept = new ArrayList<>(rows.size());
+        List<Transaction> removed = new ArrayList<>();
+        beginChange();
+        for (Transaction row : rows) {
+            if (transactions.contains(row)) {
+                removed.add(row);
+            } else {
+                if (!removed.isEmpty()) {
+                    nextRemove(kept.size(), removed);
+                    removed = new ArrayList<>();
+                }
+                kept.add(row);
+            }
+        }
+        if (!removed.isEmpty()) {
+            nextRemove(kept.size(), removed);
+        }
+        final boolean changed = kept.size() != rows.size();
+        rows.clear();
+        rows.addAll(kept);
+        modCount++;
+        endChange();
+        return changed;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex == toIndex) {
+            return;
+        }
+        final List<Transaction> range = rows.subList(fromIndex, toIndex);
+        final List<Transaction> removed = new ArrayList<>(range);
+        range.clear();
+        modCount++;
+        beginChange();
+        nextRemove(fromIndex, removed);
+        endChange();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return rows.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] array) {
+        return rows.toArray(array);
+    }
+
+    @Override
+    public Transaction get(int index) {
+        return rows.get(index);
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    protected void doAdd(int index, Transaction element) {
+        rows.add(index, element);
+    }
+
+    @Override
+    protected Transaction doSet(int index, Transaction element) {
+        return rows.set(index, element);
+    }
+
+    @Override
+    protected Transaction doRemove(int index) {
+        return rows.remove(index);
+    }
+}
@@ -0,0 +1,300 @@
+package controller;
+
+import core.PersistentVector;
+import javafx.collections.ListChangeListener;
+import model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unlimited undo and redo of the rows which were added and deleted. Every step keeps the version of the list before
+ * and after it as {@link PersistentVector}, which share all but O(log n) of their memory with each other.
+ *
+ * The history listens to the list to keep its own version up to date. As long as the rows are still in the order of
+ * a step, undoing it only puts back the rows at their index. If the list was sorted since, it gets the content of
+ * the step's version and has to be sorted again (see {@link Edit#isReplaced()}).
+ */
+public class UndoHistory implements ListChangeListener<Transaction> {
+
+    /**
+     * Changes with more rows (e.g. loading a sheet) aren't followed row by row, the version is rebuilt from the list
+     * when it's needed the next time.
+     */
+    private static final int MAX_FOLLOWED_ROWS = 64;
+
+    private final TransactionList transactionList;
+
+    //steps.get(0) is the state after the last reset, the current state is steps.get(position).
+    private final List<Step> steps = new ArrayList<>();
+    private int position = 0;
+    private Step savedStep;
+    private PersistentVector<Transaction> current;
+    private boolean applying = false;
+    private long permutations = 0;
+
+    public UndoHistory(TransactionList transactionList) {
+        this.transactionList = transactionList;
+        reset();
+    }
+
+    /**
+     * What an undo or redo did to the list, so it can be written to the journal.
+     */
+    public static final class Edit {
+
+        private final List<Transaction> added;
+        private final List<Transaction> removed;
+        private final boolean replaced;
+
+        private Edit(List<Transaction> added, List<Transaction> removed, boolean replaced) {
+            this.added = added;
+            this.removed = removed;
+            this.replaced = replaced;
+        }
+
+        public List<Transaction> getAdded() {
+            return added;
+        }
+
+        public List<Transaction> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * True, if the whole list was replaced because it wasn't in the order of the step anymore.
+         */
+        public boolean isReplaced() {
+            return replaced;
+        }
+    }
+
+    private static final class Step {
+
+        private final PersistentVector<Transaction> before;
+        private final PersistentVector<Transaction> after;
+        private final int index;
+        private final int removedRows;
+        private final int addedRows;
+
+        private Step(PersistentVector<Transaction> before, PersistentVector<Transaction> after, int index, int removedRows, int addedRows) {
+            this.before = before;
+            this.after = after;
+            this.index = index;
+            this.removedRows = removedRows;
+            this.addedRows = addedRows;
+        }
+    }
+
+    /**
+     * The state of the history when an append started.
+     */
+    private static final class Append {
+
+        private final Step start;
+        private final Step step;
+        private final PersistentVector<Transaction> before;
+        private final int index;
+        private final long permutations;
+
+        private Append(Step start, Step step, PersistentVector<Transaction> before, int index, long permutations) {
+            this.start = start;
+            this.step = step;
+            this.before = before;
+            this.index = index;
+            this.permutations = permutations;
+        }
+    }
+
+    @Override
+    public void onChanged(Change<? extends Transaction> change) {
+        if (applying) {
+            return;
+        }
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                permutations++;
+            }
+            if (current == null || change.wasUpdated()) {
+                continue;
+            }
+            if (change.wasPermutated() || change.getRemovedSize() + change.getAddedSize() > MAX_FOLLOWED_ROWS) {
+                current = null;
+                continue;
+            }
+            for (int i = 0; i < change.getRemovedSize(); ++i) {
+                current = current.remove(change.getFrom());
+            }
+            for (int i = change.getFrom(); i < change.getTo(); ++i) {
+                current = current.insert(i, change.getList().get(i));
+            }
+        }
+    }
+
+    /**
+     * Forgets all steps, the current rows are the new start (e.g. after a sheet was loaded). They count as saved.
+     */
+    public void reset() {
+        steps.clear();
+        steps.add(new Step(null, version(), 0, 0, 0));
+        position = 0;
+        savedStep = steps.get(0);
+    }
+
+    /**
+     * Adds the row at the index as new step. Steps which were undone can't be redone anymore.
+     */
+    public void add(int index, Transaction transaction) {
+        final PersistentVector<Transaction> before = version();
+        transactionList.add(index, transaction);
+        push(new Step(before, version(), index, 0, 1));
+    }
+
+    /**
+     * Removes the row at the index as new step.
+     */
+    public Transaction remove(int index) {
+        final PersistentVector<Transaction> before = version();
+        final Transaction removed = transactionList.remove(index);
+        push(new Step(before, version(), index, 1, 0));
+        return removed;
+    }
+
+    /**
+     * Replaces all rows as new step, e.g. with copies which got other categories.
+     */
+    public void replaceAll(List<Transaction> transactions) {
+        final PersistentVector<Transaction> before = version();
+        transactionList.setAll(transactions);
+        push(new Step(before, version(), 0, before.size(), transactions.size()));
+    }
+
+    /**
+     * Starts a step which appends rows to the list in several changes, e.g. while a statement is imported. The step
+     * is added by {@link #finishAppend(Object)}, so the whole import is undone at once.
+     *
+     * @return the token to pass to {@link #finishAppend(Object)}.
+     */
+    public Object startAppend() {
+        return new Append(steps.get(0), steps.get(position), version(), transactionList.size(), permutations);
+    }
+
+    /**
+     * Adds the rows appended since {@link #startAppend()} as one step. If the history was reset meanwhile (e.g. by
+     * loading a sheet), the rows belong to the new start. If other steps were added or undone or the list was sorted
+     * meanwhile, the appended rows can't be told apart anymore, so the history starts anew.
+     */
+    public void finishAppend(Object token) {
+        final Append append = (Append) token;
+        if (steps.get(0) != append.start) {
+            return;
+        }
+        final int rows = transactionList.size() - append.index;
+        if (steps.get(position) != append.step || permutations != append.permutations || rows < 0) {
+            final boolean saved = isSaved();
+            reset();
+            if (!saved) {
+                savedStep = null;
+            }
+            return;
+        }
+        if (rows > 0) {
+            push(new Step(append.before, version(), append.index, 0, rows));
+        }
+    }
+
+    /**
+     * Reverts the last step.
+     *
+     * @return what was done to the list, or null if there's nothing to undo.
+     */
+    public Edit undo() {
+        if (!canUndo()) {
+            return null;
+        }
+        final Step step = steps.get(position--);
+        return apply(step.after, step.before, step.index, step.addedRows, step.removedRows);
+    }
+
+    /**
+     * Applies the last undone step again.
+     *
+     * @return what was done to the list, or null if there's nothing to redo.
+     */
+    public Edit redo() {
+        if (!canRedo()) {
+            return null;
+        }
+        final Step step = steps.get(++position);
+        return apply(step.before, step.after, step.index, step.removedRows, step.addedRows);
+    }
+
+    public boolean canUndo() {
+        return position > 0;
+    }
+
+    public boolean canRedo() {
+        return position < steps.size() - 1;
+    }
+
+    /**
+     * The state which is about to be saved, to be passed to {@link #markSaved(Object)} when the save succeeded.
+     */
+    public Object savePoint() {
+        return steps.get(position);
+    }
+
+    public void markSaved(Object savePoint) {
+        savedStep = (Step) savePoint;
+    }
+
+    /**
+     * True, if the rows are the ones which were saved (or loaded) last, even if that's reached by undoing or redoing.
+     */
+    public boolean isSaved() {
+        return steps.get(position) == savedStep;
+    }
+
+    private void push(Step step) {
+        steps.subList(position + 1, steps.size()).clear();
+        steps.add(step);
+        position++;
+    }
+
+    /**
+     * Turns the list from one version into the other, which differ by the rows at the index.
+     */
+    private Edit apply(PersistentVector<Transaction> from, PersistentVector<Transaction> to, int index, int removedRows, int addedRows) {
+        final List<Transaction> removed = from.subList(index, index + removedRows);
+        final List<Transaction> added = to.subList(index, index + addedRows);
+        final boolean replaced = version() != from;
+        applying = true;
+        try {
+            if (replaced) {
+                transactionList.setAll(to.toList());
+            } else {
+                if (removedRows > 0) {
+                    transactionList.remove(index, index + removedRows);
+                }
+                if (addedRows > 0) {
+                    transactionList.addAll(index, added);
+                }
+            }
+        } finally {
+            applying = false;
+        }
+        current = to;
+        return new Edit(Collections.unmodifiableList(added), Collections.unmodifiableList(removed), replaced);
+    }
+
+    /**
+     * The version of the current rows, rebuilt if the history couldn't follow the last changes.
+     */
+    private PersistentVector<Transaction> version() {
+        if (current == null) {
+            current = PersistentVector.of(transactionList);
+        }
+        return current;
+    }
+}
@@ -0,0 +1,252 @@
+package core;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import model.Money;
+import model.Transaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Command line batch mode: calculates the totals of every sheet in a directory (and its subdirectories) on a
+ * fork-join pool and writes a summary as JSON.
+ *
+ * Usage: {@code BatchCalculator <directory> [summary.json]}. Without a summary file, the summary is printed.
+ */
+public final class BatchCalculator {
+
+    /**
+     * Sheets which are calculated by one task without splitting it any further.
+     */
+    private static final int SHEETS_PER_TASK = 4;
+
+    private final ForkJoinPool pool;
+
+    public BatchCalculator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Totals of a single sheet, or the reason why it couldn't be read.
+     */
+    public static final class SheetResult {
+
+        private final Path sheet;
+        private final Totals totals;
+        private final String error;
+
+        private SheetResult(Path sheet, Totals totals, String error) {
+            this.sheet = sheet;
+            this.totals = totals;
+            this.error = error;
+        }
+
+        public Path getSheet() {
+            return sheet;
+        }
+
+        /**
+         * Null, if the sheet couldn't be read.
+         */
+        public Totals getTotals() {
+            return totals;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Result of a whole batch. The sheets are in the order they were given.
+     */
+    public static final class Summary {
+
+        private final List<SheetResult> sheets;
+        private final Totals combined;
+        private final long durationNanos;
+
+        private Summary(List<SheetResult> sheets, Totals combined, long durationNanos) {
+            this.sheets = sheets;
+            this.combined = combined;
+            this.durationNanos = durationNanos;
+        }
+
+        public List<SheetResult> getSheets() {
+            return sheets;
+        }
+
+        /**
+         * Sum of all sheets which could be read.
+         */
+        public Totals getCombined() {
+            return combined;
+        }
+
+        public long getDurationMillis() {
+            return durationNanos / 1_000_000;
+        }
+
+        public double getSheetsPerSecond() {
+            return durationNanos > 0 ? sheets.size() * 1e9 / durationNanos : 0;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: BatchCalculator <directory> [summary.json]");
+            System.exit(2);
+        }
+        final Path directory = Paths.get(args[0]);
+        final Path output = args.length > 1 ? Paths.get(args[1]).toAbsolutePath() : null;
+
+        final List<Path> sheets = findSheets(directory, output);
+        final Summary summary = new BatchCalculator(ForkJoinPool.commonPool()).calculate(sheets);
+
+        if (output != null) {
+            SheetFiles.writeAtomically(output.toFile(), target -> {
+                try (JsonGenerator generator = SheetFiles.jsonFactory().createGenerator(target.toFile(), JsonEncoding.UTF8)) {
+                    writeSummary(generator, summary);
+                }
+            });
+        } else {
+            try (JsonGenerator generator = SheetFiles.jsonFactory().createGenerator(System.out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                writeSummary(generator, summary);
+            }
+            System.out.println();
+        }
+        System.err.printf("%d sheets in %d ms (%.1f sheets/s), %d failed%n", summary.getSheets().size(),
+                summary.getDurationMillis(), summary.getSheetsPerSecond(),
+                summary.getSheets().stream().filter(sheet -> sheet.getTotals() == null).count());
+        Telemetry.dumpIfRequested();
+    }
+
+    /**
+     * All sheets below the directory, sorted by path. The file the summary is written to is left out.
+     */
+    public static List<Path> findSheets(Path directory, Path exclude) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(SheetFiles::isSheet)
+                    .filter(file -> exclude == null || !file.toAbsolutePath().equals(exclude))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Calculates the totals of all sheets in parallel. A sheet which can't be read doesn't stop the others.
+     */
+    public Summary calculate(List<Path> sheets) {
+        final long start = System.nanoTime();
+        final List<SheetResult> results = pool.invoke(new SheetsTask(sheets));
+        Totals combined = Totals.EMPTY;
+        for (SheetResult result : results) {
+            if (result.getTotals() != null) {
+                combined = combined.plus(result.getTotals());
+            }
+        }
+        return new Summary(Collections.unmodifiableList(results), combined, System.nanoTime() - start);
+    }
+
+    static SheetResult calculate(Path sheet) {
+        try {
+            return new SheetResult(sheet, SheetFiles.readTotals(sheet), null);
+        } catch (IOException | UncheckedIOException | NumberFormatException e) {
+            return new SheetResult(sheet, null, String.valueOf(e.getMessage()));
+        }
+    }
+
+    public static void writeSummary(JsonGenerator generator, Summary summary) throws IOException {
+        generator.useDefaultPrettyPrinter();
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("sheets");
+        for (SheetResult sheet : summary.getSheets()) {
+            generator.writeStartObject();
+            generator.writeStringField("file", sheet.getSheet().toString());
+            if (sheet.getTotals() != null) {
+                writeTotals(generator, sheet.getTotals());
+            } else {
+                generator.writeStringField("error", sheet.getError());
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeObjectFieldStart("combined");
+        writeTotals(generator, summary.getCombined());
+        generator.writeEndObject();
+        generator.writeNumberField("durationMillis", summary.getDurationMillis());
+        generator.writeNumberField("sheetsPerSecond", summary.getSheetsPerSecond());
+        generator.writeEndObject();
+    }
+
+    static void writeTotals(JsonGenerator generator, Totals totals) throws IOException {
+        generator.writeNumberField("year", totals.perYear());
+        generator.writeNumberField("month", totals.perMonth());
+        generator.writeNumberField("week", totals.perWeek());
+        generator.writeNumberField("day", totals.perDay());
+        generator.writeNumberField("hour", totals.perHour());
+        generator.writeNumberField("rows", totals.getRows());
+        generator.writeNumberField("invalidRows", totals.getInvalidRows());
+        //The figures above add up the values as they are, the rows with a currency are listed by currency.
+        boolean currencies = false;
+        for (int id = 0; id < totals.currencies(); ++id) {
+            if (totals.rowsOf(id) == 0) {
+                continue;
+            }
+            if (!currencies) {
+                generator.writeObjectFieldStart("yearByCurrency");
+                currencies = true;
+            }
+            generator.writeNumberField(Transaction.currencyForId(id), Money.toDouble(totals.yearlyCentsOf(id)));
+        }
+        if (currencies) {
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Splits the sheets in halves until only a few are left, which are then calculated one after another.
+     */
+    private static final class SheetsTask extends RecursiveTask<List<SheetResult>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> sheets;
+
+        SheetsTask(List<Path> sheets) {
+            this.sheets = sheets;
+        }
+
+        @Override
+        protected List<SheetResult> compute() {
+            if (sheets.size() <= SHEETS_PER_TASK) {
+                final List<SheetResult> results = new ArrayList<>(sheets.size());
+                for (Path sheet : sheets) {
+                    results.add(calculate(sheet));
+                }
+                return results;
+            }
+            final int middle = sheets.size() / 2;
+            final SheetsTask left = new SheetsTask(sheets.subList(0, middle));
+            left.fork();
+            final List<SheetResult> results = new ArrayList<>(sheets.size());
+            final List<SheetResult> right = new SheetsTask(sheets.subList(middle, sheets.size())).compute();
+            results.addAll(left.join());
+            results.addAll(right);
+            return results;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package core;
+
+import core.SheetFiles.ProgressListener;
+import model.Transaction;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * Reads ISO 20022 CAMT statements (camt.052 reports, camt.053 statements and camt.054 notifications) with a StAX
+ * stream, so only the current entry ({@code Ntry}) is in memory. Elements are matched by their local name, which
+ * works for every version of the schemas.
+ *
+ * Every booked entry becomes a transaction: its amount (in the currency of the amount) with the sign of the
+ * credit/debit indicator (flipped for reversals), and as title the other party (the creditor of a debit, the debtor of
+ * a credit), or the unstructured remittance text, or the additional entry information. It happened on the booking date,
+ * or on the value date if the entry has no booking date. Pending entries are rejected, they are booked later in another
+ * statement. An entry with several transaction details (a batch booking) is one transaction.
+ */
+final class CamtStatementReader {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final XMLInputFactory XML_INPUT = createInputFactory();
+
+    private CamtStatementReader() {}
+
+    /**
+     * What is collected of an entry while it's read.
+     */
+    private static final class Entry {
+
+        private long line;
+        private String amount;
+        private String currency;
+        private String indicator;
+        private boolean reversal;
+        private String status;
+        private String bookingDate;
+        private String valueDate;
+        private String additionalInfo;
+        private String creditorName;
+        private String debtorName;
+        private final StringBuilder remittance = new StringBuilder();
+        private int transactionDetails;
+
+        private void reset(long line) {
+            this.line = line;
+            amount = null;
+            currency = null;
+            indicator = null;
+            reversal = false;
+            status = null;
+            bookingDate = null;
+            valueDate = null;
+            additionalInfo = null;
+            creditorName = null;
+            debtorName = null;
+            remittance.setLength(0);
+            transactionDetails = 0;
+        }
+    }
+
+    static StatementImport.Report read(Path path, Consumer<List<Transaction>> batchConsumer, ProgressListener progress) throws IOException {
+        final StatementImport.Report report = new StatementImport.Report();
+        final long fileSize = Files.size(path);
+        try (InputStream input = new BufferedInputStream(Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ)), READ_BUFFER_SIZE)) {
+            final XMLStreamReader reader = XML_INPUT.createXMLStreamReader(input);
+            try {
+                final List<String> elements = new ArrayList<>();
+                final StringBuilder text = new StringBuilder();
+                final Entry entry = new Entry();
+                List<Transaction> batch = new ArrayList<>(SheetFiles.LOAD_BATCH_SIZE);
+                boolean inEntry = false;
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            elements.add(reader.getLocalName());
+                            text.setLength(0);
+                            if ("Ntry".equals(reader.getLocalName())) {
+                                inEntry = true;
+                                entry.reset(reader.getLocation().getLineNumber());
+                            } else if (inEntry && "TxDtls".equals(reader.getLocalName())) {
+                                entry.transactionDetails++;
+                            } else if (inEntry && "Amt".equals(reader.getLocalName()) && "Ntry".equals(elements.get(elements.size() - 2))) {
+                                entry.currency = reader.getAttributeValue(null, "Ccy");
+                            }
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                            if (inEntry) {
+                                text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                            }
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            if (inEntry) {
+                                if ("Ntry".equals(reader.getLocalName())) {
+                                    inEntry = false;
+                                    addEntry(entry, batch, report);
+                                    if (batch.size() == SheetFiles.LOAD_BATCH_SIZE) {
+                                        batchConsumer.accept(batch);
+                                        batch = new ArrayList<>(SheetFiles.LOAD_BATCH_SIZE);
+                                        if (!progress.update(reader.getLocation().getCharacterOffset(), fileSize)) {
+                                            throw new CancellationException();
+                                        }
+                                    }
+                                } else {
+                                    collect(entry, elements, text.toString().trim());
+                                }
+                            }
+                            elements.remove(elements.size() - 1);
+                            text.setLength(0);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batchConsumer.accept(batch);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid CAMT statement: " + path, e);
+        }
+        return report;
+    }
+
+    /**
+     * Keeps the text of an element of the entry, which ends now.
+     */
+    private static void collect(Entry entry, List<String> elements, String text) {
+        final String name = elements.get(elements.size() - 1);
+        final String parent = elements.size() > 1 ? elements.get(elements.size() - 2) : "";
+        if ("Ntry".equals(parent)) {
+            switch (name) {
+                case "Amt":
+                    entry.amount = text;
+                    break;
+                case "CdtDbtInd":
+                    entry.indicator = text;
+                    break;
+                case "RvslInd":
+                    entry.reversal = "true".equalsIgnoreCase(text);
+                    break;
+                case "Sts":
+                    entry.status = text.isEmpty() ? entry.status : text;
+                    break;
+                case "AddtlNtryInf":
+                    entry.additionalInfo = text;
+                    break;
+                default:
+                    break;
+            }
+            return;
+        }
+        final boolean entryChild = elements.size() > 2 && "Ntry".equals(elements.get(elements.size() - 3));
+        if ("Cd".equals(name) && "Sts".equals(parent) && entryChild) {
+            entry.status = text;
+            return;
+        }
+        //BookgDt/Dt or BookgDt/DtTm, and the same for ValDt.
+        if (("Dt".equals(name) || "DtTm".equals(name)) && entryChild) {
+            if ("BookgDt".equals(parent)) {
+                entry.bookingDate = text;
+            } else if ("ValDt".equals(parent)) {
+                entry.valueDate = text;
+            }
+            return;
+        }
+        //Only the first transaction details name the parties, the others of a batch booking are alike.
+        if (entry.transactionDetails != 1 || !"Nm".equals(name)) {
+            if (entry.transactionDetails == 1 && "Ustrd".equals(name) && !text.isEmpty()) {
+                if (entry.remittance.length() > 0) {
+                    entry.remittance.append(' ');
+                }
+                entry.remittance.append(text);
+            }
+            return;
+        }
+        //Cdtr/Nm up to version 7, Cdtr/Pty/Nm since version 8.
+        final String party = "Pty".equals(parent) && elements.size() > 2 ? elements.get(elements.size() - 3) : parent;
+        final boolean related = elements.contains("RltdPties");
+        if (related && "Cdtr".equals(party) && entry.creditorName == null) {
+            entry.creditorName = text;
+        } else if (related && "Dbtr".equals(party) && entry.debtorName == null) {
+            entry.debtorName = text;
+        }
+    }
+
+    private static void addEntry(Entry entry, List<Transaction> batch, StatementImport.Report report) {
+        final String description = "Entry " + (entry.amount != null ? entry.amount : "") + " " + (entry.indicator != null ? entry.indicator : "");
+        if ("PDNG".equals(entry.status) || "INFO".equals(entry.status)) {
+            report.reject(entry.line, "Not booked (" + entry.status + ")", description);
+            return;
+        }
+        long cents;
+        try {
+            cents = Math.abs(StatementImport.parseAmount(entry.amount == null ? "" : entry.amount));
+        } catch (NumberFormatException e) {
+            report.reject(entry.line, "Invalid amount", description);
+            return;
+        }
+        if ("DBIT".equals(entry.indicator)) {
+            cents = -cents;
+        } else if (!"CRDT".equals(entry.indicator)) {
+            report.reject(entry.line, "Unknown debit/credit indicator", description);
+            return;
+        }
+        if (entry.reversal) {
+            cents = -cents;
+        }
+        String title = cents < 0 ? entry.creditorName : entry.debtorName;
+        if (title == null || title.isEmpty()) {
+            title = entry.remittance.length() > 0 ? entry.remittance.toString() : entry.additionalInfo;
+        }
+        final int day = StatementImport.parseDay(entry.bookingDate != null ? entry.bookingDate : entry.valueDate);
+        batch.add(StatementImport.transaction(title, cents, day, null, entry.currency));
+        report.imported(1);
+    }
+
+    /**
+     * Without DTDs and external entities, a statement can't make the parser read other files.
+     */
+    private static XMLInputFactory createInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+}
@@ -0,0 +1,367 @@
+package core;
+
+import model.Period;
+import model.Transaction;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * The balance of the account day by day, from the first day of the timeline on for a number of years. Every
+ * transaction recurs with its period: from its start date (or the first day of the timeline, if it has none) up to
+ * its end date (or the last day). Monthly, quarterly, half-yearly and yearly transactions recur on the day of the
+ * month of their start, in shorter months on the last day. Rows with an unknown period aren't part of it.
+ *
+ * The money which comes in or goes out per day is kept in a segment tree, every node with the sum of its days and the
+ * lowest running sum within them. So the balance on a day and the lowest balance between two days are found in
+ * O(log days), and adding or removing a transaction costs O(log days) per time it recurs. {@link #rebuild} calculates
+ * the whole timeline in O(rows + days).
+ *
+ * Not thread safe.
+ */
+public final class CashFlowTimeline {
+
+    private static final Telemetry.Operation REBUILD = Telemetry.operation("projection.rebuild");
+
+    /**
+     * The months between two recurrences of the periods which recur on a day of the month, by period code. 0 for
+     * the others.
+     */
+    private static final int[] MONTH_STRIDES = new int[Period.count()];
+
+    static {
+        MONTH_STRIDES[Period.YEAR.ordinal()] = 12;
+        MONTH_STRIDES[Period.SIX_MONTHS.ordinal()] = 6;
+        MONTH_STRIDES[Period.QUARTER.ordinal()] = 3;
+        MONTH_STRIDES[Period.MONTH.ordinal()] = 1;
+    }
+
+    private final LocalDate firstDate;
+    private final int firstDay;
+    private final int days;
+    private final int leaves;
+
+    /**
+     * Sum of the days below each node. The root is 1, the days are the leaves from {@link #leaves} on.
+     */
+    private final long[] sums;
+
+    /**
+     * The lowest running sum within the days below each node, counted from its first day.
+     */
+    private final long[] minimums;
+
+    private long openingCents = 0;
+
+    /**
+     * @param firstDate the first day, e.g. today.
+     * @param years     how far the timeline reaches.
+     */
+    public CashFlowTimeline(LocalDate firstDate, int years) {
+        if (years < 1) {
+            throw new IllegalArgumentException("A timeline needs at least one year: " + years);
+        }
+        this.firstDate = firstDate;
+        this.firstDay = (int) firstDate.toEpochDay();
+        this.days = (int) ChronoUnit.DAYS.between(firstDate, firstDate.plusYears(years));
+        this.leaves = Integer.highestOneBit(days - 1) << 1;
+        this.sums = new long[2 * leaves];
+        this.minimums = new long[2 * leaves];
+    }
+
+    public LocalDate getFirstDate() {
+        return firstDate;
+    }
+
+    public LocalDate getLastDate() {
+        return firstDate.plusDays(days - 1);
+    }
+
+    /**
+     * Number of days of the timeline.
+     */
+    public int getDays() {
+        return days;
+    }
+
+    /**
+     * The balance before the first day.
+     */
+    public long getOpeningCents() {
+        return openingCents;
+    }
+
+    public void setOpeningCents(long openingCents) {
+        this.openingCents = openingCents;
+    }
+
+    /**
+     * Calculates the timeline from scratch: every transaction is added to a difference array per way it recurs, and
+     * each array is summed up once.
+     */
+    public void rebuild(List<? extends Transaction> transactions) {
+        try (Telemetry.Span span = REBUILD.start()) {
+            span.rows(transactions.size());
+            final int months = (int) ChronoUnit.MONTHS.between(firstDate.withDayOfMonth(1), getLastDate().withDayOfMonth(1)) + 1;
+            //Per stride the changes of the running sum, one stride behind the recurrence which ends.
+            final long[] daily = new long[days + 1];
+            final long[] weekly = new long[days + 7];
+            //Per day of the month and month stride, indexed by month.
+            final long[][][] monthly = new long[13][][];
+            for (Transaction transaction : transactions) {
+                final int code = transaction.getPeriodCode();
+                final long amount = transaction.getAmountCents();
+                if (!Period.isKnown(code) || amount == 0) {
+                    continue;
+                }
+                final int start = startDay(transaction);
+                final int end = endDay(transaction);
+                final int stride = MONTH_STRIDES[code];
+                if (stride == 0) {
+                    final int step = code == Period.DAY.ordinal() ? 1 : 7;
+                    final long[] difference = step == 1 ? daily : weekly;
+                    final int first = start >= firstDay ? start : start + ceilDiv(firstDay - start, step) * step;
+                    if (first > end) {
+                        continue;
+                    }
+                    final int last = first + (end - first) / step * step;
+                    difference[first - firstDay] += amount;
+                    difference[last - firstDay + step] -= amount;
+                } else {
+                    final LocalDate startDate = LocalDate.ofEpochDay(start);
+                    final long first = firstRecurrence(startDate, stride);
+                    final long last = lastRecurrence(startDate, stride, end);
+                    if (first > last) {
+                        continue;
+                    }
+                    if (monthly[stride] == null) {
+                        monthly[stride] = new long[32][];
+                    }
+                    final int dayOfMonth = startDate.getDayOfMonth();
+                    if (monthly[stride][dayOfMonth] == null) {
+                        monthly[stride][dayOfMonth] = new long[months + stride];
+                    }
+                    final long[] difference = monthly[stride][dayOfMonth];
+                    difference[monthIndex(startDate.plusMonths(first))] += amount;
+                    difference[monthIndex(startDate.plusMonths(last)) + stride] -= amount;
+                }
+            }
+            final long[] deltas = new long[days];
+            long running = 0;
+            for (int day = 0; day < days; ++day) {
+                running += daily[day];
+                if (day >= 7) {
+                    weekly[day] += weekly[day - 7];
+                }
+                deltas[day] = running + weekly[day];
+            }
+            final LocalDate firstMonth = firstDate.withDayOfMonth(1);
+            for (int stride = 1; stride < monthly.length; ++stride) {
+                if (monthly[stride] == null) {
+                    continue;
+                }
+                for (int dayOfMonth = 1; dayOfMonth < monthly[stride].length; ++dayOfMonth) {
+                    final long[] difference = monthly[stride][dayOfMonth];
+                    if (difference == null) {
+                        continue;
+                    }
+                    for (int month = 0; month < months; ++month) {
+                        if (month >= stride) {
+                            difference[month] += difference[month - stride];
+                        }
+                        if (difference[month] != 0) {
+                            final LocalDate monthStart = firstMonth.plusMonths(month);
+                            final int day = (int) monthStart.withDayOfMonth(Math.min(dayOfMonth, monthStart.lengthOfMonth())).toEpochDay() - firstDay;
+                            if (day >= 0 && day < days) {
+                                deltas[day] += difference[month];
+                            }
+                        }
+                    }
+                }
+            }
+            for (int day = 0; day < leaves; ++day) {
+                sums[leaves + day] = day < days ? deltas[day] : 0;
+                minimums[leaves + day] = sums[leaves + day];
+            }
+            for (int node = leaves - 1; node > 0; --node) {
+                update(node);
+            }
+        }
+    }
+
+    /**
+     * Adds the transaction every time it recurs within the timeline.
+     */
+    public void add(Transaction transaction) {
+        change(transaction, transaction.getAmountCents());
+    }
+
+    /**
+     * Removes a transaction, which was added before (or was part of the rebuild).
+     */
+    public void remove(Transaction transaction) {
+        change(transaction, -transaction.getAmountCents());
+    }
+
+    /**
+     * The balance at the end of the day: the opening balance and everything up to and including that day.
+     *
+     * @throws IndexOutOfBoundsException if the day isn't part of the timeline.
+     */
+    public long balanceOn(LocalDate date) {
+        return openingCents + sum(0, index(date));
+    }
+
+    /**
+     * The lowest balance at the end of a day between the two days, including both.
+     *
+     * @throws IndexOutOfBoundsException if a day isn't part of the timeline.
+     */
+    public long minBalance(LocalDate from, LocalDate to) {
+        final int first = index(from);
+        final int last = index(to);
+        if (first > last) {
+            throw new IllegalArgumentException(from + " is after " + to);
+        }
+        //The running sum of a range is combined from the nodes left to right, the right ones are collected backwards.
+        long leftSum = 0;
+        long leftMinimum = Long.MAX_VALUE;
+        long rightMinimum = Long.MAX_VALUE;
+        for (int low = first + leaves, high = last + leaves + 1; low < high; low >>>= 1, high >>>= 1) {
+            if ((low & 1) == 1) {
+                leftMinimum = Math.min(leftMinimum, leftSum + minimums[low]);
+                leftSum += sums[low];
+                low++;
+            }
+            if ((high & 1) == 1) {
+                high--;
+                rightMinimum = rightMinimum == Long.MAX_VALUE ? minimums[high] : Math.min(minimums[high], sums[high] + rightMinimum);
+            }
+        }
+        final long minimum = rightMinimum == Long.MAX_VALUE ? leftMinimum : Math.min(leftMinimum, leftSum + rightMinimum);
+        return openingCents + (first > 0 ? sum(0, first - 1) : 0) + minimum;
+    }
+
+    /**
+     * The balance at the end of every day, e.g. for a chart.
+     */
+    public long[] balances() {
+        final long[] balances = new long[days];
+        long balance = openingCents;
+        for (int day = 0; day < days; ++day) {
+            balance += sums[leaves + day];
+            balances[day] = balance;
+        }
+        return balances;
+    }
+
+    private void change(Transaction transaction, long amount) {
+        final int code = transaction.getPeriodCode();
+        if (!Period.isKnown(code) || amount == 0) {
+            return;
+        }
+        final int start = startDay(transaction);
+        final int end = endDay(transaction);
+        final int stride = MONTH_STRIDES[code];
+        if (stride == 0) {
+            final int step = code == Period.DAY.ordinal() ? 1 : 7;
+            for (int day = start >= firstDay ? start : start + ceilDiv(firstDay - start, step) * step; day <= end; day += step) {
+                add(day - firstDay, amount);
+            }
+        } else {
+            final LocalDate startDate = LocalDate.ofEpochDay(start);
+            final long last = lastRecurrence(startDate, stride, end);
+            for (long months = firstRecurrence(startDate, stride); months <= last; months += stride) {
+                add((int) startDate.plusMonths(months).toEpochDay() - firstDay, amount);
+            }
+        }
+    }
+
+    private void add(int day, long amount) {
+        int node = leaves + day;
+        sums[node] += amount;
+        minimums[node] = sums[node];
+        for (node >>>= 1; node > 0; node >>>= 1) {
+            update(node);
+        }
+    }
+
+    private void update(int node) {
+        final int left = 2 * node;
+        sums[node] = sums[left] + sums[left + 1];
+        minimums[node] = Math.min(minimums[left], sums[left] + minimums[left + 1]);
+    }
+
+    /**
+     * Sum of the days from first to last, including both.
+     */
+    private long sum(int first, int last) {
+        long sum = 0;
+        for (int low = first + leaves, high = last + leaves + 1; low < high; low >>>= 1, high >>>= 1) {
+            if ((low & 1) == 1) {
+                sum += sums[low++];
+            }
+            if ((high & 1) == 1) {
+                sum += sums[--high];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * The first recurrence on or after the first day, in months after the start date.
+     */
+    private long firstRecurrence(LocalDate startDate, int stride) {
+        if (startDate.toEpochDay() >= firstDay) {
+            return 0;
+        }
+        long months = ChronoUnit.MONTHS.between(startDate, firstDate) / stride * stride;
+        while (startDate.plusMonths(months).toEpochDay() < firstDay) {
+            months += stride;
+        }
+        return months;
+    }
+
+    /**
+     * The last recurrence on or before the end day, in months after the start date. Negative, if there's none.
+     */
+    private static long lastRecurrence(LocalDate startDate, int stride, int end) {
+        if (startDate.toEpochDay() > end) {
+            return -1;
+        }
+        long months = ChronoUnit.MONTHS.between(startDate, LocalDate.ofEpochDay(end)) / stride * stride;
+        while (startDate.plusMonths(months + stride).toEpochDay() <= end) {
+            months += stride;
+        }
+        return months;
+    }
+
+    private int monthIndex(LocalDate date) {
+        return (date.getYear() - firstDate.getYear()) * 12 + date.getMonthValue() - firstDate.getMonthValue();
+    }
+
+    private int startDay(Transaction transaction) {
+        return transaction.getStartDay() != Transaction.NO_DAY ? transaction.getStartDay() : firstDay;
+    }
+
+    /**
+     * The end of the transaction, but not after the last day.
+     */
+    private int endDay(Transaction transaction) {
+        final int last = firstDay + days - 1;
+        return transaction.getEndDay() != Transaction.NO_DAY ? Math.min(transaction.getEndDay(), last) : last;
+    }
+
+    private int index(LocalDate date) {
+        final long day = date.toEpochDay() - firstDay;
+        if (day < 0 || day >= days) {
+            throw new IndexOutOfBoundsException(date + " is not between " + firstDate + " and " + getLastDate());
+        }
+        return (int) day;
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+}
@@ -0,0 +1,539 @@
+package core;
+
+import model.Transaction;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+
+/**
+ * Assigns categories by the title of a transaction. A rule is a keyword, which the title has to contain, or a
+ * regular expression, which has to be found in the title, both ignoring the case. The first rule which matches
+ * wins, titles without a matching rule keep their category.
+ *
+ * All keywords are compiled into one Aho-Corasick automaton, so a title is scanned once, no matter how many rules
+ * there are. Most regular expressions contain a text which every match has to contain (e.g. "netflix" in
+ * {@code /netflix\s+\d+/}), this text is part of the automaton as well, and the expression is only evaluated for
+ * titles which contain it. Only expressions without such a text are evaluated for every title.
+ *
+ * The rules are immutable. {@link #update(List)} compiles changed rules into a new instance, which reuses the
+ * compiled expressions of the rules which stayed, and the automaton, if no keyword changed.
+ */
+public final class CategoryRules {
+
+    /**
+     * Separates the pattern from the category in the rules file.
+     */
+    public static final String SEPARATOR = " => ";
+
+    /**
+     * Text of an expression which is put into the automaton has to be at least this long, shorter texts are too
+     * common to save anything.
+     */
+    private static final int MIN_LITERAL_LENGTH = 2;
+
+    /**
+     * Rows which are categorized in one task of {@link #recategorize}.
+     */
+    private static final int SLICE_SIZE = 16 * 1024;
+
+    private static final Telemetry.Operation CATEGORIZE = Telemetry.operation("categorize");
+
+    public static final CategoryRules EMPTY = new CategoryRules(Collections.emptyList(), Collections.emptyMap(), null);
+
+    /**
+     * A keyword or regular expression and the category of the titles it matches.
+     */
+    public static final class Rule {
+
+        private final String pattern;
+        private final boolean regex;
+        private final String category;
+
+        private Rule(String pattern, boolean regex, String category) {
+            this.pattern = pattern;
+            this.regex = regex;
+            this.category = category;
+        }
+
+        public static Rule keyword(String keyword, String category) {
+            if (keyword.trim().isEmpty() || category.trim().isEmpty()) {
+                throw new IllegalArgumentException("A rule needs a keyword and a category");
+            }
+            return new Rule(keyword.trim(), false, category.trim());
+        }
+
+        /**
+         * @throws java.util.regex.PatternSyntaxException if it isn't a valid expression.
+         */
+        public static Rule regex(String regex, String category) {
+            if (regex.isEmpty() || category.trim().isEmpty()) {
+                throw new IllegalArgumentException("A rule needs an expression and a category");
+            }
+            compile(regex);
+            return new Rule(regex, true, category.trim());
+        }
+
+        /**
+         * Parses a line of the rules file: {@code keyword => Category} or {@code /expression/ => Category}.
+         */
+        public static Rule parse(String line) {
+            final int separator = line.lastIndexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException("\"" + SEPARATOR.trim() + "\" is missing");
+            }
+            final String pattern = line.substring(0, separator).trim();
+            final String category = line.substring(separator + SEPARATOR.length());
+            if (pattern.length() > 2 && pattern.startsWith("/") && pattern.endsWith("/")) {
+                return regex(pattern.substring(1, pattern.length() - 1), category);
+            }
+            return keyword(pattern, category);
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public boolean isRegex() {
+            return regex;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        @Override
+        public String toString() {
+            return (regex ? "/" + pattern + "/" : pattern) + SEPARATOR + category;
+        }
+    }
+
+    private final List<Rule> rules;
+    private final String[] categories;
+    private final Pattern[] ruleExpressions;
+    private final Map<String, Pattern> expressions;
+    private final Automaton automaton;
+
+    //Indexed by the id of a text in the automaton: the first keyword rule with the text, and the expressions which contain it.
+    private final int[] keywordRule;
+    private final int[][] regexRules;
+    //The rules of expressions without a text, in order.
+    private final int[] uncheckedRules;
+
+    private CategoryRules(List<Rule> rules, Map<String, Pattern> previousExpressions, Automaton previousAutomaton) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.categories = new String[rules.size()];
+        this.ruleExpressions = new Pattern[rules.size()];
+        this.expressions = new HashMap<>();
+        final Map<String, Integer> texts = new LinkedHashMap<>();
+        final List<Integer> keywordRules = new ArrayList<>();
+        final List<List<Integer>> textRegexRules = new ArrayList<>();
+        final List<Integer> unchecked = new ArrayList<>();
+        for (int i = 0; i < rules.size(); ++i) {
+            final Rule rule = rules.get(i);
+            categories[i] = rule.category;
+            final String text;
+            if (rule.regex) {
+                Pattern expression = previousExpressions.get(rule.pattern);
+                if (expression == null) {
+                    expression = compile(rule.pattern);
+                }
+                expressions.put(rule.pattern, expression);
+                ruleExpressions[i] = expression;
+                text = requiredText(rule.pattern);
+                if (text == null) {
+                    unchecked.add(i);
+                    continue;
+                }
+            } else {
+                text = lowerCase(rule.pattern);
+            }
+            Integer id = texts.get(text);
+            if (id == null) {
+                id = texts.size();
+                texts.put(text, id);
+                keywordRules.add(Integer.MAX_VALUE);
+                textRegexRules.add(new ArrayList<>());
+            }
+            if (rule.regex) {
+                textRegexRules.get(id).add(i);
+            } else if (keywordRules.get(id) == Integer.MAX_VALUE) {
+                keywordRules.set(id, i);
+            }
+        }
+        final String[] patterns = texts.keySet().toArray(new String[0]);
+        this.automaton = previousAutomaton != null && Arrays.equals(previousAutomaton.patterns, patterns)
+                ? previousAutomaton : new Automaton(patterns);
+        this.keywordRule = new int[patterns.length];
+        this.regexRules = new int[patterns.length][];
+        for (int id = 0; id < patterns.length; ++id) {
+            keywordRule[id] = keywordRules.get(id);
+            regexRules[id] = toArray(textRegexRules.get(id));
+        }
+        this.uncheckedRules = toArray(unchecked);
+    }
+
+    public static CategoryRules compile(List<Rule> rules) {
+        return EMPTY.update(rules);
+    }
+
+    /**
+     * Compiles the rules, the parts which didn't change are taken over from these rules.
+     */
+    public CategoryRules update(List<Rule> rules) {
+        return new CategoryRules(rules, expressions, automaton);
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * The category of the first rule which matches the title, or null if none does.
+     */
+    public String categoryOf(String title) {
+        final int rule = firstMatch(title);
+        return rule < rules.size() ? categories[rule] : null;
+    }
+
+    /**
+     * Sets the category of every transaction with a matching rule. Only for rows which aren't shown yet, e.g. the
+     * batches of an import, because the rows are changed in place.
+     */
+    public void apply(List<Transaction> transactions) {
+        if (isEmpty()) {
+            return;
+        }
+        final Map<String, String> cache = new IdentityHashMap<>();
+        for (Transaction transaction : transactions) {
+            final String category = cachedCategoryOf(transaction.getTitle(), cache);
+            if (category != null && !category.equals(transaction.getCategory())) {
+                transaction.setCategory(category);
+            }
+        }
+    }
+
+    /**
+     * Categorizes the rows in parallel on the pool. The rows aren't changed: a row which gets another category is
+     * copied with it, see {@link Transaction#withCategory(String)}.
+     *
+     * @return the copies at the index of their row, null where the category stays.
+     */
+    public Transaction[] recategorize(List<Transaction> transactions, ForkJoinPool pool) {
+        final Transaction[] changed = new Transaction[transactions.size()];
+        if (isEmpty()) {
+            return changed;
+        }
+        try (Telemetry.Span span = CATEGORIZE.start()) {
+            final List<ForkJoinTask<?>> slices = new ArrayList<>();
+            for (int from = 0; from < transactions.size(); from += SLICE_SIZE) {
+                final int sliceFrom = from;
+                final int sliceTo = Math.min(transactions.size(), from + SLICE_SIZE);
+                slices.add(pool.submit(() -> recategorize(transactions, sliceFrom, sliceTo, changed)));
+            }
+            for (ForkJoinTask<?> slice : slices) {
+                slice.join();
+            }
+            span.rows(transactions.size());
+        }
+        return changed;
+    }
+
+    private void recategorize(List<Transaction> transactions, int from, int to, Transaction[] changed) {
+        //Titles are pooled (see StringPool), the rows of the same title share the string.
+        final Map<String, String> cache = new IdentityHashMap<>();
+        for (int i = from; i < to; ++i) {
+            final Transaction transaction = transactions.get(i);
+            final String category = cachedCategoryOf(transaction.getTitle(), cache);
+            if (category != null && !category.equals(transaction.getCategory())) {
+                changed[i] = transaction.withCategory(category);
+            }
+        }
+    }
+
+    private String cachedCategoryOf(String title, Map<String, String> cache) {
+        if (title == null) {
+            return null;
+        }
+        String category = cache.get(title);
+        if (category == null && !cache.containsKey(title)) {
+            category = categoryOf(title);
+            cache.put(title, category);
+        }
+        return category;
+    }
+
+    /**
+     * The index of the first matching rule, the number of rules if none matches.
+     */
+    private int firstMatch(String title) {
+        int best = rules.size();
+        if (title == null || best == 0) {
+            return best;
+        }
+        //Expressions whose text was found, they're checked after the scan, if no earlier rule matched.
+        int[] candidates = null;
+        int candidateCount = 0;
+        final int[] delta = automaton.delta;
+        final char[] classes = automaton.classes;
+        final int width = automaton.width;
+        int state = 0;
+        for (int i = 0; i < title.length(); ++i) {
+            state = delta[state * width + classes[title.charAt(i)]];
+            for (int match = automaton.pattern[state] >= 0 ? state : automaton.outputLink[state]; match > 0; match = automaton.outputLink[match]) {
+                final int id = automaton.pattern[match];
+                best = Math.min(best, keywordRule[id]);
+                for (int rule : regexRules[id]) {
+                    if (rule < best) {
+                        if (candidates == null) {
+                            candidates = new int[4];
+                        } else if (candidateCount == candidates.length) {
+                            candidates = Arrays.copyOf(candidates, candidateCount * 2);
+                        }
+                        candidates[candidateCount++] = rule;
+                    }
+                }
+            }
+        }
+        if (candidates != null) {
+            Arrays.sort(candidates, 0, candidateCount);
+            for (int i = 0; i < candidateCount && candidates[i] < best; ++i) {
+                if (matches(candidates[i], title)) {
+                    best = candidates[i];
+                }
+            }
+        }
+        for (int rule : uncheckedRules) {
+            if (rule >= best) {
+                break;
+            }
+            if (matches(rule, title)) {
+                best = rule;
+            }
+        }
+        return best;
+    }
+
+    private boolean matches(int rule, String title) {
+        return ruleExpressions[rule].matcher(title).find();
+    }
+
+    /**
+     * Reads the rules file, one rule per line (see {@link Rule#parse(String)}). Empty lines and lines starting
+     * with "#" are skipped.
+     *
+     * @throws IllegalArgumentException with the line number, if a line isn't a valid rule.
+     */
+    public static List<Rule> read(Path path) throws IOException {
+        return parse(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    public static List<Rule> parse(List<String> lines) {
+        final List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < lines.size(); ++i) {
+            final String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                rules.add(Rule.parse(line));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return rules;
+    }
+
+    public static void write(Path path, List<Rule> rules) throws IOException {
+        final List<String> lines = new ArrayList<>(rules.size());
+        for (Rule rule : rules) {
+            lines.add(rule.toString());
+        }
+        SheetFiles.writeAtomically(path.toFile(), target -> Files.write(target, lines, StandardCharsets.UTF_8));
+    }
+
+    private static Pattern compile(String regex) {
+        return Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    /**
+     * The longest text which every match of the expression contains, in lower case, or null if there's none. Only
+     * plain characters outside of groups and classes count, an expression with alternatives has no such text.
+     */
+    static String requiredText(String regex) {
+        String longest = "";
+        final StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); ++i) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                //An escaped character could be a class like \d, and it's never worth the risk.
+                longest = longer(longest, run);
+                i++;
+            } else if (c == '[') {
+                longest = longer(longest, run);
+                i = classEnd(regex, i);
+            } else if (c == '(') {
+                longest = longer(longest, run);
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth > 0) {
+                continue;
+            } else if (c == '|') {
+                return null;
+            } else if (c == '?' || c == '*' || c == '{') {
+                //The character before is optional.
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                longest = longer(longest, run);
+                if (c == '{') {
+                    final int end = regex.indexOf('}', i);
+                    i = end >= 0 ? end : regex.length();
+                }
+            } else if (c == '+') {
+                longest = longer(longest, run);
+            } else if (Character.isLetterOrDigit(c) || c == ' ' || c == '-' || c == '_' || c == '/' || c == ',' || c == '\'' || c == '&') {
+                run.append(c);
+            } else {
+                longest = longer(longest, run);
+            }
+        }
+        longest = longer(longest, run);
+        return longest.length() >= MIN_LITERAL_LENGTH ? lowerCase(longest) : null;
+    }
+
+    private static String longer(String longest, StringBuilder run) {
+        final String text = run.length() > longest.length() ? run.toString() : longest;
+        run.setLength(0);
+        return text;
+    }
+
+    private static int classEnd(String regex, int start) {
+        for (int i = start + 1; i < regex.length(); ++i) {
+            if (regex.charAt(i) == '\\') {
+                i++;
+            } else if (regex.charAt(i) == ']' && i > start + 1) {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    /**
+     * Lower case character by character, like the titles are compared.
+     */
+    private static String lowerCase(String text) {
+        final char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; ++i) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        final int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; ++i) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * An Aho-Corasick automaton as complete transition table: every character is mapped to its class (the lower case
+     * characters of the patterns and their upper case, all others are class 0), and every state has a next state
+     * for every class.
+     */
+    private static final class Automaton {
+
+        private final String[] patterns;
+        private final char[] classes = new char[Character.MAX_VALUE + 1];
+        private final int width;
+        private final int[] delta;
+        //The pattern which ends at a state, or -1.
+        private final int[] pattern;
+        //The next state with a pattern along the failure links, 0 if there's none.
+        private final int[] outputLink;
+
+        private Automaton(String[] patterns) {
+            this.patterns = patterns;
+            int classCount = 1;
+            int maxStates = 1;
+            for (String text : patterns) {
+                maxStates += text.length();
+                for (int i = 0; i < text.length(); ++i) {
+                    if (classes[text.charAt(i)] == 0) {
+                        classes[text.charAt(i)] = (char) classCount++;
+                    }
+                }
+            }
+            this.width = classCount;
+            //Upper case characters get the class of their lower case, so titles don't have to be converted.
+            for (int c = 0; c <= Character.MAX_VALUE; ++c) {
+                final char lower = Character.toLowerCase((char) c);
+                if (lower != c && classes[lower] != 0) {
+                    classes[c] = classes[lower];
+                }
+            }
+            final int[] trie = new int[maxStates * width];
+            final int[] endingPattern = new int[maxStates];
+            Arrays.fill(endingPattern, -1);
+            int states = 1;
+            for (int id = 0; id < patterns.length; ++id) {
+                int state = 0;
+                for (int i = 0; i < patterns[id].length(); ++i) {
+                    final int slot = state * width + classes[patterns[id].charAt(i)];
+                    if (trie[slot] == 0) {
+                        trie[slot] = states++;
+                    }
+                    state = trie[slot];
+                }
+                endingPattern[state] = id;
+            }
+            this.delta = Arrays.copyOf(trie, states * width);
+            this.pattern = Arrays.copyOf(endingPattern, states);
+            this.outputLink = new int[states];
+            //Breadth first, so the failure link of a state is done before its children need it.
+            final int[] failure = new int[states];
+            final int[] queue = new int[states];
+            int head = 0;
+            int tail = 0;
+            for (int c = 0; c < width; ++c) {
+                if (delta[c] != 0) {
+                    queue[tail++] = delta[c];
+                }
+            }
+            while (head < tail) {
+                final int state = queue[head++];
+                for (int c = 0; c < width; ++c) {
+                    final int child = delta[state * width + c];
+                    final int fallback = delta[failure[state] * width + c];
+                    if (child == 0) {
+                        delta[state * width + c] = fallback;
+                    } else {
+                        failure[child] = fallback;
+                        outputLink[child] = pattern[fallback] >= 0 ? fallback : outputLink[fallback];
+                        queue[tail++] = child;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package core;
+
+import model.Transaction;
+
+/**
+ * The content of a transaction (title, category, period, amount, currency and dates) as hash key. Two rows with the
+ * same key are duplicates. Category and currency are compared by their dictionary ids and a known period by its
+ * code, the title and an unknown period are pooled strings.
+ */
+public final class ContentKey {
+
+    private final String title;
+    private final int categoryId;
+    private final int periodCode;
+    private final String unknownPeriod;
+    private final long amountCents;
+    private final int currencyId;
+    private final int startDay;
+    private final int endDay;
+    private final int hash;
+
+    public ContentKey(Transaction transaction) {
+        this.title = transaction.getTitle();
+        this.categoryId = transaction.getCategoryId();
+        this.periodCode = transaction.getPeriodCode();
+        this.unknownPeriod = transaction.hasKnownPeriod() ? null : transaction.getPeriod();
+        this.amountCents = transaction.getAmountCents();
+        this.currencyId = transaction.getCurrencyId();
+        this.startDay = transaction.getStartDay();
+        this.endDay = transaction.getEndDay();
+        int hash = title != null ? title.hashCode() : 0;
+        hash = 31 * hash + categoryId;
+        hash = 31 * hash + periodCode;
+        hash = 31 * hash + Long.hashCode(amountCents);
+        hash = 31 * hash + currencyId;
+        hash = 31 * hash + startDay;
+        hash = 31 * hash + endDay;
+        this.hash = hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ContentKey)) {
+            return false;
+        }
+        final ContentKey key = (ContentKey) other;
+        return hash == key.hash && amountCents == key.amountCents && categoryId == key.categoryId
+                && periodCode == key.periodCode && currencyId == key.currencyId && startDay == key.startDay && endDay == key.endDay
+                && (title == null ? key.title == null : title.equals(key.title))
+                && (unknownPeriod == null ? key.unknownPeriod == null : unknownPeriod.equals(key.unknownPeriod));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,512 @@
+package core;
+
+import core.SheetFiles.ProgressListener;
+import model.Transaction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Reads CSV exports of online banking. The columns are found by the names in the header line (which may come after a
+ * few lines about the account): the amount, either signed, with a debit/credit indicator or as separate debit and
+ * credit columns, the counterparty and the remittance text, which become the title, and optionally a category, the
+ * currency and the booking or value date. The delimiter (";", ",", tab or "|") is the one which gives the most columns,
+ * the charset is UTF-8 or Windows-1252.
+ *
+ * The file is read in chunks, which are cut after the last complete record. Finding the cut only scans the bytes
+ * for quotes and line breaks, the records are then parsed in parallel. At most twice as many chunks as the pool has
+ * threads are parsed or waiting at once, and they're handed over in the order of the file, so the memory stays
+ * bounded and the rows keep their order.
+ */
+final class CsvStatementReader {
+
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int HEADER_SEARCH_LINES = 30;
+    private static final byte QUOTE = '"';
+    private static final byte[] DELIMITERS = {';', ',', '\t', '|'};
+
+    private final ForkJoinPool pool;
+    private final CategoryRules rules;
+
+    CsvStatementReader(ForkJoinPool pool, CategoryRules rules) {
+        this.pool = pool;
+        this.rules = rules;
+    }
+
+    /**
+     * What a column of the export is used for. The names are compared in lower case, the earlier a name is listed,
+     * the more it's preferred.
+     */
+    enum Role {
+        INDICATOR(true, "soll/haben", "s/h", "debit/credit", "credit/debit", "d/c", "c/d", "dr/cr", "cr/dr", "cdtdbtind"),
+        AMOUNT(false, "betrag", "amount", "umsatz", "montant", "importe", "bedrag", "importo"),
+        DEBIT(false, "debit", "soll", "withdrawal", "paid out", "ausgang", "belastung"),
+        CREDIT(false, "credit", "haben", "deposit", "paid in", "eingang", "gutschrift"),
+        COUNTERPARTY(false, "beguenstigter", "begünstigter", "zahlungspflichtiger", "empfänger", "empfaenger",
+                "auftraggeber", "payee", "payer", "counterparty", "recipient", "merchant", "name"),
+        DESCRIPTION(false, "verwendungszweck", "description", "purpose", "memo", "remittance", "reference", "details",
+                "narrative", "libellé", "concepto", "buchungstext", "booking text", "text"),
+        CATEGORY(false, "category", "kategorie", "catégorie"),
+        CURRENCY(false, "währung", "waehrung", "currency", "devise", "moneda", "ccy"),
+        DATE(false, "buchungsdatum", "buchungstag", "booking date", "transaction date", "valuta", "wertstellung",
+                "value date", "datum", "date", "fecha");
+
+        private final boolean exact;
+        private final String[] names;
+
+        Role(boolean exact, String... names) {
+            this.exact = exact;
+            this.names = names;
+        }
+
+        /**
+         * How well the column name fits, 0 if it doesn't.
+         */
+        int score(String column) {
+            if (column.contains("saldo") || column.contains("balance") || column.contains("kontostand")) {
+                return 0;
+            }
+            final String compact = column.replace(" ", "");
+            for (int i = 0; i < names.length; ++i) {
+                final String name = names[i];
+                final int match = column.equals(name) || (exact && compact.equals(name)) ? 3 : exact ? 0
+                        : column.startsWith(name) ? 2 : column.contains(name) ? 1 : 0;
+                if (match > 0) {
+                    return (names.length - i) * 4 + match;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * The columns of an export, found in its header.
+     */
+    static final class Layout {
+
+        private final byte delimiter;
+        private final int[] columns = new int[Role.values().length];
+        private int dataOffset;
+        private long dataLine;
+
+        private Layout(byte delimiter, List<String> names) {
+            this.delimiter = delimiter;
+            Arrays.fill(columns, -1);
+            final boolean[] used = new boolean[names.size()];
+            for (Role role : Role.values()) {
+                int best = 0;
+                for (int column = 0; column < names.size(); ++column) {
+                    final int score = used[column] ? 0 : role.score(names.get(column));
+                    if (score > best) {
+                        best = score;
+                        columns[role.ordinal()] = column;
+                    }
+                }
+                if (columns[role.ordinal()] >= 0) {
+                    used[columns[role.ordinal()]] = true;
+                }
+            }
+        }
+
+        int column(Role role) {
+            return columns[role.ordinal()];
+        }
+
+        boolean isComplete() {
+            return (column(Role.AMOUNT) >= 0 || column(Role.DEBIT) >= 0 || column(Role.CREDIT) >= 0)
+                    && (column(Role.COUNTERPARTY) >= 0 || column(Role.DESCRIPTION) >= 0);
+        }
+
+        int usedColumns() {
+            int used = 0;
+            for (int column : columns) {
+                used = Math.max(used, column + 1);
+            }
+            return used;
+        }
+
+        /**
+         * The first line of the first lines which is a header, with the delimiter which finds the most columns.
+         */
+        static Layout find(byte[] bytes, int from, int to, Charset charset) {
+            int lineStart = from;
+            for (int line = 1; line <= HEADER_SEARCH_LINES && lineStart < to; ++line) {
+                int lineEnd = lineStart;
+                while (lineEnd < to && bytes[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                final String text = new String(bytes, lineStart, lineEnd - lineStart, charset).trim();
+                Layout found = null;
+                int foundColumns = 0;
+                for (byte delimiter : DELIMITERS) {
+                    final List<String> names = split(text, (char) delimiter);
+                    final Layout layout = new Layout(delimiter, names);
+                    if (layout.isComplete() && names.size() > foundColumns) {
+                        found = layout;
+                        foundColumns = names.size();
+                    }
+                }
+                if (found != null) {
+                    found.dataOffset = Math.min(lineEnd + 1, to);
+                    found.dataLine = line + 1;
+                    return found;
+                }
+                lineStart = lineEnd + 1;
+            }
+            return null;
+        }
+
+        private static List<String> split(String line, char delimiter) {
+            final List<String> fields = new ArrayList<>();
+            final StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); ++i) {
+                final char c = line.charAt(i);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == delimiter && !quoted) {
+                    fields.add(field.toString().trim().toLowerCase(Locale.ROOT));
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString().trim().toLowerCase(Locale.ROOT));
+            return fields;
+        }
+    }
+
+    /**
+     * The parsed records of a chunk, in batches.
+     */
+    private static final class Chunk {
+
+        private final List<List<Transaction>> batches = new ArrayList<>();
+        private final StatementImport.Report report = new StatementImport.Report();
+    }
+
+    StatementImport.Report read(Path path, Consumer<List<Transaction>> batchConsumer, ProgressListener progress) throws IOException {
+        final StatementImport.Report report = new StatementImport.Report();
+        final Deque<ForkJoinTask<Chunk>> parsing = new ArrayDeque<>();
+        final int maxParsing = 2 * pool.getParallelism();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int length = fill(channel, buffer, 0);
+            final Charset charset = StatementImport.detectCharset(buffer, length);
+            final Layout layout = Layout.find(buffer, StatementImport.hasUtf8Bom(buffer, length) ? 3 : 0, length, charset);
+            if (layout == null) {
+                throw new IOException("No header with an amount and a title column: " + path);
+            }
+            int start = layout.dataOffset;
+            long line = layout.dataLine;
+            long read = length;
+            while (true) {
+                final boolean end = length < buffer.length;
+                final long[] lines = new long[1];
+                final int cut = end ? length : lastRecordEnd(buffer, start, length, layout.delimiter, lines);
+                if (cut < 0) {
+                    //Not a single complete record, e.g. a huge quoted text.
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    final int filled = fill(channel, buffer, length);
+                    read += filled - length;
+                    length = filled;
+                    continue;
+                }
+                final byte[] chunk = buffer;
+                final int chunkStart = start;
+                final long chunkLine = line;
+                parsing.add(pool.submit(() -> categorize(parse(chunk, chunkStart, cut, chunkLine, layout, charset))));
+                if (end) {
+                    break;
+                }
+                line += lines[0];
+
+                buffer = new byte[Math.max(CHUNK_SIZE, 2 * (length - cut))];
+                System.arraycopy(chunk, cut, buffer, 0, length - cut);
+                final int filled = fill(channel, buffer, length - cut);
+                read += filled - (length - cut);
+                length = filled;
+                start = 0;
+
+                while (parsing.size() >= maxParsing) {
+                    deliver(parsing.poll().join(), batchConsumer, report);
+                }
+                if (!progress.update(read, fileSize)) {
+                    throw new CancellationException();
+                }
+            }
+            while (!parsing.isEmpty()) {
+                deliver(parsing.poll().join(), batchConsumer, report);
+            }
+            return report;
+        } finally {
+            for (ForkJoinTask<Chunk> task : parsing) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * The rules are applied while the chunk is still parsed in parallel.
+     */
+    private Chunk categorize(Chunk chunk) {
+        for (List<Transaction> batch : chunk.batches) {
+            rules.apply(batch);
+        }
+        return chunk;
+    }
+
+    private static void deliver(Chunk chunk, Consumer<List<Transaction>> batchConsumer, StatementImport.Report report) {
+        for (List<Transaction> batch : chunk.batches) {
+            batchConsumer.accept(batch);
+        }
+        report.add(chunk.report);
+    }
+
+    /**
+     * Reads until the buffer is full or the file ends.
+     *
+     * @return the number of bytes in the buffer.
+     */
+    private static int fill(FileChannel channel, byte[] buffer, int length) throws IOException {
+        final ByteBuffer target = ByteBuffer.wrap(buffer, length, buffer.length - length);
+        while (target.hasRemaining() && channel.read(target) >= 0) {
+            //Read on.
+        }
+        return target.position();
+    }
+
+    /**
+     * The end of the last complete record, after its line break, or -1 if there's none. Line breaks in quoted
+     * fields don't end a record, a quote only starts a quoted field at the start of a field, like in
+     * {@link #parse}.
+     *
+     * @param lines gets the number of line breaks before the end.
+     */
+    static int lastRecordEnd(byte[] bytes, int from, int to, byte delimiter, long[] lines) {
+        int end = -1;
+        long breaks = 0;
+        boolean quoted = false;
+        boolean fieldStart = true;
+        for (int i = from; i < to; ++i) {
+            final byte b = bytes[i];
+            if (quoted) {
+                if (b == QUOTE) {
+                    if (i + 1 < to && bytes[i + 1] == QUOTE) {
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (b == '\n') {
+                    breaks++;
+                }
+            } else if (b == QUOTE && fieldStart) {
+                quoted = true;
+                fieldStart = false;
+            } else {
+                if (b == '\n') {
+                    breaks++;
+                    end = i + 1;
+                    lines[0] = breaks;
+                }
+                fieldStart = b == delimiter || b == '\n' || b == '\r';
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Parses the records between two record ends.
+     */
+    static Chunk parse(byte[] data, int from, int to, long firstLine, Layout layout, Charset charset) {
+        final Chunk chunk = new Chunk();
+        final byte delimiter = layout.delimiter;
+        final int fieldCount = layout.usedColumns();
+        final int[] starts = new int[fieldCount];
+        final int[] ends = new int[fieldCount];
+        final boolean[] escaped = new boolean[fieldCount];
+        List<Transaction> batch = new ArrayList<>(SheetFiles.LOAD_BATCH_SIZE);
+        int position = from;
+        long line = firstLine;
+        while (position < to) {
+            final int recordStart = position;
+            final long recordLine = line;
+            int fields = 0;
+            while (true) {
+                final int fieldStart;
+                final int fieldEnd;
+                boolean fieldEscaped = false;
+                if (position < to && data[position] == QUOTE) {
+                    fieldStart = ++position;
+                    while (position < to) {
+                        final byte b = data[position];
+                        if (b == QUOTE) {
+                            if (position + 1 < to && data[position + 1] == QUOTE) {
+                                fieldEscaped = true;
+                                position += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        if (b == '\n') {
+                            line++;
+                        }
+                        position++;
+                    }
+                    fieldEnd = position;
+                    while (position < to && data[position] != delimiter && data[position] != '\n' && data[position] != '\r') {
+                        position++;
+                    }
+                } else {
+                    fieldStart = position;
+                    while (position < to && data[position] != delimiter && data[position] != '\n' && data[position] != '\r') {
+                        position++;
+                    }
+                    fieldEnd = position;
+                }
+                if (fields < fieldCount) {
+                    starts[fields] = fieldStart;
+                    ends[fields] = fieldEnd;
+                    escaped[fields] = fieldEscaped;
+                }
+                fields++;
+                if (position < to && data[position] == delimiter) {
+                    position++;
+                } else {
+                    break;
+                }
+            }
+            final int recordEnd = position;
+            if (position < to && data[position] == '\r') {
+                position++;
+            }
+            if (position < to && data[position] == '\n') {
+                position++;
+            }
+            line++;
+            if (fields == 1 && ends[0] == starts[0]) {
+                continue;
+            }
+
+            final String rejection = addRecord(data, starts, ends, escaped, Math.min(fields, fieldCount), layout, charset, batch);
+            if (rejection != null) {
+                chunk.report.reject(recordLine, rejection, new String(data, recordStart, recordEnd - recordStart, charset));
+                continue;
+            }
+            chunk.report.imported(1);
+            if (batch.size() == SheetFiles.LOAD_BATCH_SIZE) {
+                chunk.batches.add(batch);
+                batch = new ArrayList<>(SheetFiles.LOAD_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            chunk.batches.add(batch);
+        }
+        return chunk;
+    }
+
+    /**
+     * Adds the transaction of the record to the batch.
+     *
+     * @return why the record was rejected, or null.
+     */
+    private static String addRecord(byte[] data, int[] starts, int[] ends, boolean[] escaped, int fields, Layout layout,
+                                    Charset charset, List<Transaction> batch) {
+        final int amount = layout.column(Role.AMOUNT);
+        final int debit = layout.column(Role.DEBIT);
+        final int credit = layout.column(Role.CREDIT);
+        long cents;
+        try {
+            if (isFilled(amount, fields, starts, ends, data)) {
+                cents = StatementImport.parseAmount(data, starts[amount], ends[amount]);
+            } else if (isFilled(debit, fields, starts, ends, data)) {
+                cents = -Math.abs(StatementImport.parseAmount(data, starts[debit], ends[debit]));
+            } else if (isFilled(credit, fields, starts, ends, data)) {
+                cents = Math.abs(StatementImport.parseAmount(data, starts[credit], ends[credit]));
+            } else {
+                return fields <= Math.max(amount, Math.max(debit, credit)) ? "Missing columns" : "No amount";
+            }
+        } catch (NumberFormatException e) {
+            return "Invalid amount";
+        }
+        final int indicator = layout.column(Role.INDICATOR);
+        if (indicator >= 0) {
+            final int sign = indicator < fields ? indicatorSign(text(data, starts, ends, escaped, indicator, charset)) : 0;
+            if (sign == 0) {
+                return "Unknown debit/credit indicator";
+            }
+            cents = sign * Math.abs(cents);
+        }
+        String title = text(data, starts, ends, escaped, fields, layout.column(Role.COUNTERPARTY), charset);
+        if (title.trim().isEmpty()) {
+            title = text(data, starts, ends, escaped, fields, layout.column(Role.DESCRIPTION), charset);
+        }
+        final String category = text(data, starts, ends, escaped, fields, layout.column(Role.CATEGORY), charset);
+        final String currency = text(data, starts, ends, escaped, fields, layout.column(Role.CURRENCY), charset);
+        final int day = StatementImport.parseDay(text(data, starts, ends, escaped, fields, layout.column(Role.DATE), charset));
+        batch.add(StatementImport.transaction(title, cents, day, category, currency));
+        return null;
+    }
+
+    private static boolean isFilled(int column, int fields, int[] starts, int[] ends, byte[] data) {
+        if (column < 0 || column >= fields) {
+            return false;
+        }
+        for (int i = starts[column]; i < ends[column]; ++i) {
+            if (data[i] != ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String text(byte[] data, int[] starts, int[] ends, boolean[] escaped, int fields, int column, Charset charset) {
+        return column >= 0 && column < fields ? text(data, starts, ends, escaped, column, charset) : "";
+    }
+
+    private static String text(byte[] data, int[] starts, int[] ends, boolean[] escaped, int column, Charset charset) {
+        final String text = new String(data, starts[column], ends[column] - starts[column], charset);
+        return escaped[column] ? text.replace("\"\"", "\"") : text;
+    }
+
+    /**
+     * -1 for a debit, 1 for a credit and 0 if the indicator is unknown.
+     */
+    static int indicatorSign(String indicator) {
+        switch (indicator.trim().toUpperCase(Locale.ROOT)) {
+            case "S":
+            case "D":
+            case "DR":
+            case "DBIT":
+            case "DEBIT":
+            case "SOLL":
+            case "-":
+                return -1;
+            case "H":
+            case "C":
+            case "CR":
+            case "CRDT":
+            case "CREDIT":
+            case "HABEN":
+            case "+":
+                return 1;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * The {@link ExchangeRates} of a file, read again only when the file changed. Asking for the rates costs a look at
+ * the modification time and size of the file, so it can be done for every calculation of the totals.
+ *
+ * Not thread safe.
+ */
+public final class ExchangeRateFile {
+
+    private final Path path;
+    private ExchangeRates rates = ExchangeRates.NONE;
+    private FileTime lastModified;
+    private long size = -1;
+
+    public ExchangeRateFile(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * The current rates of the file, {@link ExchangeRates#NONE} if there's no file.
+     *
+     * @throws IOException              if the file can't be read. The rates it had before are kept.
+     * @throws IllegalArgumentException if a line of the file isn't valid. The rates it had before are kept.
+     */
+    public ExchangeRates get() throws IOException {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            rates = ExchangeRates.NONE;
+            lastModified = null;
+            size = -1;
+            return rates;
+        }
+        if (attributes.lastModifiedTime().equals(lastModified) && attributes.size() == size) {
+            return rates;
+        }
+        //Marked as read before reading, so an invalid file is only reported once.
+        lastModified = attributes.lastModifiedTime();
+        size = attributes.size();
+        rates = ExchangeRates.read(path);
+        return rates;
+    }
+
+    /**
+     * The rates which were read last, without looking at the file.
+     */
+    public ExchangeRates cached() {
+        return rates;
+    }
+}
@@ -0,0 +1,156 @@
+package core;
+
+import model.Transaction;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Exchange rates into a base currency, read from a text file with one currency per line:
+ * <pre>
+ * # What one unit of the currency is worth in the base currency, the first line is the base currency.
+ * CHF 1
+ * EUR 1.0712
+ * USD 0.8921
+ * </pre>
+ * Rows without a currency are in the base currency. The rates are kept in an array indexed by the currency id (see
+ * {@link Transaction#getCurrencyId()}), so a conversion is a multiplication without any lookup of strings.
+ *
+ * Immutable, read the file again for new rates (see {@link ExchangeRateFile}).
+ */
+public final class ExchangeRates {
+
+    /**
+     * Without rates, all values are added up as they are, like before there were currencies.
+     */
+    public static final ExchangeRates NONE = new ExchangeRates(Collections.emptyList(), new double[0]);
+
+    private static final Telemetry.Operation CONVERT = Telemetry.operation("convert");
+
+    private final List<String> currencies;
+
+    /**
+     * What one unit of each currency is worth in the base currency, by currency id. NaN for currencies without rate.
+     */
+    private final double[] rates;
+
+    private ExchangeRates(List<String> currencies, double[] rates) {
+        this.currencies = currencies;
+        this.rates = rates;
+    }
+
+    public static ExchangeRates read(Path path) throws IOException {
+        return parse(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException with the line number, if a line isn't a currency with a positive rate, a
+     *                                  currency is listed twice or the rate of the base currency isn't 1.
+     */
+    public static ExchangeRates parse(List<String> lines) {
+        final List<String> currencies = new ArrayList<>();
+        double[] rates = new double[0];
+        for (int i = 0; i < lines.size(); ++i) {
+            final String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] parts = line.split("\\s+");
+            final double rate;
+            try {
+                rate = parts.length == 2 ? Double.parseDouble(parts[1].replace(',', '.')) : Double.NaN;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": Invalid rate: " + parts[1], e);
+            }
+            if (!(rate > 0) || Double.isInfinite(rate)) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": Expected a currency and a positive rate: " + line);
+            }
+            final String currency = parts[0].toUpperCase(Locale.ROOT);
+            if (currencies.contains(currency)) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + currency + " is listed twice");
+            }
+            if (currencies.isEmpty() && rate != 1) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": The rate of the base currency " + currency + " must be 1");
+            }
+            final int id = Transaction.currencyId(currency);
+            if (id >= rates.length) {
+                final int length = rates.length;
+                rates = Arrays.copyOf(rates, id + 1);
+                Arrays.fill(rates, length, rates.length, Double.NaN);
+            }
+            rates[id] = rate;
+            currencies.add(currency);
+        }
+        return new ExchangeRates(Collections.unmodifiableList(currencies), rates);
+    }
+
+    /**
+     * The currencies in the order of the file, the first is the base currency.
+     */
+    public List<String> getCurrencies() {
+        return currencies;
+    }
+
+    /**
+     * The base currency, or null without rates.
+     */
+    public String getBase() {
+        return currencies.isEmpty() ? null : currencies.get(0);
+    }
+
+    /**
+     * Converts the sum to the currency in one pass over the sums per currency, the rows aren't needed again. Rows
+     * in a currency without rate (or all rows with a currency, if the target has no rate) aren't part of the sum and
+     * count as invalid. Without rates, the totals are returned as they are.
+     *
+     * @param currencyId the id of the currency to convert to, -1 for the base currency.
+     */
+    public Totals convert(Totals totals, int currencyId) {
+        if (currencies.isEmpty()) {
+            return totals;
+        }
+        final long start = System.nanoTime();
+        final int count = totals.currencies();
+        final double target = rate(currencyId);
+        //The factors into the target currency, 0 for a currency without rate, which is counted as unknown instead.
+        final double[] factors = new double[count];
+        final long[] unknown = new long[count];
+        final long[] yearlyCents = new long[count];
+        final long[] rows = new long[count];
+        long currencyCents = 0;
+        long currencyRows = 0;
+        for (int id = 0; id < count; ++id) {
+            final double factor = rate(id) / target;
+            factors[id] = Double.isNaN(factor) ? 0 : factor;
+            unknown[id] = Double.isNaN(factor) ? 1 : 0;
+            yearlyCents[id] = totals.yearlyCentsOf(id);
+            rows[id] = totals.rowsOf(id);
+            currencyCents += yearlyCents[id];
+            currencyRows += rows[id];
+        }
+        //The rows without currency are in the base currency.
+        double converted = Double.isNaN(target) ? 0 : (totals.getYearlyCents() - currencyCents) / target;
+        long unconverted = Double.isNaN(target) ? totals.getRows() - currencyRows : 0;
+        for (int id = 0; id < count; ++id) {
+            converted += yearlyCents[id] * factors[id];
+            unconverted += rows[id] * unknown[id];
+        }
+        final Totals result = new Totals(Math.round(converted), totals.getRows(), totals.getInvalidRows() + unconverted);
+        CONVERT.record(System.nanoTime() - start, totals.getRows(), 0, 0);
+        return result;
+    }
+
+    private double rate(int currencyId) {
+        if (currencyId < 0) {
+            return 1;
+        }
+        return currencyId < rates.length ? rates[currencyId] : Double.NaN;
+    }
+}
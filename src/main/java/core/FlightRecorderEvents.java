@@ -0,0 +1,133 @@
+package core;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The "nubage.Operation" Flight Recorder event, which is committed for every measured {@link Telemetry.Span}. It
+ * carries the name of the operation, its rows, bytes and allocated bytes, the duration is the one of the event.
+ *
+ * The application is built for Java 8, where {@code jdk.jfr} can't be compiled against, so the event is defined at
+ * runtime with {@code jdk.jfr.EventFactory}. On a JVM without it, nothing is recorded. Start a recording as usual,
+ * e.g. with {@code -XX:StartFlightRecording=filename=nubage.jfr}.
+ */
+final class FlightRecorderEvents {
+
+    private static final int OPERATION = 0;
+    private static final int ROWS = 1;
+    private static final int BYTES = 2;
+    private static final int ALLOCATED_BYTES = 3;
+
+    private static final Object FACTORY;
+    private static final Method NEW_EVENT;
+    private static final Method BEGIN;
+    private static final Method END;
+    private static final Method SHOULD_COMMIT;
+    private static final Method SET;
+    private static final Method COMMIT;
+
+    static {
+        Object factory = null;
+        Method newEvent = null;
+        Method begin = null;
+        Method end = null;
+        Method shouldCommit = null;
+        Method set = null;
+        Method commit = null;
+        try {
+            final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            final Class<?> event = Class.forName("jdk.jfr.Event");
+            final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            final Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            final Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+            final Constructor<?> newValue = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+
+            final List<Object> eventAnnotations = Arrays.asList(
+                    newAnnotation.newInstance(annotation("jdk.jfr.Name"), "nubage.Operation"),
+                    newAnnotation.newInstance(annotation("jdk.jfr.Label"), "Nubage Operation"),
+                    newAnnotation.newInstance(annotation("jdk.jfr.Category"), new String[]{"Nubage"}));
+            final Object bytesAmount = newAnnotation.newInstance(annotation("jdk.jfr.DataAmount"), "BYTES");
+            final List<Object> fields = new ArrayList<>();
+            fields.add(OPERATION, newValue.newInstance(String.class, "operation", Collections.singletonList(
+                    newAnnotation.newInstance(annotation("jdk.jfr.Label"), "Operation"))));
+            fields.add(ROWS, newValue.newInstance(long.class, "rows", Collections.singletonList(
+                    newAnnotation.newInstance(annotation("jdk.jfr.Label"), "Rows"))));
+            fields.add(BYTES, newValue.newInstance(long.class, "bytes", Arrays.asList(bytesAmount,
+                    newAnnotation.newInstance(annotation("jdk.jfr.Label"), "Bytes"))));
+            fields.add(ALLOCATED_BYTES, newValue.newInstance(long.class, "allocatedBytes", Arrays.asList(bytesAmount,
+                    newAnnotation.newInstance(annotation("jdk.jfr.Label"), "Allocated Bytes"))));
+
+            factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, eventAnnotations, fields);
+            newEvent = eventFactory.getMethod("newEvent");
+            begin = event.getMethod("begin");
+            end = event.getMethod("end");
+            shouldCommit = event.getMethod("shouldCommit");
+            set = event.getMethod("set", int.class, Object.class);
+            commit = event.getMethod("commit");
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            //No Flight Recorder in this JVM.
+            factory = null;
+        }
+        FACTORY = factory;
+        NEW_EVENT = newEvent;
+        BEGIN = begin;
+        END = end;
+        SHOULD_COMMIT = shouldCommit;
+        SET = set;
+        COMMIT = commit;
+    }
+
+    private FlightRecorderEvents() {}
+
+    static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    /**
+     * A new event whose duration starts now, or null if there's no Flight Recorder.
+     */
+    static Object begin() {
+        if (FACTORY == null) {
+            return null;
+        }
+        try {
+            final Object event = NEW_EVENT.invoke(FACTORY);
+            BEGIN.invoke(event);
+            return event;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ends the event and commits it, if a recording wants it.
+     */
+    static void commit(Object event, String operation, long rows, long bytes, long allocatedBytes) {
+        if (event == null) {
+            return;
+        }
+        try {
+            END.invoke(event);
+            if (!(Boolean) SHOULD_COMMIT.invoke(event)) {
+                return;
+            }
+            SET.invoke(event, OPERATION, operation);
+            SET.invoke(event, ROWS, rows);
+            SET.invoke(event, BYTES, bytes);
+            SET.invoke(event, ALLOCATED_BYTES, allocatedBytes);
+            COMMIT.invoke(event);
+        } catch (ReflectiveOperationException e) {
+            //The measurement is kept by the counters anyway.
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Annotation> annotation(String name) throws ClassNotFoundException {
+        return (Class<? extends Annotation>) Class.forName(name);
+    }
+}
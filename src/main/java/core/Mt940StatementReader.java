@@ -0,0 +1,293 @@
+package core;
+
+import core.SheetFiles.ProgressListener;
+import model.Transaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * Reads SWIFT MT940 statements line by line. Every statement line (field {@code :61:}) becomes a transaction with
+ * the amount of its debit/credit mark ("D", "C", or "RD" and "RC" for reversals). The title comes from the
+ * information field {@code :86:} which follows it: with the German structured format ("?20" to "?29" remittance,
+ * "?32" and "?33" the other party), the other party or the remittance text, otherwise the whole field. The currency
+ * is the one of the opening balance (field {@code :60F:} or {@code :60M:}). The day is the entry date of the
+ * statement line, or its value date if it has no entry date.
+ */
+final class Mt940StatementReader {
+
+    private Mt940StatementReader() {}
+
+    /**
+     * A statement line whose information field may still follow.
+     */
+    private static final class Line {
+
+        private final long cents;
+        private final int day;
+        private final String reference;
+
+        private Line(long cents, int day, String reference) {
+            this.cents = cents;
+            this.day = day;
+            this.reference = reference;
+        }
+    }
+
+    static StatementImport.Report read(Path path, Consumer<List<Transaction>> batchConsumer, ProgressListener progress) throws IOException {
+        final byte[] start = StatementImport.sniff(path);
+        final Charset charset = StatementImport.detectCharset(start, start.length);
+        final StatementImport.Report report = new StatementImport.Report();
+        final long fileSize = Files.size(path);
+        final List<List<Transaction>> batches = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(path), charset))) {
+            final Parser parser = new Parser(report, batches);
+            long bytes = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                parser.line(text);
+                bytes += text.length() + 1;
+                for (List<Transaction> batch : batches) {
+                    batchConsumer.accept(batch);
+                    if (!progress.update(bytes, fileSize)) {
+                        throw new CancellationException();
+                    }
+                }
+                batches.clear();
+            }
+            parser.end();
+            for (List<Transaction> batch : batches) {
+                batchConsumer.accept(batch);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Collects the fields, which can span several lines, and turns the statement lines into transactions.
+     */
+    private static final class Parser {
+
+        private final StatementImport.Report report;
+        private final List<List<Transaction>> batches;
+        private List<Transaction> batch = new ArrayList<>(SheetFiles.LOAD_BATCH_SIZE);
+
+        private long lineNumber = 0;
+        private String tag;
+        private long fieldLine;
+        private final StringBuilder field = new StringBuilder();
+        private Line pending;
+        private String currency;
+
+        private Parser(StatementImport.Report report, List<List<Transaction>> batches) {
+            this.report = report;
+            this.batches = batches;
+        }
+
+        private void line(String text) {
+            lineNumber++;
+            final int tagEnd = text.startsWith(":") ? text.indexOf(':', 1) : -1;
+            if (tagEnd > 1 && tagEnd <= 4) {
+                endField();
+                tag = text.substring(1, tagEnd);
+                fieldLine = lineNumber;
+                field.append(text, tagEnd + 1, text.length());
+            } else if (text.startsWith("-")) {
+                //End of a message.
+                endField();
+                tag = null;
+                addPending(null);
+            } else if (tag != null) {
+                field.append('\n').append(text);
+            }
+        }
+
+        private void end() {
+            endField();
+            addPending(null);
+            if (!batch.isEmpty()) {
+                batches.add(batch);
+            }
+        }
+
+        private void endField() {
+            if (tag == null) {
+                return;
+            }
+            final String value = field.toString();
+            field.setLength(0);
+            if ("61".equals(tag)) {
+                addPending(null);
+                statementLine(value);
+            } else if ("86".equals(tag)) {
+                addPending(value);
+            } else if (tag.startsWith("62") || tag.startsWith("64") || tag.startsWith("65")) {
+                addPending(null);
+            } else if (tag.startsWith("60") && value.length() >= 10) {
+                //The opening balance: debit/credit mark, date and the currency of the account.
+                currency = value.substring(7, 10);
+            }
+        }
+
+        /**
+         * {@code YYMMDD[MMDD](C|D|RC|RD)[funds code]amount(N|F|S)xxx[reference][//bank reference]}
+         */
+        private void statementLine(String value) {
+            final String first = value.split("\n", 2)[0];
+            int position = 6;
+            int day = Transaction.NO_DAY;
+            if (first.length() >= 6 && isDigits(first, 0, 6)) {
+                day = day(2000 + number(first, 0), number(first, 2), number(first, 4));
+            }
+            if (first.length() >= 10 && isDigits(first, 6, 10)) {
+                position = 10;
+                day = entryDay(day, number(first, 6), number(first, 8));
+            }
+            int sign = 0;
+            boolean reversal = false;
+            if (first.startsWith("R", position)) {
+                reversal = true;
+                position++;
+            }
+            if (first.startsWith("D", position)) {
+                sign = -1;
+                position++;
+            } else if (first.startsWith("C", position)) {
+                sign = 1;
+                position++;
+            }
+            if (sign == 0 || first.length() <= position) {
+                report.reject(fieldLine, "Unknown debit/credit mark", ":61:" + value);
+                return;
+            }
+            if (Character.isLetter(first.charAt(position))) {
+                position++;
+            }
+            final int amountStart = position;
+            while (position < first.length() && (Character.isDigit(first.charAt(position)) || first.charAt(position) == ',')) {
+                position++;
+            }
+            final long cents;
+            try {
+                cents = Math.abs(StatementImport.parseAmount(first.substring(amountStart, position)));
+            } catch (NumberFormatException e) {
+                report.reject(fieldLine, "Invalid amount", ":61:" + value);
+                return;
+            }
+            //The transaction type (4 characters) and then the reference for the account holder.
+            final String rest = first.length() > position + 4 ? first.substring(position + 4) : "";
+            final int bankReference = rest.indexOf("//");
+            final String reference = bankReference >= 0 ? rest.substring(0, bankReference) : rest;
+            pending = new Line(reversal ? -sign * cents : sign * cents, day, "NONREF".equals(reference) ? "" : reference);
+        }
+
+        /**
+         * Adds the pending statement line with its information field, if there's one.
+         */
+        private void addPending(String information) {
+            if (pending == null) {
+                return;
+            }
+            String title = information != null ? title(information) : "";
+            if (title.isEmpty()) {
+                title = pending.reference;
+            }
+            batch.add(StatementImport.transaction(title, pending.cents, pending.day, null, currency));
+            report.imported(1);
+            pending = null;
+            if (batch.size() == SheetFiles.LOAD_BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<>(SheetFiles.LOAD_BATCH_SIZE);
+            }
+        }
+
+        /**
+         * The other party or the remittance text of a structured field ("?32" etc.), or the whole field.
+         */
+        private static String title(String information) {
+            final int structured = information.indexOf('?');
+            if (structured < 0 || structured > 3) {
+                return information;
+            }
+            final StringBuilder party = new StringBuilder();
+            final StringBuilder remittance = new StringBuilder();
+            final StringBuilder bookingText = new StringBuilder();
+            //The lines of a structured field are cut at a fixed length, even within words.
+            for (String part : information.substring(structured + 1).replace("\n", "").split("\\?")) {
+                if (part.length() < 2) {
+                    continue;
+                }
+                final String key = part.substring(0, 2);
+                final String text = part.substring(2);
+                if ("32".equals(key) || "33".equals(key)) {
+                    party.append(text);
+                } else if (key.compareTo("20") >= 0 && key.compareTo("29") <= 0 || key.compareTo("60") >= 0 && key.compareTo("63") <= 0) {
+                    remittance.append(text);
+                } else if ("00".equals(key)) {
+                    bookingText.append(text);
+                }
+            }
+            if (party.toString().trim().length() > 0) {
+                return party.toString();
+            }
+            return remittance.toString().trim().length() > 0 ? remittance.toString() : bookingText.toString();
+        }
+
+        /**
+         * The entry date has no year, it's the one of the value date which is closest to it. A line booked on
+         * December 31 can get the value date of January 2.
+         */
+        private static int entryDay(int valueDay, int month, int dayOfMonth) {
+            if (valueDay == Transaction.NO_DAY) {
+                return Transaction.NO_DAY;
+            }
+            final int year = LocalDate.ofEpochDay(valueDay).getYear();
+            int closest = Transaction.NO_DAY;
+            for (int candidate = year - 1; candidate <= year + 1; ++candidate) {
+                final int entryDay = day(candidate, month, dayOfMonth);
+                if (entryDay != Transaction.NO_DAY && (closest == Transaction.NO_DAY
+                        || Math.abs((long) entryDay - valueDay) < Math.abs((long) closest - valueDay))) {
+                    closest = entryDay;
+                }
+            }
+            return closest != Transaction.NO_DAY ? closest : valueDay;
+        }
+
+        /**
+         * The epoch day, or {@link Transaction#NO_DAY} if there's no such date.
+         */
+        private static int day(int year, int month, int dayOfMonth) {
+            try {
+                return (int) LocalDate.of(year, month, dayOfMonth).toEpochDay();
+            } catch (DateTimeException e) {
+                return Transaction.NO_DAY;
+            }
+        }
+
+        /**
+         * The two digits at the position.
+         */
+        private static int number(String text, int position) {
+            return (text.charAt(position) - '0') * 10 + text.charAt(position + 1) - '0';
+        }
+
+        private static boolean isDigits(String text, int from, int to) {
+            for (int i = from; i < to; ++i) {
+                if (!Character.isDigit(text.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
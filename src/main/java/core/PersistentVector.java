@@ -0,0 +1,270 @@
+package core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Immutable list, where inserting, removing or replacing an element gives a new version and leaves the old one
+ * untouched. The versions share everything but the path to the changed element, so each change costs O(log n) time
+ * and memory instead of a copy of the whole list.
+ *
+ * The elements are kept in small arrays, which are the leaves of a balanced (AVL) tree. Each inner node knows the
+ * number of elements below it, so an element is found by its index.
+ */
+public final class PersistentVector<E> {
+
+    /**
+     * Most elements of a leaf. A full leaf is split into two when an element is inserted.
+     */
+    private static final int LEAF_SIZE = 32;
+
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(null);
+
+    private final Node root;
+
+    private PersistentVector(Node root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    /**
+     * A vector with the elements of the list, built in O(n).
+     */
+    public static <E> PersistentVector<E> of(List<? extends E> elements) {
+        if (elements.isEmpty()) {
+            return empty();
+        }
+        final List<Node> leaves = new ArrayList<>((elements.size() + LEAF_SIZE - 1) / LEAF_SIZE);
+        for (int from = 0; from < elements.size(); from += LEAF_SIZE) {
+            final int to = Math.min(from + LEAF_SIZE, elements.size());
+            leaves.add(new Leaf(elements.subList(from, to).toArray()));
+        }
+        return new PersistentVector<>(build(leaves, 0, leaves.size()));
+    }
+
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index, size());
+        Node node = root;
+        while (node instanceof Branch) {
+            final Branch branch = (Branch) node;
+            if (index < branch.left.size) {
+                node = branch.left;
+            } else {
+                index -= branch.left.size;
+                node = branch.right;
+            }
+        }
+        return (E) ((Leaf) node).items[index];
+    }
+
+    /**
+     * A new version with the element inserted at the index. The elements from the index on move one up.
+     */
+    public PersistentVector<E> insert(int index, E element) {
+        checkIndex(index, size() + 1);
+        if (root == null) {
+            return new PersistentVector<>(new Leaf(new Object[]{element}));
+        }
+        return new PersistentVector<>(insert(root, index, element));
+    }
+
+    /**
+     * A new version without the element at the index.
+     */
+    public PersistentVector<E> remove(int index) {
+        checkIndex(index, size());
+        return new PersistentVector<>(remove(root, index));
+    }
+
+    /**
+     * A new version with the element at the index replaced.
+     */
+    public PersistentVector<E> set(int index, E element) {
+        checkIndex(index, size());
+        return new PersistentVector<>(set(root, index, element));
+    }
+
+    /**
+     * The elements from (inclusive) to (exclusive) as new list.
+     */
+    public List<E> subList(int from, int to) {
+        if (from < 0 || to > size() || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + " to " + to + " of " + size());
+        }
+        final List<E> elements = new ArrayList<>(to - from);
+        for (int i = from; i < to; ++i) {
+            elements.add(get(i));
+        }
+        return elements;
+    }
+
+    /**
+     * All elements as new list, in O(n).
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> toList() {
+        final List<E> elements = new ArrayList<>(size());
+        final Deque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        while (node != null || !stack.isEmpty()) {
+            while (node instanceof Branch) {
+                stack.push(((Branch) node).right);
+                node = ((Branch) node).left;
+            }
+            if (node != null) {
+                for (Object item : ((Leaf) node).items) {
+                    elements.add((E) item);
+                }
+            }
+            node = stack.isEmpty() ? null : stack.pop();
+        }
+        return elements;
+    }
+
+    private static Node build(List<Node> leaves, int from, int to) {
+        if (to - from == 1) {
+            return leaves.get(from);
+        }
+        final int middle = (from + to) >>> 1;
+        return new Branch(build(leaves, from, middle), build(leaves, middle, to));
+    }
+
+    private static Node insert(Node node, int index, Object element) {
+        if (node instanceof Leaf) {
+            final Object[] items = ((Leaf) node).items;
+            final Object[] inserted = new Object[items.length + 1];
+            System.arraycopy(items, 0, inserted, 0, index);
+            inserted[index] = element;
+            System.arraycopy(items, index, inserted, index + 1, items.length - index);
+            if (inserted.length <= LEAF_SIZE) {
+                return new Leaf(inserted);
+            }
+            final int half = inserted.length / 2;
+            return new Branch(new Leaf(copyOfRange(inserted, 0, half)), new Leaf(copyOfRange(inserted, half, inserted.length)));
+        }
+        final Branch branch = (Branch) node;
+        if (index < branch.left.size) {
+            return balance(insert(branch.left, index, element), branch.right);
+        }
+        return balance(branch.left, insert(branch.right, index - branch.left.size, element));
+    }
+
+    /**
+     * Null, if the node was a leaf with only this element.
+     */
+    private static Node remove(Node node, int index) {
+        if (node instanceof Leaf) {
+            final Object[] items = ((Leaf) node).items;
+            if (items.length == 1) {
+                return null;
+            }
+            final Object[] removed = new Object[items.length - 1];
+            System.arraycopy(items, 0, removed, 0, index);
+            System.arraycopy(items, index + 1, removed, index, items.length - index - 1);
+            return new Leaf(removed);
+        }
+        final Branch branch = (Branch) node;
+        if (index < branch.left.size) {
+            final Node left = remove(branch.left, index);
+            return left == null ? branch.right : balance(left, branch.right);
+        }
+        final Node right = remove(branch.right, index - branch.left.size);
+        return right == null ? branch.left : balance(branch.left, right);
+    }
+
+    private static Node set(Node node, int index, Object element) {
+        if (node instanceof Leaf) {
+            final Object[] items = ((Leaf) node).items.clone();
+            items[index] = element;
+            return new Leaf(items);
+        }
+        final Branch branch = (Branch) node;
+        if (index < branch.left.size) {
+            return new Branch(set(branch.left, index, element), branch.right);
+        }
+        return new Branch(branch.left, set(branch.right, index - branch.left.size, element));
+    }
+
+    /**
+     * Joins two subtrees whose heights differ by at most two, rotating if they differ by two.
+     */
+    private static Node balance(Node left, Node right) {
+        if (left.height > right.height + 1) {
+            final Branch heavy = (Branch) left;
+            if (heavy.left.height >= heavy.right.height) {
+                return new Branch(heavy.left, new Branch(heavy.right, right));
+            }
+            final Branch inner = (Branch) heavy.right;
+            return new Branch(new Branch(heavy.left, inner.left), new Branch(inner.right, right));
+        }
+        if (right.height > left.height + 1) {
+            final Branch heavy = (Branch) right;
+            if (heavy.right.height >= heavy.left.height) {
+                return new Branch(new Branch(left, heavy.left), heavy.right);
+            }
+            final Branch inner = (Branch) heavy.left;
+            return new Branch(new Branch(left, inner.left), new Branch(inner.right, heavy.right));
+        }
+        return new Branch(left, right);
+    }
+
+    private static Object[] copyOfRange(Object[] items, int from, int to) {
+        final Object[] copy = new Object[to - from];
+        System.arraycopy(items, from, copy, 0, copy.length);
+        return copy;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+    }
+
+    private abstract static class Node {
+
+        final int size;
+        final int height;
+
+        Node(int size, int height) {
+            this.size = size;
+            this.height = height;
+        }
+    }
+
+    private static final class Leaf extends Node {
+
+        final Object[] items;
+
+        Leaf(Object[] items) {
+            super(items.length, 0);
+            this.items = items;
+        }
+    }
+
+    private static final class Branch extends Node {
+
+        final Node left;
+        final Node right;
+
+        Branch(Node left, Node right) {
+            super(left.size + right.size, Math.max(left.height, right.height) + 1);
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
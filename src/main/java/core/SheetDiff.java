@@ -0,0 +1,77 @@
+package core;
+
+import model.Transaction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The rows which have to be removed from and added to a list to get the content of another one, e.g. of a sheet
+ * which was changed by another program. Rows are compared by their content (see {@link ContentKey}), as a multiset:
+ * a row which is there twice in the list and once in the new content is removed once. A changed row is a removed
+ * and an added one. The order of the rows doesn't matter.
+ *
+ * The rows which are kept are the ones of the list, so everything which refers to them stays valid.
+ */
+public final class SheetDiff {
+
+    private final List<Transaction> removed;
+    private final List<Transaction> added;
+
+    private SheetDiff(List<Transaction> removed, List<Transaction> added) {
+        this.removed = removed;
+        this.added = added;
+    }
+
+    /**
+     * Compares the rows in O(n).
+     */
+    public static SheetDiff between(List<Transaction> current, List<Transaction> updated) {
+        final Map<ContentKey, Deque<Transaction>> rowsByContent = new HashMap<>();
+        for (Transaction transaction : current) {
+            rowsByContent.computeIfAbsent(new ContentKey(transaction), key -> new ArrayDeque<>()).add(transaction);
+        }
+        final Set<Transaction> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<Transaction> added = new ArrayList<>();
+        for (Transaction transaction : updated) {
+            final Deque<Transaction> rows = rowsByContent.get(new ContentKey(transaction));
+            if (rows != null && !rows.isEmpty()) {
+                kept.add(rows.poll());
+            } else {
+                added.add(transaction);
+            }
+        }
+        final List<Transaction> removed = new ArrayList<>(current.size() - kept.size());
+        for (Transaction transaction : current) {
+            if (!kept.contains(transaction)) {
+                removed.add(transaction);
+            }
+        }
+        return new SheetDiff(removed, added);
+    }
+
+    /**
+     * The rows of the list which aren't in the new content, in the order of the list.
+     */
+    public List<Transaction> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * The rows of the new content which aren't in the list, in the order of the new content.
+     */
+    public List<Transaction> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    public boolean isEmpty() {
+        return removed.isEmpty() && added.isEmpty();
+    }
+}
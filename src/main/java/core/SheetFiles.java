@@ -0,0 +1,374 @@
+package core;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import model.Money;
+import model.Period;
+import model.Transaction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Reading and writing of sheets (".json" and ".nubin") without any user interface, so it can be used by the
+ * application as well as by the batch mode.
+ */
+public final class SheetFiles {
+
+    public static final String JSON_EXTENSION = ".json";
+
+    /**
+     * Number of transactions which are handed over at once while loading.
+     */
+    public static final int LOAD_BATCH_SIZE = 1000;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    public static final ProgressListener NO_PROGRESS = (workDone, totalWork) -> true;
+
+    //Mapper, reader and writer are thread-safe and expensive to create, so they are shared by all loads and saves.
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader TRANSACTION_READER = MAPPER.readerFor(Transaction.class);
+    private static final ObjectWriter TRANSACTION_WRITER = MAPPER.writerFor(Transaction.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private static final Telemetry.Operation LOAD = Telemetry.operation("file.load");
+    private static final Telemetry.Operation LOAD_TOTALS = Telemetry.operation("file.loadTotals");
+    private static final Telemetry.Operation SAVE_JSON = Telemetry.operation("file.saveJson");
+
+    private SheetFiles() {}
+
+    /**
+     * Receives the progress of a load or save. Returning false cancels the operation.
+     */
+    public interface ProgressListener {
+        boolean update(long workDone, long totalWork);
+    }
+
+    /**
+     * Writes a sheet to the given file, see {@link #writeAtomically(File, TargetWriter)}.
+     */
+    public interface TargetWriter {
+        void write(Path target) throws IOException;
+    }
+
+    public static boolean isSheet(Path path) {
+        final String name = path.getFileName().toString();
+        return name.endsWith(JSON_EXTENSION) || name.endsWith(SnapshotFile.EXTENSION);
+    }
+
+    /**
+     * Reads a JSON or snapshot file as a stream. The transactions are passed to the consumer in batches of
+     * {@link #LOAD_BATCH_SIZE}, so the whole file never has to be in memory at once.
+     */
+    public static void read(Path path, Consumer<List<Transaction>> batchConsumer, ProgressListener progress) throws IOException {
+        final String name = path.getFileName().toString();
+        try (Telemetry.Span span = LOAD.start()) {
+            final Consumer<List<Transaction>> countingConsumer = batch -> {
+                span.addRows(batch.size());
+                batchConsumer.accept(batch);
+            };
+            if (name.endsWith(JSON_EXTENSION)) {
+                span.bytes(Files.size(path));
+                readJson(path, countingConsumer, progress);
+            } else if (name.endsWith(SnapshotFile.EXTENSION)) {
+                span.bytes(Files.size(path));
+                readSnapshot(path, countingConsumer, progress);
+            } else {
+                throw new IOException("Invalid file: " + path);
+            }
+        }
+    }
+
+    /**
+     * Calculates the totals of a sheet without creating any transactions. JSON files are read token by token,
+     * snapshots are summed up straight from their records.
+     */
+    public static Totals readTotals(Path path) throws IOException {
+        final String name = path.getFileName().toString();
+        try (Telemetry.Span span = LOAD_TOTALS.start()) {
+            final Totals totals;
+            if (name.endsWith(JSON_EXTENSION)) {
+                span.bytes(Files.size(path));
+                totals = readJsonTotals(path);
+            } else if (name.endsWith(SnapshotFile.EXTENSION)) {
+                span.bytes(Files.size(path));
+                try (SnapshotFile snapshot = SnapshotFile.open(path)) {
+                    totals = snapshot.totals();
+                }
+            } else {
+                throw new IOException("Invalid file: " + path);
+            }
+            span.rows(totals.getRows());
+            return totals;
+        }
+    }
+
+    /**
+     * Writes the list as JSON array. The transactions are streamed one by one to the file, so there's no
+     * intermediate String of the whole document. The file is synced to disk before it's closed.
+     *
+     * @param compact if true, the JSON is written without line breaks and indentation.
+     */
+    public static void writeJson(Path path, List<Transaction> transactionList, boolean compact, ProgressListener progress) throws IOException {
+        try (Telemetry.Span span = SAVE_JSON.start();
+             FileOutputStream file = new FileOutputStream(path.toFile());
+             JsonGenerator generator = MAPPER.getFactory().createGenerator(new BufferedOutputStream(file, WRITE_BUFFER_SIZE), JsonEncoding.UTF8)) {
+            if (!compact) {
+                generator.useDefaultPrettyPrinter();
+            }
+            generator.writeStartArray();
+            for (int i = 0; i < transactionList.size(); ++i) {
+                TRANSACTION_WRITER.writeValue(generator, transactionList.get(i));
+                if (i % LOAD_BATCH_SIZE == 0 && !progress.update(i, transactionList.size())) {
+                    throw new CancellationException();
+                }
+            }
+            generator.writeEndArray();
+            generator.flush();
+            file.getFD().sync();
+            span.rows(transactionList.size());
+            span.bytes(file.getChannel().size());
+        }
+    }
+
+    /**
+     * Writes to a temporary file next to the target, which then replaces the target with an atomic rename. If
+     * anything goes wrong while writing, the old file stays untouched.
+     *
+     * The rename replaces the file itself, so the temporary file gets the permissions, the owner and the group (or
+     * the ACL) of the target first; a sheet shared with others stays shared. A new sheet gets the default permissions
+     * of the directory, like any other new file.
+     */
+    public static void writeAtomically(File path, TargetWriter writer) throws IOException {
+        final Path target = path.toPath().toAbsolutePath();
+        final Path temporary = createTemporaryFile(target);
+        try {
+            writer.write(temporary);
+            copyAccess(target, temporary);
+            try {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Creates an empty file next to the target. Unlike Files.createTempFile, which only allows the owner to read it,
+     * the file is created with the default permissions.
+     */
+    private static Path createTemporaryFile(Path target) throws IOException {
+        while (true) {
+            final String suffix = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+            try {
+                return Files.createFile(target.resolveSibling("." + target.getFileName() + "." + suffix + ".tmp"));
+            } catch (FileAlreadyExistsException e) {
+                //Another save got the same name, try the next one.
+            }
+        }
+    }
+
+    /**
+     * Gives the copy the permissions, owner and group (POSIX) or the owner and ACL (Windows) of the original, if it
+     * exists. Only the owner's own permissions are copied for sure: changing the owner or the group usually needs more
+     * rights, the save doesn't fail because of that.
+     */
+    private static void copyAccess(Path original, Path copy) throws IOException {
+        if (!Files.exists(original, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        final PosixFileAttributeView posixCopy = Files.getFileAttributeView(copy, PosixFileAttributeView.class);
+        if (posixCopy != null) {
+            final PosixFileAttributes attributes = Files.readAttributes(original, PosixFileAttributes.class);
+            try {
+                posixCopy.setGroup(attributes.group());
+                posixCopy.setOwner(attributes.owner());
+            } catch (IOException e) {
+                //Not allowed, the copy keeps the user who saves it as owner.
+            }
+            posixCopy.setPermissions(attributes.permissions());
+            return;
+        }
+        final AclFileAttributeView aclCopy = Files.getFileAttributeView(copy, AclFileAttributeView.class);
+        final AclFileAttributeView aclOriginal = Files.getFileAttributeView(original, AclFileAttributeView.class);
+        if (aclCopy != null && aclOriginal != null) {
+            try {
+                aclCopy.setOwner(aclOriginal.getOwner());
+            } catch (IOException e) {
+                //Not allowed, like on POSIX.
+            }
+            aclCopy.setAcl(aclOriginal.getAcl());
+        }
+    }
+
+    /**
+     * The factory of the shared mapper, for reading and writing other documents than sheets.
+     */
+    public static JsonFactory jsonFactory() {
+        return MAPPER.getFactory();
+    }
+
+    /**
+     * Writes a single transaction the way it's saved in a sheet.
+     */
+    public static void writeTransaction(JsonGenerator generator, Transaction transaction) throws IOException {
+        TRANSACTION_WRITER.writeValue(generator, transaction);
+    }
+
+    /**
+     * Reads transactions the way they're saved in a sheet: an array of them, or a single one.
+     *
+     * @throws IOException also if the document isn't valid or a value can't be parsed.
+     */
+    public static List<Transaction> readTransactions(InputStream input) throws IOException {
+        try (JsonParser parser = MAPPER.getFactory().createParser(input)) {
+            final List<Transaction> transactions = new ArrayList<>();
+            final JsonToken first = parser.nextToken();
+            if (first == JsonToken.START_OBJECT) {
+                transactions.add(TRANSACTION_READER.readValue(parser));
+                return transactions;
+            }
+            if (first != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected a transaction or an array of transactions");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                transactions.add(TRANSACTION_READER.readValue(parser));
+            }
+            expectArrayEnd(parser);
+            return transactions;
+        }
+    }
+
+    private static void readJson(Path path, Consumer<List<Transaction>> batchConsumer, ProgressListener progress) throws IOException {
+        final long fileSize = Files.size(path);
+        try (InputStream input = new BufferedInputStream(Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ)), READ_BUFFER_SIZE);
+             JsonParser parser = MAPPER.getFactory().createParser(input)) {
+            expectArray(parser);
+            List<Transaction> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                batch.add(TRANSACTION_READER.readValue(parser));
+                if (batch.size() == LOAD_BATCH_SIZE) {
+                    batchConsumer.accept(batch);
+                    batch = new ArrayList<>(LOAD_BATCH_SIZE);
+                    if (!progress.update(parser.getCurrentLocation().getByteOffset(), fileSize)) {
+                        throw new CancellationException();
+                    }
+                }
+            }
+            expectArrayEnd(parser);
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(batch);
+            }
+        }
+    }
+
+    private static void readSnapshot(Path path, Consumer<List<Transaction>> batchConsumer, ProgressListener progress) throws IOException {
+        try (SnapshotFile snapshot = SnapshotFile.open(path)) {
+            List<Transaction> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+            for (int row = 0; row < snapshot.size(); ++row) {
+                batch.add(snapshot.transaction(row));
+                if (batch.size() == LOAD_BATCH_SIZE) {
+                    batchConsumer.accept(batch);
+                    batch = new ArrayList<>(LOAD_BATCH_SIZE);
+                    if (!progress.update(row, snapshot.size())) {
+                        throw new CancellationException();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(batch);
+            }
+        }
+    }
+
+    /**
+     * Only the period, the value and the currency of each transaction are read, everything else is skipped.
+     */
+    private static Totals readJsonTotals(Path path) throws IOException {
+        long yearlyCents = 0;
+        long rows = 0;
+        long invalidRows = 0;
+        long[] yearlyCentsByCurrency = new long[0];
+        long[] rowsByCurrency = new long[0];
+        try (InputStream input = new BufferedInputStream(Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ)), READ_BUFFER_SIZE);
+             JsonParser parser = MAPPER.getFactory().createParser(input)) {
+            expectArray(parser);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int periodCode = -1;
+                long amountCents = 0;
+                int currencyId = -1;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("period".equals(field)) {
+                        periodCode = Period.codeOf(parser.getValueAsString());
+                    } else if ("value".equals(field)) {
+                        amountCents = Money.parseCents(parser.getValueAsString());
+                    } else if ("currency".equals(field)) {
+                        currencyId = Transaction.currencyId(parser.getValueAsString());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                yearlyCents += amountCents * Period.yearlyFactor(periodCode);
+                invalidRows += Period.unknown(periodCode);
+                rows++;
+                if (currencyId >= 0) {
+                    if (currencyId >= rowsByCurrency.length) {
+                        yearlyCentsByCurrency = Arrays.copyOf(yearlyCentsByCurrency, currencyId + 1);
+                        rowsByCurrency = Arrays.copyOf(rowsByCurrency, currencyId + 1);
+                    }
+                    yearlyCentsByCurrency[currencyId] += amountCents * Period.yearlyFactor(periodCode);
+                    rowsByCurrency[currencyId]++;
+                }
+            }
+            expectArrayEnd(parser);
+        }
+        return new Totals(yearlyCents, rows, invalidRows, yearlyCentsByCurrency, rowsByCurrency);
+    }
+
+    private static void expectArray(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array of transactions");
+        }
+    }
+
+    private static void expectArrayEnd(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+            throw new JsonParseException(parser, "Expected a transaction");
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package core;
+
+import model.Period;
+import model.Transaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads several sheets in parallel and merges them into one list. Every transaction is tagged with the file it comes
+ * from (see {@link Transaction#getSource()}). Optionally, rows with the same content (see {@link ContentKey}) are
+ * only kept once, the first occurrence in the order of the sheets wins.
+ *
+ * The totals are summed per sheet in parallel and then reduced to the combined totals.
+ */
+public final class SheetMerger {
+
+    private final ForkJoinPool pool;
+
+    public SheetMerger(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * A merged list and its totals.
+     */
+    public static final class Result {
+
+        private final List<Transaction> transactions;
+        private final Totals totals;
+        private final int sheets;
+        private final int duplicates;
+        private final List<Path> failedSheets;
+
+        private Result(List<Transaction> transactions, Totals totals, int sheets, int duplicates, List<Path> failedSheets) {
+            this.transactions = transactions;
+            this.totals = totals;
+            this.sheets = sheets;
+            this.duplicates = duplicates;
+            this.failedSheets = failedSheets;
+        }
+
+        /**
+         * The rows of all sheets, in the order of the sheets.
+         */
+        public List<Transaction> getTransactions() {
+            return transactions;
+        }
+
+        public Totals getTotals() {
+            return totals;
+        }
+
+        /**
+         * Number of sheets which were merged.
+         */
+        public int getSheets() {
+            return sheets;
+        }
+
+        /**
+         * Number of removed duplicates.
+         */
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * Sheets which couldn't be read and aren't part of the result.
+         */
+        public List<Path> getFailedSheets() {
+            return failedSheets;
+        }
+    }
+
+    /**
+     * One loaded sheet with the totals of its rows.
+     */
+    private static final class Sheet {
+
+        private final List<Transaction> transactions;
+        private Totals totals;
+
+        Sheet(List<Transaction> transactions) {
+            this.transactions = transactions;
+        }
+    }
+
+    public Result merge(List<Path> paths, boolean removeDuplicates) {
+        final List<ForkJoinTask<Sheet>> loads = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            loads.add(pool.submit(() -> load(path)));
+        }
+        final List<Sheet> sheets = new ArrayList<>(paths.size());
+        final List<Path> failedSheets = new ArrayList<>();
+        for (int i = 0; i < loads.size(); ++i) {
+            try {
+                sheets.add(loads.get(i).join());
+            } catch (UncheckedIOException | NumberFormatException e) {
+                failedSheets.add(paths.get(i));
+            }
+        }
+
+        int duplicates = 0;
+        if (removeDuplicates) {
+            duplicates = removeDuplicates(sheets);
+        }
+        final List<ForkJoinTask<?>> sums = new ArrayList<>(sheets.size());
+        for (Sheet sheet : sheets) {
+            sums.add(pool.submit(() -> {
+                sheet.totals = sum(sheet.transactions);
+            }));
+        }
+        int rows = 0;
+        for (int i = 0; i < sums.size(); ++i) {
+            sums.get(i).join();
+            rows += sheets.get(i).transactions.size();
+        }
+        final Totals totals = pool.submit(() -> sheets.parallelStream()
+                .map(sheet -> sheet.totals)
+                .reduce(Totals.EMPTY, Totals::plus)).join();
+
+        final List<Transaction> transactions = new ArrayList<>(rows);
+        for (Sheet sheet : sheets) {
+            transactions.addAll(sheet.transactions);
+        }
+        return new Result(transactions, totals, sheets.size(), duplicates, Collections.unmodifiableList(failedSheets));
+    }
+
+    private static Sheet load(Path path) {
+        final String source = path.getFileName().toString();
+        final List<Transaction> transactions = new ArrayList<>();
+        try {
+            SheetFiles.read(path, batch -> {
+                for (Transaction transaction : batch) {
+                    transaction.setSource(source);
+                }
+                transactions.addAll(batch);
+            }, SheetFiles.NO_PROGRESS);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Sheet(transactions);
+    }
+
+    /**
+     * Needs to see the sheets in order, so the first occurrence of a row is the one which is kept.
+     */
+    private static int removeDuplicates(List<Sheet> sheets) {
+        final Set<ContentKey> seen = new HashSet<>();
+        int duplicates = 0;
+        for (Sheet sheet : sheets) {
+            final int before = sheet.transactions.size();
+            sheet.transactions.removeIf(transaction -> !seen.add(new ContentKey(transaction)));
+            duplicates += before - sheet.transactions.size();
+        }
+        return duplicates;
+    }
+
+    /**
+     * The totals of loaded transactions, the same as {@link SheetFiles#readTotals(Path)} calculates from the file.
+     */
+    static Totals sum(List<Transaction> transactions) {
+        long yearlyCents = 0;
+        long invalidRows = 0;
+        final long[] yearlyCentsByCurrency = new long[Transaction.currencyCount()];
+        final long[] rowsByCurrency = new long[yearlyCentsByCurrency.length];
+        for (Transaction transaction : transactions) {
+            yearlyCents += transaction.getYearlyCents();
+            invalidRows += Period.unknown(transaction.getPeriodCode());
+            final int currencyId = transaction.getCurrencyId();
+            if (currencyId >= 0) {
+                yearlyCentsByCurrency[currencyId] += transaction.getYearlyCents();
+                rowsByCurrency[currencyId]++;
+            }
+        }
+        return new Totals(yearlyCents, transactions.size(), invalidRows, yearlyCentsByCurrency, rowsByCurrency);
+    }
+}
@@ -0,0 +1,601 @@
+package core;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import model.Transaction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server mode: serves the sheets of a directory (and its subdirectories) as JSON over HTTP, without the user
+ * interface. Only connections from the same machine are accepted.
+ * <pre>
+ * GET  /sheets                                      the sheets with their size and modification time
+ * GET  /sheets/{sheet}/transactions?offset=&amp;limit= a page of rows, at most {@value #MAX_LIMIT}
+ * POST /sheets/{sheet}/transactions                 appends a transaction or an array of them
+ * GET  /sheets/{sheet}/totals                       the sum per year, month, week, day and hour
+ * </pre>
+ * The sheet is its path relative to the directory, e.g. {@code /sheets/2017/household.json/totals}.
+ *
+ * Every request runs on its own thread, idle threads are reused. The rows and responses of a sheet are cached
+ * until its file changes: each request only looks at the modification time and size of the file (like
+ * {@link ExchangeRateFile}), and the same request on an unchanged sheet is answered with the bytes of the first
+ * response. The responses carry an ETag, a client which sends it back gets a 304 without any body. The cached
+ * responses of all sheets together are bounded by bytes, and a sheet which isn't asked for a while is forgotten with
+ * its rows, so a client which pages through many sheets doesn't pin them all in memory.
+ *
+ * Usage: {@code SheetServer <directory> [port]}.
+ */
+public final class SheetServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 8080;
+
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 10_000;
+
+    /**
+     * Connections which may wait to be accepted, so a burst of clients isn't refused.
+     */
+    private static final int BACKLOG = 4096;
+
+    /**
+     * Bytes of the responses kept for all sheets together. Responses beyond it are still answered, just not cached.
+     */
+    private static final long MAX_CACHED_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * A sheet which wasn't asked for this long is forgotten with its rows and responses, the next request reads it
+     * again.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private static final long SWEEP_INTERVAL_SECONDS = 60;
+
+    private static final Telemetry.Operation REQUEST = Telemetry.operation("server.request");
+    private static final Telemetry.Operation APPEND = Telemetry.operation("server.append");
+
+    private final Path directory;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService sweeper;
+    private final ConcurrentMap<Path, ServedSheet> sheets = new ConcurrentHashMap<>();
+    private final AtomicLong cachedBytes = new AtomicLong();
+
+    private SheetServer(Path directory, int port) throws IOException {
+        this.directory = directory.toAbsolutePath().normalize();
+        final AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "nubage-server-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.createContext("/sheets", this::handle);
+        server.setExecutor(executor);
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "nubage-server-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::forgetIdleSheets, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts serving the sheets of the directory on the port of the loopback address.
+     *
+     * @param port 0 for any free port, see {@link #getPort()}.
+     */
+    public static SheetServer start(Path directory, int port) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            throw new NoSuchFileException(directory.toString(), null, "Not a directory");
+        }
+        final SheetServer sheetServer = new SheetServer(directory, port);
+        sheetServer.server.start();
+        return sheetServer;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: SheetServer <directory> [port]");
+            System.exit(2);
+        }
+        final SheetServer sheetServer = start(Paths.get(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            sheetServer.close();
+            Telemetry.dumpIfRequested();
+        }));
+        System.err.printf("Serving %s on http://localhost:%d/sheets%n", sheetServer.directory, sheetServer.getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, the running ones get a second to finish.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        sweeper.shutdownNow();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A request which can't be answered, the message is sent to the client.
+     */
+    private static final class RequestException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Writes the body of a response.
+     */
+    private interface ResponseWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (Telemetry.Span span = REQUEST.start()) {
+            int status;
+            byte[] body;
+            String etag = null;
+            try {
+                final Response response = respond(exchange);
+                status = response.status;
+                body = response.body;
+                etag = response.etag;
+            } catch (RequestException e) {
+                status = e.status;
+                body = json(generator -> writeError(generator, e.getMessage()));
+            } catch (NoSuchFileException e) {
+                status = 404;
+                body = json(generator -> writeError(generator, "No such sheet"));
+            } catch (IOException | UncheckedIOException | NumberFormatException e) {
+                status = 500;
+                body = json(generator -> writeError(generator, String.valueOf(e.getMessage())));
+            }
+            if (etag != null) {
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            }
+            if (status == 304) {
+                exchange.sendResponseHeaders(status, -1);
+            } else {
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+                span.bytes(body.length);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static final class Response {
+
+        private final int status;
+        private final byte[] body;
+        private final String etag;
+
+        Response(int status, byte[] body, String etag) {
+            this.status = status;
+            this.body = body;
+            this.etag = etag;
+        }
+    }
+
+    private Response respond(HttpExchange exchange) throws RequestException, IOException {
+        final String method = exchange.getRequestMethod();
+        final String path = exchange.getRequestURI().getRawPath();
+        if ("/sheets".equals(path) || "/sheets/".equals(path)) {
+            expectMethod(method, "GET");
+            return new Response(200, json(this::writeSheets), null);
+        }
+        final String rest = path.startsWith("/sheets/") ? path.substring("/sheets/".length()) : "";
+        if (rest.endsWith("/totals")) {
+            expectMethod(method, "GET");
+            final ServedSheet sheet = sheet(rest.substring(0, rest.length() - "/totals".length()));
+            return cached(exchange, sheet, "totals", (version, generator) -> {
+                generator.writeStartObject();
+                generator.writeStringField("sheet", sheet.name);
+                BatchCalculator.writeTotals(generator, version.totals(sheet.path));
+                generator.writeEndObject();
+            });
+        }
+        if (rest.endsWith("/transactions")) {
+            final ServedSheet sheet = sheet(rest.substring(0, rest.length() - "/transactions".length()));
+            if ("POST".equals(method)) {
+                final int rows = sheet.append(readTransactions(exchange));
+                return new Response(201, json(generator -> {
+                    generator.writeStartObject();
+                    generator.writeStringField("sheet", sheet.name);
+                    generator.writeNumberField("rows", rows);
+                    generator.writeEndObject();
+                }), null);
+            }
+            expectMethod(method, "GET");
+            final Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            final int offset = number(query, "offset", 0);
+            final int limit = number(query, "limit", DEFAULT_LIMIT);
+            if (limit > MAX_LIMIT) {
+                throw new RequestException(400, "The limit is at most " + MAX_LIMIT);
+            }
+            return cached(exchange, sheet, "transactions " + offset + " " + limit, (version, generator) -> {
+                final List<Transaction> rows = version.rows(sheet.path);
+                final int from = (int) Math.min(rows.size(), (long) offset);
+                final int to = (int) Math.min(rows.size(), (long) from + limit);
+                generator.writeStartObject();
+                generator.writeStringField("sheet", sheet.name);
+                generator.writeNumberField("offset", offset);
+                generator.writeNumberField("total", rows.size());
+                generator.writeArrayFieldStart("transactions");
+                for (int row = from; row < to; ++row) {
+                    SheetFiles.writeTransaction(generator, rows.get(row));
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            });
+        }
+        throw new RequestException(404, "Unknown resource: " + path);
+    }
+
+    /**
+     * The response of the current version of the sheet, written only if it isn't cached yet.
+     */
+    private Response cached(HttpExchange exchange, ServedSheet sheet, String key, VersionWriter writer) throws IOException {
+        final Version version = sheet.current();
+        if (version.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            return new Response(304, null, version.etag);
+        }
+        byte[] body = version.responses.get(key);
+        if (body == null) {
+            body = json(generator -> writer.write(version, generator));
+            if (reserve(body.length) && !version.cache(key, body)) {
+                cachedBytes.addAndGet(-body.length);
+            }
+        }
+        return new Response(200, body, version.etag);
+    }
+
+    /**
+     * Counts the bytes of a response which is about to be cached, if they still fit into {@link #MAX_CACHED_BYTES}.
+     */
+    private boolean reserve(int bytes) {
+        long used;
+        do {
+            used = cachedBytes.get();
+            if (used + bytes > MAX_CACHED_BYTES) {
+                return false;
+            }
+        } while (!cachedBytes.compareAndSet(used, used + bytes));
+        return true;
+    }
+
+    private void forgetIdleSheets() {
+        final long now = System.nanoTime();
+        for (ServedSheet sheet : sheets.values()) {
+            if (now - sheet.lastRequest > IDLE_NANOS && sheets.remove(sheet.path, sheet)) {
+                sheet.forget();
+            }
+        }
+    }
+
+    private interface VersionWriter {
+        void write(Version version, JsonGenerator generator) throws IOException;
+    }
+
+    private void writeSheets(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("sheets");
+        for (Path path : BatchCalculator.findSheets(directory, null)) {
+            final BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            generator.writeStartObject();
+            generator.writeStringField("sheet", nameOf(path));
+            generator.writeNumberField("bytes", attributes.size());
+            generator.writeStringField("modified", attributes.lastModifiedTime().toString());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static void writeError(JsonGenerator generator, String message) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("error", message);
+        generator.writeEndObject();
+    }
+
+    private static byte[] json(ResponseWriter writer) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+        try (JsonGenerator generator = SheetFiles.jsonFactory().createGenerator(output, JsonEncoding.UTF8)) {
+            writer.write(generator);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * The served sheet of an encoded path relative to the directory. Paths out of the directory and files which
+     * aren't sheets don't exist.
+     */
+    private ServedSheet sheet(String encodedName) throws RequestException {
+        final Path path;
+        try {
+            path = directory.resolve(URLDecoder.decode(encodedName, "UTF-8")).normalize();
+        } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+            throw new RequestException(404, "No such sheet");
+        }
+        if (!path.startsWith(directory) || path.equals(directory) || !SheetFiles.isSheet(path) || !Files.isRegularFile(path)) {
+            throw new RequestException(404, "No such sheet");
+        }
+        final ServedSheet sheet = sheets.computeIfAbsent(path, file -> new ServedSheet(file, nameOf(file), cachedBytes));
+        sheet.lastRequest = System.nanoTime();
+        return sheet;
+    }
+
+    private String nameOf(Path path) {
+        return directory.relativize(path).toString().replace('\\', '/');
+    }
+
+    private static List<Transaction> readTransactions(HttpExchange exchange) throws RequestException {
+        try (InputStream input = exchange.getRequestBody()) {
+            final List<Transaction> transactions = SheetFiles.readTransactions(input);
+            if (transactions.isEmpty()) {
+                throw new RequestException(400, "No transactions");
+            }
+            return transactions;
+        } catch (JsonProcessingException e) {
+            throw new RequestException(400, "Invalid transactions: " + e.getOriginalMessage());
+        } catch (IOException | NumberFormatException e) {
+            throw new RequestException(400, "Invalid transactions: " + e.getMessage());
+        }
+    }
+
+    private static void expectMethod(String method, String expected) throws RequestException {
+        if (!expected.equals(method)) {
+            throw new RequestException(405, method + " isn't supported, expected " + expected);
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) throws RequestException {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, String> parameters = new HashMap<>();
+        try {
+            for (String parameter : rawQuery.split("&")) {
+                final int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                            URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+                }
+            }
+        } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+            throw new RequestException(400, "Invalid query: " + rawQuery);
+        }
+        return parameters;
+    }
+
+    private static int number(Map<String, String> query, String name, int defaultValue) throws RequestException {
+        final String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final int number = Integer.parseInt(value);
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            //Reported below.
+        }
+        throw new RequestException(400, "Expected a number >= 0 as " + name + ": " + value);
+    }
+
+    /**
+     * A sheet which was asked for, with the version of its file which was seen last.
+     */
+    private static final class ServedSheet {
+
+        private final Path path;
+        private final String name;
+        private final AtomicLong cachedBytes;
+        private Version version;
+        private boolean forgotten = false;
+        private volatile long lastRequest = System.nanoTime();
+
+        ServedSheet(Path path, String name, AtomicLong cachedBytes) {
+            this.path = path;
+            this.name = name;
+            this.cachedBytes = cachedBytes;
+        }
+
+        /**
+         * The version of the file as it is now. A changed file gets a new version without any rows or responses.
+         */
+        synchronized Version current() throws IOException {
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (version == null || !version.isOf(attributes)) {
+                replace(new Version(attributes, null));
+            }
+            return version;
+        }
+
+        /**
+         * Drops the cached responses, after the sheet was removed from the served ones. Requests which still have it
+         * are answered, but nothing is cached for them anymore.
+         */
+        synchronized void forget() {
+            forgotten = true;
+            if (version != null) {
+                cachedBytes.addAndGet(-version.drop());
+            }
+        }
+
+        private void replace(Version next) {
+            if (version != null) {
+                cachedBytes.addAndGet(-version.drop());
+            }
+            if (forgotten) {
+                next.drop();
+            }
+            version = next;
+        }
+
+        /**
+         * Appends the transactions to the file, replacing it atomically. The new rows become the current version, so
+         * the next request doesn't have to read them again.
+         *
+         * @return the number of rows afterwards.
+         */
+        synchronized int append(List<Transaction> transactions) throws IOException {
+            try (Telemetry.Span span = APPEND.start()) {
+                final List<Transaction> existing = current().rows(path);
+                final List<Transaction> rows = new ArrayList<>(existing.size() + transactions.size());
+                rows.addAll(existing);
+                rows.addAll(transactions);
+                SheetFiles.writeAtomically(path.toFile(), target -> {
+                    if (path.getFileName().toString().endsWith(SnapshotFile.EXTENSION)) {
+                        SnapshotFile.write(target, rows);
+                    } else {
+                        SheetFiles.writeJson(target, rows, false, SheetFiles.NO_PROGRESS);
+                    }
+                });
+                replace(new Version(Files.readAttributes(path, BasicFileAttributes.class), Collections.unmodifiableList(rows)));
+                span.rows(transactions.size());
+                return rows.size();
+            }
+        }
+    }
+
+    /**
+     * One state of a sheet's file. Its rows and totals are read when they're first needed, and the responses are kept
+     * until the file changes or the sheet is forgotten.
+     */
+    private static final class Version {
+
+        private final FileTime lastModified;
+        private final long size;
+        private final String etag;
+        private final ConcurrentMap<String, byte[]> responses = new ConcurrentHashMap<>();
+        private List<Transaction> rows;
+        private Totals totals;
+        //Guarded by the responses, like dropped.
+        private long responseBytes = 0;
+        private boolean dropped = false;
+
+        Version(BasicFileAttributes attributes, List<Transaction> rows) {
+            this.lastModified = attributes.lastModifiedTime();
+            this.size = attributes.size();
+            this.etag = "\"" + Long.toHexString(lastModified.toMillis()) + "-" + Long.toHexString(size) + "\"";
+            this.rows = rows;
+        }
+
+        boolean isOf(BasicFileAttributes attributes) {
+            return attributes.lastModifiedTime().equals(lastModified) && attributes.size() == size;
+        }
+
+        /**
+         * Keeps the response, unless the version was dropped or has it already.
+         *
+         * @return true, if the response was kept and its bytes count for this version.
+         */
+        boolean cache(String key, byte[] body) {
+            synchronized (responses) {
+                if (dropped || responses.putIfAbsent(key, body) != null) {
+                    return false;
+                }
+                responseBytes += body.length;
+                return true;
+            }
+        }
+
+        /**
+         * Forgets the responses, no more are kept. The rows are left to the requests which still use the version.
+         *
+         * @return the bytes of the responses which were kept.
+         */
+        long drop() {
+            synchronized (responses) {
+                dropped = true;
+                responses.clear();
+                final long bytes = responseBytes;
+                responseBytes = 0;
+                return bytes;
+            }
+        }
+
+        /**
+         * Concurrent requests for the rows wait for the first one, so the file is read once.
+         */
+        synchronized List<Transaction> rows(Path path) throws IOException {
+            if (rows == null) {
+                final List<Transaction> loaded = new ArrayList<>();
+                SheetFiles.read(path, loaded::addAll, SheetFiles.NO_PROGRESS);
+                rows = Collections.unmodifiableList(loaded);
+            }
+            return rows;
+        }
+
+        /**
+         * Without loaded rows, the totals are calculated straight from the file.
+         */
+        synchronized Totals totals(Path path) throws IOException {
+            if (totals == null) {
+                totals = rows != null ? SheetMerger.sum(rows) : SheetFiles.readTotals(path);
+            }
+            return totals;
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package core;
+
+import model.Period;
+import model.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a sheet (".nubin"). Rows are read on access and the totals can be calculated straight from the
+ * records without creating any transactions.
+ *
+ * The file is read with positional reads of a few blocks at a time (see {@link Window}), not through a memory
+ * mapping: a mapping can't be released before the garbage collector frees it, and on Windows the mapped file stays
+ * locked until then, so saving over the snapshot or renaming a new one onto it would fail. {@link #close()} releases
+ * the file right away. A snapshot which is replaced while it's open keeps reading the old file on every platform.
+ * Like the decoded strings, the blocks belong to the instance, so it's used by one thread at a time.
+ *
+ * Layout (big endian):
+ * <pre>
+ * header:  int magic "NUBN", short version, short record size, int record count, int string count,
+ *          long position of the records, long position of the string table
+ * records: long amount in cents, int title id, int category id, int period id (-1 for null),
+ *          int start day, int end day (epoch days, {@link Transaction#NO_DAY} if not set), int currency id,
+ *          int value id (the text of a value which isn't exactly the cents, see {@link Transaction#getValue()},
+ *          -1 if it is)
+ * strings: int offset per string plus the end offset, followed by the UTF-8 bytes of all strings
+ * </pre>
+ * All strings share one dictionary. Ids 0 to {@link Period#count()} - 1 are always the known
+ * periods, so a period id is also the period code of the transaction.
+ *
+ * Older snapshots are still read: the records of version 1 end after the period, the ones of version 2 after the
+ * dates and the ones of version 3 after the currency.
+ */
+public final class SnapshotFile implements Closeable {
+
+    public static final String EXTENSION = ".nubin";
+
+    private static final int MAGIC = 0x4E55424E;
+    private static final short VERSION = 4;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 36;
+
+    /**
+     * The record size of each version.
+     */
+    private static final int[] RECORD_SIZES = {0, 20, 28, 32, RECORD_SIZE};
+    private static final int DATES_END = 28;
+    private static final int CURRENCY_END = 32;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private static final Telemetry.Operation SAVE = Telemetry.operation("file.saveSnapshot");
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int recordSize;
+    private final int recordCount;
+    private final int stringCount;
+    private final long recordsPosition;
+    private final long stringsPosition;
+    private final long stringDataPosition;
+    private final Map<Integer, String> categoriesAndPeriods = new HashMap<>();
+
+    /**
+     * The records, the string offsets and the string data are read through windows of their own, so reading a row
+     * and its title doesn't read the same blocks again and again.
+     */
+    private final Window records = new Window();
+    private final Window stringOffsets = new Window();
+    private final Window stringData = new Window();
+
+    private boolean totalsCalculated = false;
+    private long yearlyCents;
+    private int invalidRows;
+    private long[] yearlyCentsByCurrency;
+    private long[] rowsByCurrency;
+
+    private SnapshotFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (fileSize < HEADER_SIZE || read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a snapshot file");
+        }
+        final short version = header.getShort(4);
+        this.recordSize = header.getShort(6);
+        if (version < 1 || version > VERSION || recordSize != RECORD_SIZES[version]) {
+            throw new IOException("Unsupported snapshot version");
+        }
+        this.recordCount = header.getInt(8);
+        this.stringCount = header.getInt(12);
+        this.recordsPosition = header.getLong(16);
+        this.stringsPosition = header.getLong(24);
+        this.stringDataPosition = stringsPosition + 4L * (stringCount + 1);
+        if (recordCount < 0 || stringCount < 0 || recordsPosition < HEADER_SIZE
+                || recordsPosition + (long) recordCount * recordSize > stringsPosition
+                || stringDataPosition > fileSize
+                || stringDataPosition + stringOffset(stringCount) > fileSize) {
+            throw new IOException("Snapshot file is truncated");
+        }
+    }
+
+    /**
+     * Opens a snapshot file.
+     */
+    public static SnapshotFile open(Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new SnapshotFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    public long amountCents(int row) {
+        final int record = record(row);
+        return records.block.getLong(record);
+    }
+
+    public String title(int row) {
+        final int record = record(row);
+        return string(records.block.getInt(record + 8));
+    }
+
+    public String category(int row) {
+        final int record = record(row);
+        return cachedString(records.block.getInt(record + 12));
+    }
+
+    public String period(int row) {
+        final int record = record(row);
+        return cachedString(records.block.getInt(record + 16));
+    }
+
+    public int startDay(int row) {
+        final int record = record(row);
+        return recordSize >= DATES_END ? records.block.getInt(record + 20) : Transaction.NO_DAY;
+    }
+
+    public int endDay(int row) {
+        final int record = record(row);
+        return recordSize >= DATES_END ? records.block.getInt(record + 24) : Transaction.NO_DAY;
+    }
+
+    public String currency(int row) {
+        final int record = record(row);
+        return recordSize >= CURRENCY_END ? cachedString(records.block.getInt(record + 28)) : null;
+    }
+
+    /**
+     * The value as it was written, if it wasn't exactly the cents, otherwise null.
+     */
+    public String inexactValue(int row) {
+        final int record = record(row);
+        return recordSize >= RECORD_SIZE ? string(records.block.getInt(record + 32)) : null;
+    }
+
+    /**
+     * Creates a transaction from the record of the given row.
+     *
+     * @throws UncheckedIOException like every method which reads a row, if the file can't be read.
+     */
+    public Transaction transaction(int row) {
+        final Transaction transaction = new Transaction();
+        transaction.setTitle(title(row));
+        transaction.setCategory(category(row));
+        transaction.setPeriod(period(row));
+        final String inexactValue = inexactValue(row);
+        if (inexactValue != null) {
+            transaction.setValue(inexactValue);
+        } else {
+            transaction.setAmountCents(amountCents(row));
+        }
+        transaction.setCurrency(currency(row));
+        transaction.setStartDay(startDay(row));
+        transaction.setEndDay(endDay(row));
+        return transaction;
+    }
+
+    /**
+     * Sum of all rows calculated to a year, read straight from the records.
+     */
+    public long yearlyCents() {
+        calculateTotals();
+        return yearlyCents;
+    }
+
+    /**
+     * Number of rows whose period is unknown and which therefore aren't part of {@link #yearlyCents()}.
+     */
+    public int invalidRows() {
+        calculateTotals();
+        return invalidRows;
+    }
+
+    /**
+     * The totals with the sums per currency, read straight from the records.
+     */
+    public Totals totals() {
+        calculateTotals();
+        return new Totals(yearlyCents, recordCount, invalidRows, yearlyCentsByCurrency.clone(), rowsByCurrency.clone());
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes the transactions as snapshot file.
+     */
+    public static void write(Path path, List<Transaction> transactions) throws IOException {
+        final Map<String, Integer> ids = new LinkedHashMap<>();
+        for (Period period : Period.values()) {
+            ids.put(period.getName(), period.ordinal());
+        }
+
+        try (Telemetry.Span span = SAVE.start();
+             FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer output = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            channel.position(HEADER_SIZE);
+            for (Transaction transaction : transactions) {
+                if (output.remaining() < RECORD_SIZE) {
+                    flush(channel, output);
+                }
+                output.putLong(transaction.getAmountCents());
+                output.putInt(idOf(ids, transaction.getTitle()));
+                output.putInt(idOf(ids, transaction.getCategory()));
+                output.putInt(idOf(ids, transaction.getPeriod()));
+                output.putInt(transaction.getStartDay());
+                output.putInt(transaction.getEndDay());
+                output.putInt(idOf(ids, transaction.getCurrency()));
+                output.putInt(idOf(ids, transaction.getInexactValue()));
+            }
+
+            final List<byte[]> encodedStrings = new ArrayList<>(ids.size());
+            for (String value : ids.keySet()) {
+                encodedStrings.add(value.getBytes(StandardCharsets.UTF_8));
+            }
+            int offset = 0;
+            for (byte[] encoded : encodedStrings) {
+                if (output.remaining() < 4) {
+                    flush(channel, output);
+                }
+                output.putInt(offset);
+                offset += encoded.length;
+            }
+            if (output.remaining() < 4) {
+                flush(channel, output);
+            }
+            output.putInt(offset);
+            for (byte[] encoded : encodedStrings) {
+                for (int written = 0; written < encoded.length; ) {
+                    if (!output.hasRemaining()) {
+                        flush(channel, output);
+                    }
+                    final int length = Math.min(output.remaining(), encoded.length - written);
+                    output.put(encoded, written, length);
+                    written += length;
+                }
+            }
+            flush(channel, output);
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) RECORD_SIZE);
+            header.putInt(transactions.size());
+            header.putInt(ids.size());
+            header.putLong(HEADER_SIZE);
+            header.putLong(HEADER_SIZE + (long) transactions.size() * RECORD_SIZE);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+            span.rows(transactions.size());
+            span.bytes(channel.size());
+        }
+    }
+
+    private void calculateTotals() {
+        if (totalsCalculated) {
+            return;
+        }
+        long sum = 0;
+        int invalid = 0;
+        //The currency id of each string id of a currency, the few currencies are looked up once.
+        final Map<Integer, Integer> currencyIds = new HashMap<>();
+        long[] currencySums = new long[Transaction.currencyCount()];
+        long[] currencyRows = new long[currencySums.length];
+        final ByteBuffer block = records.block;
+        for (int row = 0; row < recordCount; ++row) {
+            final int record = record(row);
+            //The period id of a known period is its code, every other id counts as unknown.
+            final int periodId = block.getInt(record + 16);
+            final long rowCents = block.getLong(record) * Period.yearlyFactor(periodId);
+            sum += rowCents;
+            invalid += Period.unknown(periodId);
+            final int currencyStringId = recordSize >= CURRENCY_END ? block.getInt(record + 28) : -1;
+            if (currencyStringId >= 0) {
+                final int currencyId = currencyIds.computeIfAbsent(currencyStringId, id -> Transaction.currencyId(string(id)));
+                if (currencyId >= currencySums.length) {
+                    currencySums = Arrays.copyOf(currencySums, currencyId + 1);
+                    currencyRows = Arrays.copyOf(currencyRows, currencyId + 1);
+                }
+                currencySums[currencyId] += rowCents;
+                currencyRows[currencyId]++;
+            }
+        }
+        yearlyCents = sum;
+        invalidRows = invalid;
+        yearlyCentsByCurrency = currencySums;
+        rowsByCurrency = currencyRows;
+        totalsCalculated = true;
+    }
+
+    /**
+     * Reads the record of the row into {@link #records}, if it isn't there yet, and returns its index in the block.
+     */
+    private int record(int row) {
+        if (row < 0 || row >= recordCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + recordCount);
+        }
+        return records.index(recordsPosition + (long) row * recordSize, recordSize);
+    }
+
+    /**
+     * Categories, periods and currencies repeat a lot, so they are only decoded once.
+     */
+    private String cachedString(int id) {
+        if (id < 0) {
+            return null;
+        }
+        String value = categoriesAndPeriods.get(id);
+        if (value == null) {
+            value = string(id);
+            categoriesAndPeriods.put(id, value);
+        }
+        return value;
+    }
+
+    private String string(int id) {
+        if (id < 0) {
+            return null;
+        }
+        if (id >= stringCount) {
+            throw new IndexOutOfBoundsException("String " + id + " of " + stringCount);
+        }
+        final int start = stringOffset(id);
+        final int end = stringOffset(id + 1);
+        if (start < 0 || end < start || stringDataPosition + end > fileSize) {
+            throw new UncheckedIOException(new IOException("Snapshot file is corrupted"));
+        }
+        if (end - start > WINDOW_SIZE) {
+            final ByteBuffer encoded = ByteBuffer.allocate(end - start);
+            readFully(encoded, stringDataPosition + start);
+            return new String(encoded.array(), StandardCharsets.UTF_8);
+        }
+        final int index = stringData.index(stringDataPosition + start, end - start);
+        return new String(stringData.block.array(), index, end - start, StandardCharsets.UTF_8);
+    }
+
+    private int stringOffset(int id) {
+        return stringOffsets.block.getInt(stringOffsets.index(stringsPosition + 4L * id, 4));
+    }
+
+    /**
+     * Reads from the position until the buffer is full or the file ends, returns the number of bytes read.
+     */
+    private int read(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) {
+        try {
+            if (read(buffer, position) < buffer.capacity()) {
+                throw new IOException("Snapshot file is truncated");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A block of the file in memory. Values are read with the absolute getters of the block at the index
+     * {@link #index(long, int)} returns, which reads the next block first if the value isn't in this one.
+     */
+    private final class Window {
+
+        final ByteBuffer block = ByteBuffer.allocate(WINDOW_SIZE);
+        private long start = -1;
+        private int length = 0;
+
+        /**
+         * @param size at most {@link #WINDOW_SIZE} bytes.
+         */
+        int index(long position, int size) {
+            if (start < 0 || position < start || position + size > start + length) {
+                if (position + size > fileSize) {
+                    throw new UncheckedIOException(new IOException("Snapshot file is truncated"));
+                }
+                start = -1;
+                try {
+                    length = read(block, position);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (length < size) {
+                    throw new UncheckedIOException(new IOException("Snapshot file is truncated"));
+                }
+                start = position;
+            }
+            return (int) (position - start);
+        }
+    }
+
+    private static int idOf(Map<String, Integer> ids, String value) {
+        if (value == null) {
+            return -1;
+        }
+        final Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        ids.put(value, ids.size());
+        return ids.size() - 1;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer output) throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        output.clear();
+    }
+}
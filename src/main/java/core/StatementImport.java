@@ -0,0 +1,459 @@
+package core;
+
+import core.SheetFiles.ProgressListener;
+import model.Period;
+import model.Transaction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Imports bank statements: CSV exports of online banking, ISO 20022 CAMT (camt.052, camt.053 and camt.054 XML) and
+ * SWIFT MT940. Every booked line becomes a transaction with the counterparty (or the remittance text) as title and the
+ * signed amount, money which left the account is negative, and the currency of the amount if the statement has one. A
+ * statement line happened once, so it's imported as yearly transaction, which counts it once per year, with its
+ * booking day (or its value day) as first and last day, so it's on the cash flow timeline once.
+ *
+ * Like {@link SheetFiles#read}, the transactions are passed to the consumer in batches of
+ * {@link SheetFiles#LOAD_BATCH_SIZE}. Lines which can't be imported are counted in the {@link Report}, the first
+ * ones with their reason.
+ */
+public final class StatementImport {
+
+    public static final String CSV_EXTENSION = ".csv";
+    public static final String CAMT_EXTENSION = ".xml";
+    public static final List<String> MT940_EXTENSIONS = Collections.unmodifiableList(Arrays.asList(".sta", ".mt940", ".940"));
+
+    /**
+     * The period of every imported transaction.
+     */
+    static final Period PERIOD = Period.YEAR;
+
+    /**
+     * Rejected lines which are kept with their reason. All others are only counted.
+     */
+    static final int MAX_REPORTED_REJECTIONS = 100;
+
+    /**
+     * Longest text of a rejected line which is kept.
+     */
+    private static final int MAX_REJECTED_TEXT = 200;
+
+    private static final int SNIFF_BYTES = 64 * 1024;
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    private static final Telemetry.Operation IMPORT = Telemetry.operation("file.import");
+
+    private StatementImport() {}
+
+    public enum Format {
+        CSV,
+        CAMT,
+        MT940;
+
+        /**
+         * The format of a statement by its extension. A ".txt" file is an MT940 statement, if it starts like one,
+         * and a CSV export otherwise.
+         *
+         * @return null, if the file isn't a statement.
+         */
+        public static Format of(Path path) {
+            final String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(CSV_EXTENSION)) {
+                return CSV;
+            }
+            if (name.endsWith(CAMT_EXTENSION)) {
+                return CAMT;
+            }
+            for (String extension : MT940_EXTENSIONS) {
+                if (name.endsWith(extension)) {
+                    return MT940;
+                }
+            }
+            if (name.endsWith(".txt")) {
+                return looksLikeMt940(path) ? MT940 : CSV;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A line of the statement which wasn't imported.
+     */
+    public static final class Rejection {
+
+        private final long line;
+        private final String reason;
+        private final String text;
+
+        Rejection(long line, String reason, String text) {
+            this.line = line;
+            this.reason = reason;
+            this.text = text.length() > MAX_REJECTED_TEXT ? text.substring(0, MAX_REJECTED_TEXT) + "..." : text;
+        }
+
+        /**
+         * The line in the file, starting with 1. For CAMT, the line where the entry starts.
+         */
+        public long getLine() {
+            return line;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return "Line " + line + ": " + reason + ": " + text;
+        }
+    }
+
+    /**
+     * How many lines of a statement were imported and which ones were rejected.
+     */
+    public static final class Report {
+
+        private long imported = 0;
+        private long rejected = 0;
+        private final List<Rejection> rejections = new ArrayList<>();
+
+        /**
+         * Number of transactions (or CAMT entries) in the statement, imported or not.
+         */
+        public long getLines() {
+            return imported + rejected;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * The first {@value #MAX_REPORTED_REJECTIONS} rejected lines, in the order of the file.
+         */
+        public List<Rejection> getRejections() {
+            return Collections.unmodifiableList(rejections);
+        }
+
+        void imported(long rows) {
+            imported += rows;
+        }
+
+        void reject(long line, String reason, String text) {
+            rejected++;
+            if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                rejections.add(new Rejection(line, reason, text));
+            }
+        }
+
+        /**
+         * Adds the counts and rejections of a part of the statement, which comes after everything added so far.
+         */
+        void add(Report part) {
+            imported += part.imported;
+            rejected += part.rejected;
+            for (Rejection rejection : part.rejections) {
+                if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                    rejections.add(rejection);
+                }
+            }
+        }
+    }
+
+    public static boolean isStatement(Path path) {
+        return Format.of(path) != null;
+    }
+
+    /**
+     * Reads the statement as a stream, CSV exports are parsed in parallel on the common fork-join pool. The rows get
+     * the category of the first matching rule (see {@link CategoryRules}) before they're passed on.
+     */
+    public static Report read(Path path, CategoryRules rules, Consumer<List<Transaction>> batchConsumer, ProgressListener progress) throws IOException {
+        final Format format = Format.of(path);
+        if (format == null) {
+            throw new IOException("Not a bank statement: " + path);
+        }
+        try (Telemetry.Span span = IMPORT.start()) {
+            span.bytes(Files.size(path));
+            final Report report;
+            switch (format) {
+                case CSV:
+                    report = new CsvStatementReader(ForkJoinPool.commonPool(), rules).read(path, batchConsumer, progress);
+                    break;
+                case CAMT:
+                    report = CamtStatementReader.read(path, categorized(rules, batchConsumer), progress);
+                    break;
+                default:
+                    report = Mt940StatementReader.read(path, categorized(rules, batchConsumer), progress);
+                    break;
+            }
+            span.rows(report.getImported());
+            return report;
+        }
+    }
+
+    private static Consumer<List<Transaction>> categorized(CategoryRules rules, Consumer<List<Transaction>> batchConsumer) {
+        return batch -> {
+            rules.apply(batch);
+            batchConsumer.accept(batch);
+        };
+    }
+
+    /**
+     * A transaction of the statement, which starts and ends on the given epoch day, unless it's
+     * {@link Transaction#NO_DAY}. Without a title, the line can't be told apart in the sheet, so it's named after the
+     * direction of the money.
+     */
+    static Transaction transaction(String title, long amountCents, int day, String category, String currency) {
+        final String cleanTitle = cleanText(title);
+        final Transaction transaction = new Transaction(cleanTitle.isEmpty() ? (amountCents < 0 ? "Debit" : "Credit") : cleanTitle,
+                amountCents, PERIOD, category == null || category.trim().isEmpty() ? null : category.trim());
+        transaction.setCurrency(isCurrencyCode(currency) ? currency.trim() : null);
+        transaction.setStartDay(day);
+        transaction.setEndDay(day);
+        return transaction;
+    }
+
+    /**
+     * Parses a date as written in statements to its epoch day: year first ("2024-02-01", also with a time after it),
+     * day first ("01.02.2024", "01/02/24") or without separators ("20240201"). A two-digit year is in this century.
+     * The month only comes first, if the day first can't be a date ("02/13/2024").
+     *
+     * @return {@link Transaction#NO_DAY}, if the text isn't a date.
+     */
+    static int parseDay(String text) {
+        if (text == null) {
+            return Transaction.NO_DAY;
+        }
+        final int[] numbers = new int[3];
+        final int[] digits = new int[3];
+        int count = 0;
+        for (int i = 0; i < text.length() && count < 3; ++i) {
+            final char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits[count] == 8) {
+                    return Transaction.NO_DAY;
+                }
+                numbers[count] = numbers[count] * 10 + (c - '0');
+                digits[count]++;
+            } else if (digits[count] > 0) {
+                count++;
+            }
+        }
+        if (count < 3 && digits[count] > 0) {
+            count++;
+        }
+        final int year;
+        final int month;
+        final int day;
+        if (count == 1 && digits[0] == 8) {
+            year = numbers[0] / 10000;
+            month = numbers[0] / 100 % 100;
+            day = numbers[0] % 100;
+        } else if (count == 3 && digits[0] == 4) {
+            year = numbers[0];
+            month = numbers[1];
+            day = numbers[2];
+        } else if (count == 3 && (digits[2] == 4 || digits[2] == 2)) {
+            year = digits[2] == 2 ? 2000 + numbers[2] : numbers[2];
+            final boolean monthFirst = numbers[1] > 12 && numbers[0] <= 12;
+            month = monthFirst ? numbers[0] : numbers[1];
+            day = monthFirst ? numbers[1] : numbers[0];
+        } else {
+            return Transaction.NO_DAY;
+        }
+        try {
+            return (int) LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            return Transaction.NO_DAY;
+        }
+    }
+
+    /**
+     * Returns true for an ISO 4217 code like "EUR". Anything else (a symbol like "€", or nothing) isn't kept.
+     */
+    static boolean isCurrencyCode(String currency) {
+        if (currency == null || currency.trim().length() != 3) {
+            return false;
+        }
+        for (char c : currency.trim().toCharArray()) {
+            if (!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The text without leading and trailing whitespace and with every run of whitespace (e.g. the line breaks of
+     * remittance texts) as a single space.
+     */
+    static String cleanText(String text) {
+        if (text == null) {
+            return "";
+        }
+        boolean clean = true;
+        for (int i = 0; i < text.length() && clean; ++i) {
+            final char c = text.charAt(i);
+            clean = c > ' ' || (c == ' ' && i > 0 && i < text.length() - 1 && text.charAt(i - 1) != ' ');
+        }
+        if (clean) {
+            return text;
+        }
+        final StringBuilder builder = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = text.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                space = builder.length() > 0;
+            } else {
+                if (space) {
+                    builder.append(' ');
+                    space = false;
+                }
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Parses an amount as written in statements to cents: with a point or a comma as decimal separator ("-1.234,56",
+     * "1,234.56", "1 234,56"), a leading or trailing minus ("12,50-"), parentheses for negative amounts and currency
+     * codes or symbols before or after the number. A separator is the decimal separator, if it's the last one and
+     * followed by one or two digits, all others are grouping separators.
+     *
+     * @throws NumberFormatException if there's no number or anything else than a currency between its digits.
+     */
+    static long parseAmount(byte[] bytes, int from, int to) {
+        int decimalSeparator = -1;
+        for (int i = to - 1; i >= from; --i) {
+            final byte b = bytes[i];
+            if (b == '.' || b == ',') {
+                int fractionDigits = 0;
+                for (int j = i + 1; j < to && isDigit(bytes[j]); ++j) {
+                    fractionDigits++;
+                }
+                if (fractionDigits == 1 || fractionDigits == 2) {
+                    decimalSeparator = i;
+                }
+                break;
+            }
+        }
+        boolean negative = false;
+        long units = 0;
+        long fraction = 0;
+        int fractionDigits = 0;
+        int digits = 0;
+        boolean numberEnded = false;
+        for (int i = from; i < to; ++i) {
+            final byte b = bytes[i];
+            if (isDigit(b)) {
+                if (numberEnded || digits == 17) {
+                    throw new NumberFormatException(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+                }
+                digits++;
+                if (decimalSeparator >= 0 && i > decimalSeparator) {
+                    fraction = fraction * 10 + (b - '0');
+                    fractionDigits++;
+                } else {
+                    units = units * 10 + (b - '0');
+                }
+            } else if (b == '-' || b == '(') {
+                negative = true;
+            } else if (((b == '.' || b == ',') && digits > 0) || b == ' ' || b == '+' || b == ')' || b == '\'') {
+                //A grouping or the decimal separator, or a sign.
+            } else {
+                //A currency, a space or anything else around the number.
+                numberEnded = digits > 0;
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+        }
+        final long cents = units * 100 + (fractionDigits == 1 ? fraction * 10 : fraction);
+        return negative ? -cents : cents;
+    }
+
+    static long parseAmount(String text) {
+        final byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        return parseAmount(bytes, 0, bytes.length);
+    }
+
+    /**
+     * UTF-8, if the start of the file is valid UTF-8, and Windows-1252 (which most banks use otherwise) if not.
+     */
+    static Charset detectCharset(byte[] bytes, int length) {
+        if (hasUtf8Bom(bytes, length)) {
+            return StandardCharsets.UTF_8;
+        }
+        //A character may be cut off at the end of the sample.
+        final int checked = Math.max(0, length - 3);
+        try {
+            StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes, 0, checked));
+            return StandardCharsets.UTF_8;
+        } catch (CharacterCodingException e) {
+            return WINDOWS_1252;
+        }
+    }
+
+    static boolean hasUtf8Bom(byte[] bytes, int length) {
+        return length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF;
+    }
+
+    /**
+     * The first bytes of the file, to detect its charset or format.
+     */
+    static byte[] sniff(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            final byte[] bytes = new byte[SNIFF_BYTES];
+            int length = 0;
+            int read;
+            while (length < bytes.length && (read = input.read(bytes, length, bytes.length - length)) > 0) {
+                length += read;
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean looksLikeMt940(Path path) {
+        try {
+            final String start = new String(sniff(path), StandardCharsets.ISO_8859_1).trim();
+            return start.startsWith(":20:") || start.startsWith("{1:") || start.contains("\n:20:");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package core;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process counters and duration histograms of the expensive operations (loading, saving, sorting, calculating).
+ * Every measured operation also becomes a Flight Recorder event, if the JVM supports it (see
+ * {@link FlightRecorderEvents}).
+ *
+ * The numbers can be looked at in the diagnostics window of the application, or written to a JSON file with
+ * {@link #dump(Path)}. With {@code -Dnubage.telemetryDump=<file>} they are written when the application or the batch
+ * mode ends.
+ */
+public final class Telemetry {
+
+    public static final String DUMP_PROPERTY = "nubage.telemetryDump";
+
+    /**
+     * Durations are counted in buckets of powers of two microseconds, the last bucket takes everything above 9 hours.
+     */
+    private static final int BUCKETS = 36;
+
+    private static final Map<String, Operation> OPERATIONS = new ConcurrentSkipListMap<>();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationCounter();
+
+    private Telemetry() {}
+
+    /**
+     * The operation with the given name, created when it's first used. Callers keep it in a constant, so measuring
+     * doesn't need a lookup.
+     */
+    public static Operation operation(String name) {
+        return OPERATIONS.computeIfAbsent(name, Operation::new);
+    }
+
+    /**
+     * The numbers of all operations so far, sorted by name.
+     */
+    public static List<Stats> snapshot() {
+        final List<Stats> stats = new ArrayList<>(OPERATIONS.size());
+        for (Operation operation : OPERATIONS.values()) {
+            stats.add(operation.stats());
+        }
+        return stats;
+    }
+
+    public static void reset() {
+        for (Operation operation : OPERATIONS.values()) {
+            operation.reset();
+        }
+    }
+
+    /**
+     * Writes the numbers of all operations as JSON.
+     */
+    public static void dump(Path path) throws IOException {
+        SheetFiles.writeAtomically(path.toFile(), target -> {
+            try (JsonGenerator generator = SheetFiles.jsonFactory().createGenerator(target.toFile(), JsonEncoding.UTF8)) {
+                generator.useDefaultPrettyPrinter();
+                writeStats(generator, snapshot());
+            }
+        });
+    }
+
+    /**
+     * Writes the numbers to the file given by {@value #DUMP_PROPERTY}, if there is one.
+     */
+    public static void dumpIfRequested() {
+        final String dumpFile = System.getProperty(DUMP_PROPERTY);
+        if (dumpFile == null || dumpFile.isEmpty()) {
+            return;
+        }
+        try {
+            dump(Paths.get(dumpFile));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The numbers of all operations as table, one line per operation.
+     */
+    public static String report() {
+        final StringBuilder report = new StringBuilder(String.format("%-20s %9s %11s %9s %9s %9s %13s %13s %13s%n",
+                "Operation", "Count", "Total ms", "Mean ms", "p50 ms", "p99 ms", "Rows", "Bytes", "Allocated"));
+        for (Stats stats : snapshot()) {
+            report.append(String.format("%-20s %9d %11.1f %9.3f %9.3f %9.3f %13d %13d %13d%n",
+                    stats.getName(), stats.getCount(), stats.getTotalNanos() / 1e6, stats.getMeanNanos() / 1e6,
+                    stats.getPercentileNanos(0.5) / 1e6, stats.getPercentileNanos(0.99) / 1e6,
+                    stats.getRows(), stats.getBytes(), stats.getAllocatedBytes()));
+        }
+        return report.toString();
+    }
+
+    private static void writeStats(JsonGenerator generator, List<Stats> operations) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("timestamp", System.currentTimeMillis());
+        generator.writeBooleanField("flightRecorder", FlightRecorderEvents.isAvailable());
+        generator.writeArrayFieldStart("operations");
+        for (Stats stats : operations) {
+            generator.writeStartObject();
+            generator.writeStringField("name", stats.getName());
+            generator.writeNumberField("count", stats.getCount());
+            generator.writeNumberField("totalNanos", stats.getTotalNanos());
+            generator.writeNumberField("maxNanos", stats.getMaxNanos());
+            generator.writeNumberField("p50Nanos", stats.getPercentileNanos(0.5));
+            generator.writeNumberField("p99Nanos", stats.getPercentileNanos(0.99));
+            generator.writeNumberField("rows", stats.getRows());
+            generator.writeNumberField("bytes", stats.getBytes());
+            generator.writeNumberField("allocatedBytes", stats.getAllocatedBytes());
+            generator.writeArrayFieldStart("histogramMicros");
+            for (long count : stats.histogram) {
+                generator.writeNumber(count);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Bytes the current thread allocated so far, or 0 if the JVM doesn't count them.
+     */
+    private static long allocatedBytes() {
+        return ALLOCATIONS != null ? ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                return allocations;
+            }
+        }
+        return null;
+    }
+
+    private static int bucket(long nanos) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+    }
+
+    /**
+     * Something which is measured, e.g. "file.load". Thread-safe.
+     */
+    public static final class Operation {
+
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        private Operation(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Starts measuring the duration and the allocations of the current thread, until the span is closed.
+         */
+        public Span start() {
+            return new Span(this);
+        }
+
+        /**
+         * Records a measurement without allocating anything, for operations which happen very often.
+         */
+        public void record(long nanos, long rows, long bytes, long allocatedBytes) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            this.rows.add(rows);
+            this.bytes.add(bytes);
+            this.allocatedBytes.add(allocatedBytes);
+            histogram.incrementAndGet(bucket(nanos));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        private Stats stats() {
+            final long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; ++i) {
+                buckets[i] = histogram.get(i);
+            }
+            return new Stats(name, count.sum(), totalNanos.sum(), maxNanos.get(), rows.sum(), bytes.sum(),
+                    allocatedBytes.sum(), buckets);
+        }
+
+        private void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            rows.reset();
+            bytes.reset();
+            allocatedBytes.reset();
+            for (int i = 0; i < BUCKETS; ++i) {
+                histogram.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * A single measurement of an operation. Rows and bytes are set while the operation runs, everything is recorded
+     * when the span is closed.
+     */
+    public static final class Span implements AutoCloseable {
+
+        private final Operation operation;
+        private final Object event;
+        private final long startAllocated;
+        private final long startNanos;
+        private long rows = 0;
+        private long bytes = 0;
+
+        private Span(Operation operation) {
+            this.operation = operation;
+            this.event = FlightRecorderEvents.begin();
+            this.startAllocated = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        public void rows(long rows) {
+            this.rows = rows;
+        }
+
+        public void addRows(long rows) {
+            this.rows += rows;
+        }
+
+        public void bytes(long bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            final long nanos = System.nanoTime() - startNanos;
+            final long allocated = allocatedBytes() - startAllocated;
+            operation.record(nanos, rows, bytes, allocated);
+            FlightRecorderEvents.commit(event, operation.name, rows, bytes, allocated);
+        }
+    }
+
+    /**
+     * The numbers of an operation at one point in time.
+     */
+    public static final class Stats {
+
+        private final String name;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long rows;
+        private final long bytes;
+        private final long allocatedBytes;
+        private final long[] histogram;
+
+        private Stats(String name, long count, long totalNanos, long maxNanos, long rows, long bytes,
+                      long allocatedBytes, long[] histogram) {
+            this.name = name;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.allocatedBytes = allocatedBytes;
+            this.histogram = histogram;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * The upper bound of the histogram bucket which contains the percentile, so at most twice the real value. Never
+         * more than the longest duration.
+         *
+         * @param percentile between 0 and 1.
+         */
+        public long getPercentileNanos(double percentile) {
+            final long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; ++i) {
+                seen += histogram[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(TimeUnit.MICROSECONDS.toNanos(1L << i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+}
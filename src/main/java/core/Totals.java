@@ -0,0 +1,114 @@
+package core;
+
+import model.Money;
+
+import java.util.Arrays;
+
+/**
+ * Sum of a sheet calculated to a year, and from there back to month, week, day and hour.
+ *
+ * The sum adds up the values as they are. The rows with a currency are also summed up per currency (indexed by
+ * the currency id, see {@link model.Transaction#getCurrencyId()}), so the sum can be converted to another currency
+ * without looking at the rows again, see {@link ExchangeRates#convert(Totals, int)}.
+ */
+public final class Totals {
+
+    //Before EMPTY, which needs it while the class is initialized.
+    private static final long[] NONE = new long[0];
+
+    public static final Totals EMPTY = new Totals(0, 0, 0);
+
+    private final long yearlyCents;
+    private final long rows;
+    private final long invalidRows;
+    private final long[] yearlyCentsByCurrency;
+    private final long[] rowsByCurrency;
+
+    /**
+     * @param invalidRows rows whose period is unknown and which therefore aren't part of the sum.
+     */
+    public Totals(long yearlyCents, long rows, long invalidRows) {
+        this(yearlyCents, rows, invalidRows, NONE, NONE);
+    }
+
+    /**
+     * @param yearlyCentsByCurrency the part of the sum of each currency, the arrays are taken as they are.
+     * @param rowsByCurrency        the rows of each currency.
+     */
+    public Totals(long yearlyCents, long rows, long invalidRows, long[] yearlyCentsByCurrency, long[] rowsByCurrency) {
+        this.yearlyCents = yearlyCents;
+        this.rows = rows;
+        this.invalidRows = invalidRows;
+        this.yearlyCentsByCurrency = yearlyCentsByCurrency;
+        this.rowsByCurrency = rowsByCurrency;
+    }
+
+    public long getYearlyCents() {
+        return yearlyCents;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getInvalidRows() {
+        return invalidRows;
+    }
+
+    /**
+     * The part of the sum in the currency, 0 if no row has it.
+     */
+    public long yearlyCentsOf(int currencyId) {
+        return currencyId >= 0 && currencyId < yearlyCentsByCurrency.length ? yearlyCentsByCurrency[currencyId] : 0;
+    }
+
+    public long rowsOf(int currencyId) {
+        return currencyId >= 0 && currencyId < rowsByCurrency.length ? rowsByCurrency[currencyId] : 0;
+    }
+
+    /**
+     * Number of currency ids with a part of the sum, the ids are 0 to this number (exclusive).
+     */
+    public int currencies() {
+        return rowsByCurrency.length;
+    }
+
+    public double perYear() {
+        return Money.toDouble(yearlyCents);
+    }
+
+    public double perMonth() {
+        return perYear() / 12;
+    }
+
+    public double perWeek() {
+        return perYear() / 52;
+    }
+
+    public double perDay() {
+        return perYear() / 365;
+    }
+
+    public double perHour() {
+        return perYear() / 8760;
+    }
+
+    public Totals plus(Totals other) {
+        return new Totals(yearlyCents + other.yearlyCents, rows + other.rows, invalidRows + other.invalidRows,
+                add(yearlyCentsByCurrency, other.yearlyCentsByCurrency), add(rowsByCurrency, other.rowsByCurrency));
+    }
+
+    private static long[] add(long[] a, long[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        if (a.length == 0) {
+            return b;
+        }
+        final long[] sum = Arrays.copyOf(a, Math.max(a.length, b.length));
+        for (int i = 0; i < b.length; ++i) {
+            sum[i] += b[i];
+        }
+        return sum;
+    }
+}
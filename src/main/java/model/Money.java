@@ -0,0 +1,135 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amounts are stored as a long of cents (fixed point with two decimal places) instead of a string or double.
+ *
+ * Sheets written before could hold any value Double.parseDouble accepts ("12.345", "1e3", "1d"). Such values are
+ * rounded to cents for the calculation, but {@link Transaction} keeps their text, so a sheet is saved with the
+ * values it was loaded with (see {@link #isCents(String)}).
+ */
+public final class Money {
+
+    public static final int CENTS_PER_UNIT = 100;
+
+    private Money() {}
+
+    /**
+     * Marks a value which isn't a plain decimal number with at most two decimal places.
+     */
+    private static final long NOT_CENTS = Long.MIN_VALUE;
+
+    /**
+     * Parses a value like "-12.5" to cents. Values with more than two decimal places are rounded half up, every other
+     * notation Double.parseDouble accepts (exponents, a type suffix like "1d") is parsed as well.
+     *
+     * @throws NumberFormatException if the value isn't a number, isn't finite or doesn't fit into a long of cents.
+     */
+    public static long parseCents(String value) {
+        if (value == null) {
+            throw new NumberFormatException("null");
+        }
+        final String trimmed = value.trim();
+        final long cents = parsePlain(trimmed);
+        return cents != NOT_CENTS ? cents : parseOther(trimmed);
+    }
+
+    /**
+     * True, if the value is a plain decimal number with at most two decimal places ("-12.5", "3", "0.75"), which
+     * {@link #formatCents(long)} gives back with the same value. Other values lose precision or their notation, when
+     * they're stored as cents only.
+     */
+    public static boolean isCents(String value) {
+        return value != null && parsePlain(value.trim()) != NOT_CENTS;
+    }
+
+    /**
+     * The fast path without any allocation, returns {@link #NOT_CENTS} for everything it can't parse exactly.
+     */
+    private static long parsePlain(String trimmed) {
+        final int length = trimmed.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (trimmed.charAt(0) == '-' || trimmed.charAt(0) == '+')) {
+            negative = trimmed.charAt(0) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        for (; i < length && isDigit(trimmed.charAt(i)) && digits < 16; ++i, ++digits) {
+            units = units * 10 + (trimmed.charAt(i) - '0');
+        }
+        long cents = 0;
+        int fractionDigits = 0;
+        if (i < length && trimmed.charAt(i) == '.') {
+            for (++i; i < length && isDigit(trimmed.charAt(i)) && fractionDigits < 2; ++i, ++fractionDigits) {
+                cents = cents * 10 + (trimmed.charAt(i) - '0');
+            }
+        }
+        if (i < length || digits + fractionDigits == 0) {
+            return NOT_CENTS;
+        }
+        if (fractionDigits == 1) {
+            cents *= 10;
+        }
+        final long result = units * CENTS_PER_UNIT + cents;
+        return negative ? -result : result;
+    }
+
+    /**
+     * Everything the fast path can't handle exactly (exponents, more decimal places, huge numbers, the notations
+     * only Double.parseDouble knows...).
+     */
+    private static long parseOther(String trimmed) {
+        BigDecimal decimal;
+        try {
+            decimal = new BigDecimal(trimmed);
+        } catch (NumberFormatException e) {
+            final double parsed = Double.parseDouble(trimmed);
+            if (Double.isNaN(parsed) || Double.isInfinite(parsed)) {
+                throw new NumberFormatException("Not a finite value: " + trimmed);
+            }
+            decimal = BigDecimal.valueOf(parsed);
+        }
+        try {
+            return decimal.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Value out of range: " + trimmed);
+        }
+    }
+
+    /**
+     * Formats cents like a double would be printed: "-12.5", "3.0", "0.75".
+     */
+    public static String formatCents(long cents) {
+        final StringBuilder builder = new StringBuilder(12);
+        if (cents < 0) {
+            builder.append('-');
+        }
+        final long absolute = Math.abs(cents);
+        builder.append(absolute / CENTS_PER_UNIT).append('.');
+        final long fraction = absolute % CENTS_PER_UNIT;
+        if (fraction % 10 == 0) {
+            builder.append(fraction / 10);
+        } else {
+            if (fraction < 10) {
+                builder.append('0');
+            }
+            builder.append(fraction);
+        }
+        return builder.toString();
+    }
+
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    /**
+     * Only the ASCII digits, Character.isDigit() would accept the digits of other scripts as well.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
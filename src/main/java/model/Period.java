@@ -0,0 +1,130 @@
+package model;
+
+/**
+ * The known periods of a transaction. The name is what's stored in the sheets, the label key points to the text
+ * shown in the user interface, so the calculation never depends on the language. The ordinal is the period code,
+ * see {@link Transaction}.
+ */
+public enum Period {
+
+    YEAR("Year", "combobox.year", 1),
+    SIX_MONTHS("6 Months", "combobox.six_months", 2),
+    QUARTER("Quarter", "combobox.quarter", 4),
+    MONTH("Month", "combobox.month", 12),
+    WEEK("Week", "combobox.week", 52),
+    DAY("Day", "combobox.day", 365);
+
+    private static final Period[] VALUES = values();
+
+    /**
+     * Yearly factor per code, with a last entry of 0 for every unknown code. See {@link #index(int)}.
+     */
+    private static final long[] YEARLY_FACTORS = new long[VALUES.length + 1];
+
+    /**
+     * 1 for unknown codes, 0 for known ones. Same layout as {@link #YEARLY_FACTORS}.
+     */
+    private static final int[] UNKNOWN = new int[VALUES.length + 1];
+
+    static {
+        for (Period period : VALUES) {
+            YEARLY_FACTORS[period.ordinal()] = period.yearlyFactor;
+        }
+        UNKNOWN[VALUES.length] = 1;
+    }
+
+    private final String name;
+    private final String labelKey;
+    private final long yearlyFactor;
+
+    Period(String name, String labelKey, long yearlyFactor) {
+        this.name = name;
+        this.labelKey = labelKey;
+        this.yearlyFactor = yearlyFactor;
+    }
+
+    /**
+     * The name as it's stored in the sheets, e.g. "6 Months".
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Key of the label in the resource bundle.
+     */
+    public String getLabelKey() {
+        return labelKey;
+    }
+
+    /**
+     * How many times the period fits into a year.
+     */
+    public long getYearlyFactor() {
+        return yearlyFactor;
+    }
+
+    /**
+     * Number of known periods. Their codes are 0 to count() - 1.
+     */
+    public static int count() {
+        return VALUES.length;
+    }
+
+    public static Period ofCode(int code) {
+        return isKnown(code) ? VALUES[code] : null;
+    }
+
+    /**
+     * Returns the period with the given name, or null if the period is unknown.
+     */
+    public static Period of(String name) {
+        final int code = codeOf(name);
+        return code >= 0 ? VALUES[code] : null;
+    }
+
+    /**
+     * Returns the code of a known period, or -1 if the period is unknown.
+     */
+    public static int codeOf(String name) {
+        if (name == null) {
+            return -1;
+        }
+        switch (name) {
+            case "Year": return 0;
+            case "6 Months": return 1;
+            case "Quarter": return 2;
+            case "Month": return 3;
+            case "Week": return 4;
+            case "Day": return 5;
+            default: return -1;
+        }
+    }
+
+    public static boolean isKnown(int code) {
+        return code >= 0 && code < VALUES.length;
+    }
+
+    /**
+     * The yearly factor of a code, 0 for an unknown code. Summing {@code cents * yearlyFactor(code)} over all rows
+     * gives the yearly sum without a branch per row.
+     */
+    public static long yearlyFactor(int code) {
+        return YEARLY_FACTORS[index(code)];
+    }
+
+    /**
+     * 1 for an unknown code, 0 for a known one, so unknown rows can be counted without a branch.
+     */
+    public static int unknown(int code) {
+        return UNKNOWN[index(code)];
+    }
+
+    /**
+     * Maps every unknown code (negative or too large) to the last table entry. The JIT compiles the condition to a
+     * conditional move instead of a jump. (Clearing the sign bit instead would map Integer.MIN_VALUE to YEAR.)
+     */
+    private static int index(int code) {
+        return code >= 0 && code < VALUES.length ? code : VALUES.length;
+    }
+}
@@ -0,0 +1,50 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps strings to dense int ids and back. Ids are never reused, so they stay valid as long as the dictionary lives.
+ * Looking up a string by its id is a plain array access.
+ */
+public final class StringDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private volatile String[] values = new String[16];
+    private int size = 0;
+
+    /**
+     * Returns the id of the string and adds it, if it isn't known yet.
+     */
+    public synchronized int idOf(String value) {
+        final Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        String[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = value;
+        values = current;
+        ids.put(value, size);
+        return size++;
+    }
+
+    /**
+     * Returns the id of the string, or -1, if it isn't known.
+     */
+    public synchronized int find(String value) {
+        final Integer id = ids.get(value);
+        return id != null ? id : -1;
+    }
+
+    public String valueOf(int id) {
+        return values[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,40 @@
+package model;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Shared pool for strings which repeat a lot across transactions (titles like "Rent" or "Groceries"). Equal
+ * strings are stored only once. Entries are weak, so strings nobody uses anymore don't stay in the pool.
+ */
+public final class StringPool {
+
+    private static final Map<String, WeakReference<String>> POOL = new WeakHashMap<>();
+
+    private StringPool() {}
+
+    /**
+     * Returns the pooled instance which equals the given string.
+     */
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (POOL) {
+            final WeakReference<String> reference = POOL.get(value);
+            final String pooled = reference != null ? reference.get() : null;
+            if (pooled != null) {
+                return pooled;
+            }
+            POOL.put(value, new WeakReference<>(value));
+            return value;
+        }
+    }
+
+    public static int size() {
+        synchronized (POOL) {
+            return POOL.size();
+        }
+    }
+}
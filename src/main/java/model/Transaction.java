@@ -1,49 +1,279 @@
 package model;
 
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * A single income or expense. The data is kept in primitive fields: the amount as cents, the period as code (see
+ * {@link Period}), the category as id into a shared dictionary and the title as a pooled string. It has no JavaFX
+ * properties, the table shows the getters, so the core and the batch mode run without JavaFX.
+ *
+ * What doesn't fit into these fields is kept as text, so a sheet is saved like it was loaded: a value with more than
+ * two decimal places or another notation (see {@link Money#isCents(String)}), it's calculated rounded to cents, and
+ * a period which isn't one of the known periods, all of them share one code which is never calculated.
+ *
+ * A transaction may have a start and an end date (as epoch days), it then recurs every period from the start until
+ * the end, see {@link core.CashFlowTimeline}. Without dates, it recurs from today on for ever. The dates are only
+ * written to a sheet if they're set, so sheets without dates look like they always did.
+ *
+ * The value is in the currency of the row (an ISO code like "EUR", see {@link core.ExchangeRates}). Rows without
+ * a currency are in the base currency of the exchange rates, like every row of a sheet before there were currencies.
+ */
+@JsonPropertyOrder({"title", "category", "period", "value", "currency", "start", "end"})
 public class Transaction {
 
-	private StringProperty title = new SimpleStringProperty();
-	private StringProperty category = new SimpleStringProperty();
-	private StringProperty period = new SimpleStringProperty();
-	private StringProperty value = new SimpleStringProperty();
+	/**
+	 * The start or end day of a transaction without that date.
+	 */
+	public static final int NO_DAY = Integer.MIN_VALUE;
+
+	/**
+	 * The code of every period which isn't one of the known periods, the period itself is kept in the row.
+	 */
+	private static final byte UNKNOWN_PERIOD = (byte) Period.count();
+
+	private static final StringDictionary CATEGORIES = new StringDictionary();
+	private static final StringDictionary CURRENCIES = new StringDictionary();
+
+	private String title;
+	private int categoryId = -1;
+	private byte periodCode = -1;
+	private String unknownPeriod;
+	private long amountCents;
+	private String inexactValue;
+	private int currencyId = -1;
+	private int startDay = NO_DAY;
+	private int endDay = NO_DAY;
+	private String source;
 
 	public Transaction() {}	//Default constructor is needed for JSON-handling
 
 	public Transaction(String title, String value, String period, String category) {
-		this.title = new SimpleStringProperty(title);
-		this.value = new SimpleStringProperty(value);
-		this.period = new SimpleStringProperty(period);
-		this.category = new SimpleStringProperty(category);
+		setTitle(title);
+		setValue(value);
+		setPeriod(period);
+		setCategory(category);
 	}
 
+	public Transaction(String title, long amountCents, Period period, String category) {
+		setTitle(title);
+		setAmountCents(amountCents);
+		setPeriod(period != null ? period.getName() : null);
+		setCategory(category);
+	}
 
-	//Property methods are needed for FXML.
-	public StringProperty titleProperty() { return this.title; }
 
-	public StringProperty categoryProperty() { return this.category; }
+	/**
+	 * A copy with another category, the pooled strings are shared. Currency, dates and source are kept.
+	 */
+	public Transaction withCategory(String category) {
+		final Transaction copy = new Transaction();
+		copy.title = title;
+		copy.periodCode = periodCode;
+		copy.unknownPeriod = unknownPeriod;
+		copy.amountCents = amountCents;
+		copy.inexactValue = inexactValue;
+		copy.currencyId = currencyId;
+		copy.startDay = startDay;
+		copy.endDay = endDay;
+		copy.source = source;
+		copy.setCategory(category);
+		return copy;
+	}
 
-	public StringProperty periodProperty() { return this.period; }
+	//Getters and Setters are needed for JSON-handling.
+	public void setTitle(String title) {
+		this.title = StringPool.intern(title);
+	}
 
-	public StringProperty valueProperty() { return this.value; }
+	public void setCategory(String category) {
+		this.categoryId = category != null ? CATEGORIES.idOf(StringPool.intern(category)) : -1;
+	}
 
-	//Getters and Setters are needed for JSON-handling.
-	public void setTitle(String title) { this.title.set(title); }
+	public void setPeriod(String period) {
+		final int code = Period.codeOf(period);
+		this.periodCode = code >= 0 ? (byte) code : period != null ? UNKNOWN_PERIOD : -1;
+		this.unknownPeriod = code < 0 ? StringPool.intern(period) : null;
+	}
+
+	public void setValue(String value) {
+		final long cents = Money.parseCents(value);
+		this.inexactValue = Money.isCents(value) ? null : value.trim();
+		this.amountCents = cents;
+	}
+
+	public String getTitle() { return this.title; }
+
+	public String getCategory() { return categoryId >= 0 ? CATEGORIES.valueOf(categoryId) : null; }
+
+	public String getPeriod() { return Period.isKnown(periodCode) ? Period.ofCode(periodCode).getName() : unknownPeriod; }
+
+	/**
+	 * The value as it was set, if it had more than two decimal places or another notation, otherwise the cents.
+	 */
+	public String getValue() { return inexactValue != null ? inexactValue : Money.formatCents(amountCents); }
+
+	/**
+	 * The value as it was set, if it isn't exactly the cents, otherwise null. For the binary formats, which store the
+	 * cents and only need the text of the few rows whose value the cents don't tell.
+	 */
+	@JsonIgnore
+	public String getInexactValue() { return inexactValue; }
+
+	/**
+	 * The currency as ISO code, or null for the base currency.
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public String getCurrency() { return currencyId >= 0 ? CURRENCIES.valueOf(currencyId) : null; }
+
+	/**
+	 * Sets the currency, the code is stored in upper case. An empty code is the base currency.
+	 */
+	public void setCurrency(String currency) { this.currencyId = currencyId(currency); }
+
+	/**
+	 * The start date as ISO date ("2017-01-31"), or null.
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public String getStart() { return dateOf(startDay); }
+
+	public void setStart(String start) { this.startDay = dayOf(start); }
+
+	/**
+	 * The end date as ISO date, or null. The transaction recurs up to this day, including it.
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public String getEnd() { return dateOf(endDay); }
+
+	public void setEnd(String end) { this.endDay = dayOf(end); }
+
+	//Primitive accessors for calculations, so the strings don't have to be parsed again.
+	@JsonIgnore
+	public void setAmountCents(long amountCents) {
+		this.amountCents = amountCents;
+		this.inexactValue = null;
+	}
+
+	@JsonIgnore
+	public long getAmountCents() { return amountCents; }
+
+	@JsonIgnore
+	public boolean isExpense() { return amountCents < 0; }
+
+	@JsonIgnore
+	public int getCategoryId() { return categoryId; }
 
-	public void setCategory(String category) { this.category.set(category); }
+	/**
+	 * The id of the currency, -1 for the base currency. See {@link #currencyForId(int)}.
+	 */
+	@JsonIgnore
+	public int getCurrencyId() { return currencyId; }
 
-	public void setPeriod(String period) { this.period.set(period); }
+	/**
+	 * The first day (as epoch day, see {@link LocalDate#toEpochDay()}), or {@link #NO_DAY}.
+	 */
+	@JsonIgnore
+	public int getStartDay() { return startDay; }
 
-	public void setValue(String value) { this.value.set(value); }
+	@JsonIgnore
+	public void setStartDay(int startDay) { this.startDay = startDay; }
 
-	public String getTitle() { return this.title.get(); }
+	/**
+	 * The last day (as epoch day), or {@link #NO_DAY}.
+	 */
+	@JsonIgnore
+	public int getEndDay() { return endDay; }
 
-	public String getCategory() { return this.category.get(); }
+	@JsonIgnore
+	public void setEndDay(int endDay) { this.endDay = endDay; }
 
-	public String getPeriod() { return this.period.get(); }
+	/**
+	 * The file name of the sheet the transaction was loaded from, when several sheets are shown together. It isn't
+	 * saved.
+	 */
+	@JsonIgnore
+	public String getSource() { return source; }
+
+	@JsonIgnore
+	public void setSource(String source) { this.source = StringPool.intern(source); }
+
+	/**
+	 * Returns true, if the period is one of the known periods and therefore can be calculated to a year.
+	 */
+	@JsonIgnore
+	public boolean hasKnownPeriod() {
+		return Period.isKnown(periodCode);
+	}
 
-	public String getValue() { return this.value.get(); }
+	/**
+	 * The amount calculated to a year in cents, 0 if the period is unknown (see {@link #hasKnownPeriod()}).
+	 */
+	@JsonIgnore
+	public long getYearlyCents() {
+		return amountCents * Period.yearlyFactor(periodCode);
+	}
+
+	/**
+	 * The code of the period (see {@link Period}), or a code which isn't known.
+	 */
+	@JsonIgnore
+	public int getPeriodCode() { return periodCode; }
+
+	/**
+	 * Returns the category with the given id, see {@link #getCategoryId()}.
+	 */
+	public static String categoryForId(int categoryId) {
+		return CATEGORIES.valueOf(categoryId);
+	}
+
+	/**
+	 * Number of categories which got an id so far, the ids are 0 to this number (exclusive).
+	 */
+	public static int categoryCount() {
+		return CATEGORIES.size();
+	}
+
+	/**
+	 * Returns the id of the category or -1, if no transaction ever had it.
+	 */
+	public static int categoryIdOf(String category) {
+		return category != null ? CATEGORIES.find(category) : -1;
+	}
+
+	/**
+	 * Returns the currency with the given id, see {@link #getCurrencyId()}.
+	 */
+	public static String currencyForId(int currencyId) {
+		return CURRENCIES.valueOf(currencyId);
+	}
+
+	/**
+	 * Number of currencies which got an id so far, the ids are 0 to this number (exclusive).
+	 */
+	public static int currencyCount() {
+		return CURRENCIES.size();
+	}
+
+	/**
+	 * Returns the id of the currency and gives it one, if it hasn't got one yet. -1 for null or an empty code.
+	 */
+	public static int currencyId(String currency) {
+		if (currency == null || currency.trim().isEmpty()) {
+			return -1;
+		}
+		return CURRENCIES.idOf(StringPool.intern(currency.trim().toUpperCase(Locale.ROOT)));
+	}
+
+	private static String dateOf(int day) {
+		return day != NO_DAY ? LocalDate.ofEpochDay(day).toString() : null;
+	}
+
+	private static int dayOf(String date) {
+		return date != null && !date.isEmpty() ? (int) LocalDate.parse(date).toEpochDay() : NO_DAY;
+	}
 
 }
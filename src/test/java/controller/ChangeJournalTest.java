@@ -0,0 +1,240 @@
+package controller;
+
+import model.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeJournalTest {
+
+    private Path directory;
+    private File sheet;
+
+    @Before
+    public void createSheet() throws IOException {
+        directory = Files.createTempDirectory("journal-test");
+        sheet = directory.resolve("sheet.json").toFile();
+        Files.write(sheet.toPath(), Collections.singletonList("[]"));
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void replaysAddsAndDeletes() throws IOException {
+        final ChangeJournal journal = ChangeJournal.open(sheet);
+        journal.recordAdd(row("Rent"));
+        journal.recordDelete(row("Food"));
+        journal.flush();
+
+        final List<ChangeJournal.Entry> entries = ChangeJournal.read(sheet);
+        assertEquals(2, entries.size());
+        assertTrue(entries.get(0).isAdded());
+        assertEquals("Rent", entries.get(0).getTransaction().getTitle());
+        assertFalse(entries.get(1).isAdded());
+        assertEquals("Food", entries.get(1).getTransaction().getTitle());
+        journal.close();
+    }
+
+    @Test
+    public void ignoresAPartlyWrittenRecord() throws IOException {
+        final ChangeJournal journal = ChangeJournal.open(sheet);
+        journal.recordAdd(row("Rent"));
+        journal.recordAdd(row("Food"));
+        journal.close();
+        final Path file = ChangeJournal.journalFileOf(sheet).toPath();
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+
+        assertEquals(Collections.singletonList("Rent"), titles(ChangeJournal.read(sheet)));
+        //Opening cuts the broken record off, new records follow the complete ones.
+        final ChangeJournal reopened = ChangeJournal.open(sheet);
+        reopened.recordAdd(row("Salary"));
+        reopened.close();
+        assertEquals(Arrays.asList("Rent", "Salary"), titles(ChangeJournal.read(sheet)));
+    }
+
+    @Test
+    public void skipsTheChangesInTheSheetAfterACrashBeforeCompacting() throws IOException {
+        final ChangeJournal journal = ChangeJournal.open(sheet);
+        journal.recordAdd(row("Rent"));
+        journal.flush();
+        final long saved = journal.position();
+        journal.recordAdd(row("Food"));
+
+        //The save writes the new sheet, checkpoints it and replaces the sheet, then the application crashes.
+        final Path written = directory.resolve("written.tmp");
+        Files.write(written, Collections.singletonList("[{\"title\":\"Rent\"}]"));
+        journal.checkpoint(saved, written);
+        Files.move(written, sheet.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        assertEquals(Collections.singletonList("Food"), titles(ChangeJournal.read(sheet)));
+        journal.close();
+    }
+
+    @Test
+    public void replaysEverythingIfTheSheetWasNotReplaced() throws IOException {
+        final ChangeJournal journal = ChangeJournal.open(sheet);
+        journal.recordAdd(row("Rent"));
+        journal.flush();
+        final long saved = journal.position();
+        journal.recordAdd(row("Food"));
+
+        final Path written = directory.resolve("written.tmp");
+        Files.write(written, Collections.singletonList("[{\"title\":\"Rent\"}]"));
+        journal.checkpoint(saved, written);
+        Files.delete(written);
+
+        assertEquals(Arrays.asList("Rent", "Food"), titles(ChangeJournal.read(sheet)));
+        journal.close();
+    }
+
+    @Test
+    public void compactingKeepsTheLaterChanges() throws IOException {
+        final ChangeJournal journal = ChangeJournal.open(sheet);
+        journal.recordAdd(row("Rent"));
+        journal.recordAdd(row("Food"));
+        journal.flush();
+        final long saved = journal.position();
+        journal.recordAdd(row("Salary"));
+        final Path written = directory.resolve("written.tmp");
+        Files.write(written, Collections.singletonList("[]"));
+        journal.checkpoint(saved, written);
+        Files.move(written, sheet.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        journal.compact(saved);
+        journal.flush();
+        assertEquals(Collections.singletonList("Salary"), titles(ChangeJournal.read(sheet)));
+
+        //Positions go on after compacting, also when the journal is opened again.
+        journal.close();
+        final ChangeJournal reopened = ChangeJournal.open(sheet);
+        reopened.recordAdd(row("Gift"));
+        final long savedAgain = reopened.position();
+        reopened.recordAdd(row("Taxes"));
+        reopened.compact(savedAgain);
+        reopened.flush();
+        assertEquals(Collections.singletonList("Taxes"), titles(ChangeJournal.read(sheet)));
+        reopened.close();
+    }
+
+    @Test
+    public void deletesAnEmptyJournalWhenItIsClosed() throws IOException {
+        final ChangeJournal journal = ChangeJournal.open(sheet);
+        journal.recordAdd(row("Rent"));
+        journal.flush();
+        final long saved = journal.position();
+        final Path written = directory.resolve("written.tmp");
+        Files.write(written, Collections.singletonList("[]"));
+        journal.checkpoint(saved, written);
+        Files.move(written, sheet.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        journal.compact(saved);
+        journal.close();
+        assertFalse(ChangeJournal.journalFileOf(sheet).exists());
+    }
+
+    @Test
+    public void replaysTheValueAsItWasEntered() throws IOException {
+        final ChangeJournal journal = ChangeJournal.open(sheet);
+        journal.recordAdd(new Transaction("Coffee", "1.005", "Day", "Food"));
+        journal.close();
+
+        final Transaction replayed = ChangeJournal.read(sheet).get(0).getTransaction();
+        assertEquals("1.005", replayed.getValue());
+        assertEquals(101, replayed.getAmountCents());
+    }
+
+    @Test
+    public void replaysStringsLongerThan64KB() throws IOException {
+        final String title = String.join("", Collections.nCopies(70 * 1024, "\u00e4"));
+        final ChangeJournal journal = ChangeJournal.open(sheet);
+        journal.recordAdd(row(title));
+        journal.close();
+
+        assertEquals(Collections.singletonList(title), titles(ChangeJournal.read(sheet)));
+    }
+
+    @Test
+    public void readsAndUpgradesAVersion2Journal() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(0x4E55424A);
+        output.writeShort(2);
+        output.writeLong(0);
+        final byte[] rent = version2Add("Rent");
+        output.write(rent);
+        //The sheet already has the rent, only the food is replayed.
+        final byte[] sheetBytes = Files.readAllBytes(sheet.toPath());
+        final CRC32 sheetCrc = new CRC32();
+        sheetCrc.update(sheetBytes);
+        output.write(frame(ByteBuffer.allocate(21).put((byte) 3).putLong(rent.length).putLong(sheetBytes.length)
+                .putInt((int) sheetCrc.getValue()).array()));
+        output.write(version2Add("Food"));
+        Files.write(ChangeJournal.journalFileOf(sheet).toPath(), bytes.toByteArray());
+
+        assertEquals(Collections.singletonList("Food"), titles(ChangeJournal.read(sheet)));
+        final ChangeJournal journal = ChangeJournal.open(sheet);
+        journal.recordAdd(row("Salary"));
+        journal.close();
+        assertEquals(Arrays.asList("Food", "Salary"), titles(ChangeJournal.read(sheet)));
+    }
+
+    private static byte[] version2Add(String title) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeByte(1);
+        for (String text : Arrays.asList(title, "Other", "Month")) {
+            payload.writeBoolean(true);
+            payload.writeUTF(text);
+        }
+        payload.writeLong(-1000);
+        payload.writeInt(Integer.MIN_VALUE);
+        payload.writeInt(Integer.MIN_VALUE);
+        payload.writeBoolean(false);
+        return frame(bytes.toByteArray());
+    }
+
+    private static byte[] frame(byte[] content) {
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        return ByteBuffer.allocate(content.length + 8).putInt(content.length).put(content).putInt((int) crc.getValue())
+                .array();
+    }
+
+    private static Transaction row(String title) {
+        return new Transaction(title, "-10", "Month", "Other");
+    }
+
+    private static List<String> titles(List<ChangeJournal.Entry> entries) {
+        final List<String> titles = new ArrayList<>();
+        for (ChangeJournal.Entry entry : entries) {
+            titles.add(entry.getTransaction().getTitle());
+        }
+        return titles;
+    }
+}
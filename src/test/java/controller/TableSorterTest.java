@@ -0,0 +1,119 @@
+package controller;
+
+import controller.TableSorter.Column;
+import controller.TableSorter.SortKey;
+import model.Period;
+import model.Transaction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TableSorterTest {
+
+    @Test
+    public void sortsByTheColumnsInTheirOrder() {
+        final Transaction rent = new Transaction("Rent", -1200_00, Period.MONTH, "Housing");
+        final Transaction salary = new Transaction("Salary", 5000_00, Period.MONTH, "Income");
+        final Transaction insurance = new Transaction("insurance", -900_00, Period.YEAR, "Housing");
+        final Transaction food = new Transaction("Food", -50_00, Period.WEEK, null);
+        final List<Transaction> rows = Arrays.asList(rent, salary, insurance, food);
+
+        final List<SortKey> keys = Arrays.asList(new SortKey(Column.CATEGORY, true), new SortKey(Column.VALUE, false));
+        assertEquals(Arrays.asList(food, insurance, rent, salary), sorted(rows, keys));
+        assertEquals(Arrays.asList(food, insurance, rent, salary),
+                sorted(rows, Collections.singletonList(new SortKey(Column.TITLE, true))));
+        assertEquals(Arrays.asList(rent, food, insurance, salary),
+                sorted(rows, Collections.singletonList(new SortKey(Column.YEARLY, true))));
+    }
+
+    @Test
+    public void keepsTheOrderOfEqualRows() {
+        final Transaction first = new Transaction("Rent", -100, Period.MONTH, null);
+        final Transaction second = new Transaction("RENT", -200, Period.MONTH, null);
+        final Transaction third = new Transaction("rent", -300, Period.MONTH, null);
+        final List<Transaction> rows = Arrays.asList(first, second, third);
+
+        assertEquals(rows, sorted(rows, Collections.singletonList(new SortKey(Column.TITLE, true))));
+        assertEquals(rows, sorted(rows, Collections.singletonList(new SortKey(Column.TITLE, false))));
+    }
+
+    @Test
+    public void putsIncomesFirstWithoutSortKeys() {
+        final Transaction rent = new Transaction("Rent", -1200_00, Period.MONTH, null);
+        final Transaction salary = new Transaction("Salary", 5000_00, Period.MONTH, null);
+        final Transaction food = new Transaction("Food", -50_00, Period.WEEK, null);
+
+        assertEquals(Arrays.asList(salary, rent, food), sorted(Arrays.asList(rent, salary, food), Collections.emptyList()));
+    }
+
+    @Test
+    public void sortsLikeTheComparator() {
+        final Random random = new Random(11);
+        final String[] titles = {"Rent", "rent", "Food", null, "Salary", "\u00e4rzte"};
+        final List<Transaction> rows = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            final Transaction row = new Transaction(titles[random.nextInt(titles.length)], random.nextInt(2000) - 1000,
+                    Period.values()[random.nextInt(Period.count())], random.nextBoolean() ? "Housing" : null);
+            if (random.nextInt(10) == 0) {
+                row.setPeriod("Fortnight");
+            }
+            row.setStartDay(random.nextBoolean() ? Transaction.NO_DAY : random.nextInt(100));
+            rows.add(row);
+        }
+        for (Column column : Column.values()) {
+            for (boolean ascending : new boolean[]{true, false}) {
+                final List<SortKey> keys = Arrays.asList(new SortKey(column, ascending), new SortKey(Column.VALUE, true));
+                final List<Transaction> expected = new ArrayList<>(rows);
+                expected.sort(TableSorter.comparator(keys));
+                assertEquals(column + (ascending ? " ascending" : " descending"), expected, sorted(rows, keys));
+            }
+        }
+    }
+
+    @Test
+    public void insertsBehindEqualRows() {
+        final List<SortKey> keys = Collections.singletonList(new SortKey(Column.VALUE, true));
+        final List<Transaction> rows = Arrays.asList(
+                new Transaction("A", -100, Period.MONTH, null),
+                new Transaction("B", 0, Period.MONTH, null),
+                new Transaction("C", 0, Period.MONTH, null),
+                new Transaction("D", 100, Period.MONTH, null));
+
+        assertEquals(3, TableSorter.insertionIndex(rows, new Transaction("E", 0, Period.MONTH, null), keys));
+        assertEquals(0, TableSorter.insertionIndex(rows, new Transaction("F", -200, Period.MONTH, null), keys));
+        assertEquals(4, TableSorter.insertionIndex(rows, new Transaction("G", 200, Period.MONTH, null), keys));
+    }
+
+    @Test
+    public void reordersTheList() {
+        final TransactionList transactionList = new TransactionList();
+        transactionList.addAll(Arrays.asList(
+                new Transaction("B", 100, Period.MONTH, null),
+                new Transaction("C", 100, Period.MONTH, null),
+                new Transaction("A", 100, Period.MONTH, null)));
+        final List<SortKey> keys = Collections.singletonList(new SortKey(Column.TITLE, false));
+        assertArrayEquals(new int[]{1, 0, 2}, TableSorter.sortedOrder(transactionList, keys));
+
+        TableSorter.sort(transactionList, keys);
+        final List<String> titles = new ArrayList<>();
+        for (Transaction transaction : transactionList) {
+            titles.add(transaction.getTitle());
+        }
+        assertEquals(Arrays.asList("C", "B", "A"), titles);
+    }
+
+    private static List<Transaction> sorted(List<Transaction> rows, List<SortKey> keys) {
+        final List<Transaction> sorted = new ArrayList<>();
+        for (int index : TableSorter.sortedOrder(rows, keys)) {
+            sorted.add(rows.get(index));
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,115 @@
+package controller;
+
+import model.Period;
+import model.Transaction;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UndoHistoryTest {
+
+    private TransactionList transactionList;
+    private UndoHistory history;
+
+    @Before
+    public void createHistory() {
+        transactionList = new TransactionList();
+        transactionList.addAll(Arrays.asList(row("Rent"), row("Food")));
+        history = new UndoHistory(transactionList);
+        transactionList.addListener(history);
+    }
+
+    @Test
+    public void undoesAndRedoesAddsAndRemoves() {
+        final List<Transaction> start = new ArrayList<>(transactionList);
+        final Transaction salary = row("Salary");
+        history.add(1, salary);
+        history.remove(0);
+        final List<Transaction> end = new ArrayList<>(transactionList);
+        assertEquals(Arrays.asList(salary, start.get(1)), end);
+
+        final UndoHistory.Edit undoneRemove = history.undo();
+        assertEquals(Collections.singletonList(start.get(0)), undoneRemove.getAdded());
+        assertFalse(undoneRemove.isReplaced());
+        history.undo();
+        assertEquals(start, transactionList);
+        assertFalse(history.canUndo());
+        assertNull(history.undo());
+
+        history.redo();
+        history.redo();
+        assertEquals(end, transactionList);
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void aNewStepDropsTheUndoneSteps() {
+        history.add(0, row("Salary"));
+        history.undo();
+        history.add(0, row("Bonus"));
+        assertFalse(history.canRedo());
+        assertEquals("Bonus", transactionList.get(0).getTitle());
+    }
+
+    @Test
+    public void replacesTheListIfItWasSortedSinceTheStep() {
+        final Transaction salary = row("Salary");
+        history.add(2, salary);
+        final List<Transaction> before = new ArrayList<>(transactionList.subList(0, 2));
+        TableSorter.sort(transactionList, Collections.singletonList(new TableSorter.SortKey(TableSorter.Column.TITLE, true)));
+
+        final UndoHistory.Edit edit = history.undo();
+        assertTrue(edit.isReplaced());
+        assertEquals(Collections.singletonList(salary), edit.getRemoved());
+        assertEquals(before, transactionList);
+    }
+
+    @Test
+    public void followsChangesMadeOutsideOfTheHistory() {
+        history.add(0, row("Salary"));
+        transactionList.add(row("Bonus"));
+        transactionList.remove(1);
+        final List<Transaction> changed = new ArrayList<>(transactionList);
+
+        history.add(0, row("Gift"));
+        history.undo();
+        assertEquals(changed, transactionList);
+    }
+
+    @Test
+    public void undoesAnAppendAtOnce() {
+        final List<Transaction> start = new ArrayList<>(transactionList);
+        final Object token = history.startAppend();
+        transactionList.addAll(Arrays.asList(row("A"), row("B")));
+        transactionList.addAll(Collections.singletonList(row("C")));
+        history.finishAppend(token);
+
+        assertEquals(3, history.undo().getRemoved().size());
+        assertEquals(start, transactionList);
+    }
+
+    @Test
+    public void knowsWhetherTheRowsAreTheSavedOnes() {
+        assertTrue(history.isSaved());
+        history.add(0, row("Salary"));
+        assertFalse(history.isSaved());
+        history.markSaved(history.savePoint());
+        history.undo();
+        assertFalse(history.isSaved());
+        history.redo();
+        assertTrue(history.isSaved());
+    }
+
+    private static Transaction row(String title) {
+        return new Transaction(title, -100, Period.MONTH, null);
+    }
+}
@@ -0,0 +1,74 @@
+package core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import model.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchCalculatorTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("batch-calculator-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Collections.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void sumsEverySheetAndSkipsTheBrokenOnes() throws IOException {
+        write(directory.resolve("a.json"), new Transaction("Rent", "-1000", "Month", null));
+        Files.createDirectory(directory.resolve("2017"));
+        write(directory.resolve("2017").resolve("b.json"), new Transaction("Salary", "5000", "Year", null));
+        Files.write(directory.resolve("broken.json"), Collections.singletonList("[{"));
+
+        final List<Path> sheets = BatchCalculator.findSheets(directory, null);
+        assertEquals(3, sheets.size());
+        final BatchCalculator.Summary summary = new BatchCalculator(ForkJoinPool.commonPool()).calculate(sheets);
+
+        assertEquals(-12000_00 + 5000_00, summary.getCombined().getYearlyCents());
+        assertEquals(2, summary.getCombined().getRows());
+        final BatchCalculator.SheetResult broken = summary.getSheets().get(2);
+        assertNull(broken.getTotals());
+        assertNotNull(broken.getError());
+    }
+
+    @Test
+    public void writesTheSummaryOfNoSheets() throws IOException {
+        final BatchCalculator.Summary summary = new BatchCalculator(ForkJoinPool.commonPool()).calculate(Collections.emptyList());
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JsonGenerator generator = SheetFiles.jsonFactory().createGenerator(output)) {
+            BatchCalculator.writeSummary(generator, summary);
+        }
+        assertTrue(new String(output.toByteArray(), StandardCharsets.UTF_8).contains("\"combined\""));
+    }
+
+    private static void write(Path path, Transaction... transactions) throws IOException {
+        SheetFiles.writeJson(path, Arrays.asList(transactions), true, SheetFiles.NO_PROGRESS);
+    }
+}
@@ -0,0 +1,151 @@
+package core;
+
+import model.Period;
+import model.Transaction;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CashFlowTimelineTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 1, 31);
+
+    @Test
+    public void monthlyRowsRecurOnTheLastDayOfShorterMonths() {
+        final CashFlowTimeline timeline = new CashFlowTimeline(TODAY, 1);
+        final Transaction rent = new Transaction("Rent", -1000_00, Period.MONTH, null);
+        rent.setStart("2024-01-31");
+        timeline.setOpeningCents(5000_00);
+        timeline.rebuild(Arrays.asList(rent));
+
+        assertEquals(4000_00, timeline.balanceOn(TODAY));
+        assertEquals(4000_00, timeline.balanceOn(LocalDate.of(2024, 2, 28)));
+        assertEquals(3000_00, timeline.balanceOn(LocalDate.of(2024, 2, 29)));
+        assertEquals(2000_00, timeline.balanceOn(LocalDate.of(2024, 3, 31)));
+        assertEquals(-7000_00, timeline.balanceOn(timeline.getLastDate()));
+    }
+
+    @Test
+    public void rebuildEqualsAddingRowByRow() {
+        final Random random = new Random(5);
+        final List<Transaction> rows = randomRows(random, 300);
+        final CashFlowTimeline rebuilt = new CashFlowTimeline(TODAY, 3);
+        rebuilt.rebuild(rows);
+        final CashFlowTimeline added = new CashFlowTimeline(TODAY, 3);
+        for (Transaction row : rows) {
+            added.add(row);
+        }
+
+        final long[] expected = expectedBalances(rows, TODAY, rebuilt.getDays(), 0);
+        assertArrayEquals(expected, rebuilt.balances());
+        assertArrayEquals(expected, added.balances());
+    }
+
+    @Test
+    public void removingRowsUndoesAddingThem() {
+        final Random random = new Random(9);
+        final List<Transaction> rows = randomRows(random, 100);
+        final CashFlowTimeline timeline = new CashFlowTimeline(TODAY, 2);
+        timeline.rebuild(rows);
+        final List<Transaction> kept = new ArrayList<>(rows.subList(0, 50));
+        for (Transaction row : rows.subList(50, rows.size())) {
+            timeline.remove(row);
+        }
+
+        assertArrayEquals(expectedBalances(kept, TODAY, timeline.getDays(), 0), timeline.balances());
+    }
+
+    @Test
+    public void findsTheLowestBalanceOfAnyRange() {
+        final Random random = new Random(13);
+        final CashFlowTimeline timeline = new CashFlowTimeline(TODAY, 1);
+        timeline.setOpeningCents(100_00);
+        final List<Transaction> rows = randomRows(random, 50);
+        timeline.rebuild(rows);
+        final long[] balances = expectedBalances(rows, TODAY, timeline.getDays(), 100_00);
+        for (int i = 0; i < 500; ++i) {
+            final int from = random.nextInt(balances.length);
+            final int to = from + random.nextInt(balances.length - from);
+            long minimum = Long.MAX_VALUE;
+            for (int day = from; day <= to; ++day) {
+                minimum = Math.min(minimum, balances[day]);
+            }
+            assertEquals(from + " to " + to, minimum, timeline.minBalance(TODAY.plusDays(from), TODAY.plusDays(to)));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsDaysBeforeTheTimeline() {
+        new CashFlowTimeline(TODAY, 1).balanceOn(TODAY.minusDays(1));
+    }
+
+    private static List<Transaction> randomRows(Random random, int count) {
+        final List<Transaction> rows = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            final Transaction row = new Transaction("Row " + i, random.nextInt(100_000) - 60_000,
+                    Period.values()[random.nextInt(Period.count())], null);
+            if (random.nextInt(20) == 0) {
+                row.setPeriod("Fortnight");
+            }
+            if (random.nextBoolean()) {
+                row.setStart(TODAY.plusDays(random.nextInt(1500) - 500).toString());
+            }
+            if (random.nextInt(3) == 0) {
+                row.setEnd(TODAY.plusDays(random.nextInt(1500)).toString());
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * The balances, with every recurrence of every row counted one by one.
+     */
+    private static long[] expectedBalances(List<Transaction> rows, LocalDate firstDate, int days, long openingCents) {
+        final long[] deltas = new long[days];
+        final LocalDate lastDate = firstDate.plusDays(days - 1);
+        for (Transaction row : rows) {
+            if (!row.hasKnownPeriod()) {
+                continue;
+            }
+            final Period period = Period.ofCode(row.getPeriodCode());
+            final LocalDate start = row.getStart() != null ? LocalDate.parse(row.getStart()) : firstDate;
+            final LocalDate end = row.getEnd() != null && LocalDate.parse(row.getEnd()).isBefore(lastDate)
+                    ? LocalDate.parse(row.getEnd()) : lastDate;
+            for (int recurrence = 0; ; ++recurrence) {
+                final LocalDate date;
+                switch (period) {
+                    case DAY:
+                        date = start.plusDays(recurrence);
+                        break;
+                    case WEEK:
+                        date = start.plusWeeks(recurrence);
+                        break;
+                    default:
+                        date = start.plusMonths((long) recurrence * (12 / period.getYearlyFactor()));
+                        break;
+                }
+                if (date.isAfter(end)) {
+                    break;
+                }
+                if (!date.isBefore(firstDate)) {
+                    deltas[(int) (date.toEpochDay() - firstDate.toEpochDay())] += row.getAmountCents();
+                }
+            }
+        }
+        final long[] balances = new long[days];
+        long balance = openingCents;
+        for (int day = 0; day < days; ++day) {
+            balance += deltas[day];
+            balances[day] = balance;
+        }
+        return balances;
+    }
+}
@@ -0,0 +1,124 @@
+package core;
+
+import core.CategoryRules.Rule;
+import model.Period;
+import model.Transaction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CategoryRulesTest {
+
+    @Test
+    public void findsTheTextEveryMatchContains() {
+        assertEquals("netflix", CategoryRules.requiredText("netflix\\s+\\d+"));
+        assertEquals("migros ", CategoryRules.requiredText("^MIGROS [0-9]+$"));
+        assertEquals(" coop", CategoryRules.requiredText("(?:city|pronto) coop"));
+        assertEquals("car insurance", CategoryRules.requiredText("car insurances?"));
+        assertEquals("paypal", CategoryRules.requiredText("paypal[.*]x{2,3}"));
+    }
+
+    @Test
+    public void hasNoTextForAlternativesOrShortTexts() {
+        assertNull(CategoryRules.requiredText("netflix|spotify"));
+        assertNull(CategoryRules.requiredText("\\d+a"));
+        assertNull(CategoryRules.requiredText("[a-z]+"));
+        assertNull(CategoryRules.requiredText("ab?"));
+    }
+
+    @Test
+    public void theFirstMatchingRuleWins() {
+        final CategoryRules rules = CategoryRules.compile(Arrays.asList(
+                Rule.keyword("coop pronto", "Fuel"),
+                Rule.regex("co+p", "Groceries"),
+                Rule.keyword("pronto", "Snacks"),
+                Rule.keyword("coop", "Shopping")));
+
+        assertEquals("Fuel", rules.categoryOf("COOP PRONTO Zurich"));
+        assertEquals("Groceries", rules.categoryOf("Coop City"));
+        assertEquals("Snacks", rules.categoryOf("Pronto shop"));
+        assertEquals("Groceries", rules.categoryOf("Pronto at the coop"));
+        assertNull(rules.categoryOf("Migros"));
+        assertNull(rules.categoryOf(null));
+    }
+
+    @Test
+    public void findsOverlappingKeywords() {
+        final CategoryRules rules = CategoryRules.compile(Arrays.asList(
+                Rule.keyword("she", "A"),
+                Rule.keyword("hers", "B"),
+                Rule.keyword("his", "C"),
+                Rule.keyword("he", "D")));
+
+        assertEquals("A", rules.categoryOf("ushers"));
+        assertEquals("B", rules.categoryOf("uhers"));
+        assertEquals("D", rules.categoryOf("he"));
+        assertEquals("C", rules.categoryOf("this"));
+        assertNull(rules.categoryOf("sh"));
+    }
+
+    @Test
+    public void categorizesLikeTheExpressions() {
+        final List<Rule> ruleList = Arrays.asList(
+                Rule.keyword("abc", "1"),
+                Rule.regex("b[ac]+d", "2"),
+                Rule.keyword("cab", "3"),
+                Rule.regex("^d.?a", "4"),
+                Rule.keyword("bb", "5"),
+                Rule.regex("ca?d|dd", "6"),
+                Rule.keyword("\u00e4b", "7"));
+        final CategoryRules rules = CategoryRules.compile(ruleList);
+        final List<Pattern> patterns = new ArrayList<>();
+        for (Rule rule : ruleList) {
+            final String regex = rule.isRegex() ? rule.getPattern() : Pattern.quote(rule.getPattern());
+            patterns.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+        }
+        final Random random = new Random(3);
+        final String letters = "abcdABCD\u00e4\u00c4 ";
+        for (int i = 0; i < 5000; ++i) {
+            final StringBuilder title = new StringBuilder();
+            for (int length = random.nextInt(12); length > 0; --length) {
+                title.append(letters.charAt(random.nextInt(letters.length())));
+            }
+            String expected = null;
+            for (int rule = 0; rule < patterns.size() && expected == null; ++rule) {
+                if (patterns.get(rule).matcher(title).find()) {
+                    expected = ruleList.get(rule).getCategory();
+                }
+            }
+            assertEquals(title.toString(), expected, rules.categoryOf(title.toString()));
+        }
+    }
+
+    @Test
+    public void recategorizesIntoCopies() {
+        final CategoryRules rules = CategoryRules.compile(Arrays.asList(Rule.parse("/netflix\\s+\\d+/ => Media")));
+        final Transaction netflix = new Transaction("Netflix 123", -1500, Period.MONTH, "Other");
+        final Transaction media = new Transaction("NETFLIX 7", -1500, Period.MONTH, "Media");
+        final Transaction rent = new Transaction("Rent", -100000, Period.MONTH, null);
+
+        final Transaction[] changed = rules.recategorize(Arrays.asList(netflix, media, rent), ForkJoinPool.commonPool());
+        assertEquals("Media", changed[0].getCategory());
+        assertEquals("Other", netflix.getCategory());
+        assertNull(changed[1]);
+        assertNull(changed[2]);
+    }
+
+    @Test
+    public void anUpdateLeavesTheOldRulesAlone() {
+        final CategoryRules rules = CategoryRules.compile(Arrays.asList(Rule.keyword("rent", "Housing")));
+        final CategoryRules updated = rules.update(Arrays.asList(Rule.keyword("rent", "Home"), Rule.regex("^food", "Food")));
+        assertEquals("Home", updated.categoryOf("Rent May"));
+        assertEquals("Food", updated.categoryOf("Food May"));
+        assertEquals("Housing", rules.categoryOf("Rent May"));
+        assertNull(rules.categoryOf("Food May"));
+    }
+}
@@ -0,0 +1,87 @@
+package core;
+
+import model.Transaction;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ExchangeRatesTest {
+
+    private static final ExchangeRates RATES = ExchangeRates.parse(Arrays.asList(
+            "# What one unit is worth in CHF",
+            "CHF 1",
+            "",
+            "eur 1,1",
+            "USD 0.9"));
+
+    @Test
+    public void readsTheCurrenciesInTheirOrder() {
+        assertEquals("CHF", RATES.getBase());
+        assertEquals(Arrays.asList("CHF", "EUR", "USD"), RATES.getCurrencies());
+    }
+
+    @Test
+    public void convertsTheSumsOfEveryCurrency() {
+        final Totals totals = totals();
+
+        final Totals base = RATES.convert(totals, -1);
+        assertEquals(10000 + 22000 + 4500, base.getYearlyCents());
+        assertEquals(4, base.getRows());
+        assertEquals(1, base.getInvalidRows());
+
+        final Totals euros = RATES.convert(totals, Transaction.currencyId("EUR"));
+        assertEquals(Math.round(10000 / 1.1 + 20000 + 5000 * 0.9 / 1.1), euros.getYearlyCents());
+        assertEquals(1, euros.getInvalidRows());
+    }
+
+    @Test
+    public void countsEveryRowAsInvalidForATargetWithoutRate() {
+        final Totals pounds = RATES.convert(totals(), Transaction.currencyId("GBP"));
+        assertEquals(0, pounds.getYearlyCents());
+        assertEquals(4, pounds.getInvalidRows());
+    }
+
+    @Test
+    public void leavesTheTotalsAloneWithoutRates() {
+        final Totals totals = totals();
+        assertSame(totals, ExchangeRates.NONE.convert(totals, Transaction.currencyId("EUR")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsABaseCurrencyWithAnotherRate() {
+        ExchangeRates.parse(Collections.singletonList("EUR 1.1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsACurrencyListedTwice() {
+        ExchangeRates.parse(Arrays.asList("CHF 1", "EUR 1.1", "eur 1.2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANegativeRate() {
+        ExchangeRates.parse(Arrays.asList("CHF 1", "EUR -1.1"));
+    }
+
+    /**
+     * 100 CHF without currency, 200 EUR, 50 USD and 10 GBP, which has no rate.
+     */
+    private static Totals totals() {
+        final int eur = Transaction.currencyId("EUR");
+        final int usd = Transaction.currencyId("USD");
+        final int gbp = Transaction.currencyId("GBP");
+        final int currencies = Math.max(eur, Math.max(usd, gbp)) + 1;
+        final long[] yearlyCents = new long[currencies];
+        final long[] rows = new long[currencies];
+        yearlyCents[eur] = 20000;
+        yearlyCents[usd] = 5000;
+        yearlyCents[gbp] = 1000;
+        rows[eur] = 1;
+        rows[usd] = 1;
+        rows[gbp] = 1;
+        return new Totals(10000 + 20000 + 5000 + 1000, 4, 0, yearlyCents, rows);
+    }
+}
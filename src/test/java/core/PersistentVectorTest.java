@@ -0,0 +1,94 @@
+package core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentVectorTest {
+
+    @Test
+    public void changesGiveNewVersionsAndKeepTheOldOnes() {
+        final PersistentVector<String> empty = PersistentVector.empty();
+        final PersistentVector<String> one = empty.insert(0, "a");
+        final PersistentVector<String> two = one.insert(1, "b");
+        final PersistentVector<String> replaced = two.set(0, "c");
+        final PersistentVector<String> removed = replaced.remove(1);
+
+        assertTrue(empty.isEmpty());
+        assertEquals(Arrays.asList("a"), one.toList());
+        assertEquals(Arrays.asList("a", "b"), two.toList());
+        assertEquals(Arrays.asList("c", "b"), replaced.toList());
+        assertEquals(Arrays.asList("c"), removed.toList());
+    }
+
+    @Test
+    public void followsAListThroughRandomChanges() {
+        final Random random = new Random(7);
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            expected.add(i);
+        }
+        PersistentVector<Integer> vector = PersistentVector.of(expected);
+        final List<List<Integer>> expectedVersions = new ArrayList<>();
+        final List<PersistentVector<Integer>> versions = new ArrayList<>();
+        for (int change = 0; change < 5000; ++change) {
+            final int operation = random.nextInt(3);
+            if (operation == 0 || expected.isEmpty()) {
+                final int index = random.nextInt(expected.size() + 1);
+                expected.add(index, -change);
+                vector = vector.insert(index, -change);
+            } else if (operation == 1) {
+                final int index = random.nextInt(expected.size());
+                expected.remove(index);
+                vector = vector.remove(index);
+            } else {
+                final int index = random.nextInt(expected.size());
+                expected.set(index, change);
+                vector = vector.set(index, change);
+            }
+            if (change % 500 == 0) {
+                expectedVersions.add(new ArrayList<>(expected));
+                versions.add(vector);
+            }
+        }
+        assertEquals(expected.size(), vector.size());
+        assertEquals(expected, vector.toList());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.get(i), vector.get(i));
+        }
+        assertEquals(expected.subList(10, 100), vector.subList(10, 100));
+        for (int i = 0; i < versions.size(); ++i) {
+            assertEquals(expectedVersions.get(i), versions.get(i).toList());
+        }
+    }
+
+    @Test
+    public void removesEveryElement() {
+        final List<Integer> elements = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            elements.add(i);
+        }
+        PersistentVector<Integer> vector = PersistentVector.of(elements);
+        while (!vector.isEmpty()) {
+            vector = vector.remove(vector.size() / 2);
+        }
+        assertEquals(0, vector.size());
+        assertEquals(Arrays.asList(1), vector.insert(0, 1).toList());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsAnIndexBehindTheLastElement() {
+        PersistentVector.of(Arrays.asList("a", "b")).get(2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsAnInsertBehindTheEnd() {
+        PersistentVector.of(Arrays.asList("a", "b")).insert(3, "c");
+    }
+}
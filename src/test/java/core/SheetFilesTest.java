@@ -0,0 +1,99 @@
+package core;
+
+import model.Transaction;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SheetFilesTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("sheet-files-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void readsTheJsonItWrote() throws IOException {
+        final List<Transaction> rows = Arrays.asList(
+                new Transaction("Rent", "-1200.5", "Month", "Housing"),
+                new Transaction("Bonus", "12.345", "Year", null),
+                new Transaction("Old", "3", "Fortnight", null));
+        final Path path = directory.resolve("sheet.json");
+        SheetFiles.writeJson(path, rows, true, SheetFiles.NO_PROGRESS);
+
+        final List<Transaction> read = new ArrayList<>();
+        SheetFiles.read(path, read::addAll, SheetFiles.NO_PROGRESS);
+        assertEquals(rows.size(), read.size());
+        for (int i = 0; i < rows.size(); ++i) {
+            assertEquals(rows.get(i).getTitle(), read.get(i).getTitle());
+            assertEquals(rows.get(i).getCategory(), read.get(i).getCategory());
+            assertEquals(rows.get(i).getPeriod(), read.get(i).getPeriod());
+            assertEquals(rows.get(i).getValue(), read.get(i).getValue());
+        }
+        final Totals totals = SheetFiles.readTotals(path);
+        assertEquals(-1200_50L * 12 + 1235, totals.getYearlyCents());
+        assertEquals(1, totals.getInvalidRows());
+    }
+
+    @Test
+    public void keepsTheOldFileIfWritingFails() throws IOException {
+        final Path path = directory.resolve("sheet.json");
+        Files.write(path, Collections.singletonList("[]"));
+        try {
+            SheetFiles.writeAtomically(path.toFile(), target -> {
+                Files.write(target, Collections.singletonList("[{"));
+                throw new IOException("Disk full");
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getMessage());
+        }
+        assertEquals(Collections.singletonList("[]"), Files.readAllLines(path));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void keepsThePermissionsOfTheSheet() throws IOException {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        final Path path = directory.resolve("shared.json");
+        Files.write(path, Collections.singletonList("[]"));
+        Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-rw-r--"));
+
+        SheetFiles.writeAtomically(path.toFile(), target ->
+                SheetFiles.writeJson(target, Collections.singletonList(new Transaction("Rent", "1", "Month", null)), true,
+                        SheetFiles.NO_PROGRESS));
+
+        assertEquals(PosixFilePermissions.fromString("rw-rw-r--"), Files.getPosixFilePermissions(path));
+        assertTrue(Files.readAllLines(path).get(0).contains("Rent"));
+    }
+}
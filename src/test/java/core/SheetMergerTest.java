@@ -0,0 +1,81 @@
+package core;
+
+import model.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class SheetMergerTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("sheet-merger-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void mergesTheSheetsInTheirOrder() throws IOException {
+        final Path first = write("first.json", new Transaction("Rent", "-1000", "Month", "Housing"),
+                new Transaction("Salary", "5000", "Month", null));
+        final Path second = write("second.json", new Transaction("Rent", "-1000", "Month", "Housing"),
+                new Transaction("Food", "-50", "Week", null));
+        final Path broken = directory.resolve("broken.json");
+        Files.write(broken, Collections.singletonList("[{"));
+
+        final SheetMerger.Result result = new SheetMerger(ForkJoinPool.commonPool()).merge(Arrays.asList(first, second, broken), false);
+        assertEquals(2, result.getSheets());
+        assertEquals(4, result.getTransactions().size());
+        assertEquals("first.json", result.getTransactions().get(0).getSource());
+        assertEquals("second.json", result.getTransactions().get(3).getSource());
+        assertEquals(Collections.singletonList(broken), result.getFailedSheets());
+        assertEquals(-2 * 12000_00 + 60000_00 - 2600_00, result.getTotals().getYearlyCents());
+        assertEquals(4, result.getTotals().getRows());
+    }
+
+    @Test
+    public void keepsTheFirstOfEqualRows() throws IOException {
+        final Path first = write("first.json", new Transaction("Rent", "-1000", "Month", "Housing"));
+        final Path second = write("second.json", new Transaction("Rent", "-1000", "Month", "Housing"),
+                new Transaction("Food", "-50", "Week", null));
+
+        final SheetMerger.Result result = new SheetMerger(ForkJoinPool.commonPool()).merge(Arrays.asList(first, second), true);
+        assertEquals(1, result.getDuplicates());
+        assertEquals(2, result.getTransactions().size());
+        assertEquals("first.json", result.getTransactions().get(0).getSource());
+        assertEquals(-12000_00 - 2600_00, result.getTotals().getYearlyCents());
+    }
+
+    @Test
+    public void mergesNoSheets() {
+        final SheetMerger.Result result = new SheetMerger(ForkJoinPool.commonPool()).merge(Collections.emptyList(), true);
+        assertEquals(0, result.getTotals().getRows());
+        assertEquals(0, result.getTransactions().size());
+    }
+
+    private Path write(String name, Transaction... transactions) throws IOException {
+        final Path path = directory.resolve(name);
+        SheetFiles.writeJson(path, Arrays.asList(transactions), true, SheetFiles.NO_PROGRESS);
+        return path;
+    }
+}
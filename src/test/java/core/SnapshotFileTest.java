@@ -0,0 +1,150 @@
+package core;
+
+import model.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SnapshotFileTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("snapshot-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void readsTheRowsItWrote() throws IOException {
+        //Enough rows and titles that the records and the strings span several blocks.
+        final List<Transaction> rows = new ArrayList<>();
+        for (int i = 0; i < 20_000; ++i) {
+            final Transaction row = new Transaction("Title " + i, (i - 5000) + ".25", i % 3 == 0 ? "Month" : "Year",
+                    i % 2 == 0 ? "Food" : null);
+            row.setCurrency(i % 5 == 0 ? "EUR" : null);
+            row.setStartDay(i % 7 == 0 ? 17000 + i : Transaction.NO_DAY);
+            rows.add(row);
+        }
+        final Path path = directory.resolve("rows" + SnapshotFile.EXTENSION);
+        SnapshotFile.write(path, rows);
+
+        try (SnapshotFile snapshot = SnapshotFile.open(path)) {
+            assertEquals(rows.size(), snapshot.size());
+            //Backwards as well, so the blocks are read again.
+            for (int row = rows.size() - 1; row >= 0; row -= 7) {
+                assertRow(rows.get(row), snapshot.transaction(row));
+            }
+            for (int row = 0; row < rows.size(); ++row) {
+                assertRow(rows.get(row), snapshot.transaction(row));
+            }
+            long yearlyCents = 0;
+            for (Transaction row : rows) {
+                yearlyCents += row.getYearlyCents();
+            }
+            assertEquals(yearlyCents, snapshot.yearlyCents());
+            assertEquals(0, snapshot.invalidRows());
+        }
+    }
+
+    @Test
+    public void convertsToAndFromJsonWithoutLosingAnything() throws IOException {
+        final Transaction inexact = new Transaction("Interest", "1.005", "Fortnight", "Bank");
+        inexact.setCurrency("EUR");
+        final List<Transaction> rows = Arrays.asList(inexact,
+                new Transaction("Bonus", "1e3", "Year", null),
+                new Transaction("Rent", "-1200.50", "Month", "Housing"),
+                new Transaction("Old", "3", null, null));
+        final Path json = directory.resolve("sheet.json");
+        final Path snapshot = directory.resolve("sheet" + SnapshotFile.EXTENSION);
+        final Path again = directory.resolve("again.json");
+        SheetFiles.writeJson(json, rows, false, SheetFiles.NO_PROGRESS);
+
+        final List<Transaction> loaded = new ArrayList<>();
+        SheetFiles.read(json, loaded::addAll, SheetFiles.NO_PROGRESS);
+        SnapshotFile.write(snapshot, loaded);
+        final List<Transaction> fromSnapshot = new ArrayList<>();
+        SheetFiles.read(snapshot, fromSnapshot::addAll, SheetFiles.NO_PROGRESS);
+        SheetFiles.writeJson(again, fromSnapshot, false, SheetFiles.NO_PROGRESS);
+
+        assertEquals(new String(Files.readAllBytes(json), StandardCharsets.UTF_8),
+                new String(Files.readAllBytes(again), StandardCharsets.UTF_8));
+        assertEquals("1.005", fromSnapshot.get(0).getValue());
+        assertEquals(101, fromSnapshot.get(0).getAmountCents());
+        assertEquals("Fortnight", fromSnapshot.get(0).getPeriod());
+        try (SnapshotFile file = SnapshotFile.open(snapshot)) {
+            assertEquals("1.005", file.inexactValue(0));
+            assertNull(file.inexactValue(2));
+            assertEquals(2, file.invalidRows());
+        }
+    }
+
+    @Test
+    public void readsLongStrings() throws IOException {
+        final String title = String.join("", Collections.nCopies(100_000, "\u00e4"));
+        final Path path = directory.resolve("long" + SnapshotFile.EXTENSION);
+        SnapshotFile.write(path, Collections.singletonList(new Transaction(title, "1", "Day", null)));
+        try (SnapshotFile snapshot = SnapshotFile.open(path)) {
+            assertEquals(title, snapshot.title(0));
+            assertNull(snapshot.category(0));
+        }
+    }
+
+    @Test
+    public void keepsReadingTheOldFileWhenItIsReplaced() throws IOException {
+        final Path path = directory.resolve("sheet" + SnapshotFile.EXTENSION);
+        final Path replacement = directory.resolve("replacement" + SnapshotFile.EXTENSION);
+        SnapshotFile.write(path, Collections.singletonList(new Transaction("Old", "1", "Day", null)));
+        SnapshotFile.write(replacement, Collections.singletonList(new Transaction("New", "2", "Day", null)));
+        try (SnapshotFile snapshot = SnapshotFile.open(path)) {
+            Files.move(replacement, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            assertEquals("Old", snapshot.title(0));
+        }
+        try (SnapshotFile snapshot = SnapshotFile.open(path)) {
+            assertEquals("New", snapshot.title(0));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedFiles() throws IOException {
+        final Path path = directory.resolve("truncated" + SnapshotFile.EXTENSION);
+        SnapshotFile.write(path, Collections.singletonList(new Transaction("Title", "1", "Day", null)));
+        final byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 3));
+        SnapshotFile.open(path).close();
+    }
+
+    private static void assertRow(Transaction expected, Transaction actual) {
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getPeriod(), actual.getPeriod());
+        assertEquals(expected.getAmountCents(), actual.getAmountCents());
+        assertEquals(expected.getValue(), actual.getValue());
+        assertEquals(expected.getCurrency(), actual.getCurrency());
+        assertEquals(expected.getStartDay(), actual.getStartDay());
+        assertEquals(expected.getEndDay(), actual.getEndDay());
+    }
+}
@@ -0,0 +1,226 @@
+package core;
+
+import core.CategoryRules.Rule;
+import core.StatementImport.Format;
+import core.StatementImport.Report;
+import model.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StatementImportTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("statement-import-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void parsesAmountsWithEitherDecimalSeparator() {
+        assertEquals(-123456, StatementImport.parseAmount("-1.234,56"));
+        assertEquals(123456, StatementImport.parseAmount("1,234.56"));
+        assertEquals(123456, StatementImport.parseAmount("1 234,56"));
+        assertEquals(123456, StatementImport.parseAmount("1'234.56"));
+        assertEquals(150, StatementImport.parseAmount("1.5"));
+        assertEquals(1200, StatementImport.parseAmount("12"));
+    }
+
+    @Test
+    public void takesASeparatorWithThreeDigitsForGrouping() {
+        assertEquals(123400, StatementImport.parseAmount("1,234"));
+        assertEquals(123400, StatementImport.parseAmount("1.234"));
+        assertEquals(123456700, StatementImport.parseAmount("1.234.567"));
+        assertEquals(100000, StatementImport.parseAmount("1000,"));
+    }
+
+    @Test
+    public void parsesSignsAndCurrencies() {
+        assertEquals(-1250, StatementImport.parseAmount("12,50-"));
+        assertEquals(-1200, StatementImport.parseAmount("(12.00)"));
+        assertEquals(123456, StatementImport.parseAmount("EUR 1.234,56"));
+        assertEquals(-999, StatementImport.parseAmount("-9.99 CHF"));
+        assertEquals(500, StatementImport.parseAmount("+5"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsAnAmountWithoutDigits() {
+        StatementImport.parseAmount("EUR");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsTextBetweenTheDigits() {
+        StatementImport.parseAmount("12 EUR 50");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsAmountsWhichDontFitIntoCents() {
+        StatementImport.parseAmount("123456789012345678");
+    }
+
+    @Test
+    public void parsesDatesAsWrittenInStatements() {
+        final int day = (int) LocalDate.of(2024, 2, 13).toEpochDay();
+        assertEquals(day, StatementImport.parseDay("2024-02-13"));
+        assertEquals(day, StatementImport.parseDay("2024-02-13T10:15:00+01:00"));
+        assertEquals(day, StatementImport.parseDay("13.02.2024"));
+        assertEquals(day, StatementImport.parseDay("13.02.24"));
+        assertEquals(day, StatementImport.parseDay("13/02/2024"));
+        assertEquals(day, StatementImport.parseDay("02/13/2024"));
+        assertEquals(day, StatementImport.parseDay("20240213"));
+        assertEquals(Transaction.NO_DAY, StatementImport.parseDay("30.02.2024"));
+        assertEquals(Transaction.NO_DAY, StatementImport.parseDay("-45,50"));
+        assertEquals(Transaction.NO_DAY, StatementImport.parseDay(""));
+    }
+
+    @Test
+    public void knowsTheFormatByTheExtension() throws IOException {
+        assertEquals(Format.CSV, Format.of(directory.resolve("export.CSV")));
+        assertEquals(Format.CAMT, Format.of(directory.resolve("camt053.xml")));
+        assertEquals(Format.MT940, Format.of(directory.resolve("statement.sta")));
+        assertNull(Format.of(directory.resolve("sheet.json")));
+
+        final Path text = directory.resolve("statement.txt");
+        Files.write(text, Collections.singletonList(":20:STARTUMS"));
+        assertEquals(Format.MT940, Format.of(text));
+        Files.write(text, Collections.singletonList("Date;Amount;Payee"));
+        assertEquals(Format.CSV, Format.of(text));
+    }
+
+    @Test
+    public void detectsTheCharset() {
+        final byte[] utf8 = "Empf\u00e4nger".getBytes(StandardCharsets.UTF_8);
+        final byte[] windows = "Empf\u00e4nger".getBytes(Charset.forName("windows-1252"));
+        assertEquals(StandardCharsets.UTF_8, StatementImport.detectCharset(utf8, utf8.length));
+        assertEquals(Charset.forName("windows-1252"), StatementImport.detectCharset(windows, windows.length));
+    }
+
+    @Test
+    public void importsACsvExport() throws IOException {
+        final Path path = directory.resolve("export.csv");
+        Files.write(path, String.join("\r\n",
+                "Konto;CH12 3456",
+                "",
+                "Buchungsdatum;Empf\u00e4nger;Verwendungszweck;Betrag;W\u00e4hrung;Saldo",
+                "01.02.2024;Migros;Einkauf;-45,50;CHF;1000,00",
+                "02.02.2024;\"Muster; AG\";\"Lohn \"\"Februar\"\"\";5.000,00;CHF;6000,00",
+                "03.02.2024;;\"Geb\u00fchr",
+                "Konto\";-2,00;XX;5998,00",
+                "04.02.2024;Kiosk;Zeitung;abc;CHF;5998,00",
+                "").getBytes(Charset.forName("windows-1252")));
+
+        final List<Transaction> rows = new ArrayList<>();
+        final Report report = read(path, rows);
+        assertEquals(3, report.getImported());
+        assertEquals(1, report.getRejected());
+        assertEquals("Invalid amount", report.getRejections().get(0).getReason());
+        assertEquals(3, rows.size());
+
+        assertRow(rows.get(0), "Migros", -4550, "CHF", "2024-02-01");
+        assertEquals("Groceries", rows.get(0).getCategory());
+        assertRow(rows.get(1), "Muster; AG", 500000, "CHF", "2024-02-02");
+        assertRow(rows.get(2), "Geb\u00fchr Konto", -200, null, "2024-02-03");
+    }
+
+    @Test
+    public void importsACamtStatement() throws IOException {
+        final Path path = directory.resolve("camt053.xml");
+        Files.write(path, Arrays.asList(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+                "<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.053.001.04\"><BkToCstmrStmt><Stmt>",
+                "<Ntry><Amt Ccy=\"EUR\">12.50</Amt><CdtDbtInd>DBIT</CdtDbtInd><Sts>BOOK</Sts>",
+                "<BookgDt><Dt>2024-02-01</Dt></BookgDt><ValDt><Dt>2024-02-02</Dt></ValDt><NtryDtls><TxDtls>",
+                "<RltdPties><Cdtr><Nm>Migros</Nm></Cdtr></RltdPties><RmtInf><Ustrd>Bread</Ustrd></RmtInf>",
+                "</TxDtls></NtryDtls></Ntry>",
+                "<Ntry><Amt Ccy=\"EUR\">1000.00</Amt><CdtDbtInd>CRDT</CdtDbtInd><Sts>BOOK</Sts>",
+                "<ValDt><DtTm>2024-02-25T08:00:00</DtTm></ValDt>",
+                "<AddtlNtryInf>Salary</AddtlNtryInf></Ntry>",
+                "<Ntry><Amt Ccy=\"EUR\">5.00</Amt><CdtDbtInd>DBIT</CdtDbtInd><Sts>PDNG</Sts></Ntry>",
+                "<Ntry><Amt Ccy=\"EUR\">7.00</Amt><CdtDbtInd>DBIT</CdtDbtInd><RvslInd>true</RvslInd>",
+                "<Sts><Cd>BOOK</Cd></Sts><AddtlNtryInf>Refund</AddtlNtryInf></Ntry>",
+                "</Stmt></BkToCstmrStmt></Document>"), StandardCharsets.UTF_8);
+
+        final List<Transaction> rows = new ArrayList<>();
+        final Report report = read(path, rows);
+        assertEquals(4, report.getLines());
+        assertEquals(1, report.getRejected());
+        assertEquals(3, rows.size());
+
+        assertRow(rows.get(0), "Migros", -1250, "EUR", "2024-02-01");
+        assertEquals("Groceries", rows.get(0).getCategory());
+        assertRow(rows.get(1), "Salary", 100000, "EUR", "2024-02-25");
+        assertRow(rows.get(2), "Refund", 700, "EUR", null);
+    }
+
+    @Test
+    public void importsAnMt940Statement() throws IOException {
+        final Path path = directory.resolve("statement.sta");
+        Files.write(path, Arrays.asList(
+                ":20:STARTUMS",
+                ":25:12345678/0001234567",
+                ":28C:00001/001",
+                ":60F:C240201EUR1000,00",
+                ":61:2402010201D45,50NMSCNONREF//BANKREF",
+                ":86:106?00KARTENZAHLUNG?20Einkauf?32MIGROS ZUE",
+                "RICH",
+                ":61:240202C1000,NTRFREF123",
+                ":86:Salary February",
+                ":61:2401021231C12,NCHGNONREF",
+                ":61:240204RD5,00NTRFNONREF",
+                ":86:Refund",
+                ":62F:C240204EUR1971,50",
+                "-"), StandardCharsets.ISO_8859_1);
+
+        final List<Transaction> rows = new ArrayList<>();
+        final Report report = read(path, rows);
+        assertEquals(4, report.getImported());
+        assertEquals(0, report.getRejected());
+
+        assertRow(rows.get(0), "MIGROS ZUERICH", -4550, "EUR", "2024-02-01");
+        assertEquals("Groceries", rows.get(0).getCategory());
+        assertRow(rows.get(1), "Salary February", 100000, "EUR", "2024-02-02");
+        //Booked on New Year's Eve with the value date of January 2.
+        assertRow(rows.get(2), "Credit", 1200, "EUR", "2023-12-31");
+        assertRow(rows.get(3), "Refund", 500, "EUR", "2024-02-04");
+    }
+
+    private static Report read(Path path, List<Transaction> rows) throws IOException {
+        final CategoryRules rules = CategoryRules.compile(Collections.singletonList(Rule.keyword("migros", "Groceries")));
+        return StatementImport.read(path, rules, rows::addAll, SheetFiles.NO_PROGRESS);
+    }
+
+    private static void assertRow(Transaction row, String title, long cents, String currency, String date) {
+        assertEquals(title, row.getTitle());
+        assertEquals(cents, row.getAmountCents());
+        assertEquals(currency, row.getCurrency());
+        assertEquals(StatementImport.PERIOD.getName(), row.getPeriod());
+        assertEquals(date, row.getStart());
+        assertEquals(date, row.getEnd());
+    }
+}
@@ -0,0 +1,33 @@
+package core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TotalsTest {
+
+    @Test
+    public void theEmptyTotalsAddUp() {
+        assertEquals(0, Totals.EMPTY.currencies());
+        final Totals totals = new Totals(1200, 2, 1, new long[]{0, 500}, new long[]{0, 1});
+
+        final Totals sum = Totals.EMPTY.plus(totals).plus(Totals.EMPTY);
+        assertEquals(1200, sum.getYearlyCents());
+        assertEquals(2, sum.getRows());
+        assertEquals(1, sum.getInvalidRows());
+        assertEquals(2, sum.currencies());
+        assertEquals(500, sum.yearlyCentsOf(1));
+        assertEquals(1, sum.rowsOf(1));
+    }
+
+    @Test
+    public void addsTheSumsPerCurrency() {
+        final Totals sum = new Totals(100, 1, 0, new long[]{100}, new long[]{1})
+                .plus(new Totals(300, 2, 0, new long[]{0, 200}, new long[]{0, 1}));
+        assertEquals(400, sum.getYearlyCents());
+        assertEquals(3, sum.getRows());
+        assertEquals(100, sum.yearlyCentsOf(0));
+        assertEquals(200, sum.yearlyCentsOf(1));
+        assertEquals(0, sum.yearlyCentsOf(5));
+    }
+}
@@ -0,0 +1,80 @@
+package model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MoneyTest {
+
+    @Test
+    public void parsesPlainValues() {
+        assertEquals(-1250, Money.parseCents("-12.5"));
+        assertEquals(300, Money.parseCents(" 3 "));
+        assertEquals(75, Money.parseCents("0.75"));
+        assertEquals(75, Money.parseCents("+.75"));
+        assertEquals(1200, Money.parseCents("12."));
+    }
+
+    @Test
+    public void roundsMoreDecimalPlacesHalfUp() {
+        assertEquals(1235, Money.parseCents("12.345"));
+        assertEquals(-1235, Money.parseCents("-12.345"));
+        assertEquals(1234, Money.parseCents("12.3449"));
+    }
+
+    @Test
+    public void parsesWhatDoubleParsesAccepts() {
+        assertEquals(100000, Money.parseCents("1e3"));
+        assertEquals(100, Money.parseCents("1d"));
+        assertEquals(250, Money.parseCents("2.5f"));
+        assertEquals(12345678901234567L, Money.parseCents("123456789012345.67"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsText() {
+        Money.parseCents("twelve");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsEmptyValues() {
+        Money.parseCents(" ");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsInfinity() {
+        Money.parseCents("Infinity");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsValuesBeyondLong() {
+        Money.parseCents("1e30");
+    }
+
+    @Test
+    public void knowsWhichValuesAreExactCents() {
+        assertTrue(Money.isCents("-12.5"));
+        assertTrue(Money.isCents("0.75"));
+        assertFalse(Money.isCents("12.345"));
+        assertFalse(Money.isCents("1e3"));
+        assertFalse(Money.isCents("1d"));
+        assertFalse(Money.isCents(null));
+    }
+
+    @Test
+    public void formatsLikeADouble() {
+        assertEquals("-12.5", Money.formatCents(-1250));
+        assertEquals("3.0", Money.formatCents(300));
+        assertEquals("0.75", Money.formatCents(75));
+        assertEquals("0.05", Money.formatCents(5));
+        assertEquals("-0.05", Money.formatCents(-5));
+    }
+
+    @Test
+    public void formatsParsedCentsBack() {
+        for (long cents = -1000; cents <= 1000; ++cents) {
+            assertEquals(cents, Money.parseCents(Money.formatCents(cents)));
+        }
+    }
+}
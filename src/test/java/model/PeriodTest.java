@@ -0,0 +1,25 @@
+package model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PeriodTest {
+
+    @Test
+    public void knownCodesHaveTheirFactor() {
+        for (Period period : Period.values()) {
+            assertEquals(period.getYearlyFactor(), Period.yearlyFactor(period.ordinal()));
+            assertEquals(0, Period.unknown(period.ordinal()));
+            assertEquals(period, Period.of(period.getName()));
+        }
+    }
+
+    @Test
+    public void everyOtherCodeIsUnknown() {
+        for (int code : new int[]{-1, Period.count(), Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE + 1}) {
+            assertEquals(String.valueOf(code), 0, Period.yearlyFactor(code));
+            assertEquals(String.valueOf(code), 1, Period.unknown(code));
+        }
+    }
+}
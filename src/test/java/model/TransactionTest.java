@@ -0,0 +1,68 @@
+package model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionTest {
+
+    @Test
+    public void keepsValuesWhichAreNoCents() {
+        final Transaction transaction = new Transaction("Rent", "12.345", "Month", null);
+        assertEquals(1235, transaction.getAmountCents());
+        assertEquals("12.345", transaction.getValue());
+
+        transaction.setValue("1e3");
+        assertEquals(100000, transaction.getAmountCents());
+        assertEquals("1e3", transaction.getValue());
+    }
+
+    @Test
+    public void writesCentsOnceTheAmountChanged() {
+        final Transaction transaction = new Transaction("Rent", "12.345", "Month", null);
+        transaction.setAmountCents(1250);
+        assertEquals("12.5", transaction.getValue());
+        transaction.setValue("12.50");
+        assertEquals("12.5", transaction.getValue());
+    }
+
+    @Test
+    public void keepsTheInexactValueInCopies() {
+        final Transaction transaction = new Transaction("Rent", "12.345", "Month", "Housing");
+        assertEquals("12.345", transaction.withCategory("Other").getValue());
+    }
+
+    @Test
+    public void mapsKnownPeriodsToTheirCode() {
+        final Transaction transaction = new Transaction("Rent", "-1000", "Month", null);
+        assertEquals(Period.MONTH.ordinal(), transaction.getPeriodCode());
+        assertEquals("Month", transaction.getPeriod());
+        assertTrue(transaction.hasKnownPeriod());
+        assertEquals(-12000_00, transaction.getYearlyCents());
+    }
+
+    @Test
+    public void keepsAnyNumberOfUnknownPeriods() {
+        final int code = new Transaction("A", "1", "Unknown 0", null).getPeriodCode();
+        for (int i = 0; i < 1000; ++i) {
+            final Transaction transaction = new Transaction("A", "1", "Unknown " + i, null);
+            assertEquals("Unknown " + i, transaction.getPeriod());
+            assertEquals(code, transaction.getPeriodCode());
+            assertFalse(transaction.hasKnownPeriod());
+            assertEquals(0, transaction.getYearlyCents());
+        }
+    }
+
+    @Test
+    public void hasNoPeriodWithoutOne() {
+        final Transaction transaction = new Transaction("A", "1", null, null);
+        assertNull(transaction.getPeriod());
+        assertFalse(transaction.hasKnownPeriod());
+        transaction.setPeriod("Year");
+        transaction.setPeriod(null);
+        assertNull(transaction.getPeriod());
+    }
+}